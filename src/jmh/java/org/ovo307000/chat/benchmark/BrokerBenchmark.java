@@ -0,0 +1,177 @@
+package org.ovo307000.chat.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.broker.ShardedBrokerMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 比较 Spring 内置的 SimpleBroker 与 ShardedBrokerMessageHandler 的分发吞吐量
+ *
+ * <p>
+ * 每个会话订阅自己的私聊队列（/user/{userId}/queue/messages，与客户端相同，每个会话对应一个用户）
+ * 和一个群聊主题（/topic/room.{n}）。每次操作发布 batchSize 条消息，等待出站通道收到全部投递后结束，
+ * 出站通道只计数，不做序列化和网络写入，因此结果只反映代理本身的匹配和分发开销。
+ * </p>
+ *
+ * <ul>
+ *     <li>private：每条消息发往一个随机会话的私聊队列（一对一聊天，投递 1 次）</li>
+ *     <li>topic：每条消息发往一个随机群聊主题（投递 sessions / rooms 次）</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="BrokerBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BrokerBenchmark
+{
+    private static final byte[] PAYLOAD = "{\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"simple", "sharded"})
+    private String broker;
+
+    @Param({"10000", "50000"})
+    private int sessions;
+
+    @Param({"100"})
+    private int rooms;
+
+    @Param({"private", "topic"})
+    private String destination;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    /* 出站通道收到的消息数 */
+    private final AtomicLong delivered = new AtomicLong();
+
+    private AbstractBrokerMessageHandler handler;
+    private Message<?>[]                 privateMessages;
+    private Message<?>[]                 topicMessages;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        final MessageChannel outbound = (message, timeout) ->
+        {
+            this.delivered.incrementAndGet();
+
+            return true;
+        };
+
+        // 与 WebsocketConfig 中启用的代理前缀相同
+        final var prefixes = List.of("/user", "/topic");
+
+        this.handler = "sharded".equals(this.broker)
+                       ? new ShardedBrokerMessageHandler(new ExecutorSubscribableChannel(),
+                                                         outbound,
+                                                         new ExecutorSubscribableChannel(),
+                                                         prefixes,
+                                                         0)
+                       : new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+                                                        outbound,
+                                                        new ExecutorSubscribableChannel(),
+                                                        prefixes);
+        this.handler.start();
+
+        this.privateMessages = new Message<?>[this.sessions];
+        this.topicMessages   = new Message<?>[this.rooms];
+
+        for (int i = 0; i < this.sessions; i++)
+        {
+            final var sessionId = "session-" + i;
+            final var queue     = "/user/user-" + i + "/queue/messages";
+
+            this.handler.handleMessage(frame(SimpMessageType.SUBSCRIBE, sessionId, "sub-0", queue));
+            this.handler.handleMessage(frame(SimpMessageType.SUBSCRIBE,
+                                             sessionId,
+                                             "sub-1",
+                                             "/topic/room." + (i % this.rooms)));
+            // 最后发送 CONNECT，收到全部 CONNECT_ACK 即说明订阅已经处理完
+            this.handler.handleMessage(frame(SimpMessageType.CONNECT, sessionId, null, null));
+
+            this.privateMessages[i] = frame(SimpMessageType.MESSAGE, null, null, queue);
+        }
+
+        for (int i = 0; i < this.rooms; i++)
+        {
+            this.topicMessages[i] = frame(SimpMessageType.MESSAGE, null, null, "/topic/room." + i);
+        }
+
+        this.await(this.sessions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        this.handler.stop();
+    }
+
+    @Benchmark
+    public long publish()
+    {
+        final var random   = ThreadLocalRandom.current();
+        final var isTopic  = "topic".equals(this.destination);
+        final var perTopic = (long) this.sessions / this.rooms;
+
+        this.delivered.set(0);
+
+        for (int i = 0; i < this.batchSize; i++)
+        {
+            this.handler.handleMessage(isTopic
+                                       ? this.topicMessages[random.nextInt(this.rooms)]
+                                       : this.privateMessages[random.nextInt(this.sessions)]);
+        }
+
+        return this.await(isTopic ? perTopic * this.batchSize : this.batchSize);
+    }
+
+    private long await(final long expected)
+    {
+        long count;
+
+        while ((count = this.delivered.get()) < expected)
+        {
+            // 让出 CPU，核数较少时分片线程才能及时运行
+            Thread.yield();
+        }
+
+        this.delivered.set(0);
+
+        return count;
+    }
+
+    /**
+     * @param fromUserDestination 是否模拟 UserDestinationMessageHandler 解析后的消息（带原始目的地头）
+     */
+    private static Message<?> frame(final SimpMessageType type,
+                                    final String sessionId,
+                                    final String subscriptionId,
+                                    final String destination)
+    {
+        final var accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+
+        return MessageBuilder.createMessage(PAYLOAD, accessor.getMessageHeaders());
+    }
+}
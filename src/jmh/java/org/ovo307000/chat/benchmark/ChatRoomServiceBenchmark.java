@@ -0,0 +1,79 @@
+package org.ovo307000.chat.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.service.ChatRoomService;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatRoomService.getChatRoomId 的开销，仓库替换为内存实现，只衡量 ID 规范化、缓存查找和建房逻辑本身
+ *
+ * <ul>
+ *     <li>hit：在固定的用户对之间循环，聊天室 ID 均已在缓存中（稳定运行时的常态）</li>
+ *     <li>miss：每次调用都是新的用户对，走“查库 → 建房 → 写缓存”的完整路径</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ChatRoomServiceBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChatRoomServiceBenchmark
+{
+    /* 缓存命中场景中循环使用的用户对数量 */
+    private static final int PAIRS = 1024;
+
+    @Param({"hit", "miss"})
+    private String cache;
+
+    private ChatRoomService chatRoomService;
+    private String[]        senders;
+    private String[]        receivers;
+    private long            counter;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        this.chatRoomService = new ChatRoomService(RepositoryStubs.inMemoryChatRoomStore(),
+                                                   new ChatRoomIdCache(new ChatProperties()),
+                                                   new ChatMetrics(new SimpleMeterRegistry()),
+                                                   RepositoryStubs.noGroupRooms());
+
+        this.senders   = new String[PAIRS];
+        this.receivers = new String[PAIRS];
+
+        for (int i = 0; i < PAIRS; i++)
+        {
+            this.senders[i]   = "user-" + i;
+            this.receivers[i] = "user-" + (i + PAIRS);
+
+            // 预热缓存
+            this.chatRoomService.getChatRoomId(this.senders[i], this.receivers[i], true);
+        }
+    }
+
+    @Benchmark
+    public Optional<String> getChatRoomId()
+    {
+        final var n = this.counter++;
+
+        if ("miss".equals(this.cache))
+        {
+            return this.chatRoomService.getChatRoomId("sender-" + n, "receiver-" + n, true);
+        }
+
+        final var i = (int) (n & (PAIRS - 1));
+
+        return this.chatRoomService.getChatRoomId(this.senders[i], this.receivers[i], true);
+    }
+}
@@ -0,0 +1,69 @@
+package org.ovo307000.chat.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.module.dto.ChatMessageDTO;
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.ovo307000.chat.module.entity.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实体到 DTO 的转换开销：历史消息分页（ChatMessageDTO.fromChatMessages）和推送通知（ChatNotificationDTO.fromChatMessage）
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="DtoConversionBenchmark"
+ * </pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DtoConversionBenchmark
+{
+    @Benchmark
+    public List<ChatMessageDTO> fromChatMessages(final Page page)
+    {
+        return ChatMessageDTO.fromChatMessages(page.chatMessages);
+    }
+
+    @Benchmark
+    public ChatNotificationDTO fromChatMessage(final Page page)
+    {
+        return ChatNotificationDTO.fromChatMessage(page.chatMessages.get(0));
+    }
+
+    /**
+     * 一页历史消息
+     */
+    @State(Scope.Benchmark)
+    public static class Page
+    {
+        /* 对应历史消息的单页条数：单条、默认页大小、最大页大小 */
+        @Param({"1", "50", "200"})
+        private int pageSize;
+
+        private List<ChatMessage> chatMessages;
+
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            final var now = LocalDateTime.now();
+
+            this.chatMessages = new ArrayList<>(this.pageSize);
+
+            for (int i = 0; i < this.pageSize; i++)
+            {
+                this.chatMessages.add(new ChatMessage("id-" + i,
+                                                      "alice ❤ bob",
+                                                      "alice",
+                                                      "bob",
+                                                      "hello " + i,
+                                                      now.plusSeconds(i)));
+            }
+        }
+    }
+}
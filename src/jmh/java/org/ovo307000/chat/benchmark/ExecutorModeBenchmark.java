@@ -0,0 +1,152 @@
+package org.ovo307000.chat.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.config.AsyncConfig;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.persistence.ChatMessageWriteBehindBuffer;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.service.ChatMessageService;
+import org.ovo307000.chat.service.ChatRoomService;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.ovo307000.chat.storage.ReadCursorStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 比较两种执行模式（有界平台线程池 / 每任务一个虚拟线程）下服务层阻塞 I/O 的吞吐量
+ *
+ * <p>
+ * 每次操作并发提交 concurrentRequests 个请求，其中一半是发送消息（save），一半是读取一页历史记录，
+ * 仓库替身的每次调用阻塞 ioLatencyMicros 微秒以模拟 MongoDB 往返时间，待全部完成后结束本次操作。
+ * 吞吐量单位为“批/秒”，乘以 concurrentRequests 即为请求/秒。
+ * </p>
+ *
+ * <p>
+ * 虚拟线程需要 JDK 21 及以上；在更低版本的 JDK 上 VIRTUAL 会退化为平台线程池（见 AsyncConfig），
+ * 此时两组结果应当接近。
+ * </p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ExecutorModeBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExecutorModeBenchmark
+{
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ChatProperties.Executor.Mode mode;
+
+    @Param({"1000"})
+    private long ioLatencyMicros;
+
+    @Param({"64", "512"})
+    private int concurrentRequests;
+
+    private AsyncTaskExecutor  executor;
+    private ChatMessageService chatMessageService;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        final var chatProperties = new ChatProperties();
+        chatProperties.getExecutor()
+                      .setMode(this.mode);
+        // 关闭最近消息缓存，读取始终经过执行器和仓库
+        chatProperties.getRecentMessages()
+                      .setEnabled(false);
+
+        this.executor = new AsyncConfig().taskExecutor(chatProperties);
+
+        final var history = List.of(message("1"), message("2"));
+
+        final ChatRoomStore chatRoomStore = RepositoryStubs.stub(ChatRoomStore.class,
+                                                                 this.ioLatencyMicros,
+                                                                 Map.of("existsById", args -> true));
+        final ChatMessageStore chatMessageStore = RepositoryStubs.stub(ChatMessageStore.class,
+                                                                       this.ioLatencyMicros,
+                                                                       Map.<String, Function<Object[], Object>>of(
+                                                                               "save",
+                                                                               args -> args[0],
+                                                                               "findPageBefore",
+                                                                               args -> history,
+                                                                               "findMaxSeq",
+                                                                               args -> 0L));
+
+        final var chatMetrics     = new ChatMetrics(new SimpleMeterRegistry());
+        final var chatRoomService = new ChatRoomService(chatRoomStore,
+                                                        new ChatRoomIdCache(chatProperties),
+                                                        chatMetrics,
+                                                        RepositoryStubs.noGroupRooms());
+
+        this.chatMessageService = new ChatMessageService(chatRoomService,
+                                                         chatMessageStore,
+                                                         new ChatMessageWriteBehindBuffer(chatMessageStore,
+                                                                                          chatProperties),
+                                                         chatProperties,
+                                                         chatMetrics,
+                                                         new RecentMessageCache(chatProperties),
+                                                         new ChatSequenceAllocator(chatMessageStore,
+                                                                                   chatProperties),
+                                                         new ReadCursorWriter(RepositoryStubs.stub(ReadCursorStore.class,
+                                                                                                   0,
+                                                                                                   Map.of())),
+                                                         RepositoryStubs.noSearchIndex(),
+                                                         this.executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        if (this.executor instanceof DisposableBean disposable)
+        {
+            disposable.destroy();
+        }
+    }
+
+    @Benchmark
+    public void concurrentSendsAndHistoryReads()
+    {
+        final var futures = new CompletableFuture<?>[this.concurrentRequests];
+
+        for (int i = 0; i < this.concurrentRequests; i++)
+        {
+            final var sender   = "user" + (i % 32);
+            final var receiver = "user" + ((i + 1) % 32);
+
+            futures[i] = (i & 1) == 0
+                         ? this.chatMessageService.saveChatMessageAsync(ChatMessage.builder()
+                                                                                   .senderId(sender)
+                                                                                   .receiverId(receiver)
+                                                                                   .content("hello")
+                                                                                   .build())
+                         : this.chatMessageService.fetchChatMessagePageAsync(sender, receiver, null, null, 50);
+        }
+
+        CompletableFuture.allOf(futures)
+                         .join();
+    }
+
+    private static ChatMessage message(final String id)
+    {
+        return new ChatMessage(id, "room", "a", "b", "hello", LocalDateTime.now());
+    }
+}
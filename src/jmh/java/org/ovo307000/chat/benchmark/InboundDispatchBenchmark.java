@@ -0,0 +1,181 @@
+package org.ovo307000.chat.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.inbound.SessionStripedExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 比较 Spring 默认的入站线程池与 SessionStripedExecutor 处理客户端入站通道消息的吞吐量
+ *
+ * <p>
+ * 每次操作按轮转顺序为 sessions 个会话发布 batchSize 条消息（每个会话的消息带递增序号），等待订阅者处理完全部消息后结束。
+ * 订阅者在每条消息上自旋 workNanos 纳秒模拟控制器的开销，并检查每个会话收到的序号是否递增，
+ * 乱序处理的消息数在试验结束时打印：default 通常不为 0，ordered 必须为 0。
+ * </p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="InboundDispatchBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InboundDispatchBenchmark
+{
+    private static final byte[] PAYLOAD = "{\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"default", "ordered"})
+    private String executor;
+
+    @Param({"100", "10000"})
+    private int sessions;
+
+    @Param({"0", "2000"})
+    private long workNanos;
+
+    @Param({"10000"})
+    private int batchSize;
+
+    private final AtomicLong handled    = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+
+    private TaskExecutor                taskExecutor;
+    private ExecutorSubscribableChannel channel;
+    private Message<?>[][]              messages;
+    private AtomicLongArray             lastSeq;
+    private int[]                       nextSeq;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        this.taskExecutor = "ordered".equals(this.executor)
+                            ? new SessionStripedExecutor(new ChatProperties())
+                            : defaultExecutor();
+        this.channel      = new ExecutorSubscribableChannel(this.taskExecutor);
+        this.channel.subscribe(this::handle);
+
+        this.lastSeq = new AtomicLongArray(this.sessions);
+        this.nextSeq = new int[this.sessions];
+
+        // 每个会话预先生成足够一次操作使用的消息，序号在每次操作开始时重置
+        final var perSession = (this.batchSize + this.sessions - 1) / this.sessions;
+        this.messages = new Message<?>[this.sessions][perSession];
+
+        for (int session = 0; session < this.sessions; session++)
+        {
+            for (int seq = 0; seq < perSession; seq++)
+            {
+                this.messages[session][seq] = frame(session, seq);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        System.out.printf("%n%s executor handled %d messages out of per-session order%n",
+                          this.executor,
+                          this.outOfOrder.get());
+
+        if (this.taskExecutor instanceof SessionStripedExecutor striped)
+        {
+            striped.shutdown();
+        }
+        else
+        {
+            ((ThreadPoolTaskExecutor) this.taskExecutor).shutdown();
+        }
+    }
+
+    @Benchmark
+    public long dispatch()
+    {
+        for (int session = 0; session < this.sessions; session++)
+        {
+            this.lastSeq.set(session, -1);
+            this.nextSeq[session] = 0;
+        }
+
+        this.handled.set(0);
+
+        for (int i = 0; i < this.batchSize; i++)
+        {
+            final var session = i % this.sessions;
+            this.channel.send(this.messages[session][this.nextSeq[session]++]);
+        }
+
+        long count;
+
+        while ((count = this.handled.get()) < this.batchSize)
+        {
+            // 让出 CPU，核数较少时处理线程才能及时运行
+            Thread.yield();
+        }
+
+        return count;
+    }
+
+    private void handle(final Message<?> message)
+    {
+        final var headers = message.getHeaders();
+        final var session = (int) headers.get("session");
+        final var seq     = (int) headers.get("seq");
+
+        if (this.lastSeq.getAndSet(session, seq) > seq)
+        {
+            this.outOfOrder.incrementAndGet();
+        }
+
+        final var deadline = System.nanoTime() + this.workNanos;
+
+        while (System.nanoTime() < deadline)
+        {
+            Thread.onSpinWait();
+        }
+
+        this.handled.incrementAndGet();
+    }
+
+    /**
+     * 与 Spring 在未配置入站执行器时创建的线程池相同，见 AbstractMessageBrokerConfiguration
+     */
+    private static ThreadPoolTaskExecutor defaultExecutor()
+    {
+        final var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime()
+                                        .availableProcessors() * 2);
+        executor.setMaxPoolSize(Integer.MAX_VALUE);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("clientInboundChannel-");
+        executor.initialize();
+
+        return executor;
+    }
+
+    private static Message<?> frame(final int session, final int seq)
+    {
+        final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("session-" + session);
+        accessor.setDestination("/app/chat");
+        accessor.setHeader("session", session);
+        accessor.setHeader("seq", seq);
+
+        return MessageBuilder.createMessage(PAYLOAD, accessor.getMessageHeaders());
+    }
+}
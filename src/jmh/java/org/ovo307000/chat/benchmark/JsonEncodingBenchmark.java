@@ -0,0 +1,79 @@
+package org.ovo307000.chat.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.module.dto.ChatMessagePageDTO;
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConverter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson 编码开销
+ *
+ * <ul>
+ *     <li>stompNotification：STOMP 推送的 ChatNotificationDTO，经 WebsocketConfig 注册的 JSON 消息转换器编码成消息</li>
+ *     <li>historyPage：REST 返回的一页历史消息，使用与 Spring Boot 默认配置相同的 ObjectMapper（含 JSR-310 模块）</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="JsonEncodingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonEncodingBenchmark
+{
+    @Param({"50"})
+    private int pageSize;
+
+    private MessageConverter    messageConverter;
+    private ObjectMapper        restObjectMapper;
+    private ChatNotificationDTO notification;
+    private ChatMessagePageDTO  page;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        this.restObjectMapper = Jackson2ObjectMapperBuilder.json()
+                                                           .build();
+
+        // 与 WebsocketConfig.configureMessageConverters 注册的 JSON 转换器相同
+        this.messageConverter = new PayloadCodecs(this.restObjectMapper, Jackson2ObjectMapperBuilder.json())
+                .jsonConverter();
+
+        final var now      = LocalDateTime.now();
+        final var messages = new ArrayList<ChatMessage>(this.pageSize);
+
+        for (int i = 0; i < this.pageSize; i++)
+        {
+            messages.add(new ChatMessage("id-" + i, "alice ❤ bob", "alice", "bob", "hello " + i, now.plusSeconds(i)));
+        }
+
+        this.notification = ChatNotificationDTO.fromChatMessage(messages.get(0));
+        this.page         = ChatMessagePageDTO.fromChatMessages(messages, this.pageSize, true);
+    }
+
+    @Benchmark
+    public Message<?> stompNotification()
+    {
+        return this.messageConverter.toMessage(this.notification, null);
+    }
+
+    @Benchmark
+    public byte[] historyPage() throws JsonProcessingException
+    {
+        return this.restObjectMapper.writeValueAsBytes(this.page);
+    }
+}
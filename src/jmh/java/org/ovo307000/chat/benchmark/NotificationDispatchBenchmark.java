@@ -0,0 +1,88 @@
+package org.ovo307000.chat.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一条通知发往多个接收者的个人队列（/user/{userId}/queue/messages）的开销
+ *
+ * <ul>
+ *     <li>convertPerRecipient：每个接收者调用一次 SimpMessagingTemplate#convertAndSendToUser，负载编码 recipients 次</li>
+ *     <li>encodeOnce：NotificationDispatcher#sendToUsers，负载编码一次，所有接收者共享同一个字节数组；
+ *     只有一个接收者时与 convertPerRecipient 相同</li>
+ * </ul>
+ *
+ * <p>
+ * 代理通道直接丢弃消息，结果只包含编码和构造消息头的开销；默认启用的 gc 分析器（见 pom.xml 中的 jmh.defaults）
+ * 给出每次操作的分配字节数（gc.alloc.rate.norm），两种方式的差值即重复编码产生的分配。
+ * </p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="NotificationDispatchBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NotificationDispatchBenchmark
+{
+    @Param({"1", "10", "1000"})
+    private int recipients;
+
+    private SimpMessagingTemplate  brokerMessagingTemplate;
+    private NotificationDispatcher notificationDispatcher;
+    private ChatNotificationDTO    notification;
+    private List<String>           userIds;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        // 与 WebsocketConfig.configureMessageConverters 注册的 JSON 转换器相同
+        final var codecs = new PayloadCodecs(Jackson2ObjectMapperBuilder.json()
+                                                                         .build(), Jackson2ObjectMapperBuilder.json());
+
+        this.brokerMessagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        this.brokerMessagingTemplate.setMessageConverter(codecs.jsonConverter());
+        this.notificationDispatcher = new NotificationDispatcher(this.brokerMessagingTemplate);
+        this.notification           = new ChatNotificationDTO("670f7c2a9d1e4b6f8a3c5d21",
+                                                              42L,
+                                                              "alice",
+                                                              "group:team",
+                                                              "hello everyone, the build is green again");
+
+        this.userIds = new ArrayList<>(this.recipients);
+
+        for (int i = 0; i < this.recipients; i++)
+        {
+            this.userIds.add("user-" + i);
+        }
+    }
+
+    @Benchmark
+    public void convertPerRecipient()
+    {
+        for (final var userId : this.userIds)
+        {
+            this.brokerMessagingTemplate.convertAndSendToUser(userId,
+                                                              NotificationDispatcher.MESSAGES_QUEUE,
+                                                              this.notification);
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce()
+    {
+        this.notificationDispatcher.sendToUsers(this.notification, this.userIds);
+    }
+}
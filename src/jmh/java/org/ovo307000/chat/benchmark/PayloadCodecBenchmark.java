@@ -0,0 +1,98 @@
+package org.ovo307000.chat.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP 消息体在 JSON 与 CBOR 两种格式下的编解码开销
+ *
+ * <ul>
+ *     <li>encode / decode：ChatNotificationDTO（服务端推送）和 ChatMessage（客户端发送，含 LocalDateTime）的编码、解码</li>
+ *     <li>transcode：出站通道为协商了 CBOR 的会话把已编码的 JSON 转写为 CBOR 的开销，只在 format=cbor 时有意义</li>
+ * </ul>
+ *
+ * <p>两种格式的消息体大小在初始化时输出。</p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PayloadCodecBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PayloadCodecBenchmark
+{
+    @Param({"json", "cbor"})
+    private String format;
+
+    @Param({"notification", "message"})
+    private String payload;
+
+    private PayloadCodecs codecs;
+    private ObjectMapper  mapper;
+    private Object        value;
+    private Class<?>      type;
+    private byte[]        encoded;
+    private byte[]        json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.codecs = new PayloadCodecs(Jackson2ObjectMapperBuilder.json()
+                                                                   .build(), Jackson2ObjectMapperBuilder.json());
+        this.mapper = "cbor".equals(this.format) ? this.codecs.getCborMapper() : this.codecs.getJsonMapper();
+
+        final var message = new ChatMessage("6710c2a5e4b0a1b2c3d4e5f6",
+                                            "alice_bob",
+                                            "alice",
+                                            "bob",
+                                            "hello, this is a typical short chat message ❤",
+                                            LocalDateTime.now());
+
+        if ("notification".equals(this.payload))
+        {
+            this.value = ChatNotificationDTO.fromChatMessage(message);
+            this.type  = ChatNotificationDTO.class;
+        }
+        else
+        {
+            this.value = message;
+            this.type  = ChatMessage.class;
+        }
+
+        this.encoded = this.mapper.writeValueAsBytes(this.value);
+        this.json    = this.codecs.getJsonMapper()
+                                  .writeValueAsBytes(this.value);
+
+        System.out.printf("%n%s %s payload: %d bytes%n", this.format, this.payload, this.encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        return this.mapper.writeValueAsBytes(this.value);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException
+    {
+        return this.mapper.readValue(this.encoded, this.type);
+    }
+
+    @Benchmark
+    public byte[] transcode()
+    {
+        return this.codecs.jsonToCbor(this.json);
+    }
+}
@@ -0,0 +1,109 @@
+package org.ovo307000.chat.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.controller.ChatController;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
+import org.ovo307000.chat.persistence.ChatMessageWriteBehindBuffer;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.service.ChatMessageService;
+import org.ovo307000.chat.service.ChatRoomService;
+import org.ovo307000.chat.storage.ReadCursorStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatController.processChatMessage 的完整路径：解析聊天室 ID、保存消息、转换为通知并编码后发往代理通道
+ *
+ * <p>
+ * 仓库替换为内存实现，保存在调用线程上同步执行（SyncTaskExecutor），因此结果不含数据库和线程切换开销，但包含指标记录的开销；
+ * 代理通道直接丢弃消息，代理本身的分发开销见 BrokerBenchmark。
+ * 项目包的日志级别调到 WARN，否则每条消息两行 INFO 日志的控制台输出会掩盖其余开销。
+ * </p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ProcessChatMessageBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProcessChatMessageBenchmark
+{
+    /* 循环使用的用户数，用户对的聊天室 ID 在预热后都会命中缓存 */
+    private static final int USERS = 256;
+
+    private ChatController chatController;
+    private long           counter;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        ((Logger) LoggerFactory.getLogger("org.ovo307000.chat")).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        final var chatProperties   = new ChatProperties();
+        final var chatMetrics      = new ChatMetrics(new SimpleMeterRegistry());
+        final var chatMessageStore = RepositoryStubs.discardingChatMessageStore();
+        final var chatRoomService = new ChatRoomService(RepositoryStubs.inMemoryChatRoomStore(),
+                                                        new ChatRoomIdCache(chatProperties),
+                                                        chatMetrics,
+                                                        RepositoryStubs.noGroupRooms());
+        final var chatMessageService = new ChatMessageService(chatRoomService,
+                                                              chatMessageStore,
+                                                              new ChatMessageWriteBehindBuffer(chatMessageStore,
+                                                                                               chatProperties),
+                                                              chatProperties,
+                                                              chatMetrics,
+                                                              new RecentMessageCache(chatProperties),
+                                                              new ChatSequenceAllocator(chatMessageStore,
+                                                                                        chatProperties),
+                                                              new ReadCursorWriter(RepositoryStubs.stub(ReadCursorStore.class,
+                                                                                                        0,
+                                                                                                        Map.of())),
+                                                              RepositoryStubs.noSearchIndex(),
+                                                              new SyncTaskExecutor());
+
+        // 与 WebsocketConfig.configureMessageConverters 注册的 JSON 消息转换器相同
+        final var objectMapper = Jackson2ObjectMapperBuilder.json()
+                                                            .build();
+        final var codecs       = new PayloadCodecs(objectMapper, Jackson2ObjectMapperBuilder.json());
+
+        final var brokerMessagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        brokerMessagingTemplate.setMessageConverter(codecs.jsonConverter());
+
+        this.chatController = new ChatController(chatMessageService,
+                                                 new NotificationDispatcher(brokerMessagingTemplate),
+                                                 chatMetrics,
+                                                 objectMapper,
+                                                 RepositoryStubs.noGroupRooms());
+    }
+
+    @Benchmark
+    public void processChatMessage()
+    {
+        final var n = this.counter++;
+
+        this.chatController.processChatMessage(ChatMessage.builder()
+                                                          .senderId("user-" + (n % USERS))
+                                                          .receiverId("user-" + ((n + 1) % USERS))
+                                                          .content("hello")
+                                                          .build(),
+                                               null);
+    }
+}
@@ -0,0 +1,206 @@
+package org.ovo307000.chat.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.config.AsyncConfig;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.controller.ChatController;
+import org.ovo307000.chat.controller.ReactiveChatController;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
+import org.ovo307000.chat.persistence.ChatMessageWriteBehindBuffer;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.service.ChatMessageService;
+import org.ovo307000.chat.service.ChatRoomService;
+import org.ovo307000.chat.service.ReactiveChatMessageService;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.ovo307000.chat.storage.ReactiveChatMessageStore;
+import org.ovo307000.chat.storage.ReadCursorStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较阻塞（/api/v1/chat）与响应式（/api/v2/chat）两种历史记录读取路径能承受的并发请求量
+ *
+ * <p>
+ * 用固定大小的线程池模拟 Tomcat 的请求线程（默认最多 200 个），每次操作同时发起 concurrentRequests 个读取最新一页的请求，
+ * 全部响应完成后结束本次操作。仓库替身为每次查询附加 ioLatencyMicros 微秒的延迟以模拟 MongoDB 往返时间：
+ * 阻塞仓库在 taskExecutor 线程上等待（与 MongoDB 同步驱动相同），响应式仓库以定时器延迟发出结果，不占用线程。
+ * </p>
+ *
+ * <ul>
+ *     <li>blocking：请求线程在 join() 上等待，同时进行的请求数受请求线程数和 taskExecutor 线程数限制</li>
+ *     <li>reactive：请求线程返回 Mono 后立即释放，同时进行的请求数只受数据库限制</li>
+ * </ul>
+ *
+ * <p>吞吐量单位为“批/秒”，乘以 concurrentRequests 即为请求/秒。</p>
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ReadModeBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReadModeBenchmark
+{
+    @Param({"blocking", "reactive"})
+    private String mode;
+
+    @Param({"200", "2000"})
+    private int concurrentRequests;
+
+    @Param({"5000"})
+    private long ioLatencyMicros;
+
+    /* Tomcat 默认的最大请求线程数 */
+    @Param({"200"})
+    private int requestThreads;
+
+    private ExecutorService        requestExecutor;
+    private ThreadPoolTaskExecutor taskExecutor;
+    private ChatController         chatController;
+    private ReactiveChatController reactiveChatController;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        final var chatProperties = new ChatProperties();
+        // 关闭最近消息缓存，比较的是两种路径访问数据库的开销
+        chatProperties.getRecentMessages()
+                      .setEnabled(false);
+
+        final var chatMetrics    = new ChatMetrics(new SimpleMeterRegistry());
+        final var history        = new ArrayList<ChatMessage>();
+        final var latency        = Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(this.ioLatencyMicros));
+
+        for (int i = 0; i < 51; i++)
+        {
+            history.add(new ChatMessage("id-" + i, "room", "a", "b", "hello " + i, LocalDateTime.now()));
+        }
+
+        this.requestExecutor = Executors.newFixedThreadPool(this.requestThreads);
+
+        if ("reactive".equals(this.mode))
+        {
+            final var reactiveChatMessageStore = RepositoryStubs.stub(ReactiveChatMessageStore.class,
+                                                                      0,
+                                                                      Map.of("findPageBefore",
+                                                                             args -> Flux.fromIterable(history)
+                                                                                         .delaySubscription(latency),
+                                                                             "existsChatRoom",
+                                                                             args -> Mono.just(true)
+                                                                                         .delaySubscription(latency)));
+
+            this.reactiveChatController = new ReactiveChatController(new ReactiveChatMessageService(
+                    reactiveChatMessageStore,
+                    new ChatRoomIdCache(chatProperties),
+                    chatProperties,
+                    chatMetrics,
+                    new RecentMessageCache(chatProperties),
+                    RepositoryStubs.noGroupMembers()));
+
+            return;
+        }
+
+        // 与应用相同配置的有界平台线程池
+        this.taskExecutor = AsyncConfig.platformThreadExecutor(chatProperties.getExecutor());
+
+        final var chatMessageStore = RepositoryStubs.stub(ChatMessageStore.class,
+                                                          this.ioLatencyMicros,
+                                                          Map.of("findPageBefore", args -> List.copyOf(history)));
+        final var chatRoomStore = RepositoryStubs.stub(ChatRoomStore.class,
+                                                       this.ioLatencyMicros,
+                                                       Map.of("existsById", args -> true));
+        final var chatRoomService = new ChatRoomService(chatRoomStore,
+                                                        new ChatRoomIdCache(chatProperties),
+                                                        chatMetrics,
+                                                        RepositoryStubs.noGroupRooms());
+        final var chatMessageService = new ChatMessageService(chatRoomService,
+                                                              chatMessageStore,
+                                                              new ChatMessageWriteBehindBuffer(chatMessageStore,
+                                                                                               chatProperties),
+                                                              chatProperties,
+                                                              chatMetrics,
+                                                              new RecentMessageCache(chatProperties),
+                                                              new ChatSequenceAllocator(chatMessageStore,
+                                                                                        chatProperties),
+                                                              new ReadCursorWriter(RepositoryStubs.stub(ReadCursorStore.class,
+                                                                                                        0,
+                                                                                                        Map.of())),
+                                                              RepositoryStubs.noSearchIndex(),
+                                                              this.taskExecutor);
+
+        this.chatController = new ChatController(chatMessageService,
+                                                 new NotificationDispatcher(new SimpMessagingTemplate((message, timeout) -> true)),
+                                                 chatMetrics,
+                                                 new ObjectMapper(),
+                                                 RepositoryStubs.noGroupRooms());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        this.requestExecutor.shutdownNow();
+
+        if (this.taskExecutor != null)
+        {
+            this.taskExecutor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void concurrentHistoryReads() throws InterruptedException
+    {
+        final var completed = new CountDownLatch(this.concurrentRequests);
+        final var reactive  = "reactive".equals(this.mode);
+
+        for (int i = 0; i < this.concurrentRequests; i++)
+        {
+            final var sender   = "user" + (i % 32);
+            final var receiver = "user" + ((i + 1) % 32);
+
+            this.requestExecutor.execute(() ->
+                                         {
+                                             if (reactive)
+                                             {
+                                                 // 与 Spring MVC 处理 Mono 返回值相同：订阅后请求线程立即返回
+                                                 this.reactiveChatController.fetchChatMessages(sender,
+                                                                                               receiver,
+                                                                                               null,
+                                                                                               null,
+                                                                                               null)
+                                                                            .subscribe(response -> completed.countDown());
+                                             }
+                                             else
+                                             {
+                                                 this.chatController.fetchChatMessages(sender, receiver, null, null, null);
+                                                 completed.countDown();
+                                             }
+                                         });
+        }
+
+        completed.await();
+    }
+}
@@ -0,0 +1,164 @@
+package org.ovo307000.chat.benchmark;
+
+import org.bson.types.ObjectId;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.group.GroupMembershipIndex;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.module.entity.ChatRoom;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.ovo307000.chat.search.MessageSearchIndex;
+import org.ovo307000.chat.service.GroupRoomService;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.ovo307000.chat.storage.GroupRoomStore;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * 基准测试用的仓库替身
+ *
+ * <p>
+ * 通过动态代理实现存储接口（见 org.ovo307000.chat.storage），只响应显式提供了处理函数的方法，
+ * 其余方法调用会抛出 UnsupportedOperationException，避免基准无意中走到未模拟的路径。
+ * 可以为每次调用附加固定的阻塞延迟，用来模拟数据库往返时间。
+ * </p>
+ */
+public final class RepositoryStubs
+{
+    private RepositoryStubs()
+    {
+    }
+
+    /**
+     * 创建仓库替身
+     *
+     * @param repositoryType 仓库接口类型
+     * @param latencyMicros  每次调用附加的阻塞延迟（微秒），0 表示不附加
+     * @param handlers       方法名到处理函数的映射，处理函数接收调用参数并返回结果
+     * @param <T>            仓库接口类型
+     * @return 仓库替身
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(final Class<T> repositoryType,
+                             final long latencyMicros,
+                             final Map<String, Function<Object[], Object>> handlers)
+    {
+        return (T) Proxy.newProxyInstance(repositoryType.getClassLoader(),
+                                          new Class<?>[]{repositoryType},
+                                          (proxy, method, args) ->
+                                          {
+                                              if (method.getDeclaringClass() == Object.class)
+                                              {
+                                                  return switch (method.getName())
+                                                  {
+                                                      case "hashCode" -> System.identityHashCode(proxy);
+                                                      case "equals" -> proxy == args[0];
+                                                      default -> repositoryType.getSimpleName() + "Stub";
+                                                  };
+                                              }
+
+                                              final var handler = handlers.get(method.getName());
+
+                                              if (handler == null)
+                                              {
+                                                  throw new UnsupportedOperationException(method.toString());
+                                              }
+
+                                              if (latencyMicros > 0)
+                                              {
+                                                  LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+                                              }
+
+                                              return handler.apply(args == null ? new Object[0] : args);
+                                          });
+    }
+
+    /**
+     * 创建基于 ConcurrentHashMap 的聊天室仓库替身，只支持 existsById 和 save
+     *
+     * @return 聊天室仓库替身
+     */
+    public static ChatRoomStore inMemoryChatRoomStore()
+    {
+        final var chatRooms = new ConcurrentHashMap<String, ChatRoom>();
+
+        return stub(ChatRoomStore.class,
+                    0,
+                    Map.of("existsById",
+                           args -> chatRooms.containsKey((String) args[0]),
+                           "save",
+                           args ->
+                           {
+                               final var chatRoom = (ChatRoom) args[0];
+                               chatRooms.put(chatRoom.getId(), chatRoom);
+
+                               return chatRoom;
+                           }));
+    }
+
+    /**
+     * 创建只分配 ID、不保留数据的聊天消息仓库替身，只支持 save 和 findMaxSeq（总是返回 0）
+     *
+     * @return 聊天消息仓库替身
+     */
+    public static ChatMessageStore discardingChatMessageStore()
+    {
+        return stub(ChatMessageStore.class,
+                    0,
+                    Map.of("save",
+                           args ->
+                           {
+                               final var chatMessage = (ChatMessage) args[0];
+                               chatMessage.setId(ObjectId.get()
+                                                         .toHexString());
+
+                               return chatMessage;
+                           },
+                           "findMaxSeq",
+                           args -> 0L));
+    }
+
+    /**
+     * 创建不涉及任何群聊的群聊服务，基准只发送单聊消息，其群聊仓库替身不支持任何方法
+     *
+     * @return 群聊服务
+     */
+    public static GroupRoomService noGroupRooms()
+    {
+        final var groupRoomStore = stub(GroupRoomStore.class, 0, Map.of());
+
+        return new GroupRoomService(groupRoomStore, new GroupMembershipIndex(groupRoomStore, new PresenceRegistry()));
+    }
+
+    /**
+     * 创建没有任何在线成员的群聊成员索引，基准中不涉及群聊
+     *
+     * @return 群聊成员索引
+     */
+    public static GroupMembershipIndex noGroupMembers()
+    {
+        return new GroupMembershipIndex(stub(GroupRoomStore.class, 0, Map.of()), new PresenceRegistry());
+    }
+
+    /**
+     * 创建未启用的全文索引，基准不测量建立索引的开销，也不在工作目录中写入索引文件
+     *
+     * @return 全文索引
+     */
+    public static MessageSearchIndex noSearchIndex()
+    {
+        final var chatProperties = new ChatProperties();
+        chatProperties.getSearch()
+                      .setEnabled(false);
+
+        return new MessageSearchIndex(chatProperties,
+                                      stub(ChatMessageStore.class, 0, Map.of()),
+                                      new ChatArchive(chatProperties));
+    }
+}
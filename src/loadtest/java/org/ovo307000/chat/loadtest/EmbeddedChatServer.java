@@ -0,0 +1,102 @@
+package org.ovo307000.chat.loadtest;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.ovo307000.chat.ChatApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 在压测进程内启动的应用，数据库是内存版的 MongoDB 替身
+ *
+ * <p>
+ * mongo-java-server 实现了 MongoDB 的线协议，应用照常通过驱动访问它，不需要安装或连接真实的数据库；
+ * 它不支持认证，所以用不带用户名的 URI 覆盖 application.yml 中的连接配置。
+ * 归档和全文索引写到临时目录，关闭时删除。应用使用随机端口，日志默认只输出警告。
+ * </p>
+ *
+ * <p>
+ * 这些配置以系统属性的形式设置，优先级高于 application.yml、低于命令行参数，
+ * 因此可以用 --logging.level.root=INFO 之类的参数覆盖。应用与模拟用户共用 CPU，结果应与同一方式的结果比较。
+ * </p>
+ */
+final class EmbeddedChatServer implements AutoCloseable
+{
+    private final MongoServer mongoServer;
+
+    private final ConfigurableApplicationContext context;
+
+    private final Path dataDirectory;
+
+    private EmbeddedChatServer(final MongoServer mongoServer,
+                               final ConfigurableApplicationContext context,
+                               final Path dataDirectory)
+    {
+        this.mongoServer   = mongoServer;
+        this.context       = context;
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * 启动数据库替身和应用
+     *
+     * @param springArgs 交给应用的命令行参数
+     * @return 已经启动的服务
+     * @throws IOException 如果无法创建临时目录
+     */
+    static EmbeddedChatServer start(final List<String> springArgs) throws IOException
+    {
+        final var mongoServer   = new MongoServer(new MemoryBackend());
+        final var address       = mongoServer.bind();
+        final var dataDirectory = Files.createTempDirectory("chat-loadtest");
+
+        System.setProperty("spring.data.mongodb.uri",
+                           "mongodb://" + address.getHostString() + ":" + address.getPort() + "/chat");
+        System.setProperty("chat.archive.directory",
+                           dataDirectory.resolve("archive")
+                                        .toString());
+        System.setProperty("chat.search.directory",
+                           dataDirectory.resolve("search")
+                                        .toString());
+        System.setProperty("server.port", "0");
+        System.setProperty("logging.level.root", "WARN");
+
+        try
+        {
+            final var context = new SpringApplicationBuilder(ChatApplication.class).run(springArgs.toArray(String[]::new));
+
+            return new EmbeddedChatServer(mongoServer, context, dataDirectory);
+        }
+        catch (RuntimeException e)
+        {
+            mongoServer.shutdownNow();
+            FileSystemUtils.deleteRecursively(dataDirectory);
+
+            throw e;
+        }
+    }
+
+    /**
+     * SockJS 端点
+     */
+    String url()
+    {
+        return "http://localhost:" + ((WebServerApplicationContext) this.context).getWebServer()
+                                                                                 .getPort() + "/ws";
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.context.close();
+        this.mongoServer.shutdownNow();
+        FileSystemUtils.deleteRecursively(this.dataDirectory);
+    }
+}
@@ -0,0 +1,112 @@
+package org.ovo307000.chat.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 所有模拟用户共用的统计
+ *
+ * <p>
+ * 延迟是同一进程内发送者写入消息内容的 System.nanoTime 与接收者收到通知时的差值，以微秒记录到 {@link Recorder}，
+ * 多个接收线程同时记录不需要加锁，报告线程按间隔取出区间直方图。
+ * 只统计在统计窗口内发送的消息：预热阶段发送、统计开始后才收到的消息不计入，结束后仍在途中的消息在收尾时计入。
+ * </p>
+ */
+final class LatencyStats
+{
+    /* 延迟直方图的有效数字位数，3 位时相对误差不超过 0.1% */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    private final AtomicLong sent      = new AtomicLong();
+    private final AtomicLong received  = new AtomicLong();
+    private final AtomicLong errors    = new AtomicLong();
+    private final AtomicLong connected = new AtomicLong();
+
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd   = Long.MAX_VALUE;
+
+    /**
+     * 开始统计，之后发送的消息计入结果
+     */
+    void startWindow(final long now)
+    {
+        this.windowStart = now;
+    }
+
+    /**
+     * 结束统计，之后发送的消息不再计入结果
+     */
+    void endWindow(final long now)
+    {
+        this.windowEnd = now;
+    }
+
+    void sent(final long sentNanos)
+    {
+        if (this.inWindow(sentNanos))
+        {
+            this.sent.incrementAndGet();
+        }
+    }
+
+    void received(final long sentNanos, final long now)
+    {
+        if (this.inWindow(sentNanos))
+        {
+            this.received.incrementAndGet();
+            this.recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(now - sentNanos)));
+        }
+    }
+
+    void error()
+    {
+        this.errors.incrementAndGet();
+    }
+
+    void connected()
+    {
+        this.connected.incrementAndGet();
+    }
+
+    long sent()
+    {
+        return this.sent.get();
+    }
+
+    long received()
+    {
+        return this.received.get();
+    }
+
+    long errors()
+    {
+        return this.errors.get();
+    }
+
+    long connectedUsers()
+    {
+        return this.connected.get();
+    }
+
+    /**
+     * 取出上次调用以来记录的延迟（微秒）
+     *
+     * @param recycle 上次返回的直方图，可以复用以减少分配
+     * @return 区间直方图
+     */
+    Histogram intervalHistogram(@Nullable final Histogram recycle)
+    {
+        return this.recorder.getIntervalHistogram(recycle);
+    }
+
+    private boolean inWindow(final long sentNanos)
+    {
+        return sentNanos >= this.windowStart && sentNanos < this.windowEnd;
+    }
+}
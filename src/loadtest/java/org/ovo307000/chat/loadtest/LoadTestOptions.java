@@ -0,0 +1,124 @@
+package org.ovo307000.chat.loadtest;
+
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压测参数
+ *
+ * <p>
+ * 压测参数写成 key=value；以 -- 开头的参数原样交给进程内启动的应用，例如 --chat.rate-limit.enabled=false。
+ * 时长的单位是秒。
+ * </p>
+ *
+ * @param url           已经运行的服务的 SockJS 端点，例如 http://localhost:12394/ws；为 null 时在进程内启动应用
+ * @param users         模拟用户数，每个用户一个 STOMP 会话
+ * @param rate          每个用户每秒发送的消息数
+ * @param payload       每条消息内容的字节数（不足时用填充字符补齐）
+ * @param rampUp        建立全部连接所用的时间，避免同时握手
+ * @param warmup        开始发送之后、开始统计之前的预热时间
+ * @param duration      统计时长
+ * @param interval      打印中间结果的间隔
+ * @param senderThreads 按速率触发发送的线程数
+ * @param output        延迟分布（HdrHistogram 百分位格式）的输出文件
+ * @param springArgs    交给应用的参数
+ */
+public record LoadTestOptions(@Nullable String url,
+                              int users,
+                              double rate,
+                              int payload,
+                              Duration rampUp,
+                              Duration warmup,
+                              Duration duration,
+                              Duration interval,
+                              int senderThreads,
+                              Path output,
+                              List<String> springArgs)
+{
+    /**
+     * 解析命令行参数，未指定的参数使用默认值
+     *
+     * @param args 命令行参数
+     * @return 压测参数
+     * @throws IllegalArgumentException 如果参数无法识别或者取值无效
+     */
+    public static LoadTestOptions parse(final String[] args)
+    {
+        String url           = null;
+        var    users         = 100;
+        var    rate          = 1.0;
+        var    payload       = 64;
+        var    rampUp        = Duration.ofSeconds(5);
+        var    warmup        = Duration.ofSeconds(10);
+        var    duration      = Duration.ofSeconds(30);
+        var    interval      = Duration.ofSeconds(1);
+        var    senderThreads = 2;
+        var    output        = Path.of("target", "loadtest-latency.hgrm");
+        final var springArgs = new ArrayList<String>();
+
+        for (final var arg : args)
+        {
+            if (arg.isBlank())
+            {
+                continue;
+            }
+
+            if (arg.startsWith("--"))
+            {
+                springArgs.add(arg);
+
+                continue;
+            }
+
+            final var separator = arg.indexOf('=');
+
+            if (separator <= 0)
+            {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+
+            final var value = arg.substring(separator + 1);
+
+            switch (arg.substring(0, separator))
+            {
+                case "url" -> url = value;
+                case "users" -> users = Integer.parseInt(value);
+                case "rate" -> rate = Double.parseDouble(value);
+                case "payload" -> payload = Integer.parseInt(value);
+                case "ramp-up" -> rampUp = seconds(value);
+                case "warmup" -> warmup = seconds(value);
+                case "duration" -> duration = seconds(value);
+                case "interval" -> interval = seconds(value);
+                case "sender-threads" -> senderThreads = Integer.parseInt(value);
+                case "output" -> output = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown load test option: " + arg);
+            }
+        }
+
+        if (users <= 0 || rate <= 0 || senderThreads <= 0 || duration.isZero() || interval.isZero())
+        {
+            throw new IllegalArgumentException("users, rate, sender-threads, duration and interval must be positive");
+        }
+
+        return new LoadTestOptions(url,
+                                   users,
+                                   rate,
+                                   payload,
+                                   rampUp,
+                                   warmup,
+                                   duration,
+                                   interval,
+                                   senderThreads,
+                                   output,
+                                   List.copyOf(springArgs));
+    }
+
+    private static Duration seconds(final String value)
+    {
+        return Duration.ofMillis(Math.round(Double.parseDouble(value) * 1_000));
+    }
+}
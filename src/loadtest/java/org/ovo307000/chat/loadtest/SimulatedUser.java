@@ -0,0 +1,157 @@
+package org.ovo307000.chat.loadtest;
+
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.module.entity.User;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.stomp.*;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一个模拟用户：一个 STOMP 会话，与浏览器客户端的流程相同
+ *
+ * <p>
+ * 连接后订阅 /user/{id}/queue/messages，发送 /app/user.connectUser 上线，之后由调度线程按速率调用 {@link #send()}
+ * 向固定的对端发送 /app/chat。消息内容以发送时的 System.nanoTime 开头，对端收到通知时据此计算延迟。
+ * </p>
+ */
+final class SimulatedUser extends StompSessionHandlerAdapter
+{
+    private final String userId;
+
+    private final String peerId;
+
+    private final String padding;
+
+    private final LatencyStats stats;
+
+    @Nullable
+    private volatile StompSession session;
+
+    SimulatedUser(final String userId, final String peerId, final int payload, final LatencyStats stats)
+    {
+        this.userId  = userId;
+        this.peerId  = peerId;
+        // 时间戳和分隔符大约占 20 个字节
+        this.padding = ":" + "x".repeat(Math.max(0, payload - 20));
+        this.stats   = stats;
+    }
+
+    /**
+     * 建立连接
+     *
+     * @param client STOMP 客户端
+     * @param url    SockJS 端点
+     * @return 收到 CONNECTED 帧后完成
+     */
+    CompletableFuture<StompSession> connect(final WebSocketStompClient client, final String url)
+    {
+        return client.connectAsync(url, this);
+    }
+
+    @Override
+    public void afterConnected(final StompSession session, final StompHeaders connectedHeaders)
+    {
+        session.subscribe("/user/" + this.userId + NotificationDispatcher.MESSAGES_QUEUE, new Inbox());
+        session.send("/app/user.connectUser", new User(this.userId, this.userId, null, UserStatus.ONLINE));
+
+        this.session = session;
+        this.stats.connected();
+    }
+
+    /**
+     * 向对端发送一条消息，由调度线程调用，同一用户不会并发调用
+     */
+    void send()
+    {
+        final var current = this.session;
+
+        if (current == null || !current.isConnected())
+        {
+            return;
+        }
+
+        final var now = System.nanoTime();
+
+        try
+        {
+            current.send("/app/chat",
+                         ChatMessage.builder()
+                                    .senderId(this.userId)
+                                    .receiverId(this.peerId)
+                                    .content(now + this.padding)
+                                    .build());
+            this.stats.sent(now);
+        }
+        catch (RuntimeException e)
+        {
+            this.stats.error();
+        }
+    }
+
+    void disconnect()
+    {
+        final var current = this.session;
+
+        if (current != null && current.isConnected())
+        {
+            current.disconnect();
+        }
+    }
+
+    @Override
+    public void handleFrame(final StompHeaders headers, final Object payload)
+    {
+        // 订阅之外的帧只有 ERROR，例如被入站限流拒绝，之后服务端会关闭连接
+        this.stats.error();
+        System.err.printf("%s received ERROR: %s%n", this.userId, headers.getFirst("message"));
+    }
+
+    @Override
+    public void handleException(final StompSession session,
+                                final StompCommand command,
+                                final StompHeaders headers,
+                                final byte[] payload,
+                                final Throwable exception)
+    {
+        this.stats.error();
+    }
+
+    @Override
+    public void handleTransportError(final StompSession session, final Throwable exception)
+    {
+        this.stats.error();
+    }
+
+    /**
+     * 个人队列的订阅
+     */
+    private final class Inbox implements StompFrameHandler
+    {
+        @Override
+        public Type getPayloadType(final StompHeaders headers)
+        {
+            return ChatNotificationDTO.class;
+        }
+
+        @Override
+        public void handleFrame(final StompHeaders headers, final Object payload)
+        {
+            final var now     = System.nanoTime();
+            final var content = ((ChatNotificationDTO) payload).content();
+            final var end     = content == null ? -1 : content.indexOf(':');
+
+            if (end <= 0)
+            {
+                return;
+            }
+
+            SimulatedUser.this.stats.received(Long.parseLong(content, 0, end, 10), now);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.ovo307000.chat.loadtest;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 无界面的 STOMP 压测程序
+ *
+ * <p>
+ * 通过 SockJS 建立 users 个 STOMP 会话，每个用户上线后以 rate 条每秒的速率向下一个用户发送 /app/chat，
+ * 并在自己的 /user/{id}/queue/messages 上接收上一个用户的消息，记录从发送到收到通知的延迟。
+ * 预热结束后统计 duration 秒，按 interval 打印区间吞吐量和延迟，最后输出完整的延迟分布（HdrHistogram 百分位格式，单位毫秒），
+ * 并写入 output 文件，可以用 HdrHistogram 的绘图工具比较多次结果。
+ * </p>
+ *
+ * <p>
+ * 应用默认的入站限流为每个会话每秒 10 条 /app/chat，rate 超过时需要附加 --chat.rate-limit.enabled=false。
+ * </p>
+ *
+ * <pre>
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="users=200 rate=2 duration=60"
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="url=http://localhost:12394/ws users=1000"
+ * </pre>
+ */
+public final class StompLoadGenerator
+{
+    /* 统计结束后等待在途消息的最长时间 */
+    private static final long DRAIN_MILLIS = 5_000;
+
+    private final LoadTestOptions options;
+
+    private final String url;
+
+    private final LatencyStats stats = new LatencyStats();
+
+    private final PrintStream out = System.out;
+
+    private StompLoadGenerator(final LoadTestOptions options, final String url)
+    {
+        this.options = options;
+        this.url     = url;
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        final var options = LoadTestOptions.parse(args);
+
+        try (final var server = options.url() == null ? EmbeddedChatServer.start(options.springArgs()) : null)
+        {
+            new StompLoadGenerator(options, server == null ? options.url() : server.url()).run();
+        }
+
+        // 客户端的 SockJS 与 WebSocket 线程不全是守护线程
+        System.exit(0);
+    }
+
+    private void run() throws InterruptedException, IOException
+    {
+        final var client = stompClient();
+        final var users  = this.connectUsers(client);
+
+        this.out.printf("%d of %d users connected to %s%n", this.stats.connectedUsers(), users.size(), this.url);
+
+        final var counter = new AtomicInteger();
+        final var scheduler = Executors.newScheduledThreadPool(this.options.senderThreads(), runnable ->
+        {
+            final var thread = new Thread(runnable, "loadtest-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        // 每个用户的第一条消息随机错开，避免所有用户在同一时刻发送
+        final var periodNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / this.options.rate()));
+
+        for (final var user : users)
+        {
+            scheduler.scheduleAtFixedRate(user::send,
+                                          ThreadLocalRandom.current()
+                                                           .nextLong(periodNanos),
+                                          periodNanos,
+                                          TimeUnit.NANOSECONDS);
+        }
+
+        Thread.sleep(this.options.warmup()
+                                 .toMillis());
+
+        final var total = this.measure();
+
+        scheduler.shutdownNow();
+        this.report(total);
+
+        users.forEach(SimulatedUser::disconnect);
+        client.stop();
+    }
+
+    private List<SimulatedUser> connectUsers(final WebSocketStompClient client) throws InterruptedException
+    {
+        final var count      = this.options.users();
+        final var pauseNanos = this.options.rampUp()
+                                           .toNanos() / count;
+        final var users      = new ArrayList<SimulatedUser>(count);
+        final var futures    = new ArrayList<CompletableFuture<?>>(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            // 每个用户发送给下一个用户，所有用户收到的消息一样多
+            final var user = new SimulatedUser(userId(i), userId((i + 1) % count), this.options.payload(), this.stats);
+
+            users.add(user);
+            futures.add(user.connect(client, this.url));
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        }
+
+        try
+        {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                             .get(30, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException | TimeoutException e)
+        {
+            this.out.printf("Not all users connected: %s%n", e);
+        }
+
+        return users;
+    }
+
+    /**
+     * 统计 duration 秒，按间隔打印区间结果
+     *
+     * @return 统计窗口内全部消息的延迟（微秒）
+     */
+    private Histogram measure() throws InterruptedException
+    {
+        final var total         = new Histogram(3);
+        final var intervalNanos = this.options.interval()
+                                              .toNanos();
+        final var start         = System.nanoTime();
+        final var end           = start + this.options.duration()
+                                                      .toNanos();
+        Histogram interval      = null;
+        var       lastReceived  = 0L;
+        var       lastTick      = start;
+
+        this.stats.startWindow(start);
+        this.out.printf("%n%8s %10s %10s %10s %10s %10s%n", "time(s)", "recv/s", "p50(ms)", "p99(ms)", "max(ms)", "errors");
+
+        while (System.nanoTime() < end)
+        {
+            TimeUnit.NANOSECONDS.sleep(Math.min(intervalNanos, end - System.nanoTime()));
+
+            final var now      = System.nanoTime();
+            final var received = this.stats.received();
+
+            interval = this.stats.intervalHistogram(interval);
+            total.add(interval);
+
+            this.out.printf("%8.1f %10.1f %10.3f %10.3f %10.3f %10d%n",
+                            (now - start) / 1e9,
+                            (received - lastReceived) * 1e9 / (now - lastTick),
+                            interval.getValueAtPercentile(50) / 1e3,
+                            interval.getValueAtPercentile(99) / 1e3,
+                            interval.getMaxValue() / 1e3,
+                            this.stats.errors());
+
+            lastReceived = received;
+            lastTick     = now;
+        }
+
+        this.stats.endWindow(System.nanoTime());
+
+        // 统计窗口内发送的消息还在途中，等待它们到达或超时
+        final var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+
+        while (this.stats.received() < this.stats.sent() && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        total.add(this.stats.intervalHistogram(interval));
+
+        return total;
+    }
+
+    private void report(final Histogram total) throws IOException
+    {
+        final var seconds = this.options.duration()
+                                        .toNanos() / 1e9;
+
+        this.out.printf("%nLatency distribution (ms), send to receive:%n");
+        total.outputPercentileDistribution(this.out, 1e3);
+
+        this.out.printf("%nusers=%d rate=%.2f/s per user, %.1f s measured%n",
+                        this.options.users(),
+                        this.options.rate(),
+                        seconds);
+        this.out.printf("sent=%d received=%d lost=%d errors=%d%n",
+                        this.stats.sent(),
+                        this.stats.received(),
+                        this.stats.sent() - this.stats.received(),
+                        this.stats.errors());
+        this.out.printf("throughput: %.1f msg/s sent, %.1f msg/s received%n",
+                        this.stats.sent() / seconds,
+                        this.stats.received() / seconds);
+        this.out.printf("latency (ms): p50=%.3f p99=%.3f p999=%.3f max=%.3f%n",
+                        total.getValueAtPercentile(50) / 1e3,
+                        total.getValueAtPercentile(99) / 1e3,
+                        total.getValueAtPercentile(99.9) / 1e3,
+                        total.getMaxValue() / 1e3);
+
+        final var output = this.options.output();
+
+        if (output.getParent() != null)
+        {
+            Files.createDirectories(output.getParent());
+        }
+
+        try (final var file = new PrintStream(Files.newOutputStream(output)))
+        {
+            total.outputPercentileDistribution(file, 1e3);
+        }
+
+        this.out.printf("Histogram written to %s%n", output.toAbsolutePath());
+    }
+
+    private static WebSocketStompClient stompClient()
+    {
+        final var converter = new MappingJackson2MessageConverter();
+        // 应用的消息含有 LocalDateTime 等 Java 8 时间类型；与默认的 ObjectMapper 相同，忽略未知字段
+        converter.setObjectMapper(new ObjectMapper().findAndRegisterModules()
+                                                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+
+        final var client = new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        client.setMessageConverter(converter);
+
+        return client;
+    }
+
+    private static String userId(final int index)
+    {
+        return String.format("loadtest-%05d", index);
+    }
+}
@@ -2,11 +2,15 @@ package org.ovo307000.chat;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 
 @EnableAsync
+@EnableScheduling  // 开启定时任务，用于在线状态快照等后台批量写入
 @SpringBootApplication
+@ConfigurationPropertiesScan  // 扫描 @ConfigurationProperties 配置类，如 ChatProperties
 @EnableWebSocketMessageBroker  // 开启 WebSocket 消息代理，这样控制器才能处理 WebSocket 消息
 public class ChatApplication
 {
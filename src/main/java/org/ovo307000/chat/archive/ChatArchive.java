@@ -0,0 +1,470 @@
+package org.ovo307000.chat.archive;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 聊天消息的冷数据归档
+ *
+ * <p>
+ * 早于 chat.archive.older-than 的消息由 {@link ChatArchiver} 移出 MongoDB，按聊天室写入本地的只追加分段文件，
+ * 分段文件映射到内存，读取时直接访问页缓存，不经过 read 系统调用，也不占用 MongoDB 的工作集，格式见 {@link RoomArchive}。
+ * 每个聊天室一个子目录，目录名为聊天室 ID 的 URL 安全 Base64 编码。
+ * </p>
+ *
+ * <p>
+ * 历史查询在仓库层透明拼接两部分（见 ChatMessageRepositoryCustomImpl）：先查询 MongoDB，再查询归档，按键合并并去重。
+ * 先查 MongoDB 保证了与归档任务并发时不会漏掉消息：归档任务先写入归档再从 MongoDB 删除，
+ * MongoDB 中查不到的消息在随后的归档查询中一定可见；两边都查到的消息（包括崩溃后残留在 MongoDB 中的消息）只保留一条。
+ * 没有归档过的聊天室不访问磁盘，MongoDB 的结果已经足够时也跳过归档。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ChatArchive
+{
+    /* 消息排序与键集分页一致：先按时间戳，再按 ID */
+    private static final Comparator<ChatMessage> ORDER = Comparator.comparing(ChatMessage::getTimestamp)
+                                                                   .thenComparing(ChatMessage::getId);
+
+    private static final Comparator<ChatMessage> SEQ_ORDER = Comparator.comparing(ChatMessage::getSeq);
+
+    private final boolean enabled;
+    private final Path    directory;
+    private final int     segmentSize;
+    private final int     indexInterval;
+
+    /* 有归档目录的聊天室，不在其中的聊天室读取时不访问磁盘 */
+    private final Set<String> archivedRooms = ConcurrentHashMap.newKeySet();
+
+    /* 已经打开的聊天室归档，首次访问时打开 */
+    private final Map<String, RoomArchive> rooms = new ConcurrentHashMap<>();
+
+    public ChatArchive(@NonNull final ChatProperties chatProperties)
+    {
+        final var config = chatProperties.getArchive();
+
+        this.enabled       = config.isEnabled();
+        this.directory     = Path.of(config.getDirectory());
+        this.segmentSize   = (int) Math.min(config.getSegmentSize()
+                                                  .toBytes(), Integer.MAX_VALUE);
+        this.indexInterval = Math.max(config.getIndexInterval(), 1);
+
+        if (this.enabled)
+        {
+            this.scanDirectory();
+        }
+    }
+
+    /**
+     * 是否启用归档
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * 聊天室是否有归档消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 有归档目录时返回 true
+     */
+    public boolean contains(@NonNull final String chatRoomId)
+    {
+        return this.enabled && this.archivedRooms.contains(chatRoomId);
+    }
+
+    /**
+     * 有归档消息的全部聊天室
+     *
+     * @return 聊天室ID集合，未启用归档时为空
+     */
+    public Set<String> rooms()
+    {
+        return this.enabled ? Set.copyOf(this.archivedRooms) : Set.of();
+    }
+
+    /**
+     * 聊天室最后一条归档消息的键，之后的归档必须在它之后
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 没有归档消息时返回 null
+     */
+    @Nullable
+    public ChatMessageCursor tail(@NonNull final String chatRoomId)
+    {
+        final var room = this.room(chatRoomId);
+
+        return room == null ? null : room.tail();
+    }
+
+    /**
+     * 追加一批消息到聊天室的归档，返回时消息已经刷盘，并且对读取可见
+     *
+     * @param chatRoomId 聊天室ID
+     * @param messages   按 (timestamp, id) 正序排列、且都在 {@link #tail(String)} 之后的消息
+     * @throws IllegalStateException    如果未启用归档
+     * @throws IllegalArgumentException 如果消息没有按顺序排列
+     * @throws UncheckedIOException     如果写入失败
+     */
+    public void append(@NonNull final String chatRoomId, @NonNull final List<ChatMessage> messages)
+    {
+        if (!this.enabled)
+        {
+            throw new IllegalStateException("Chat archive is disabled");
+        }
+
+        if (messages.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            this.rooms.computeIfAbsent(chatRoomId, this::open)
+                      .append(messages);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to archive messages of chat room " + chatRoomId, e);
+        }
+
+        this.archivedRooms.add(chatRoomId);
+    }
+
+    /**
+     * 拼接游标之前（更旧）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最新的消息开始
+     * @param limit      最多返回的消息数
+     * @param hot        MongoDB 中按同样条件查询的结果（时间倒序），必须在调用本方法之前查询
+     * @return 按时间倒序排列的消息列表
+     */
+    public List<ChatMessage> stitchPageBefore(@NonNull final String chatRoomId,
+                                              @Nullable final ChatMessageCursor cursor,
+                                              final int limit,
+                                              @NonNull final List<ChatMessage> hot)
+    {
+        final var room = this.room(chatRoomId);
+        final var tail = room == null ? null : room.tail();
+
+        // MongoDB 已经凑满一页，且最旧的一条比全部归档消息都新，归档不可能贡献结果
+        if (tail == null || (hot.size() >= limit && RoomArchive.compare(hot.get(hot.size() - 1), tail) > 0))
+        {
+            return hot;
+        }
+
+        return merge(hot, room.findPageBefore(cursor, limit), ORDER.reversed(), limit);
+    }
+
+    /**
+     * 拼接游标之后（更新）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param limit      最多返回的消息数
+     * @param hot        MongoDB 中按同样条件查询的结果（时间正序），必须在调用本方法之前查询
+     * @return 按时间正序排列的消息列表
+     */
+    public List<ChatMessage> stitchPageAfter(@NonNull final String chatRoomId,
+                                             @Nullable final ChatMessageCursor cursor,
+                                             final int limit,
+                                             @NonNull final List<ChatMessage> hot)
+    {
+        final var room = this.room(chatRoomId);
+        final var tail = room == null ? null : room.tail();
+
+        // 游标已经越过全部归档消息
+        if (tail == null || (cursor != null && RoomArchive.compare(cursorMessage(cursor), tail) >= 0))
+        {
+            return hot;
+        }
+
+        return merge(hot, room.findPageAfter(cursor, limit), ORDER, limit);
+    }
+
+    /**
+     * 拼接序号在 (afterSeq, upToSeq] 区间内的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param afterSeq   起始序号（不包含）
+     * @param upToSeq    结束序号（包含）
+     * @param limit      最多返回的消息数
+     * @param hot        MongoDB 中按同样条件查询的结果（序号正序），必须在调用本方法之前查询
+     * @return 按序号正序排列的消息列表
+     */
+    public List<ChatMessage> stitchSinceSeq(@NonNull final String chatRoomId,
+                                            final long afterSeq,
+                                            final long upToSeq,
+                                            final int limit,
+                                            @NonNull final List<ChatMessage> hot)
+    {
+        final var room = this.room(chatRoomId);
+
+        // 客户端已经同步到归档中的最大序号之后
+        if (room == null || room.maxSeq() <= afterSeq)
+        {
+            return hot;
+        }
+
+        return merge(hot, room.findSinceSeq(afterSeq, upToSeq, limit), SEQ_ORDER, limit);
+    }
+
+    /**
+     * 拼接聊天室中已存储的最大序号
+     *
+     * @param chatRoomId 聊天室ID
+     * @param hot        MongoDB 中的最大序号
+     * @return 两部分中较大的序号
+     */
+    public long stitchMaxSeq(@NonNull final String chatRoomId, final long hot)
+    {
+        final var room = this.room(chatRoomId);
+
+        return room == null ? hot : Math.max(hot, room.maxSeq());
+    }
+
+    /**
+     * 拼接聊天室的全部消息，按时间正序逐条合并，归档部分同样逐条从映射的分段中解码
+     *
+     * @param chatRoomId 聊天室ID
+     * @param hot        MongoDB 中按时间正序的消息流，必须在调用本方法之前打开
+     * @return 按时间正序排列的消息流，关闭时关闭 hot
+     */
+    public Stream<ChatMessage> stitchStream(@NonNull final String chatRoomId, @NonNull final Stream<ChatMessage> hot)
+    {
+        final var room = this.room(chatRoomId);
+
+        if (room == null)
+        {
+            return hot;
+        }
+
+        final var merged = new MergingIterator(hot.iterator(), room.iterator());
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                                                                        Spliterator.ORDERED | Spliterator.NONNULL),
+                                    false)
+                            .onClose(hot::close);
+    }
+
+    /**
+     * 启用归档且聊天室有归档目录时返回打开的归档
+     */
+    @Nullable
+    private RoomArchive room(final String chatRoomId)
+    {
+        if (!this.contains(chatRoomId))
+        {
+            return null;
+        }
+
+        try
+        {
+            return this.rooms.computeIfAbsent(chatRoomId, this::open);
+        }
+        catch (UncheckedIOException e)
+        {
+            log.error("Failed to open archive of chat room {}", chatRoomId, e);
+
+            throw e;
+        }
+    }
+
+    private RoomArchive open(final String chatRoomId)
+    {
+        final var name = Base64.getUrlEncoder()
+                               .withoutPadding()
+                               .encodeToString(chatRoomId.getBytes(StandardCharsets.UTF_8));
+
+        try
+        {
+            return RoomArchive.open(chatRoomId, this.directory.resolve(name), this.segmentSize, this.indexInterval);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 启动时登记已有的归档目录，目录中的文件在首次访问时才打开
+     */
+    private void scanDirectory()
+    {
+        if (!Files.isDirectory(this.directory))
+        {
+            return;
+        }
+
+        try (final var directories = Files.list(this.directory))
+        {
+            directories.filter(Files::isDirectory)
+                       .forEach(path ->
+                                {
+                                    try
+                                    {
+                                        this.archivedRooms.add(new String(Base64.getUrlDecoder()
+                                                                                .decode(path.getFileName()
+                                                                                            .toString()),
+                                                                          StandardCharsets.UTF_8));
+                                    }
+                                    catch (IllegalArgumentException e)
+                                    {
+                                        log.warn("Ignoring unrecognized directory {} in chat archive", path);
+                                    }
+                                });
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to scan chat archive directory " + this.directory, e);
+        }
+
+        log.info("Chat archive found {} archived chat rooms in {}", this.archivedRooms.size(), this.directory);
+    }
+
+    private static ChatMessage cursorMessage(final ChatMessageCursor cursor)
+    {
+        return ChatMessage.builder()
+                          .id(cursor.id())
+                          .timestamp(cursor.timestamp())
+                          .build();
+    }
+
+    /**
+     * 按给定顺序合并两个有序列表，两边相等的元素（同一条消息）只保留一条
+     */
+    static List<ChatMessage> merge(final List<ChatMessage> hot,
+                                   final List<ChatMessage> cold,
+                                   final Comparator<ChatMessage> order,
+                                   final int limit)
+    {
+        final var result = new ArrayList<ChatMessage>(Math.min(limit, hot.size() + cold.size()));
+        var       i      = 0;
+        var       j      = 0;
+
+        while (result.size() < limit && (i < hot.size() || j < cold.size()))
+        {
+            if (j >= cold.size())
+            {
+                result.add(hot.get(i++));
+            }
+            else if (i >= hot.size())
+            {
+                result.add(cold.get(j++));
+            }
+            else
+            {
+                final var comparison = order.compare(hot.get(i), cold.get(j));
+
+                if (comparison <= 0)
+                {
+                    result.add(hot.get(i++));
+
+                    if (comparison == 0)
+                    {
+                        j++;
+                    }
+                }
+                else
+                {
+                    result.add(cold.get(j++));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 按时间正序合并 MongoDB 游标和归档迭代器
+     */
+    private static final class MergingIterator implements Iterator<ChatMessage>
+    {
+        private final Iterator<ChatMessage> hot;
+        private final Iterator<ChatMessage> cold;
+        private       ChatMessage           nextHot;
+        private       ChatMessage           nextCold;
+
+        private MergingIterator(final Iterator<ChatMessage> hot, final Iterator<ChatMessage> cold)
+        {
+            this.hot  = hot;
+            this.cold = cold;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (this.nextHot == null && this.hot.hasNext())
+            {
+                this.nextHot = this.hot.next();
+            }
+
+            // 每次都重新询问归档，读取期间移入归档的消息也能被合并进来
+            if (this.nextCold == null && this.cold.hasNext())
+            {
+                this.nextCold = this.cold.next();
+            }
+
+            return this.nextHot != null || this.nextCold != null;
+        }
+
+        @Override
+        public ChatMessage next()
+        {
+            if (!this.hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            final var comparison = this.nextHot == null
+                                   ? 1
+                                   : this.nextCold == null ? -1 : ORDER.compare(this.nextHot, this.nextCold);
+            final ChatMessage next;
+
+            if (comparison <= 0)
+            {
+                next         = this.nextHot;
+                this.nextHot = null;
+
+                if (comparison == 0)
+                {
+                    this.nextCold = null;
+                }
+            }
+            else
+            {
+                next          = this.nextCold;
+                this.nextCold = null;
+            }
+
+            return next;
+        }
+    }
+}
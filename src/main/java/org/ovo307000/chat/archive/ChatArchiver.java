@@ -0,0 +1,126 @@
+package org.ovo307000.chat.archive;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时将旧消息从 MongoDB 移到 {@link ChatArchive}
+ *
+ * <p>
+ * 每个聊天室按 (timestamp, id) 正序分批处理：查询归档末尾之后、早于 now - older-than 的消息，
+ * 追加到归档并刷盘后，再从 MongoDB 删除。删除前崩溃时消息会同时留在两边，读取时去重，下一次运行从归档末尾之后继续。
+ * 时间戳早于归档末尾的消息（客户端提供了更早的时间戳，或者在上一次归档之后才写入）无法追加到只追加的归档中，
+ * 它们留在 MongoDB，读取时同样会被拼接进来。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatArchiver implements MeterBinder
+{
+    private final ChatArchive      chatArchive;
+    private final ChatMessageStore chatMessageStore;
+    private final ChatProperties   chatProperties;
+
+    private Counter archived;
+
+    /**
+     * 归档全部聊天室中的旧消息
+     */
+    @Scheduled(fixedDelayString = "${chat.archive.run-interval-millis:3600000}")
+    public void archive()
+    {
+        if (!this.chatArchive.isEnabled())
+        {
+            return;
+        }
+
+        final var cutoff = LocalDateTime.now()
+                                        .minus(this.chatProperties.getArchive()
+                                                                  .getOlderThan());
+        var       total  = 0L;
+
+        for (final var chatRoomId : this.chatMessageStore.findChatRoomIds())
+        {
+            try
+            {
+                total += this.archive(chatRoomId, cutoff);
+            }
+            catch (RuntimeException e)
+            {
+                // 单个聊天室失败不影响其他聊天室，未删除的消息下一次运行时重试
+                log.error("Error occurred while archiving messages of chat room {}", chatRoomId, e);
+            }
+        }
+
+        if (total > 0)
+        {
+            log.info("Archived {} chat messages older than {}", total, cutoff);
+        }
+    }
+
+    /**
+     * 归档一个聊天室中早于 cutoff 的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cutoff     只归档时间早于该时间的消息
+     * @return 移出 MongoDB 的消息数
+     */
+    public long archive(@NonNull final String chatRoomId, @NonNull final LocalDateTime cutoff)
+    {
+        final var batchSize = Math.max(this.chatProperties.getArchive()
+                                                          .getBatchSize(), 1);
+        var       moved     = 0L;
+
+        while (true)
+        {
+            final var batch = this.chatMessageStore.findArchivable(chatRoomId,
+                                                                   this.chatArchive.tail(chatRoomId),
+                                                                   cutoff,
+                                                                   batchSize);
+
+            if (batch.isEmpty())
+            {
+                return moved;
+            }
+
+            // 先写入归档再删除，任何时刻消息至少在一边可见
+            this.chatArchive.append(chatRoomId, batch);
+            this.chatMessageStore.deleteAllById(batch.stream()
+                                                     .map(ChatMessage::getId)
+                                                     .toList());
+
+            moved += batch.size();
+
+            if (this.archived != null)
+            {
+                this.archived.increment(batch.size());
+            }
+
+            if (batch.size() < batchSize)
+            {
+                return moved;
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        this.archived = Counter.builder("chat.archive.archived")
+                               .description("Chat messages moved from MongoDB to the local archive")
+                               .baseUnit("messages")
+                               .register(meterRegistry);
+    }
+}
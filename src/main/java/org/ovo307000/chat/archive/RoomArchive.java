@@ -0,0 +1,848 @@
+package org.ovo307000.chat.archive;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 单个聊天室的归档：只追加的内存映射分段文件和稀疏偏移索引
+ *
+ * <p>
+ * 目录中的 {序号}.seg 为分段文件，记录按 (timestamp, id) 正序首尾相接，整个文件映射到内存，读取时直接访问页缓存；
+ * blocks.idx 为稀疏索引，每 indexInterval 条记录一个索引项（块），记录块在分段中的起止偏移、条数、
+ * 首条记录的键和序号范围。按游标查询时二分查找索引项，只解码所在的块；按序号查询时跳过序号范围不相交的块。
+ * </p>
+ *
+ * <p>
+ * 记录格式：int 记录体长度 | long 时间戳秒 | int 纳秒 | long 序号 | 字符串 id、senderId、receiverId、content，
+ * 字符串为 int 字节长度（null 为 -1）加 UTF-8 字节。记录体先写入，长度最后写入，长度为 0 表示分段的末尾。
+ * 追加时先强制刷盘分段文件，再写入并刷盘索引项；打开时从最后一个索引项之后重新扫描，
+ * 补齐崩溃前没来得及写入索引的块，并确定写入位置。
+ * </p>
+ *
+ * <p>
+ * 追加由调用方串行执行（对象锁），读取不加锁：每次追加结束时发布新的不可变快照 {@link State}，
+ * 读取只访问快照中已经发布的范围。
+ * </p>
+ */
+final class RoomArchive
+{
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_FILE     = "blocks.idx";
+
+    /* 没有序号的消息在记录中的序号 */
+    private static final long NO_SEQ = Long.MIN_VALUE;
+
+    /* 索引项的定长部分：segment、position、end、count、minSeq、maxSeq、秒、纳秒、id 长度 */
+    private static final int BLOCK_HEADER_BYTES = 4 * 4 + 8 * 2 + 8 + 4 + 4;
+
+    private static final Comparator<ChatMessage> SEQ_ORDER = Comparator.comparing(ChatMessage::getSeq);
+
+    private final String chatRoomId;
+    private final Path   directory;
+    private final int    segmentSize;
+    private final int    indexInterval;
+
+    /* 以下字段只由持有对象锁的追加方访问 */
+    private final List<MappedByteBuffer> segments     = new ArrayList<>();
+    private final List<Block>            closedBlocks = new ArrayList<>();
+    private final List<Block>            unindexed    = new ArrayList<>();
+    private       BlockBuilder           openBlock;
+    private       int                    writePosition;
+    private       ChatMessageCursor      tail;
+
+    private volatile State state;
+
+    private RoomArchive(final String chatRoomId, final Path directory, final int segmentSize, final int indexInterval)
+    {
+        this.chatRoomId    = chatRoomId;
+        this.directory     = directory;
+        this.segmentSize   = segmentSize;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * 打开聊天室的归档目录，目录不存在时创建
+     *
+     * @param chatRoomId    聊天室ID
+     * @param directory     归档目录
+     * @param segmentSize   新分段文件的大小
+     * @param indexInterval 每个索引项覆盖的记录数
+     * @return 打开的归档
+     * @throws IOException 如果读取或修复归档文件失败
+     */
+    static RoomArchive open(final String chatRoomId,
+                            final Path directory,
+                            final int segmentSize,
+                            final int indexInterval) throws IOException
+    {
+        Files.createDirectories(directory);
+
+        final var archive = new RoomArchive(chatRoomId, directory, segmentSize, indexInterval);
+        archive.recover();
+
+        return archive;
+    }
+
+    /**
+     * 最后一条归档消息的键，没有归档消息时返回 null
+     */
+    @Nullable
+    ChatMessageCursor tail()
+    {
+        return this.state.tail;
+    }
+
+    /**
+     * 归档消息中的最大序号，没有带序号的消息时为 0
+     */
+    long maxSeq()
+    {
+        return Math.max(this.state.maxSeq, 0);
+    }
+
+    /**
+     * 追加一批消息并刷盘，返回时消息已经可以被读取
+     *
+     * @param messages 按 (timestamp, id) 正序排列、且都在当前末尾之后的消息
+     * @throws IllegalArgumentException 如果消息没有按顺序排列，或不在当前末尾之后
+     * @throws IOException              如果写入失败
+     */
+    synchronized void append(final List<ChatMessage> messages) throws IOException
+    {
+        var previous = this.state.tail;
+
+        for (final var message : messages)
+        {
+            if (message.getId() == null || message.getTimestamp() == null)
+            {
+                throw new IllegalArgumentException("Archived messages must have an id and a timestamp");
+            }
+
+            if (previous != null && compare(message, previous) <= 0)
+            {
+                throw new IllegalArgumentException("Archived messages must be appended in (timestamp, id) order");
+            }
+
+            previous = ChatMessageCursor.of(message);
+        }
+
+        final var touched = new ArrayList<MappedByteBuffer>();
+
+        for (final var message : messages)
+        {
+            final var body   = encode(message);
+            final var needed = Integer.BYTES + body.length;
+
+            if (this.segments.isEmpty() || this.writePosition + needed > this.activeSegment()
+                                                                             .capacity())
+            {
+                this.roll(needed);
+            }
+
+            final var segment = this.activeSegment();
+            segment.put(this.writePosition + Integer.BYTES, body);
+            segment.putInt(this.writePosition, body.length);
+
+            if (touched.isEmpty() || touched.get(touched.size() - 1) != segment)
+            {
+                touched.add(segment);
+            }
+
+            this.accept(this.segments.size() - 1, this.writePosition, message);
+            this.writePosition += needed;
+        }
+
+        // 先保证记录落盘，再写入指向它们的索引项
+        for (final var segment : touched)
+        {
+            segment.force();
+        }
+
+        this.flushIndex();
+        this.publish();
+    }
+
+    /**
+     * 游标之前（更旧）的消息
+     *
+     * @param cursor 游标，为 null 时从最新的消息开始
+     * @param limit  最多返回的消息数
+     * @return 按时间倒序排列的消息列表
+     */
+    List<ChatMessage> findPageBefore(@Nullable final ChatMessageCursor cursor, final int limit)
+    {
+        final var snapshot = this.state;
+        final var blocks   = snapshot.blocks;
+        final var result   = new ArrayList<ChatMessage>(Math.min(limit, 256));
+
+        // 从首键小于游标的最后一个块开始向前读
+        var index = cursor == null ? blocks.size() - 1 : lastBlockBefore(blocks, cursor, false);
+
+        for (; index >= 0 && result.size() < limit; index--)
+        {
+            final var records = this.readBlock(snapshot, blocks.get(index));
+
+            for (int i = records.size() - 1; i >= 0 && result.size() < limit; i--)
+            {
+                final var message = records.get(i);
+
+                if (cursor == null || compare(message, cursor) < 0)
+                {
+                    result.add(message);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 游标之后（更新）的消息
+     *
+     * @param cursor 游标，为 null 时从最旧的消息开始
+     * @param limit  最多返回的消息数
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findPageAfter(@Nullable final ChatMessageCursor cursor, final int limit)
+    {
+        final var snapshot = this.state;
+        final var blocks   = snapshot.blocks;
+        final var result   = new ArrayList<ChatMessage>(Math.min(limit, 256));
+
+        // 从首键不大于游标的最后一个块开始向后读，游标可能落在该块的中间
+        var index = cursor == null ? 0 : Math.max(lastBlockBefore(blocks, cursor, true), 0);
+
+        for (; index < blocks.size() && result.size() < limit; index++)
+        {
+            for (final var message : this.readBlock(snapshot, blocks.get(index)))
+            {
+                if (result.size() < limit && (cursor == null || compare(message, cursor) > 0))
+                {
+                    result.add(message);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 序号在 (afterSeq, upToSeq] 区间内的消息，只解码序号范围与区间相交的块
+     *
+     * @param afterSeq 起始序号（不包含）
+     * @param upToSeq  结束序号（包含）
+     * @param limit    最多返回的消息数
+     * @return 按序号正序排列的消息列表
+     */
+    List<ChatMessage> findSinceSeq(final long afterSeq, final long upToSeq, final int limit)
+    {
+        final var snapshot = this.state;
+        final var result   = new ArrayList<ChatMessage>();
+
+        for (final var block : snapshot.blocks)
+        {
+            if (block.maxSeq <= afterSeq || block.minSeq > upToSeq)
+            {
+                continue;
+            }
+
+            for (final var message : this.readBlock(snapshot, block))
+            {
+                final var seq = message.getSeq();
+
+                if (seq != null && seq > afterSeq && seq <= upToSeq)
+                {
+                    result.add(message);
+                }
+            }
+        }
+
+        // 序号通常与时间顺序一致，排序几乎不需要移动元素
+        result.sort(SEQ_ORDER);
+
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 按时间正序逐条读取全部归档消息
+     *
+     * <p>
+     * 迭代器每次前进时读取最新的快照，迭代期间追加的消息也会被读到，
+     * 因此与 MongoDB 游标拼接时，迭代期间从 MongoDB 移到归档中的消息不会丢失。
+     * </p>
+     *
+     * @return 按时间正序的迭代器
+     */
+    Iterator<ChatMessage> iterator()
+    {
+        return new Iterator<>()
+        {
+            private int blockIndex;
+            private int position = -1;
+
+            @Override
+            public boolean hasNext()
+            {
+                final var blocks = RoomArchive.this.state.blocks;
+
+                while (this.blockIndex < blocks.size())
+                {
+                    final var block = blocks.get(this.blockIndex);
+
+                    if (this.position < 0)
+                    {
+                        this.position = block.position;
+                    }
+
+                    if (this.position < block.end)
+                    {
+                        return true;
+                    }
+
+                    this.blockIndex++;
+                    this.position = -1;
+                }
+
+                return false;
+            }
+
+            @Override
+            public ChatMessage next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+
+                final var snapshot = RoomArchive.this.state;
+                final var segment  = snapshot.segments.get(snapshot.blocks.get(this.blockIndex).segment);
+                final var message  = RoomArchive.this.decode(segment, this.position);
+
+                this.position += Integer.BYTES + segment.getInt(this.position);
+
+                return message;
+            }
+        };
+    }
+
+    /**
+     * 解码一个块中的全部记录
+     */
+    private List<ChatMessage> readBlock(final State snapshot, final Block block)
+    {
+        final var segment  = snapshot.segments.get(block.segment);
+        final var records  = new ArrayList<ChatMessage>(block.count);
+        var       position = block.position;
+
+        while (position < block.end)
+        {
+            records.add(this.decode(segment, position));
+            position += Integer.BYTES + segment.getInt(position);
+        }
+
+        return records;
+    }
+
+    /**
+     * 打开时加载索引，并从最后一个索引项之后扫描分段，恢复写入位置和尚未写入索引的块
+     */
+    private void recover() throws IOException
+    {
+        try (final var files = Files.list(this.directory))
+        {
+            final var names = files.map(path -> path.getFileName()
+                                                    .toString())
+                                   .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                                   .sorted()
+                                   .toList();
+
+            for (int i = 0; i < names.size(); i++)
+            {
+                if (!names.get(i)
+                          .equals(segmentName(i)))
+                {
+                    throw new IOException("Missing archive segment " + segmentName(i) + " in " + this.directory);
+                }
+
+                this.segments.add(map(this.directory.resolve(names.get(i))));
+            }
+        }
+
+        this.loadIndex();
+
+        if (!this.segments.isEmpty())
+        {
+            final var last     = this.closedBlocks.isEmpty() ? null : this.closedBlocks.get(this.closedBlocks.size() - 1);
+            final var first    = last == null ? 0 : last.segment;
+            var       position = last == null ? 0 : last.end;
+
+            for (int segmentIndex = first; segmentIndex < this.segments.size(); segmentIndex++)
+            {
+                if (segmentIndex > first)
+                {
+                    this.closeOpenBlock();
+                    position = 0;
+                }
+
+                final var segment = this.segments.get(segmentIndex);
+
+                while (position + Integer.BYTES <= segment.capacity())
+                {
+                    final var length = segment.getInt(position);
+
+                    // 长度为 0 是分段的末尾；越界的长度是崩溃时写了一半的记录
+                    if (length <= 0 || position + Integer.BYTES + length > segment.capacity())
+                    {
+                        break;
+                    }
+
+                    this.accept(segmentIndex, position, this.decode(segment, position));
+                    position += Integer.BYTES + length;
+                }
+            }
+
+            this.writePosition = position;
+        }
+
+        // 最后一个索引项之后没有记录时，末尾是该块的最后一条记录
+        if (this.tail == null && !this.closedBlocks.isEmpty())
+        {
+            final var last     = this.closedBlocks.get(this.closedBlocks.size() - 1);
+            final var segment  = this.segments.get(last.segment);
+            var       position = last.position;
+
+            while (position + Integer.BYTES + segment.getInt(position) < last.end)
+            {
+                position += Integer.BYTES + segment.getInt(position);
+            }
+
+            this.tail = ChatMessageCursor.of(this.decode(segment, position));
+        }
+
+        this.flushIndex();
+        this.publish();
+    }
+
+    private void loadIndex() throws IOException
+    {
+        final var path = this.directory.resolve(INDEX_FILE);
+
+        if (!Files.exists(path))
+        {
+            return;
+        }
+
+        final var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        while (buffer.remaining() >= BLOCK_HEADER_BYTES)
+        {
+            final var start       = buffer.position();
+            final var segment     = buffer.getInt();
+            final var position    = buffer.getInt();
+            final var end         = buffer.getInt();
+            final var count       = buffer.getInt();
+            final var minSeq      = buffer.getLong();
+            final var maxSeq      = buffer.getLong();
+            final var epochSecond = buffer.getLong();
+            final var nano        = buffer.getInt();
+            final var idLength    = buffer.getInt();
+            final var previous    = this.closedBlocks.isEmpty() ? null : this.closedBlocks.get(this.closedBlocks.size() - 1);
+
+            // 写了一半的索引项，或者与分段文件不一致的索引项，之后的部分从分段重新扫描
+            if (idLength < 0 ||
+                buffer.remaining() < idLength ||
+                segment >= this.segments.size() ||
+                (previous != null && (segment < previous.segment ||
+                                      (segment == previous.segment && position < previous.end))) ||
+                end > this.segments.get(segment)
+                                   .capacity())
+            {
+                buffer.position(start);
+                break;
+            }
+
+            final var id = new byte[idLength];
+            buffer.get(id);
+
+            this.closedBlocks.add(new Block(segment,
+                                            position,
+                                            end,
+                                            count,
+                                            minSeq,
+                                            maxSeq,
+                                            LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC),
+                                            new String(id, StandardCharsets.UTF_8)));
+        }
+
+        // 丢弃末尾不完整的索引项，之后追加的索引项紧接在有效部分之后
+        if (buffer.position() < buffer.capacity())
+        {
+            try (final var channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                channel.truncate(buffer.position());
+            }
+        }
+    }
+
+    /**
+     * 将一条已经写入分段的记录计入当前块，块满时关闭
+     */
+    private void accept(final int segment, final int position, final ChatMessage message)
+    {
+        if (this.openBlock == null)
+        {
+            this.openBlock = new BlockBuilder(segment, position, message);
+        }
+
+        this.openBlock.add(position + Integer.BYTES + this.segments.get(segment)
+                                                                   .getInt(position), message.getSeq());
+        this.tail = ChatMessageCursor.of(message);
+
+        if (this.openBlock.count >= this.indexInterval)
+        {
+            this.closeOpenBlock();
+        }
+    }
+
+    private void closeOpenBlock()
+    {
+        if (this.openBlock != null)
+        {
+            final var block = this.openBlock.build();
+
+            this.closedBlocks.add(block);
+            this.unindexed.add(block);
+            this.openBlock = null;
+        }
+    }
+
+    /**
+     * 开始新的分段，块不跨分段
+     */
+    private void roll(final int needed) throws IOException
+    {
+        this.closeOpenBlock();
+
+        final var path = this.directory.resolve(segmentName(this.segments.size()));
+
+        try (final var channel = FileChannel.open(path,
+                                                  StandardOpenOption.CREATE_NEW,
+                                                  StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE))
+        {
+            // 超过分段大小的单条记录独占一个分段；多留 4 字节放末尾的 0 长度
+            this.segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                                          0,
+                                          Math.max(this.segmentSize, needed + Integer.BYTES)));
+        }
+
+        this.writePosition = 0;
+    }
+
+    private MappedByteBuffer activeSegment()
+    {
+        return this.segments.get(this.segments.size() - 1);
+    }
+
+    /**
+     * 将新关闭的块追加到索引文件并刷盘
+     */
+    private void flushIndex() throws IOException
+    {
+        if (this.unindexed.isEmpty())
+        {
+            return;
+        }
+
+        final var entries = new ArrayList<byte[]>(this.unindexed.size());
+        var       length  = 0;
+
+        for (final var block : this.unindexed)
+        {
+            final var id    = block.firstId.getBytes(StandardCharsets.UTF_8);
+            final var entry = ByteBuffer.allocate(BLOCK_HEADER_BYTES + id.length)
+                                        .putInt(block.segment)
+                                        .putInt(block.position)
+                                        .putInt(block.end)
+                                        .putInt(block.count)
+                                        .putLong(block.minSeq)
+                                        .putLong(block.maxSeq)
+                                        .putLong(block.firstTimestamp.toEpochSecond(ZoneOffset.UTC))
+                                        .putInt(block.firstTimestamp.getNano())
+                                        .putInt(id.length)
+                                        .put(id);
+
+            entries.add(entry.array());
+            length += entry.capacity();
+        }
+
+        final var buffer = ByteBuffer.allocate(length);
+        entries.forEach(buffer::put);
+        buffer.flip();
+
+        try (final var channel = FileChannel.open(this.directory.resolve(INDEX_FILE),
+                                                  StandardOpenOption.CREATE,
+                                                  StandardOpenOption.WRITE,
+                                                  StandardOpenOption.APPEND))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+
+            channel.force(false);
+        }
+
+        this.unindexed.clear();
+    }
+
+    /**
+     * 发布新的快照，未关闭的块作为最后一个块对读取可见
+     */
+    private void publish()
+    {
+        final var blocks = new ArrayList<>(this.closedBlocks);
+        var       maxSeq = NO_SEQ;
+
+        for (final var block : this.closedBlocks)
+        {
+            maxSeq = Math.max(maxSeq, block.maxSeq);
+        }
+
+        if (this.openBlock != null)
+        {
+            blocks.add(this.openBlock.build());
+            maxSeq = Math.max(maxSeq, this.openBlock.maxSeq);
+        }
+
+        this.state = new State(List.copyOf(this.segments), List.copyOf(blocks), this.tail, maxSeq);
+    }
+
+    private ChatMessage decode(final ByteBuffer segment, final int position)
+    {
+        var offset = position + Integer.BYTES;
+
+        final var epochSecond = segment.getLong(offset);
+        final var nano        = segment.getInt(offset + Long.BYTES);
+        final var seq         = segment.getLong(offset + Long.BYTES + Integer.BYTES);
+        offset += Long.BYTES + Integer.BYTES + Long.BYTES;
+
+        final var fields = new String[4];
+
+        for (int i = 0; i < fields.length; i++)
+        {
+            final var length = segment.getInt(offset);
+            offset += Integer.BYTES;
+
+            if (length >= 0)
+            {
+                final var bytes = new byte[length];
+                segment.get(offset, bytes);
+                fields[i] = new String(bytes, StandardCharsets.UTF_8);
+                offset += length;
+            }
+        }
+
+        return new ChatMessage(fields[0],
+                               this.chatRoomId,
+                               seq == NO_SEQ ? null : seq,
+                               fields[1],
+                               fields[2],
+                               fields[3],
+                               LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+    }
+
+    private static byte[] encode(final ChatMessage message)
+    {
+        final var fields = new byte[][]{bytesOf(message.getId()),
+                                        bytesOf(message.getSenderId()),
+                                        bytesOf(message.getReceiverId()),
+                                        bytesOf(message.getContent())};
+        var       length = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+        for (final var field : fields)
+        {
+            length += Integer.BYTES + (field == null ? 0 : field.length);
+        }
+
+        final var buffer = ByteBuffer.allocate(length)
+                                     .putLong(message.getTimestamp()
+                                                     .toEpochSecond(ZoneOffset.UTC))
+                                     .putInt(message.getTimestamp()
+                                                    .getNano())
+                                     .putLong(message.getSeq() == null ? NO_SEQ : message.getSeq());
+
+        for (final var field : fields)
+        {
+            if (field == null)
+            {
+                buffer.putInt(-1);
+            }
+            else
+            {
+                buffer.putInt(field.length)
+                      .put(field);
+            }
+        }
+
+        return buffer.array();
+    }
+
+    @Nullable
+    private static byte[] bytesOf(@Nullable final String value)
+    {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static MappedByteBuffer map(final Path path) throws IOException
+    {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private static String segmentName(final int index)
+    {
+        return String.format("%010d%s", index, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * 首键小于（inclusive 为 true 时不大于）游标的最后一个块，不存在时返回 -1
+     */
+    private static int lastBlockBefore(final List<Block> blocks, final ChatMessageCursor cursor, final boolean inclusive)
+    {
+        var low  = 0;
+        var high = blocks.size() - 1;
+
+        while (low <= high)
+        {
+            final var middle     = (low + high) >>> 1;
+            final var block      = blocks.get(middle);
+            final var comparison = compare(block.firstTimestamp, block.firstId, cursor.timestamp(), cursor.id());
+
+            if (comparison < 0 || (inclusive && comparison == 0))
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        return high;
+    }
+
+    static int compare(final ChatMessage message, final ChatMessageCursor cursor)
+    {
+        return compare(message.getTimestamp(), message.getId(), cursor.timestamp(), cursor.id());
+    }
+
+    private static int compare(final LocalDateTime timestamp,
+                               final String id,
+                               final LocalDateTime otherTimestamp,
+                               final String otherId)
+    {
+        final var comparison = timestamp.compareTo(otherTimestamp);
+
+        return comparison != 0 ? comparison : id.compareTo(otherId);
+    }
+
+    /**
+     * 稀疏索引项：一段连续的记录，不跨分段
+     *
+     * @param segment        分段序号
+     * @param position       第一条记录在分段中的偏移
+     * @param end            最后一条记录之后的偏移
+     * @param count          记录数
+     * @param minSeq         块内最小序号，没有带序号的记录时为 Long.MAX_VALUE
+     * @param maxSeq         块内最大序号，没有带序号的记录时为 Long.MIN_VALUE
+     * @param firstTimestamp 第一条记录的时间戳
+     * @param firstId        第一条记录的 ID
+     */
+    private record Block(int segment,
+                         int position,
+                         int end,
+                         int count,
+                         long minSeq,
+                         long maxSeq,
+                         LocalDateTime firstTimestamp,
+                         String firstId)
+    {
+    }
+
+    /**
+     * 正在填充的块，只由追加方访问
+     */
+    private static final class BlockBuilder
+    {
+        private final int           segment;
+        private final int           position;
+        private final LocalDateTime firstTimestamp;
+        private final String        firstId;
+        private       int           end;
+        private       int           count;
+        private       long          minSeq = Long.MAX_VALUE;
+        private       long          maxSeq = NO_SEQ;
+
+        private BlockBuilder(final int segment, final int position, final ChatMessage first)
+        {
+            this.segment        = segment;
+            this.position       = position;
+            this.firstTimestamp = first.getTimestamp();
+            this.firstId        = first.getId();
+        }
+
+        private void add(final int end, @Nullable final Long seq)
+        {
+            this.end = end;
+            this.count++;
+
+            if (seq != null)
+            {
+                this.minSeq = Math.min(this.minSeq, seq);
+                this.maxSeq = Math.max(this.maxSeq, seq);
+            }
+        }
+
+        private Block build()
+        {
+            return new Block(this.segment,
+                             this.position,
+                             this.end,
+                             this.count,
+                             this.minSeq,
+                             this.maxSeq,
+                             this.firstTimestamp,
+                             this.firstId);
+        }
+    }
+
+    /**
+     * 对读取发布的不可变快照
+     */
+    private record State(List<MappedByteBuffer> segments,
+                         List<Block> blocks,
+                         @Nullable ChatMessageCursor tail,
+                         long maxSeq)
+    {
+    }
+}
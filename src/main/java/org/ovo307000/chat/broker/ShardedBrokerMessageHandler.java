@@ -0,0 +1,635 @@
+package org.ovo307000.chat.broker;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderInitializer;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * 按会话分片的进程内消息代理，可直接替换 Spring 的 SimpleBrokerMessageHandler
+ *
+ * <p>
+ * 会话按 sessionId 的哈希值分配到 N 个分片，每个分片由一个专属线程处理，
+ * 分片内的会话表和订阅索引只被该线程读写，因此无需加锁；其他线程通过无锁的多生产者队列向分片投递消息。
+ * 同一会话的 CONNECT / SUBSCRIBE / UNSUBSCRIBE / DISCONNECT 总是落在同一个分片上，保持先后顺序。
+ * </p>
+ *
+ * <p>
+ * 订阅索引是“目的地 → 订阅列表”的哈希表，发布消息时直接按目的地查表，而不是逐个匹配所有订阅；
+ * 只有目的地中含有通配符（如 /topic/room.*）的订阅才放入每个分片的模式订阅列表并逐个匹配。
+ * 普通目的地的消息会投递到所有分片，由各分片把消息分发给自己负责的订阅者；
+ * 用户目的地（由 UserDestinationMessageHandler 解析成的 “xxx-user{sessionId}”）只投递到该会话所在的分片。
+ * </p>
+ *
+ * <p>
+ * 与 SimpleBrokerMessageHandler 相比不支持 STOMP 心跳和 selector 订阅头，本项目均未使用。
+ * </p>
+ */
+@Slf4j
+public class ShardedBrokerMessageHandler extends AbstractBrokerMessageHandler
+{
+    /* 用户目的地中 sessionId 之前的分隔符，见 DefaultUserDestinationResolver */
+    private static final String USER_DESTINATION_SESSION_SEPARATOR = "-user";
+
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final Shard[]     shards;
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    @Nullable
+    private MessageHeaderInitializer headerInitializer;
+
+    /* 每条发布消息的实际投递数的接收者，见 ChatMetrics */
+    @Nullable
+    private volatile IntConsumer fanOutRecorder;
+
+    /**
+     * @param clientInboundChannel  客户端入站通道
+     * @param clientOutboundChannel 客户端出站通道
+     * @param brokerChannel         应用发往代理的通道
+     * @param destinationPrefixes   由代理处理的目的地前缀
+     * @param shardCount            分片数，小于等于 0 时使用 CPU 核数
+     */
+    public ShardedBrokerMessageHandler(@NonNull final SubscribableChannel clientInboundChannel,
+                                       @NonNull final MessageChannel clientOutboundChannel,
+                                       @NonNull final SubscribableChannel brokerChannel,
+                                       @NonNull final Collection<String> destinationPrefixes,
+                                       final int shardCount)
+    {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, destinationPrefixes);
+
+        final var count = shardCount > 0
+                          ? shardCount
+                          : Runtime.getRuntime()
+                                   .availableProcessors();
+
+        this.shards = new Shard[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            this.shards[i] = new Shard(i);
+        }
+    }
+
+    public void setHeaderInitializer(@Nullable final MessageHeaderInitializer headerInitializer)
+    {
+        this.headerInitializer = headerInitializer;
+    }
+
+    /**
+     * 设置投递数的接收者，每条发布到代理的消息在所有相关分片分发完成后回调一次
+     *
+     * @param fanOutRecorder 接收投递数的回调，为 null 时不统计
+     */
+    public void setFanOutRecorder(@Nullable final IntConsumer fanOutRecorder)
+    {
+        this.fanOutRecorder = fanOutRecorder;
+    }
+
+    /**
+     * 分片数
+     *
+     * @return 分片数
+     */
+    public int getShardCount()
+    {
+        return this.shards.length;
+    }
+
+    /**
+     * 所有分片中尚未处理的消息数之和
+     *
+     * @return 积压的消息数
+     */
+    public int backlog()
+    {
+        var backlog = 0;
+
+        for (final var shard : this.shards)
+        {
+            backlog += shard.inbox.size();
+        }
+
+        return backlog;
+    }
+
+    @Override
+    protected void startInternal()
+    {
+        for (final var shard : this.shards)
+        {
+            shard.start();
+        }
+
+        log.info("Sharded message broker started with {} shards", this.shards.length);
+
+        publishBrokerAvailableEvent();
+    }
+
+    @Override
+    protected void stopInternal()
+    {
+        publishBrokerUnavailableEvent();
+
+        for (final var shard : this.shards)
+        {
+            shard.stop();
+        }
+    }
+
+    @Override
+    protected void handleMessageInternal(@NonNull final Message<?> message)
+    {
+        final var headers     = message.getHeaders();
+        final var destination = SimpMessageHeaderAccessor.getDestination(headers);
+        final var sessionId   = SimpMessageHeaderAccessor.getSessionId(headers);
+        final var messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+
+        if (!checkDestinationPrefix(destination))
+        {
+            return;
+        }
+
+        if (SimpMessageType.MESSAGE.equals(messageType))
+        {
+            if (destination == null)
+            {
+                return;
+            }
+
+            // 用户目的地只有目标会话会订阅，直接投递到该会话所在的分片
+            final var targetSessionId = userDestinationSessionId(destination, headers);
+
+            if (targetSessionId != null)
+            {
+                this.shardOf(targetSessionId)
+                    .offer(new Envelope(message, this.newFanOut(1)));
+
+                return;
+            }
+
+            final var envelope = new Envelope(message, this.newFanOut(this.shards.length));
+
+            for (final var shard : this.shards)
+            {
+                shard.offer(envelope);
+            }
+        }
+        else if (sessionId != null && (SimpMessageType.CONNECT.equals(messageType) ||
+                                       SimpMessageType.DISCONNECT.equals(messageType) ||
+                                       SimpMessageType.SUBSCRIBE.equals(messageType) ||
+                                       SimpMessageType.UNSUBSCRIBE.equals(messageType)))
+        {
+            this.shardOf(sessionId)
+                .offer(new Envelope(message, null));
+        }
+    }
+
+    @Nullable
+    private FanOut newFanOut(final int shardCount)
+    {
+        final var recorder = this.fanOutRecorder;
+
+        return recorder == null ? null : new FanOut(recorder, shardCount);
+    }
+
+    /**
+     * 从用户目的地中取出目标会话的 ID
+     *
+     * <p>
+     * 只有经 UserDestinationMessageHandler 解析的消息才带有 ORIGINAL_DESTINATION 头，
+     * 此时目的地一定是 “xxx-user{sessionId}” 的形式；普通目的地（例如 /topic/power-users）不受影响。
+     * </p>
+     *
+     * @param destination 消息的目的地
+     * @param headers     消息头
+     * @return 目标会话 ID，不是用户目的地时返回 null
+     */
+    @Nullable
+    private static String userDestinationSessionId(final String destination, final MessageHeaders headers)
+    {
+        if (NativeMessageHeaderAccessor.getFirstNativeHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION,
+                                                             headers) == null)
+        {
+            return null;
+        }
+
+        final var separator = destination.lastIndexOf(USER_DESTINATION_SESSION_SEPARATOR);
+
+        if (separator < 0 || separator + USER_DESTINATION_SESSION_SEPARATOR.length() == destination.length())
+        {
+            return null;
+        }
+
+        return destination.substring(separator + USER_DESTINATION_SESSION_SEPARATOR.length());
+    }
+
+    private Shard shardOf(@NonNull final String sessionId)
+    {
+        return this.shards[Math.floorMod(sessionId.hashCode(), this.shards.length)];
+    }
+
+    private void initHeaders(final SimpMessageHeaderAccessor accessor)
+    {
+        if (this.headerInitializer != null)
+        {
+            this.headerInitializer.initHeaders(accessor);
+        }
+    }
+
+    /**
+     * 单个订阅
+     *
+     * @param sessionId      会话 ID
+     * @param subscriptionId 会话内的订阅 ID
+     * @param destination    订阅的目的地
+     */
+    private record Subscription(String sessionId, String subscriptionId, String destination)
+    {
+    }
+
+    /**
+     * 分片队列中的一项
+     *
+     * @param message 消息
+     * @param fanOut  统计投递数用的计数器，不统计时为 null
+     */
+    private record Envelope(Message<?> message, @Nullable FanOut fanOut)
+    {
+    }
+
+    /**
+     * 一条广播到多个分片的消息的投递数统计，最后一个完成分发的分片负责上报
+     */
+    private static final class FanOut
+    {
+        private final IntConsumer   recorder;
+        private final AtomicInteger pendingShards;
+        private final AtomicInteger delivered = new AtomicInteger();
+
+        private FanOut(final IntConsumer recorder, final int shardCount)
+        {
+            this.recorder      = recorder;
+            this.pendingShards = new AtomicInteger(shardCount);
+        }
+
+        private void completeShard(final int deliveredInShard)
+        {
+            final var total = this.delivered.addAndGet(deliveredInShard);
+
+            if (this.pendingShards.decrementAndGet() == 0)
+            {
+                this.recorder.accept(total);
+            }
+        }
+    }
+
+    /**
+     * 一个分片：一个专属线程、一个无锁入站队列，以及只由该线程访问的会话表和订阅索引
+     */
+    private final class Shard
+    {
+        private final int                                    index;
+        private final Queue<Envelope>                        inbox        = new ConcurrentLinkedQueue<>();
+        /* 已 CONNECT 的会话 */
+        private final Set<String>                            connected    = new HashSet<>();
+        /* 会话 ID → (订阅 ID → 订阅) */
+        private final Map<String, Map<String, Subscription>> sessions     = new HashMap<>();
+        /* 精确目的地 → 订阅列表 */
+        private final Map<String, List<Subscription>>        destinations = new HashMap<>();
+        /* 目的地含通配符的订阅 */
+        private final List<Subscription>                     patterns     = new ArrayList<>();
+
+        private volatile boolean running;
+        private volatile boolean parked;
+        private volatile Thread  worker;
+
+        private Shard(final int index)
+        {
+            this.index = index;
+        }
+
+        private void start()
+        {
+            this.running = true;
+            this.worker  = new Thread(this::loop, "chat-broker-" + this.index);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        private void stop()
+        {
+            this.running = false;
+
+            final var thread = this.worker;
+
+            if (thread == null)
+            {
+                return;
+            }
+
+            LockSupport.unpark(thread);
+
+            try
+            {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+
+            this.worker = null;
+        }
+
+        private void offer(final Envelope envelope)
+        {
+            this.inbox.offer(envelope);
+
+            // 先入队再检查标志，与工作线程“先设标志再检查队列”配合，不会丢失唤醒
+            if (this.parked)
+            {
+                LockSupport.unpark(this.worker);
+            }
+        }
+
+        private void loop()
+        {
+            while (this.running || !this.inbox.isEmpty())
+            {
+                final var envelope = this.inbox.poll();
+
+                if (envelope == null)
+                {
+                    this.parked = true;
+
+                    if (this.inbox.isEmpty() && this.running)
+                    {
+                        LockSupport.park(this);
+                    }
+
+                    this.parked = false;
+
+                    continue;
+                }
+
+                try
+                {
+                    this.handle(envelope);
+                }
+                catch (RuntimeException e)
+                {
+                    log.error("Failed to handle {} in broker shard {}", envelope.message(), this.index, e);
+                }
+            }
+        }
+
+        private void handle(final Envelope envelope)
+        {
+            final var message   = envelope.message();
+            final var headers   = message.getHeaders();
+            final var sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+
+            final var type      = SimpMessageHeaderAccessor.getMessageType(headers);
+
+            if (type == null)
+            {
+                return;
+            }
+
+            switch (type)
+            {
+                case MESSAGE ->
+                {
+                    final var delivered = this.dispatch(SimpMessageHeaderAccessor.getDestination(headers), message);
+
+                    if (envelope.fanOut() != null)
+                    {
+                        envelope.fanOut()
+                                .completeShard(delivered);
+                    }
+                }
+                case CONNECT -> this.connect(sessionId, message);
+                case DISCONNECT -> this.disconnect(sessionId, message);
+                case SUBSCRIBE -> this.subscribe(sessionId, headers);
+                case UNSUBSCRIBE -> this.unsubscribe(sessionId, SimpMessageHeaderAccessor.getSubscriptionId(headers));
+                default ->
+                {
+                    // 其他类型的消息（例如心跳）不处理
+                }
+            }
+        }
+
+        private void connect(final String sessionId, final Message<?> message)
+        {
+            if (!this.connected.add(sessionId))
+            {
+                log.warn("Ignoring CONNECT in session {}. Already connected.", sessionId);
+
+                return;
+            }
+
+            final var user       = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+            final var connectAck = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+
+            initHeaders(connectAck);
+            connectAck.setSessionId(sessionId);
+
+            if (user != null)
+            {
+                connectAck.setUser(user);
+            }
+
+            connectAck.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER, message);
+            // 不支持心跳
+            connectAck.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[]{0, 0});
+
+            getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD,
+                                                                         connectAck.getMessageHeaders()));
+        }
+
+        private void disconnect(final String sessionId, final Message<?> message)
+        {
+            this.connected.remove(sessionId);
+
+            final var subscriptions = this.sessions.remove(sessionId);
+
+            if (subscriptions != null)
+            {
+                subscriptions.values()
+                             .forEach(this::removeFromIndex);
+            }
+
+            final var user          = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+            final var disconnectAck = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT_ACK);
+
+            disconnectAck.setSessionId(sessionId);
+
+            if (user != null)
+            {
+                disconnectAck.setUser(user);
+            }
+
+            disconnectAck.setHeader(SimpMessageHeaderAccessor.DISCONNECT_MESSAGE_HEADER, message);
+            initHeaders(disconnectAck);
+
+            getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD,
+                                                                         disconnectAck.getMessageHeaders()));
+        }
+
+        private void subscribe(final String sessionId, final MessageHeaders headers)
+        {
+            final var subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            final var destination    = SimpMessageHeaderAccessor.getDestination(headers);
+
+            if (subscriptionId == null || destination == null)
+            {
+                return;
+            }
+
+            // 与 SimpleBroker 一致，未 CONNECT 的会话（例如用 SimpMessagingTemplate 直接订阅的测试场景）也允许订阅
+            final var subscriptions = this.sessions.computeIfAbsent(sessionId, key -> new HashMap<>());
+            final var subscription  = new Subscription(sessionId, subscriptionId, destination);
+            final var previous      = subscriptions.put(subscriptionId, subscription);
+
+            if (previous != null)
+            {
+                this.removeFromIndex(previous);
+            }
+
+            if (pathMatcher.isPattern(destination))
+            {
+                this.patterns.add(subscription);
+            }
+            else
+            {
+                this.destinations.computeIfAbsent(destination, key -> new ArrayList<>())
+                                 .add(subscription);
+            }
+        }
+
+        private void unsubscribe(final String sessionId, @Nullable final String subscriptionId)
+        {
+            final var subscriptions = this.sessions.get(sessionId);
+
+            if (subscriptions == null || subscriptionId == null)
+            {
+                return;
+            }
+
+            final var subscription = subscriptions.remove(subscriptionId);
+
+            if (subscription != null)
+            {
+                this.removeFromIndex(subscription);
+            }
+        }
+
+        private void removeFromIndex(final Subscription subscription)
+        {
+            if (pathMatcher.isPattern(subscription.destination()))
+            {
+                this.patterns.remove(subscription);
+
+                return;
+            }
+
+            final var subscribers = this.destinations.get(subscription.destination());
+
+            if (subscribers != null)
+            {
+                subscribers.remove(subscription);
+
+                if (subscribers.isEmpty())
+                {
+                    this.destinations.remove(subscription.destination());
+                }
+            }
+        }
+
+        /**
+         * 把消息分发给本分片中订阅了该目的地的会话
+         *
+         * @return 投递的订阅数
+         */
+        private int dispatch(@Nullable final String destination, final Message<?> message)
+        {
+            if (destination == null)
+            {
+                return 0;
+            }
+
+            var delivered = 0;
+
+            final var subscribers = this.destinations.get(destination);
+
+            if (subscribers != null)
+            {
+                for (final var subscription : subscribers)
+                {
+                    this.send(subscription, message);
+                }
+
+                delivered += subscribers.size();
+            }
+
+            for (final var subscription : this.patterns)
+            {
+                if (pathMatcher.match(subscription.destination(), destination))
+                {
+                    this.send(subscription, message);
+                    delivered++;
+                }
+            }
+
+            return delivered;
+        }
+
+        private void send(final Subscription subscription, final Message<?> message)
+        {
+            final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+
+            initHeaders(accessor);
+            accessor.setSessionId(subscription.sessionId());
+            accessor.setSubscriptionId(subscription.subscriptionId());
+            accessor.copyHeadersIfAbsent(message.getHeaders());
+            accessor.setLeaveMutable(true);
+
+            try
+            {
+                getClientOutboundChannel().send(MessageBuilder.createMessage(message.getPayload(),
+                                                                             accessor.getMessageHeaders()));
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Failed to send {} to session {}", message, subscription.sessionId(), e);
+            }
+        }
+    }
+}
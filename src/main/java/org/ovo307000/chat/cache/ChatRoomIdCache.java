@@ -0,0 +1,136 @@
+package org.ovo307000.chat.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.NonNull;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * 聊天室 ID 的进程内近端缓存
+ *
+ * <p>
+ * 以规范化的聊天室 ID 为键，缓存该聊天室是否存在。聊天室一旦创建就不会再变化，
+ * 因此正向结果只受容量和闲置时间限制；“聊天室不存在”的否定结果也会被缓存，
+ * 但使用更短的过期时间，避免长时间掩盖其他节点新建的聊天室。
+ * 命中、未命中和淘汰统计以 cache=chat.roomIds 标签发布为 cache.* 指标。
+ * </p>
+ */
+@Component
+public class ChatRoomIdCache implements MeterBinder
+{
+    private final Cache<String, Optional<String>> cache;
+
+    public ChatRoomIdCache(@NonNull final ChatProperties chatProperties)
+    {
+        final var config = chatProperties.getRoomCache();
+
+        final var idleNanos     = config.getExpireAfterAccess()
+                                        .toNanos();
+        final var negativeNanos = Math.min(config.getNegativeTtl()
+                                                 .toNanos(), idleNanos);
+
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(config.getMaximumSize())
+                             .expireAfter(new Expiry<String, Optional<String>>()
+                             {
+                                 @Override
+                                 public long expireAfterCreate(final String key,
+                                                               final Optional<String> value,
+                                                               final long currentTime)
+                                 {
+                                     return value.isPresent() ? idleNanos : negativeNanos;
+                                 }
+
+                                 @Override
+                                 public long expireAfterUpdate(final String key,
+                                                               final Optional<String> value,
+                                                               final long currentTime,
+                                                               final long currentDuration)
+                                 {
+                                     return this.expireAfterCreate(key, value, currentTime);
+                                 }
+
+                                 @Override
+                                 public long expireAfterRead(final String key,
+                                                             final Optional<String> value,
+                                                             final long currentTime,
+                                                             final long currentDuration)
+                                 {
+                                     // 正向结果按闲置时间续期，否定结果不因读取而续期
+                                     return value.isPresent() ? idleNanos : currentDuration;
+                                 }
+                             })
+                             .recordStats()
+                             .build();
+    }
+
+    /**
+     * 获取聊天室 ID，缓存未命中时通过 loader 加载并缓存结果（包括否定结果）
+     * 同一个键的并发加载只会执行一次 loader
+     *
+     * @param chatRoomId 规范化的聊天室ID
+     * @param loader     缓存未命中时的加载函数
+     * @return 聊天室 ID，聊天室不存在时为空
+     */
+    public Optional<String> get(@NonNull final String chatRoomId, @NonNull final Supplier<Optional<String>> loader)
+    {
+        return this.cache.get(chatRoomId, key -> loader.get());
+    }
+
+    /**
+     * 只查询缓存，不加载
+     *
+     * @param chatRoomId 规范化的聊天室ID
+     * @return 缓存的结果（聊天室不存在时为空 Optional），未缓存时返回 null
+     */
+    @Nullable
+    public Optional<String> getIfPresent(@NonNull final String chatRoomId)
+    {
+        return this.cache.getIfPresent(chatRoomId);
+    }
+
+    /**
+     * 记录聊天室不存在的否定结果
+     *
+     * @param chatRoomId 聊天室ID
+     */
+    public void putAbsent(@NonNull final String chatRoomId)
+    {
+        this.cache.put(chatRoomId, Optional.empty());
+    }
+
+    /**
+     * 记录一个已存在的聊天室，覆盖可能存在的否定结果
+     *
+     * @param chatRoomId 聊天室ID
+     */
+    public void put(@NonNull final String chatRoomId)
+    {
+        this.cache.put(chatRoomId, Optional.of(chatRoomId));
+    }
+
+    /**
+     * 移除指定聊天室的缓存
+     *
+     * @param chatRoomId 聊天室ID
+     */
+    public void invalidate(@NonNull final String chatRoomId)
+    {
+        this.cache.invalidate(chatRoomId);
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "chat.roomIds");
+    }
+}
@@ -0,0 +1,286 @@
+package org.ovo307000.chat.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.NonNull;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 各聊天室最近消息的进程内缓存
+ *
+ * <p>
+ * 每个聊天室对应一个按 (timestamp, id) 排序、容量固定的环形缓冲区，保存该聊天室最新的若干条消息。
+ * 消息写入数据库成功后追加到缓冲区；首页历史记录未命中时，由数据库查询结果填充。
+ * 只有填充过数据库快照的缓冲区才会用于响应读取，仅由新消息追加得到的缓冲区可能缺少更早写入的消息。
+ * </p>
+ *
+ * <p>
+ * 所有缓冲区按估计的内存占用加权，合计不超过 chat.recent-messages.max-memory，超出后按 Window TinyLFU 淘汰冷门聊天室。
+ * </p>
+ */
+@Component
+public class RecentMessageCache implements MeterBinder
+{
+    /* 消息排序与键集分页一致：先按时间戳，再按 ID */
+    private static final Comparator<ChatMessage> ORDER = Comparator.comparing(ChatMessage::getTimestamp)
+                                                                   .thenComparing(ChatMessage::getId);
+
+    private final boolean                   enabled;
+    private final int                       capacity;
+    private final Cache<String, RoomBuffer> cache;
+
+    public RecentMessageCache(@NonNull final ChatProperties chatProperties)
+    {
+        final var config = chatProperties.getRecentMessages();
+
+        this.enabled  = config.isEnabled() && config.getCapacity() > 0;
+        this.capacity = config.getCapacity();
+        this.cache    = Caffeine.newBuilder()
+                                .maximumWeight(config.getMaxMemory()
+                                                     .toBytes())
+                                .weigher((String chatRoomId, RoomBuffer buffer) -> buffer.estimatedBytes())
+                                .recordStats()
+                                .build();
+    }
+
+    /**
+     * 缓存能否提供指定条数的最新消息
+     *
+     * @param count 需要的消息数
+     * @return 启用且容量足够时返回 true
+     */
+    public boolean covers(final int count)
+    {
+        return this.enabled && count <= this.capacity;
+    }
+
+    /**
+     * 获取聊天室最新的 count 条消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param count      需要的消息数
+     * @return 按时间正序排列的消息；缓存无法确定最新的 count 条消息时返回 null
+     */
+    @Nullable
+    public List<ChatMessage> latest(@NonNull final String chatRoomId, final int count)
+    {
+        if (!this.covers(count))
+        {
+            return null;
+        }
+
+        final var buffer = this.cache.getIfPresent(chatRoomId);
+
+        return buffer == null ? null : buffer.latest(count);
+    }
+
+    /**
+     * 追加一条已写入数据库的消息
+     *
+     * @param chatMessage 已保存的消息，必须带有聊天室ID、消息ID和时间戳
+     */
+    public void append(@NonNull final ChatMessage chatMessage)
+    {
+        if (!this.enabled)
+        {
+            return;
+        }
+
+        this.cache.asMap()
+                  .compute(chatMessage.getChatRoomId(), (chatRoomId, buffer) ->
+                  {
+                      final var target = buffer == null ? new RoomBuffer(this.capacity) : buffer;
+                      target.add(chatMessage);
+
+                      return target;
+                  });
+    }
+
+    /**
+     * 用数据库查询到的最新消息填充缓存
+     *
+     * <p>
+     * 查询结果与缓冲区中已有的消息合并（按 ID 去重），因此与并发的 {@link #append(ChatMessage)} 交错执行时也不会丢失消息。
+     * </p>
+     *
+     * @param chatRoomId 聊天室ID
+     * @param newest     数据库中最新的消息，按时间倒序排列
+     * @param requested  查询时请求的条数，结果少于该值说明已经包含了聊天室的全部消息
+     */
+    public void populate(@NonNull final String chatRoomId,
+                         @NonNull final List<ChatMessage> newest,
+                         final int requested)
+    {
+        if (!this.enabled)
+        {
+            return;
+        }
+
+        this.cache.asMap()
+                  .compute(chatRoomId, (key, buffer) ->
+                  {
+                      final var target = buffer == null ? new RoomBuffer(this.capacity) : buffer;
+                      target.merge(newest, newest.size() < requested);
+
+                      return target;
+                  });
+    }
+
+    /**
+     * 移除指定聊天室的缓存
+     *
+     * @param chatRoomId 聊天室ID
+     */
+    public void invalidate(@NonNull final String chatRoomId)
+    {
+        this.cache.invalidate(chatRoomId);
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "chat.recentMessages");
+    }
+
+    /**
+     * 单个聊天室的环形缓冲区，按 (timestamp, id) 正序保存最新的 capacity 条消息
+     *
+     * <p>
+     * 写操作都在缓存的 compute 中执行，同一个聊天室的写操作天然串行；读操作与写操作通过对象锁互斥。
+     * </p>
+     */
+    static final class RoomBuffer
+    {
+        /* 缓冲区自身和每条消息的固定开销估计（对象头、字段、字符串对象），字符内容另计 */
+        private static final int BUFFER_OVERHEAD  = 64;
+        private static final int MESSAGE_OVERHEAD = 200;
+
+        private final ChatMessage[] slots;
+
+        /* 最旧的消息所在的位置 */
+        private int start;
+        private int size;
+
+        /* 是否合并过数据库快照，只有合并过的缓冲区才能用于读取 */
+        private boolean anchored;
+
+        /* 是否包含聊天室的全部消息，此时即使消息数不足也能确定最新的若干条 */
+        private boolean exhaustive;
+
+        private int estimatedBytes = BUFFER_OVERHEAD;
+
+        RoomBuffer(final int capacity)
+        {
+            this.slots = new ChatMessage[capacity];
+        }
+
+        synchronized List<ChatMessage> latest(final int count)
+        {
+            if (!this.anchored || (this.size < count && !this.exhaustive))
+            {
+                return null;
+            }
+
+            final var n      = Math.min(count, this.size);
+            final var result = new ArrayList<ChatMessage>(n);
+
+            for (int i = this.size - n; i < this.size; i++)
+            {
+                result.add(this.get(i));
+            }
+
+            return result;
+        }
+
+        synchronized void merge(final List<ChatMessage> newest, final boolean complete)
+        {
+            newest.forEach(this::add);
+
+            // 缓冲区中的消息数只增不减，未满说明从未丢弃过消息：快照（或之前的缓冲区）完整时，合并结果也是完整的
+            this.exhaustive = (complete || this.exhaustive) && this.size < this.slots.length;
+            this.anchored   = true;
+        }
+
+        synchronized void add(final ChatMessage chatMessage)
+        {
+            // 并发的填充和追加可能带来同一条消息
+            for (int i = this.size - 1; i >= 0; i--)
+            {
+                if (this.get(i)
+                        .getId()
+                        .equals(chatMessage.getId()))
+                {
+                    return;
+                }
+            }
+
+            if (this.size == this.slots.length)
+            {
+                // 比保留的所有消息都旧，不属于最新的 capacity 条
+                if (ORDER.compare(chatMessage, this.get(0)) < 0)
+                {
+                    this.exhaustive = false;
+
+                    return;
+                }
+
+                this.estimatedBytes -= weigh(this.get(0));
+                this.slots[this.start] = null;
+                this.start             = (this.start + 1) % this.slots.length;
+                this.size--;
+                this.exhaustive = false;
+            }
+
+            // 追加到末尾后向前移动到有序位置，时间戳单调递增时不需要移动
+            var index = this.size++;
+
+            while (index > 0 && ORDER.compare(this.get(index - 1), chatMessage) > 0)
+            {
+                this.set(index, this.get(index - 1));
+                index--;
+            }
+
+            this.set(index, chatMessage);
+            this.estimatedBytes += weigh(chatMessage);
+        }
+
+        synchronized int estimatedBytes()
+        {
+            return this.estimatedBytes + this.slots.length * 4;
+        }
+
+        private ChatMessage get(final int index)
+        {
+            return this.slots[(this.start + index) % this.slots.length];
+        }
+
+        private void set(final int index, final ChatMessage chatMessage)
+        {
+            this.slots[(this.start + index) % this.slots.length] = chatMessage;
+        }
+
+        private static int weigh(final ChatMessage chatMessage)
+        {
+            return MESSAGE_OVERHEAD + 2 * (length(chatMessage.getId()) +
+                                           length(chatMessage.getChatRoomId()) +
+                                           length(chatMessage.getSenderId()) +
+                                           length(chatMessage.getReceiverId()) +
+                                           length(chatMessage.getContent()));
+        }
+
+        private static int length(@Nullable final String value)
+        {
+            return value == null ? 0 : value.length();
+        }
+    }
+}
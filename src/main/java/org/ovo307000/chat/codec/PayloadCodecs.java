@@ -0,0 +1,119 @@
+package org.ovo307000.chat.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * STOMP 消息体的编解码器
+ *
+ * <p>
+ * JSON 直接使用 Spring Boot 配置的共享 ObjectMapper（含 JSR-310 模块，与 REST 接口的序列化方式一致）；
+ * CBOR 使用同一个 Jackson2ObjectMapperBuilder 构建，模块和特性与 JSON 保持一致，只是换成二进制格式。
+ * 映射器是线程安全的，整个应用只创建一次。
+ * </p>
+ */
+@Getter
+@Component
+public class PayloadCodecs
+{
+    /* 客户端发送 CBOR 消息时使用的 content-type */
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    /*
+     * 服务端发送 CBOR 消息时使用的 content-type。
+     * StompSubProtocolHandler 只对与 application/octet-stream 兼容的消息使用 WebSocket 二进制帧，
+     * 其余一律按 UTF-8 文本帧发送（会破坏二进制内容），因此用参数标明实际格式
+     */
+    public static final MimeType CBOR_FRAME = new MimeType("application", "octet-stream", Map.of("format", "cbor"));
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    /**
+     * @param objectMapper        Spring Boot 配置的共享 ObjectMapper
+     * @param objectMapperBuilder Spring Boot 配置的 ObjectMapper 构建器，用于构建配置一致的 CBOR 映射器
+     */
+    public PayloadCodecs(@NonNull final ObjectMapper objectMapper,
+                         @NonNull final Jackson2ObjectMapperBuilder objectMapperBuilder)
+    {
+        this.jsonMapper = objectMapper;
+        this.cborMapper = objectMapperBuilder.factory(new CBORFactory())
+                                             .build();
+    }
+
+    /**
+     * 创建 JSON 消息转换器，消息未指定 content-type 时也按 JSON 处理
+     *
+     * @return JSON 消息转换器
+     */
+    public MessageConverter jsonConverter()
+    {
+        final var resolver  = new DefaultContentTypeResolver();
+        final var converter = new MappingJackson2MessageConverter();
+
+        // 设置解析器的默认MIME类型为应用JSON
+        resolver.setDefaultMimeType(MediaType.APPLICATION_JSON);
+
+        converter.setObjectMapper(this.jsonMapper);
+        converter.setContentTypeResolver(resolver);
+
+        return converter;
+    }
+
+    /**
+     * 创建 CBOR 消息转换器，只处理 content-type 明确为 application/cbor 的消息
+     *
+     * @return CBOR 消息转换器
+     */
+    public MessageConverter cborConverter()
+    {
+        final var converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+
+        converter.setObjectMapper(this.cborMapper);
+        // 严格匹配：没有 content-type 或 content-type 不是 CBOR 的消息交给后面的 JSON 转换器
+        converter.setStrictContentTypeMatch(true);
+
+        return converter;
+    }
+
+    /**
+     * 将 JSON 消息体流式转写为 CBOR，不经过对象绑定
+     *
+     * @param json JSON 消息体
+     * @return 等价的 CBOR 消息体
+     */
+    public byte[] jsonToCbor(final byte[] json)
+    {
+        final var output = new ByteArrayOutputStream(json.length);
+
+        try (final JsonParser parser = this.jsonMapper.createParser(json);
+             final var generator = this.cborMapper.createGenerator(output))
+        {
+            while (parser.nextToken() != null)
+            {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,158 @@
+package org.ovo307000.chat.codec;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按会话协商服务端推送消息的格式
+ *
+ * <p>
+ * 通过原生 WebSocket 端点（/ws-native）连接的客户端，可以在 CONNECT 帧中携带 accept:application/cbor 头，
+ * 此后发往该会话的 JSON 消息会在出站通道上转写为 CBOR，并以 WebSocket 二进制帧发送；
+ * 其余会话（包括所有 SockJS 会话，SockJS 只能传输文本）保持 JSON 不变。
+ * 客户端发往服务端的消息格式由 SEND 帧自身的 content-type 决定，见 {@link PayloadCodecs#cborConverter()}。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PayloadFormatNegotiator implements ChannelInterceptor
+{
+    /* CONNECT 帧中声明期望格式的头 */
+    public static final String ACCEPT_HEADER = "accept";
+
+    /* 握手时写入会话属性，标记该会话支持 WebSocket 二进制帧 */
+    public static final String BINARY_FRAMES_ATTRIBUTE = "chat.binaryFrames";
+
+    private final PayloadCodecs payloadCodecs;
+
+    /* 协商为 CBOR 的会话 */
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 创建握手拦截器，标记通过该端点建立的会话支持二进制帧
+     *
+     * @return 握手拦截器
+     */
+    public static HandshakeInterceptor binaryFramesHandshakeInterceptor()
+    {
+        return new HandshakeInterceptor()
+        {
+            @Override
+            public boolean beforeHandshake(@NonNull final ServerHttpRequest request,
+                                           @NonNull final ServerHttpResponse response,
+                                           @NonNull final WebSocketHandler wsHandler,
+                                           @NonNull final Map<String, Object> attributes)
+            {
+                attributes.put(BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(@NonNull final ServerHttpRequest request,
+                                       @NonNull final ServerHttpResponse response,
+                                       @NonNull final WebSocketHandler wsHandler,
+                                       @Nullable final Exception exception)
+            {
+            }
+        };
+    }
+
+    @EventListener
+    public void onSessionConnect(final SessionConnectEvent event)
+    {
+        final var accessor   = StompHeaderAccessor.wrap(event.getMessage());
+        final var sessionId  = accessor.getSessionId();
+        final var attributes = accessor.getSessionAttributes();
+        final var accept     = accessor.getFirstNativeHeader(ACCEPT_HEADER);
+
+        if (sessionId == null || accept == null || !acceptsCbor(accept))
+        {
+            return;
+        }
+
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE)))
+        {
+            log.debug("Session {} asked for CBOR over a text-only transport, keeping JSON", sessionId);
+
+            return;
+        }
+
+        this.cborSessions.add(sessionId);
+    }
+
+    @EventListener
+    public void onSessionDisconnect(final SessionDisconnectEvent event)
+    {
+        this.cborSessions.remove(event.getSessionId());
+    }
+
+    /**
+     * 会话是否协商为 CBOR
+     *
+     * @param sessionId 会话 ID
+     * @return 协商为 CBOR 时返回 true
+     */
+    public boolean isCborSession(@NonNull final String sessionId)
+    {
+        return this.cborSessions.contains(sessionId);
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel)
+    {
+        final var headers   = message.getHeaders();
+        final var sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (sessionId == null ||
+            !this.cborSessions.contains(sessionId) ||
+            SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE ||
+            !(message.getPayload() instanceof byte[] json))
+        {
+            return message;
+        }
+
+        final var accessor    = SimpMessageHeaderAccessor.wrap(message);
+        final var contentType = accessor.getContentType();
+
+        if (contentType == null || !MediaType.APPLICATION_JSON.isCompatibleWith(contentType))
+        {
+            return message;
+        }
+
+        accessor.setContentType(PayloadCodecs.CBOR_FRAME);
+
+        return MessageBuilder.createMessage(this.payloadCodecs.jsonToCbor(json), accessor.getMessageHeaders());
+    }
+
+    private static boolean acceptsCbor(final String accept)
+    {
+        return MimeTypeUtils.parseMimeTypes(accept)
+                            .stream()
+                            .anyMatch(PayloadCodecs.APPLICATION_CBOR::equalsTypeAndSubtype);
+    }
+}
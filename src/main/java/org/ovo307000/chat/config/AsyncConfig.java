@@ -1,31 +1,72 @@
 package org.ovo307000.chat.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 /**
  * 配置异步任务执行器
+ *
+ * <p>
+ * 服务层所有阻塞的 MongoDB I/O 都通过名为 taskExecutor 的执行器运行，而不是 ForkJoinPool.commonPool()。
+ * 执行模式由 chat.executor.mode 决定：platform 为有界平台线程池，virtual 为每任务一个虚拟线程。
+ * </p>
  */
+@Slf4j
 @Configuration
 public class AsyncConfig
 {
     /**
      * 配置任务执行器
      *
-     * @return 配置好的线程池任务执行器实例
+     * @param chatProperties 聊天服务配置
+     * @return 配置好的任务执行器实例
      */
     @Bean
-    public ThreadPoolTaskExecutor taskExecutor()
+    public AsyncTaskExecutor taskExecutor(final ChatProperties chatProperties)
+    {
+        final var config = chatProperties.getExecutor();
+
+        if (config.getMode() == ChatProperties.Executor.Mode.VIRTUAL)
+        {
+            try
+            {
+                return virtualThreadExecutor(config);
+            }
+            catch (UnsupportedOperationException e)
+            {
+                log.warn("Virtual threads are not supported on Java {}, falling back to platform thread pool",
+                         Runtime.version()
+                                .feature());
+            }
+        }
+
+        return platformThreadExecutor(config);
+    }
+
+    /**
+     * 创建有界的平台线程池
+     *
+     * @param config 执行器配置
+     * @return 初始化完成的线程池任务执行器
+     */
+    public static ThreadPoolTaskExecutor platformThreadExecutor(final ChatProperties.Executor config)
     {
         var executor = new ThreadPoolTaskExecutor();
 
         // 设置核心线程池大小
-        executor.setCorePoolSize(10);
+        executor.setCorePoolSize(config.getCorePoolSize());
         // 设置最大线程池大小
-        executor.setMaxPoolSize(20);
+        executor.setMaxPoolSize(config.getMaxPoolSize());
         // 设置队列容量
-        executor.setQueueCapacity(10);
+        executor.setQueueCapacity(config.getQueueCapacity());
+        // 队列已满时由提交任务的线程自己执行，向上游施加背压而不是丢弃任务
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
         // 设置线程名称前缀
         executor.setThreadNamePrefix("chat-");
         // 初始化线程池
@@ -33,4 +74,27 @@ public class AsyncConfig
 
         return executor;
     }
+
+    /**
+     * 创建每任务一个虚拟线程的执行器
+     *
+     * @param config 执行器配置
+     * @return 虚拟线程任务执行器
+     * @throws UnsupportedOperationException 如果当前 JDK 不支持虚拟线程
+     */
+    public static SimpleAsyncTaskExecutor virtualThreadExecutor(final ChatProperties.Executor config)
+    {
+        var executor = new SimpleAsyncTaskExecutor("chat-vt-");
+
+        // 启用虚拟线程，JDK 21 以下会抛出 UnsupportedOperationException
+        executor.setVirtualThreads(true);
+
+        // 限制并发数，避免瞬间创建的大量虚拟线程耗尽 MongoDB 连接池
+        if (config.getVirtualConcurrencyLimit() > 0)
+        {
+            executor.setConcurrencyLimit(config.getVirtualConcurrencyLimit());
+        }
+
+        return executor;
+    }
 }
@@ -0,0 +1,79 @@
+package org.ovo307000.chat.config;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.broker.ShardedBrokerMessageHandler;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+
+/**
+ * 消息代理配置
+ *
+ * <p>
+ * WebsocketConfig 仍然通过 enableSimpleBroker 声明代理处理的目的地前缀，
+ * 当 chat.broker.mode 为 sharded 时，用 ShardedBrokerMessageHandler 替换 Spring 创建的 SimpleBrokerMessageHandler，
+ * 沿用其入站、出站、代理通道和目的地前缀，因此控制器、SimpMessagingTemplate 和用户目的地解析都无需改动。
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "chat.broker", name = "mode", havingValue = "sharded")
+public class BrokerConfig
+{
+    /* Spring 创建 SimpleBroker 时使用的 Bean 名称，见 AbstractMessageBrokerConfiguration */
+    private static final String SIMPLE_BROKER_BEAN_NAME = "simpleBrokerMessageHandler";
+
+    /**
+     * 注册替换消息代理的后置处理器，BeanPostProcessor 必须通过静态方法声明
+     *
+     * @param chatProperties 聊天服务配置，延迟获取以免过早初始化
+     * @param chatMetrics    聊天指标，延迟获取以免过早初始化
+     * @return 后置处理器
+     */
+    @Bean
+    public static BeanPostProcessor shardedBrokerPostProcessor(final ObjectProvider<ChatProperties> chatProperties,
+                                                               final ObjectProvider<ChatMetrics> chatMetrics)
+    {
+        return new ShardedBrokerPostProcessor(chatProperties, chatMetrics);
+    }
+
+    @Slf4j
+    @RequiredArgsConstructor
+    static class ShardedBrokerPostProcessor implements BeanPostProcessor
+    {
+        private final ObjectProvider<ChatProperties> chatProperties;
+        private final ObjectProvider<ChatMetrics>    chatMetrics;
+
+        @Override
+        public Object postProcessAfterInitialization(@NonNull final Object bean, @NonNull final String beanName)
+        {
+            if (!SIMPLE_BROKER_BEAN_NAME.equals(beanName) || !(bean instanceof SimpleBrokerMessageHandler simple))
+            {
+                return bean;
+            }
+
+            final var sharded = new ShardedBrokerMessageHandler(simple.getClientInboundChannel(),
+                                                                simple.getClientOutboundChannel(),
+                                                                simple.getBrokerChannel(),
+                                                                simple.getDestinationPrefixes(),
+                                                                this.chatProperties.getObject()
+                                                                                   .getBroker()
+                                                                                   .getShards());
+
+            sharded.setHeaderInitializer(simple.getHeaderInitializer());
+            sharded.setApplicationEventPublisher(simple.getApplicationEventPublisher());
+            sharded.setPhase(simple.getPhase());
+            this.chatMetrics.ifAvailable(metrics -> metrics.bindBroker(sharded));
+
+            log.info("Replacing SimpleBroker with ShardedBrokerMessageHandler for prefixes {}",
+                     simple.getDestinationPrefixes());
+
+            return sharded;
+        }
+    }
+}
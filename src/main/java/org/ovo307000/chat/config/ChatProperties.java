@@ -0,0 +1,498 @@
+package org.ovo307000.chat.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.lang.Nullable;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聊天服务的可配置参数，对应配置文件中 chat.* 前缀下的配置项
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "chat")
+public class ChatProperties
+{
+    /* 历史消息分页配置 */
+    private final History history = new History();
+
+    /* 聊天室 ID 本地缓存配置 */
+    private final RoomCache roomCache = new RoomCache();
+
+    /* 各聊天室最近消息的内存缓存配置 */
+    private final RecentMessages recentMessages = new RecentMessages();
+
+    /* 消息序号分配配置 */
+    private final Sequence sequence = new Sequence();
+
+    /* 未读消息配置 */
+    private final Unread unread = new Unread();
+
+    /* 出站消息合并配置 */
+    private final Coalescing coalescing = new Coalescing();
+
+    /* 慢消费者（发送缓慢的 WebSocket 会话）配置 */
+    private final SlowConsumer slowConsumer = new SlowConsumer();
+
+    /* 入站消息限流配置 */
+    private final RateLimit rateLimit = new RateLimit();
+
+    /* 冷数据归档配置 */
+    private final Archive archive = new Archive();
+
+    /* 消息全文检索配置 */
+    private final Search search = new Search();
+
+    /* 数据迁移配置 */
+    private final Migration migration = new Migration();
+
+    /* 消息持久化配置 */
+    private final Persistence persistence = new Persistence();
+
+    /* 阻塞任务执行器配置 */
+    private final Executor executor = new Executor();
+
+    /* STOMP 消息代理配置 */
+    private final Broker broker = new Broker();
+
+    /* 存储引擎配置 */
+    private final Storage storage = new Storage();
+
+    /**
+     * 历史消息分页配置
+     */
+    @Getter
+    @Setter
+    public static class History
+    {
+        /* 未指定分页大小时的默认页大小 */
+        private int defaultPageSize = 50;
+
+        /* 单页允许返回的最大消息数，超过时会被截断到该值 */
+        private int maxPageSize = 200;
+
+        /* 流式导出时 MongoDB 游标每批拉取的文档数，决定导出过程中驻留内存的消息数上限 */
+        private int exportBatchSize = 500;
+
+        /**
+         * 将客户端请求的页大小规范到 [1, maxPageSize] 区间内，未指定时使用默认页大小
+         *
+         * @param requested 客户端请求的页大小，可以为空
+         * @return 实际使用的页大小
+         */
+        public int resolvePageSize(@Nullable final Integer requested)
+        {
+            if (requested == null || requested <= 0)
+            {
+                return Math.min(this.defaultPageSize, this.maxPageSize);
+            }
+
+            return Math.min(requested, this.maxPageSize);
+        }
+    }
+
+    /**
+     * 聊天室 ID 本地缓存配置
+     */
+    @Getter
+    @Setter
+    public static class RoomCache
+    {
+        /* 缓存的最大条目数，超过后按 Window TinyLFU 策略淘汰 */
+        private long maximumSize = 100_000;
+
+        /* 条目在多长时间内未被访问后过期 */
+        private Duration expireAfterAccess = Duration.ofMinutes(30);
+
+        /* “聊天室不存在”这一否定结果的缓存时长，应明显短于 expireAfterAccess */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+    }
+
+    /**
+     * 各聊天室最近消息的内存缓存配置
+     */
+    @Getter
+    @Setter
+    public static class RecentMessages
+    {
+        /* 是否启用，关闭后首页历史记录每次都查询数据库 */
+        private boolean enabled = true;
+
+        /* 每个聊天室最多缓存的最近消息数，应不小于 history.default-page-size + 1，否则默认页无法由缓存提供 */
+        private int capacity = 64;
+
+        /* 所有聊天室缓存的消息合计占用内存的估计上限，超过后按 Window TinyLFU 策略淘汰冷门聊天室 */
+        private DataSize maxMemory = DataSize.ofMegabytes(64);
+    }
+
+    /**
+     * 消息序号分配配置，见 ChatSequenceAllocator
+     */
+    @Getter
+    @Setter
+    public static class Sequence
+    {
+        /* 从数据库恢复计数器时使用的分段锁数量，不同分段的聊天室可以并行恢复 */
+        private int stripes = 64;
+
+        /* 按序号增量同步时单次返回的最大消息数 */
+        private int maxDeltaSize = 500;
+    }
+
+    /**
+     * 未读消息配置，见 UnreadService 和 ReadCursorWriter
+     */
+    @Getter
+    @Setter
+    public static class Unread
+    {
+        /* 读取位置批量写入数据库的间隔（毫秒） */
+        private long flushIntervalMillis = 1000;
+
+        /* 上线时每个聊天室随未读摘要下发的最大消息数，其余消息由客户端按序号增量同步 */
+        private int maxMessagesPerRoom = 20;
+    }
+
+    /**
+     * 出站消息合并配置，见 NotificationCoalescer；客户端在订阅时声明的参数超过这里的上限时会被截断
+     */
+    @Getter
+    @Setter
+    public static class Coalescing
+    {
+        /* 客户端可以请求的最大合并窗口 */
+        private Duration maxWindow = Duration.ofMillis(50);
+
+        /* 单个合并帧最多携带的消息数，客户端未指定时也使用该值 */
+        private int maxBatchSize = 64;
+    }
+
+    /**
+     * 慢消费者配置，见 SlowConsumerSessionDecorator 和 SlowConsumerRegistry
+     */
+    @Getter
+    @Setter
+    public static class SlowConsumer
+    {
+        /* 单次发送的最长时间，超过后断开会话，释放被占用的出站线程 */
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+
+        /* 每个会话等待发送的帧的最大字节数，超过后按 policy 处理 */
+        private DataSize sendBufferSizeLimit = DataSize.ofKilobytes(512);
+
+        /* 等待发送的帧超过上限时的处理方式，默认与 Spring 一样断开会话，客户端重连后重新拉取历史 */
+        private Policy policy = Policy.DISCONNECT;
+
+        /* 不允许丢弃或合并的 MESSAGE 帧的目的地（Ant 风格），其余 MESSAGE 帧都可以通过增量同步补回 */
+        private List<String> criticalDestinations = new ArrayList<>(List.of("/user/*/queue/unread"));
+
+        /* 是否为每个会话注册积压字节数的指标 */
+        private boolean perSessionMetrics = true;
+
+        /* 检查发送超时的间隔（毫秒），没有新消息触发检查的卡住会话也会被断开 */
+        private long checkIntervalMillis = 1_000;
+
+        public enum Policy
+        {
+            /* 从最旧的帧开始丢弃非关键帧，直到低于上限；客户端收不到任何通知，只适用于能自行增量同步的客户端 */
+            DROP_OLDEST,
+
+            /* 将全部非关键帧替换为每个订阅一个摘要帧，告知客户端丢弃的消息数 */
+            SUMMARIZE,
+
+            /* 直接断开会话 */
+            DISCONNECT
+        }
+    }
+
+    /**
+     * 入站消息限流配置，见 InboundRateLimiter
+     */
+    @Getter
+    @Setter
+    public static class RateLimit
+    {
+        /* 是否启用限流 */
+        private boolean enabled = true;
+
+        /* 超过限制的帧的处理方式，默认只丢弃；error 会在每次超限时断开会话 */
+        private RejectAction rejectAction = RejectAction.DROP;
+
+        /* 令牌桶在多长时间没有使用后被回收，回收的桶已经补满，重新创建不影响限流结果 */
+        private Duration idleTimeout = Duration.ofMinutes(5);
+
+        /* 回收空闲令牌桶的间隔（毫秒） */
+        private long evictionIntervalMillis = 60_000;
+
+        /* 按目的地（Ant 风格）配置的限制，SEND 帧使用第一个匹配的规则，没有匹配的规则时不限流 */
+        private List<Rule> rules = new ArrayList<>(List.of(new Rule("/app/chat", 10, 20, 10, 20),
+                                                           new Rule("/app/**", 20, 40, 20, 40)));
+
+        public enum RejectAction
+        {
+            /* 丢弃帧，并向客户端发送 ERROR 帧；按 STOMP 协议，发送 ERROR 帧后连接会被关闭 */
+            ERROR,
+
+            /* 只丢弃帧 */
+            DROP
+        }
+
+        /**
+         * 一个目的地的限制，速率或容量不大于 0 时不限制对应的维度
+         */
+        @Getter
+        @Setter
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Rule
+        {
+            /* 目的地（Ant 风格） */
+            private String destination;
+
+            /* 每个用户每秒补充的令牌数，同一用户的所有会话共用 */
+            private double userRate;
+
+            /* 每个用户的令牌桶容量，即允许的突发帧数 */
+            private int userBurst;
+
+            /* 每个会话每秒补充的令牌数 */
+            private double sessionRate;
+
+            /* 每个会话的令牌桶容量 */
+            private int sessionBurst;
+        }
+    }
+
+    /**
+     * 冷数据归档配置，见 ChatArchive 和 ChatArchiver
+     */
+    @Getter
+    @Setter
+    public static class Archive
+    {
+        /* 是否启用，关闭时不归档，也不读取已有的归档 */
+        private boolean enabled = false;
+
+        /* 早于该时长的消息会被移出 MongoDB，写入本地归档 */
+        private Duration olderThan = Duration.ofDays(90);
+
+        /* 归档文件的根目录，每个聊天室一个子目录 */
+        private String directory = "data/archive";
+
+        /* 单个分段文件的大小，写满后开始新的分段 */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /* 稀疏索引的间隔，每多少条记录一个索引项 */
+        private int indexInterval = 64;
+
+        /* 每次从 MongoDB 移出的最大消息数 */
+        private int batchSize = 1_000;
+
+        /* 归档任务的执行间隔（毫秒） */
+        private long runIntervalMillis = 3_600_000;
+    }
+
+    /**
+     * 消息全文检索配置，见 MessageSearchIndex
+     */
+    @Getter
+    @Setter
+    public static class Search
+    {
+        /* 是否启用，关闭时不建立索引，检索接口返回 503 */
+        private boolean enabled = true;
+
+        /* 索引分段文件所在的目录 */
+        private String directory = "data/search";
+
+        /* 内存中的分段达到该文档数时写入磁盘 */
+        private int flushThreshold = 10_000;
+
+        /* 定时将内存中的分段写入磁盘的间隔（毫秒），也是进程崩溃时最多丢失的索引时间窗口 */
+        private long flushIntervalMillis = 5_000;
+
+        /* 同一层级的分段达到该数量时合并为一个 */
+        private int mergeFactor = 10;
+
+        /* 合并后的分段最多包含的文档数，达到后不再参与合并 */
+        private int maxSegmentDocs = 2_000_000;
+
+        /* 未指定分页大小时的默认页大小 */
+        private int defaultPageSize = 20;
+
+        /* 允许的最大页大小 */
+        private int maxPageSize = 100;
+
+        /* 最多可以翻到的结果数，限制深分页的代价 */
+        private int maxResults = 1_000;
+
+        /* 首次启动时从 MongoDB 和归档回填索引的游标批大小 */
+        private int backfillBatchSize = 500;
+
+        /**
+         * 根据客户端请求的页大小计算实际页大小
+         *
+         * @param requested 客户端请求的页大小，可以为空
+         * @return 实际使用的页大小
+         */
+        public int resolvePageSize(@Nullable final Integer requested)
+        {
+            if (requested == null || requested <= 0)
+            {
+                return Math.min(this.defaultPageSize, this.maxPageSize);
+            }
+
+            return Math.min(requested, this.maxPageSize);
+        }
+    }
+
+    /**
+     * 数据迁移配置
+     */
+    @Getter
+    @Setter
+    public static class Migration
+    {
+        /* 启动时是否将旧版本的镜像双文档聊天室合并为规范化的单文档聊天室 */
+        private boolean mergeMirroredChatRooms = true;
+    }
+
+    /**
+     * 消息持久化配置
+     */
+    @Getter
+    @Setter
+    public static class Persistence
+    {
+        /* 持久化模式 */
+        private Mode mode = Mode.DIRECT;
+
+        /* 写后（write-behind）模式下单批写入的最大消息数 */
+        private int batchSize = 256;
+
+        /* 写后模式下消息在队列中等待的最长时间，到期后即使未凑满一批也会写入 */
+        private Duration maxLatency = Duration.ofMillis(10);
+
+        /* 写后队列的容量 */
+        private int queueCapacity = 10_000;
+
+        /* 队列已满时入队的最长等待时间，超时后保存失败，以此向上游施加背压 */
+        private Duration offerTimeout = Duration.ofSeconds(1);
+
+        /* 关闭时等待剩余消息写入的最长时间 */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+        public enum Mode
+        {
+            /* 每条消息单独保存 */
+            DIRECT,
+            /* 消息先进入内存队列，按批大小或最大延迟批量写入 */
+            WRITE_BEHIND
+        }
+    }
+
+    /**
+     * 阻塞任务（MongoDB I/O 等）执行器配置，见 AsyncConfig
+     */
+    @Getter
+    @Setter
+    public static class Executor
+    {
+        /* 执行模式 */
+        private Mode mode = Mode.PLATFORM;
+
+        /* 平台线程池的核心线程数 */
+        private int corePoolSize = 10;
+
+        /* 平台线程池的最大线程数 */
+        private int maxPoolSize = 20;
+
+        /* 平台线程池的队列容量，队列已满时由提交任务的线程自己执行（背压） */
+        private int queueCapacity = 1_000;
+
+        /* 虚拟线程模式下同时执行的最大任务数，小于等于 0 表示不限制 */
+        private int virtualConcurrencyLimit = 0;
+
+        /* 客户端入站通道的执行方式 */
+        private InboundMode inboundMode = InboundMode.ORDERED;
+
+        /* ordered 模式下的线程数，小于等于 0 时为 CPU 核数的两倍 */
+        private int inboundThreads = 0;
+
+        /* ordered 模式下的保序通道数，小于等于 0 时为线程数的 64 倍 */
+        private int inboundStripes = 0;
+
+        public enum Mode
+        {
+            /* 有界的平台线程池 */
+            PLATFORM,
+            /* 每个任务一个虚拟线程，需要 JDK 21 及以上，否则退化为平台线程池 */
+            VIRTUAL
+        }
+
+        public enum InboundMode
+        {
+            /* Spring 默认的入站线程池，同一会话的帧可能乱序处理 */
+            DEFAULT,
+            /* SessionStripedExecutor，同一会话的帧按顺序处理，不同会话并行 */
+            ORDERED
+        }
+    }
+
+    /**
+     * STOMP 消息代理配置，见 BrokerConfig
+     */
+    @Getter
+    @Setter
+    public static class Broker
+    {
+        /* 代理实现 */
+        private Mode mode = Mode.SIMPLE;
+
+        /* 分片代理的分片数，小于等于 0 时使用 CPU 核数 */
+        private int shards = 0;
+
+        public enum Mode
+        {
+            /* Spring 内置的 SimpleBroker */
+            SIMPLE,
+            /* 按会话分片、按目的地直接索引的 ShardedBrokerMessageHandler */
+            SHARDED
+        }
+    }
+
+    /**
+     * 存储引擎配置，见 org.ovo307000.chat.storage
+     */
+    @Getter
+    @Setter
+    public static class Storage
+    {
+        /* 存储引擎 */
+        private Engine engine = Engine.MONGO;
+
+        /* 内存引擎是否把数据定时保存为本地快照，并在启动时从快照恢复 */
+        private boolean snapshotEnabled = false;
+
+        /* 内存引擎的快照目录 */
+        private String snapshotDirectory = "data/storage";
+
+        /* 内存引擎保存快照的间隔（毫秒），数据没有变化时跳过 */
+        private long snapshotIntervalMillis = 60_000;
+
+        public enum Engine
+        {
+            /* MongoDB，通过 Spring Data 仓库访问 */
+            MONGO,
+            /* 进程内存，不需要数据库，重启后只能从快照恢复 */
+            MEMORY
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.ovo307000.chat.config;
+
+import org.ovo307000.chat.repository.ChatMessageRepository;
+import org.ovo307000.chat.storage.ConditionalOnMongoStorage;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+/**
+ * Spring Data MongoDB 仓库配置
+ *
+ * <p>
+ * 仓库只在 MongoDB 存储引擎下注册，内存引擎不创建任何仓库，
+ * MongoDB 客户端和模板的自动配置也会被排除，见 {@link StorageEngineEnvironmentPostProcessor}。
+ * </p>
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnMongoStorage
+@EnableMongoRepositories(basePackageClasses = ChatMessageRepository.class)
+@EnableReactiveMongoRepositories(basePackageClasses = ChatMessageRepository.class)
+public class MongoRepositoryConfig
+{
+}
@@ -0,0 +1,116 @@
+package org.ovo307000.chat.config;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.outbound.SlowConsumerRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * 慢消费者处理配置
+ *
+ * <p>
+ * WebsocketConfig 通过 WebSocketTransportRegistration 设置每个会话的发送时间和缓冲区上限，
+ * Spring 默认用 ConcurrentWebSocketSessionDecorator 执行这两个上限，超过缓冲区上限时只能断开会话或不加区分地丢弃最旧的帧。
+ * 这里用子类替换 Spring 创建的 SubProtocolWebSocketHandler，改用 SlowConsumerSessionDecorator 装饰会话，
+ * 按 chat.slow-consumer.policy 处理积压，上限仍然取自 WebSocketTransportRegistration。
+ * </p>
+ */
+@Configuration
+public class SlowConsumerConfig
+{
+    /* Spring 创建 SubProtocolWebSocketHandler 时使用的 Bean 名称，见 WebSocketMessageBrokerConfigurationSupport */
+    private static final String HANDLER_BEAN_NAME = "subProtocolWebSocketHandler";
+
+    /**
+     * 注册替换 WebSocket 处理器的后置处理器，BeanPostProcessor 必须通过静态方法声明
+     *
+     * @param clientInboundChannel  客户端入站通道，延迟获取以免过早初始化
+     * @param clientOutboundChannel 客户端出站通道，延迟获取以免过早初始化
+     * @param slowConsumerRegistry  会话积压跟踪，延迟获取以免过早初始化
+     * @return 后置处理器
+     */
+    @Bean
+    public static BeanPostProcessor slowConsumerPostProcessor(@Qualifier("clientInboundChannel") final ObjectProvider<SubscribableChannel> clientInboundChannel,
+                                                              @Qualifier("clientOutboundChannel") final ObjectProvider<SubscribableChannel> clientOutboundChannel,
+                                                              final ObjectProvider<SlowConsumerRegistry> slowConsumerRegistry)
+    {
+        return new SlowConsumerPostProcessor(clientInboundChannel, clientOutboundChannel, slowConsumerRegistry);
+    }
+
+    @Slf4j
+    @RequiredArgsConstructor
+    static class SlowConsumerPostProcessor implements BeanPostProcessor
+    {
+        private final ObjectProvider<SubscribableChannel>  clientInboundChannel;
+        private final ObjectProvider<SubscribableChannel>  clientOutboundChannel;
+        private final ObjectProvider<SlowConsumerRegistry> slowConsumerRegistry;
+
+        @Override
+        public Object postProcessBeforeInitialization(@NonNull final Object bean, @NonNull final String beanName)
+        {
+            // 只替换 Spring 创建的原始处理器，此时端点还没有注册，协议处理器和传输上限会加到替换后的处理器上
+            if (!HANDLER_BEAN_NAME.equals(beanName) || bean.getClass() != SubProtocolWebSocketHandler.class)
+            {
+                return bean;
+            }
+
+            final var original = (SubProtocolWebSocketHandler) bean;
+            final var handler = new SlowConsumerWebSocketHandler(this.clientInboundChannel.getObject(),
+                                                                 this.clientOutboundChannel.getObject(),
+                                                                 this.slowConsumerRegistry.getObject());
+
+            handler.setPhase(original.getPhase());
+
+            log.info("Replacing SubProtocolWebSocketHandler with slow-consumer aware session decoration");
+
+            return handler;
+        }
+    }
+
+    /**
+     * 用 SlowConsumerSessionDecorator 装饰会话的 SubProtocolWebSocketHandler
+     */
+    static class SlowConsumerWebSocketHandler extends SubProtocolWebSocketHandler
+    {
+        private final SlowConsumerRegistry slowConsumerRegistry;
+
+        SlowConsumerWebSocketHandler(final MessageChannel clientInboundChannel,
+                                     final SubscribableChannel clientOutboundChannel,
+                                     final SlowConsumerRegistry slowConsumerRegistry)
+        {
+            super(clientInboundChannel, clientOutboundChannel);
+
+            this.slowConsumerRegistry = slowConsumerRegistry;
+        }
+
+        @Override
+        protected WebSocketSession decorateSession(@NonNull final WebSocketSession session)
+        {
+            return this.slowConsumerRegistry.decorate(session, this.getSendTimeLimit(), this.getSendBufferSizeLimit());
+        }
+
+        @Override
+        public void afterConnectionClosed(@NonNull final WebSocketSession session, @NonNull final CloseStatus closeStatus)
+                throws Exception
+        {
+            try
+            {
+                super.afterConnectionClosed(session, closeStatus);
+            }
+            finally
+            {
+                this.slowConsumerRegistry.remove(session.getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.ovo307000.chat.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.data.mongo.*;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 使用内存存储引擎时排除 MongoDB 的自动配置
+ *
+ * <p>
+ * MongoDB 的客户端、模板和仓库都由自动配置创建，其中模板在启动时按实体注解建索引，
+ * 没有可用的 MongoDB 时应用会启动失败。chat.storage.engine 为 memory 时，
+ * 把这些自动配置追加到 spring.autoconfigure.exclude 中（保留已配置的排除项），其余情况不做任何修改。
+ * </p>
+ */
+public class StorageEngineEnvironmentPostProcessor implements EnvironmentPostProcessor
+{
+    /* 追加的排除项所在的属性源名称 */
+    static final String PROPERTY_SOURCE_NAME = "chatStorageEngineExcludes";
+
+    private static final String EXCLUDE_PROPERTY = "spring.autoconfigure.exclude";
+
+    private static final List<String> MONGO_AUTO_CONFIGURATIONS = List.of(MongoAutoConfiguration.class.getName(),
+                                                                          MongoReactiveAutoConfiguration.class.getName(),
+                                                                          MongoDataAutoConfiguration.class.getName(),
+                                                                          MongoReactiveDataAutoConfiguration.class.getName(),
+                                                                          MongoRepositoriesAutoConfiguration.class.getName(),
+                                                                          MongoReactiveRepositoriesAutoConfiguration.class.getName());
+
+    @Override
+    public void postProcessEnvironment(final ConfigurableEnvironment environment, final SpringApplication application)
+    {
+        final var binder = Binder.get(environment);
+        final var engine = binder.bind("chat.storage.engine", ChatProperties.Storage.Engine.class)
+                                 .orElse(ChatProperties.Storage.Engine.MONGO);
+
+        if (engine != ChatProperties.Storage.Engine.MEMORY)
+        {
+            return;
+        }
+
+        final var excludes = new ArrayList<>(binder.bind(EXCLUDE_PROPERTY, String[].class)
+                                                   .map(List::of)
+                                                   .orElse(List.of()));
+        excludes.addAll(MONGO_AUTO_CONFIGURATIONS);
+
+        environment.getPropertySources()
+                   .addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME,
+                                                   Map.of(EXCLUDE_PROPERTY, String.join(",", excludes))));
+    }
+}
@@ -1,21 +1,35 @@
 package org.ovo307000.chat.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.codec.PayloadFormatNegotiator;
+import org.ovo307000.chat.inbound.InboundRateLimiter;
+import org.ovo307000.chat.inbound.SessionStripedExecutor;
+import org.ovo307000.chat.metrics.ReceiveTimestampInterceptor;
+import org.ovo307000.chat.outbound.NotificationCoalescer;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.MediaType;
 import org.springframework.lang.NonNull;
-import org.springframework.messaging.converter.DefaultContentTypeResolver;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import java.util.List;
 
 @Configuration
+@RequiredArgsConstructor
 public class WebsocketConfig implements WebSocketMessageBrokerConfigurer
 {
+    private final PayloadCodecs               payloadCodecs;
+    private final PayloadFormatNegotiator     payloadFormatNegotiator;
+    private final NotificationCoalescer       notificationCoalescer;
+    private final ReceiveTimestampInterceptor receiveTimestampInterceptor;
+    private final InboundRateLimiter          inboundRateLimiter;
+    private final SessionStripedExecutor      sessionStripedExecutor;
+    private final ChatProperties              chatProperties;
+
     /**
      * 注册STOMP端点以启用WebSocket通信。
      * 此方法配置了WebSocket端点及其跨域设置，并启用了SockJS作为WebSocket的备用方案。
@@ -34,37 +48,80 @@ public class WebsocketConfig implements WebSocketMessageBrokerConfigurer
                 .setAllowedOrigins("*")
                 // 启用 SockJS，允许客户端使用 SockJS，如果浏览器不支持 WebSocket，可以使用 SockJS
                 .withSockJS();
+
+        // 原生 WebSocket 端点，不经过 SockJS，可以使用二进制帧传输 CBOR 消息
+        registry.addEndpoint("/ws-native")
+                .setAllowedOrigins("*")
+                .addInterceptors(PayloadFormatNegotiator.binaryFramesHandshakeInterceptor());
     }
 
 
     /**
-     * 配置消息转换器以支持JSON格式。
+     * 配置消息转换器以支持JSON和CBOR格式。
+     * content-type 为 application/cbor 的消息由 CBOR 转换器处理，其余消息按 JSON 处理，
+     * 两者共用 Spring Boot 配置的 ObjectMapper 设置，见 PayloadCodecs。
      *
      * @param messageConverters 消息转换器列表，用于添加新的转换器
-     * @return 返回false，指示配置消息转换器是可选操作
+     * @return 返回 false，不再追加 Spring 的默认转换器；默认转换器中的 MappingJackson2MessageConverter 使用独立的 ObjectMapper，
+     * 与 PayloadCodecs 的配置不一致
      */
     @Override
     public boolean configureMessageConverters(@NonNull final List<MessageConverter> messageConverters)
     {
-        // 创建一个默认内容类型解析器实例
-        final var resolver = new DefaultContentTypeResolver();
-        // 创建一个用于JSON序列化和反序列化的消息转换器实例
-        final var converter = new MappingJackson2MessageConverter();
+        // CBOR 转换器严格匹配 content-type，必须排在 JSON 转换器之前
+        messageConverters.add(this.payloadCodecs.cborConverter());
+        messageConverters.add(this.payloadCodecs.jsonConverter());
+
+        return false;
+    }
 
-        // 设置解析器的默认MIME类型为应用JSON
-        resolver.setDefaultMimeType(MediaType.APPLICATION_JSON);
 
-        // 为转换器设置一个新的对象映射器，用于处理JSON序列化和反序列化
-        converter.setObjectMapper(new ObjectMapper());
-        // 设置转换器的内容类型解析器，以便确定如何映射消息体
-        converter.setContentTypeResolver(resolver);
+    /**
+     * 配置入站通道：SEND 帧先记录收到的时间（用于 chat.message.process 指标），再在到达控制器之前按用户和会话限流；
+     * chat.executor.inbound-mode 为 ordered 时，同一会话的帧按发送顺序处理，不同会话并行
+     *
+     * @param registration 入站通道配置
+     */
+    @Override
+    public void configureClientInboundChannel(final ChannelRegistration registration)
+    {
+        registration.interceptors(this.receiveTimestampInterceptor, this.inboundRateLimiter);
 
-        // 向给定的消息转换器列表中添加新的JSON转换器
-        messageConverters.add(converter);
+        if (this.chatProperties.getExecutor()
+                               .getInboundMode() == ChatProperties.Executor.InboundMode.ORDERED)
+        {
+            registration.executor(this.sessionStripedExecutor);
+        }
+    }
 
 
-        // TODO 2024/9/28 15:21 @solow 这里返回 临时返回 false，暂时不注册消息转换器
-        return false;
+    /**
+     * 配置出站通道：先合并开启了合并的订阅的消息，再为协商了 CBOR 的会话转写消息体
+     *
+     * @param registration 出站通道配置
+     */
+    @Override
+    public void configureClientOutboundChannel(final ChannelRegistration registration)
+    {
+        registration.interceptors(this.notificationCoalescer, this.payloadFormatNegotiator);
+    }
+
+
+    /**
+     * 配置每个 WebSocket 会话的发送上限：单次发送的最长时间，以及等待发送的帧的最大字节数。
+     * 超过上限后如何处理由 SlowConsumerConfig 中的会话装饰器按 chat.slow-consumer.policy 决定。
+     *
+     * @param registration 传输配置
+     */
+    @Override
+    public void configureWebSocketTransport(final WebSocketTransportRegistration registration)
+    {
+        final var config = this.chatProperties.getSlowConsumer();
+
+        registration.setSendTimeLimit(Math.toIntExact(config.getSendTimeLimit()
+                                                             .toMillis()))
+                    .setSendBufferSizeLimit(Math.toIntExact(config.getSendBufferSizeLimit()
+                                                                  .toBytes()));
     }
 
 
@@ -78,6 +135,7 @@ public class WebsocketConfig implements WebSocketMessageBrokerConfigurer
     public void configureMessageBroker(final MessageBrokerRegistry registry)
     {
         // 启用简单的 Broker，处理 /user 和 /topic 下的消息
+        // chat.broker.mode 为 sharded 时，BrokerConfig 会用分片代理替换它，目的地前缀保持不变
         registry.enableSimpleBroker("/user", "/topic");
 
         // 设置应用目的地前缀为 /app，即消息的 Stomp header 中 destination 字段必须以"/app"开头
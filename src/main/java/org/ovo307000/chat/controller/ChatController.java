@@ -1,21 +1,37 @@
 package org.ovo307000.chat.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.metrics.ReceiveTimestampInterceptor;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
 import org.ovo307000.chat.module.dto.ChatMessageDTO;
+import org.ovo307000.chat.module.dto.ChatMessageDeltaDTO;
+import org.ovo307000.chat.module.dto.ChatMessagePageDTO;
 import org.ovo307000.chat.module.dto.ChatNotificationDTO;
 import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
 import org.ovo307000.chat.service.ChatMessageService;
+import org.ovo307000.chat.service.GroupRoomService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * ChatController 是一个处理聊天相关请求的Rest控制器。
@@ -28,39 +44,196 @@ import java.util.List;
 public class ChatController
 {
     // 服务层对象，用于处理聊天消息的业务逻辑
-    private final ChatMessageService    chatMessageService;
-    // 模板对象，用于发送消息到指定的STOMP端点
-    private final SimpMessagingTemplate brokerMessagingTemplate;
+    private final ChatMessageService     chatMessageService;
+    // 通知的投递器，每条通知只编码一次
+    private final NotificationDispatcher notificationDispatcher;
+    // 消息处理链路的指标
+    private final ChatMetrics            chatMetrics;
+    // Spring Boot 配置的共享 ObjectMapper，用于流式导出
+    private final ObjectMapper           objectMapper;
+    // 群聊服务，提供群聊消息扇出的目标会话
+    private final GroupRoomService       groupRoomService;
 
     /**
-     * 根据发送者和接收者的ID异步获取聊天消息。
+     * 根据发送者和接收者的ID异步分页获取聊天消息。
+     * 使用 (timestamp, id) 键集游标分页，before 与 after 最多只能指定一个，都不指定时返回最新的一页。
      *
      * @param senderId   发送者的唯一标识符。
      * @param receiverId 接收者的唯一标识符。
-     * @return 包含聊天消息的响应实体。
+     * @param before     获取该游标之前（更旧）的消息，可选。
+     * @param after      获取该游标之后（更新）的消息，可选。
+     * @param limit      页大小，可选，超过上限时会被截断。
+     * @return 包含一页聊天消息及翻页游标的响应实体；游标格式错误或同时指定 before 与 after 时返回 400，聊天室不存在时返回 404。
      */
     @GetMapping("/messages/{senderId}/{receiverId}")
-    public ResponseEntity<List<ChatMessageDTO>> fetchChatMessages(
+    public ResponseEntity<ChatMessagePageDTO> fetchChatMessages(
             @NonNull @PathVariable("senderId") final String senderId,
-            @NonNull @PathVariable("receiverId") final String receiverId)
+            @NonNull @PathVariable("receiverId") final String receiverId,
+            @Nullable @RequestParam(value = "before", required = false) final String before,
+            @Nullable @RequestParam(value = "after", required = false) final String after,
+            @Nullable @RequestParam(value = "limit", required = false) final Integer limit)
     {
         log.info("Fetching chat messages between {} and {}", senderId, receiverId);
 
-        // 异步获取聊天消息，并将结果转换为ChatMessageDTO列表
-        final var chatMessages = this.chatMessageService.fetchChatMessagesAsync(senderId, receiverId);
+        if (before != null && after != null)
+        {
+            return ResponseEntity.badRequest()
+                                 .build();
+        }
+
+        final ChatMessageCursor beforeCursor;
+        final ChatMessageCursor afterCursor;
+
+        try
+        {
+            beforeCursor = before == null ? null : ChatMessageCursor.decode(before);
+            afterCursor  = after == null ? null : ChatMessageCursor.decode(after);
+        }
+        catch (IllegalArgumentException e)
+        {
+            log.warn("Invalid chat message cursor: {}", e.getMessage());
+
+            return ResponseEntity.badRequest()
+                                 .build();
+        }
+
+        final var pageSize = this.chatMessageService.resolvePageSize(limit);
+
+        final CompletableFuture<List<ChatMessage>> chatMessages;
+
+        // 异步获取一页聊天消息，并将结果转换为ChatMessagePageDTO
+        try
+        {
+            chatMessages = this.chatMessageService.fetchChatMessagePageAsync(senderId,
+                                                                             receiverId,
+                                                                             beforeCursor,
+                                                                             afterCursor,
+                                                                             pageSize);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ResponseEntity.notFound()
+                                 .build();
+        }
+
+        return ResponseEntity.ok(ChatMessagePageDTO.fromChatMessages(chatMessages.join(),
+                                                                     pageSize,
+                                                                     afterCursor == null));
+    }
+
+    /**
+     * 获取两个用户之间序号大于 since 的消息，供断线重连的客户端只拉取缺失的部分。
+     * 客户端以收到的最大序号（来自通知或上一次同步的 lastSeq）作为 since，hasMore 为 true 时以返回的 lastSeq 继续请求。
+     *
+     * @param senderId   发送者的唯一标识符。
+     * @param receiverId 接收者的唯一标识符。
+     * @param since      客户端已经收到的最大序号，0 表示从头同步。
+     * @param limit      单次返回的消息数，可选，超过上限时会被截断。
+     * @return 增量消息及同步位置；since 为负数时返回 400，聊天室不存在时返回 404。
+     */
+    @GetMapping("/messages/{senderId}/{receiverId}/since/{since}")
+    public ResponseEntity<ChatMessageDeltaDTO> fetchChatMessagesSince(
+            @NonNull @PathVariable("senderId") final String senderId,
+            @NonNull @PathVariable("receiverId") final String receiverId,
+            @PathVariable("since") final long since,
+            @Nullable @RequestParam(value = "limit", required = false) final Integer limit)
+    {
+        log.info("Fetching chat messages between {} and {} since seq {}", senderId, receiverId, since);
+
+        if (since < 0)
+        {
+            return ResponseEntity.badRequest()
+                                 .build();
+        }
+
+        final CompletableFuture<ChatMessageService.ChatMessageDelta> delta;
+
+        try
+        {
+            delta = this.chatMessageService.fetchChatMessagesSinceAsync(senderId,
+                                                                        receiverId,
+                                                                        since,
+                                                                        this.chatMessageService.resolveDeltaSize(limit));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ResponseEntity.notFound()
+                                 .build();
+        }
+
+        return ResponseEntity.ok(ChatMessageDeltaDTO.fromDelta(delta.join()));
+    }
+
+    /**
+     * 以 NDJSON（每行一个 JSON 对象）格式按时间正序流式导出两个用户之间的全部聊天消息，用于合规导出和客户端重新同步。
+     * 消息从 MongoDB 游标逐批读取后直接写入响应（分块传输），不在内存中汇总，堆占用与会话的消息总数无关。
+     *
+     * @param senderId   发送者的唯一标识符。
+     * @param receiverId 接收者的唯一标识符。
+     * @return 流式写出消息的响应实体；聊天室不存在时返回 404。
+     */
+    @GetMapping(value = "/messages/{senderId}/{receiverId}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportChatMessages(
+            @NonNull @PathVariable("senderId") final String senderId,
+            @NonNull @PathVariable("receiverId") final String receiverId)
+    {
+        log.info("Exporting chat messages between {} and {}", senderId, receiverId);
+
+        final Stream<ChatMessage> chatMessages;
+
+        try
+        {
+            chatMessages = this.chatMessageService.streamChatMessages(senderId, receiverId);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ResponseEntity.notFound()
+                                 .build();
+        }
+
+        // 逐条写出时不刷新，由响应缓冲区写满后自动发送一个分块
+        final var writer = this.objectMapper.writerFor(ChatMessageDTO.class)
+                                            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        final StreamingResponseBody body = outputStream ->
+        {
+            try (chatMessages;
+                 final var generator = this.objectMapper.createGenerator(outputStream))
+            {
+                // 响应流由 Spring 负责关闭；每个对象之后写换行，而不是默认的空格分隔
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+
+                final var iterator = chatMessages.iterator();
+
+                while (iterator.hasNext())
+                {
+                    writer.writeValue(generator, ChatMessageDTO.fromChatMessage(iterator.next()));
+                    generator.writeRaw('\n');
+                }
+            }
+        };
 
-        return ResponseEntity.ok(ChatMessageDTO.fromChatMessages(chatMessages.join()));
+        return ResponseEntity.ok()
+                             .contentType(MediaType.APPLICATION_NDJSON)
+                             .body(body);
     }
 
     /**
      * 处理通过WebSocket发送的聊天消息，并将其保存到数据库中。
-     * 然后通过brokerMessagingTemplate将消息发送到接收者的个人队列中。
+     * 然后通过notificationDispatcher将消息发送到接收者的个人队列中。
+     * 接收者是群聊时，消息只保存一次，再发送到除发送者以外所有在线成员的个人队列。
      *
      * @param chatMessage 要处理的聊天消息。
+     * @param receivedAt  帧进入入站通道时的时间戳，由 ReceiveTimestampInterceptor 写入；没有时从方法开始计时。
      */
     @MessageMapping("/chat")
-    public void processChatMessage(@NonNull final ChatMessage chatMessage)
+    public void processChatMessage(@NonNull final ChatMessage chatMessage,
+                                   @Nullable @Header(name = ReceiveTimestampInterceptor.RECEIVED_AT_HEADER,
+                                                     required = false) final Long receivedAt)
     {
+        final var start = receivedAt != null ? receivedAt : this.chatMetrics.monotonicTime();
+
         log.info("Processing chat message by {} to {}", chatMessage.getSenderId(), chatMessage.getReceiverId());
 
         try
@@ -73,15 +246,45 @@ public class ChatController
                                                       return null;
                                                   });
 
+            if (GroupRoomService.isGroupId(chatMessage.getReceiverId()))
+            {
+                this.fanOutGroupMessage(chatMessage);
+
+                return;
+            }
+
             // 将消息转换为ChatNotificationDTO并发送给接收者
-            this.brokerMessagingTemplate.convertAndSendToUser(chatMessage.getReceiverId(),
-                                                              "/queue/messages",
-                                                              ChatNotificationDTO.fromChatMessage(chatMessage));
+            this.notificationDispatcher.sendToUsers(ChatNotificationDTO.fromChatMessage(chatMessage),
+                                                    List.of(chatMessage.getReceiverId()));
             log.info("Chat message sent to user {}", chatMessage.getReceiverId());
         }
         catch (Exception e)
         {
             log.error("Error processing chat message", e);
         }
+        finally
+        {
+            this.chatMetrics.stopProcess(start);
+        }
+    }
+
+    /**
+     * 将群聊消息发送到在线成员的个人队列
+     *
+     * <p>
+     * 目标成员来自群聊的在线成员索引，每个成员的消息发送到 /user/{成员ID}/queue/messages，与单聊消息的目的地相同；
+     * 通知只编码一次，所有成员共享同一个负载
+     * </p>
+     *
+     * @param chatMessage 已经保存的群聊消息
+     */
+    private void fanOutGroupMessage(final ChatMessage chatMessage)
+    {
+        final var memberIds = this.groupRoomService.onlineRecipientsOf(chatMessage.getReceiverId(),
+                                                                       chatMessage.getSenderId());
+
+        this.notificationDispatcher.sendToUsers(ChatNotificationDTO.fromChatMessage(chatMessage), memberIds);
+
+        log.info("Group message of {} sent to {} members", chatMessage.getReceiverId(), memberIds.size());
     }
 }
@@ -0,0 +1,124 @@
+package org.ovo307000.chat.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.module.dto.GroupRoomDTO;
+import org.ovo307000.chat.service.GroupRoomService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * GroupController 处理群聊的创建和成员管理。
+ * 群聊消息与单聊消息使用相同的 /app/chat 入口和历史记录接口，接收者为群聊ID。
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/group")
+public class GroupController
+{
+    // 群聊服务
+    private final GroupRoomService groupRoomService;
+
+    /**
+     * 创建群聊，请求中的 id 会被忽略，由服务端生成
+     *
+     * @param groupRoom 群聊名称、创建者和初始成员
+     * @return 创建的群聊；缺少名称或创建者时返回 400。
+     */
+    @PostMapping
+    public ResponseEntity<GroupRoomDTO> createGroup(@NonNull @RequestBody final GroupRoomDTO groupRoom)
+    {
+        if (groupRoom.name() == null || groupRoom.ownerId() == null)
+        {
+            return ResponseEntity.badRequest()
+                                 .build();
+        }
+
+        log.info("Creating group room {} by {}", groupRoom.name(), groupRoom.ownerId());
+
+        final var created = this.groupRoomService.createGroup(groupRoom.ownerId(),
+                                                              groupRoom.name(),
+                                                              groupRoom.memberIds() == null
+                                                              ? Set.of()
+                                                              : groupRoom.memberIds());
+
+        return ResponseEntity.ok(GroupRoomDTO.fromGroupRoom(created));
+    }
+
+    /**
+     * 将用户加入群聊
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     * @return 群聊不存在时返回 404。
+     */
+    @PutMapping("/{groupId}/members/{userId}")
+    public ResponseEntity<Void> addMember(@NonNull @PathVariable("groupId") final String groupId,
+                                          @NonNull @PathVariable("userId") final String userId)
+    {
+        try
+        {
+            this.groupRoomService.addMember(groupId, userId);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ResponseEntity.notFound()
+                                 .build();
+        }
+
+        return ResponseEntity.noContent()
+                             .build();
+    }
+
+    /**
+     * 将用户移出群聊
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     * @return 群聊不存在时返回 404。
+     */
+    @DeleteMapping("/{groupId}/members/{userId}")
+    public ResponseEntity<Void> removeMember(@NonNull @PathVariable("groupId") final String groupId,
+                                             @NonNull @PathVariable("userId") final String userId)
+    {
+        try
+        {
+            this.groupRoomService.removeMember(groupId, userId);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ResponseEntity.notFound()
+                                 .build();
+        }
+
+        return ResponseEntity.noContent()
+                             .build();
+    }
+
+    /**
+     * 获取用户加入的全部群聊
+     *
+     * @param userId 用户ID
+     * @return 群聊列表
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<List<GroupRoomDTO>> getGroupsOf(@NonNull @PathVariable("userId") final String userId)
+    {
+        return ResponseEntity.ok(this.groupRoomService.findGroupsOf(userId)
+                                                      .stream()
+                                                      .map(GroupRoomDTO::fromGroupRoom)
+                                                      .toList());
+    }
+}
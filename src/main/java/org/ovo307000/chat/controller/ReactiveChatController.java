@@ -0,0 +1,94 @@
+package org.ovo307000.chat.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.dto.ChatMessagePageDTO;
+import org.ovo307000.chat.service.ReactiveChatMessageService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveChatController 是 {@link ChatController} 读取接口的非阻塞版本。
+ *
+ * <p>
+ * 返回 Mono 时 Spring MVC 以异步请求处理：请求线程在方法返回后立即释放，
+ * 响应式 MongoDB 驱动返回结果后再完成响应，因此同时进行的历史记录请求数不受 Servlet 线程数限制。
+ * 参数和返回结构与 /api/v1/chat 下的同名接口相同。
+ * </p>
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v2/chat")
+public class ReactiveChatController
+{
+    // 响应式服务层对象，用于读取聊天消息
+    private final ReactiveChatMessageService reactiveChatMessageService;
+
+    /**
+     * 根据发送者和接收者的ID分页获取聊天消息，不阻塞请求线程。
+     * 使用 (timestamp, id) 键集游标分页，before 与 after 最多只能指定一个，都不指定时返回最新的一页。
+     *
+     * @param senderId   发送者的唯一标识符。
+     * @param receiverId 接收者的唯一标识符。
+     * @param before     获取该游标之前（更旧）的消息，可选。
+     * @param after      获取该游标之后（更新）的消息，可选。
+     * @param limit      页大小，可选，超过上限时会被截断。
+     * @return 包含一页聊天消息及翻页游标的响应实体；游标格式错误或同时指定 before 与 after 时返回 400，聊天室不存在时返回 404。
+     */
+    @GetMapping("/messages/{senderId}/{receiverId}")
+    public Mono<ResponseEntity<ChatMessagePageDTO>> fetchChatMessages(
+            @NonNull @PathVariable("senderId") final String senderId,
+            @NonNull @PathVariable("receiverId") final String receiverId,
+            @Nullable @RequestParam(value = "before", required = false) final String before,
+            @Nullable @RequestParam(value = "after", required = false) final String after,
+            @Nullable @RequestParam(value = "limit", required = false) final Integer limit)
+    {
+        log.debug("Fetching chat messages between {} and {}", senderId, receiverId);
+
+        if (before != null && after != null)
+        {
+            return Mono.just(ResponseEntity.badRequest()
+                                           .build());
+        }
+
+        final ChatMessageCursor beforeCursor;
+        final ChatMessageCursor afterCursor;
+
+        try
+        {
+            beforeCursor = before == null ? null : ChatMessageCursor.decode(before);
+            afterCursor  = after == null ? null : ChatMessageCursor.decode(after);
+        }
+        catch (IllegalArgumentException e)
+        {
+            log.warn("Invalid chat message cursor: {}", e.getMessage());
+
+            return Mono.just(ResponseEntity.badRequest()
+                                           .build());
+        }
+
+        final var pageSize = this.reactiveChatMessageService.resolvePageSize(limit);
+
+        return this.reactiveChatMessageService.fetchChatMessagePage(senderId,
+                                                                    receiverId,
+                                                                    beforeCursor,
+                                                                    afterCursor,
+                                                                    pageSize)
+                                              .map(chatMessages -> ResponseEntity.ok(ChatMessagePageDTO.fromChatMessages(
+                                                      chatMessages,
+                                                      pageSize,
+                                                      afterCursor == null)))
+                                              .onErrorResume(IllegalArgumentException.class,
+                                                             e -> Mono.just(ResponseEntity.notFound()
+                                                                                          .build()));
+    }
+}
@@ -0,0 +1,40 @@
+package org.ovo307000.chat.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.dto.UserDTO;
+import org.ovo307000.chat.service.UserService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link UserController} 读取接口的非阻塞版本
+ *
+ * <p>
+ * 在线用户来自内存中的在线状态注册表（见 PresenceRegistry），不访问数据库，
+ * 这里只是不再在请求线程上等待 Future，与 /api/v2/chat 保持一致的异步处理方式
+ * </p>
+ */
+@RequiredArgsConstructor
+@RequestMapping("api/v2/user")
+@RestController
+public class ReactiveUserController
+{
+    // 注入用户服务类
+    private final UserService userService;
+
+    /**
+     * 获取所有在线用户信息
+     *
+     * @return 在线用户信息，Spring MVC 会将其收集为 JSON 数组
+     */
+    @GetMapping("/all")
+    public Flux<UserDTO> getAllUsers()
+    {
+        return Mono.fromFuture(this.userService::findConnectedUsersAsync)
+                   .flatMapIterable(userList -> userList)
+                   .map(UserDTO::fromUser);
+    }
+}
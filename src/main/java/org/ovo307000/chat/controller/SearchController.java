@@ -0,0 +1,76 @@
+package org.ovo307000.chat.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.module.dto.ChatSearchResultDTO;
+import org.ovo307000.chat.service.MessageSearchService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * SearchController 提供消息内容的全文检索。
+ * 检索范围是用户参与的全部聊天室（包括群聊），结果按相关度排序并分页。
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/search")
+public class SearchController
+{
+    // 消息检索服务
+    private final MessageSearchService messageSearchService;
+
+    /**
+     * 在用户参与的全部聊天室中检索消息。
+     * 查询文本按与消息内容相同的规则分词，包含任意一个词元的消息都会被检索到，包含得越多、越集中的消息排得越靠前。
+     *
+     * @param userId 用户ID。
+     * @param query  查询文本。
+     * @param page   页码，从 0 开始，可选。
+     * @param size   页大小，可选，超过上限时会被截断。
+     * @return 一页检索结果；查询文本为空或页码超出范围时返回 400，未启用全文检索时返回 503。
+     */
+    @GetMapping("/messages/{userId}")
+    public ResponseEntity<ChatSearchResultDTO> searchMessages(
+            @NonNull @PathVariable("userId") final String userId,
+            @NonNull @RequestParam("q") final String query,
+            @Nullable @RequestParam(value = "page", required = false) final Integer page,
+            @Nullable @RequestParam(value = "size", required = false) final Integer size)
+    {
+        log.info("Searching chat messages of {}", userId);
+
+        if (!this.messageSearchService.isEnabled())
+        {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                 .build();
+        }
+
+        if (query.isBlank())
+        {
+            return ResponseEntity.badRequest()
+                                 .build();
+        }
+
+        final var pageNumber = page == null ? 0 : page;
+        final var pageSize   = this.messageSearchService.resolvePageSize(size);
+
+        try
+        {
+            final var result = this.messageSearchService.searchAsync(userId, query, pageNumber, pageSize);
+
+            return ResponseEntity.ok(ChatSearchResultDTO.fromSearchResult(query, result.join(), pageNumber, pageSize));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return ResponseEntity.badRequest()
+                                 .build();
+        }
+    }
+}
@@ -2,15 +2,23 @@ package org.ovo307000.chat.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.module.dto.ReadCursorDTO;
+import org.ovo307000.chat.module.dto.UnreadBundleDTO;
 import org.ovo307000.chat.module.dto.UserDTO;
 import org.ovo307000.chat.module.entity.User;
+import org.ovo307000.chat.service.UnreadService;
 import org.ovo307000.chat.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -26,23 +34,30 @@ import java.util.List;
 public class UserController
 {
     // 注入用户服务类
-    private final UserService userService;
+    private final UserService           userService;
+    // 未读消息服务，用户上线时下发未读摘要
+    private final UnreadService         unreadService;
+    // 模板对象，用于向用户的个人队列发送未读摘要
+    private final SimpMessagingTemplate brokerMessagingTemplate;
 
     /**
      * 添加新用户
      *
-     * @param user 要添加的用户对象，不能为空
+     * @param user      要添加的用户对象，不能为空
+     * @param sessionId 发送该消息的 STOMP 会话ID
      * @return 添加的用户对象
      */
     @SendTo("/user/topic")
     @MessageMapping("/user.addUser")
-    public ResponseEntity<UserDTO> addUser(@Payload @NonNull final User user)
+    public ResponseEntity<UserDTO> addUser(@Payload @NonNull final User user,
+                                           @Nullable @Header(name = SimpMessageHeaderAccessor.SESSION_ID_HEADER,
+                                                             required = false) final String sessionId)
     {
         // 记录正在添加的用户昵称
         log.info("Adding user: {}", user.getNickName());
 
-        // 异步保存用户
-        this.userService.saveUserAsync(user);
+        // 异步保存用户，并将当前会话登记为在线
+        this.userService.saveUserAsync(user, sessionId);
 
         // 返回添加的用户
         return ResponseEntity.ok(UserDTO.fromUser(user));
@@ -51,23 +66,74 @@ public class UserController
     /**
      * 用户连接
      *
-     * @param user 要连接的用户对象，不能为空
+     * @param user      要连接的用户对象，不能为空
+     * @param sessionId 发送该消息的 STOMP 会话ID
      * @return 包含用户昵称、全名和状态的用户详细信息对象
      */
     @SendTo("/user/topic")
     @MessageMapping("/user.connectUser")
-    public ResponseEntity<UserDTO> connectUser(@Payload @NonNull final User user)
+    public ResponseEntity<UserDTO> connectUser(@Payload @NonNull final User user,
+                                               @Nullable @Header(name = SimpMessageHeaderAccessor.SESSION_ID_HEADER,
+                                                                 required = false) final String sessionId)
     {
         // 记录正在连接的用户昵称
         log.info("Connecting user: {}", user.getNickName());
 
-        // 异步更新用户状态为在线
-        this.userService.updateStatusToOnlineAsync(user);
+        // 将当前会话登记为在线
+        this.userService.updateStatusToOnlineAsync(user, sessionId);
+
+        // 异步汇总所有聊天室的未读消息，一次性发送到用户的个人队列
+        this.unreadService.fetchUnreadAsync(user.getNickName())
+                          .thenAccept(bundle -> this.brokerMessagingTemplate.convertAndSendToUser(user.getNickName(),
+                                                                                                  "/queue/unread",
+                                                                                                  bundle))
+                          .exceptionally(e ->
+                                         {
+                                             log.error("Error occurred while delivering unread messages to {}",
+                                                       user.getNickName(),
+                                                       e);
+
+                                             return null;
+                                         });
 
         // 返回用户详细信息的响应实体
         return ResponseEntity.ok(UserDTO.fromUser(user));
     }
 
+    /**
+     * 上报读取位置
+     *
+     * @param readCursor 用户在与 peerId 的聊天室中已读的最大消息序号
+     */
+    @MessageMapping("/user.markRead")
+    public void markRead(@Payload @NonNull final ReadCursorDTO readCursor)
+    {
+        try
+        {
+            this.unreadService.markRead(readCursor.userId(), readCursor.peerId(), readCursor.seq());
+        }
+        catch (IllegalArgumentException e)
+        {
+            log.warn("Ignoring read cursor of {} in chat with {}: {}",
+                     readCursor.userId(),
+                     readCursor.peerId(),
+                     e.getMessage());
+        }
+    }
+
+    /**
+     * 获取用户所有聊天室的未读摘要，与上线时推送到 /user/{userId}/queue/unread 的内容相同
+     *
+     * @param userId 用户ID
+     * @return 包含未读摘要的响应实体
+     */
+    @GetMapping("/{userId}/unread")
+    public ResponseEntity<UnreadBundleDTO> getUnread(@NonNull @PathVariable("userId") final String userId)
+    {
+        return ResponseEntity.ok(this.unreadService.fetchUnreadAsync(userId)
+                                                   .join());
+    }
+
     /**
      * 获取所有用户信息
      *
@@ -0,0 +1,172 @@
+package org.ovo307000.chat.group;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.ovo307000.chat.storage.GroupRoomStore;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 群聊的在线成员索引
+ *
+ * <p>
+ * 只索引在线用户：用户上线时从数据库加载一次他加入的群聊，登记到“群聊 -> 在线成员”索引中，下线时移除。
+ * 群聊消息的扇出只遍历在线成员，发送到每个成员的个人队列，
+ * 代价与在线成员数成正比，与群聊的总成员数无关，也不需要逐个接收者查询数据库。
+ * </p>
+ *
+ * <p>
+ * 每个用户的登记和移除都在“在线用户 -> 群聊”映射的 compute 中完成，同一用户的操作互斥；
+ * 加载完成时会再次确认用户仍然在线，因此加载期间下线的用户不会残留在索引中。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class GroupMembershipIndex
+{
+    private final GroupRoomStore   groupRoomStore;
+    private final PresenceRegistry presenceRegistry;
+
+    /* 在线用户 ID -> 加入的群聊 ID */
+    private final Map<String, Set<String>> groupsOfOnlineUser = new ConcurrentHashMap<>();
+
+    /* 群聊 ID -> 在线成员 ID */
+    private final Map<String, Set<String>> onlineMembers = new ConcurrentHashMap<>();
+
+    /**
+     * 用户上线时调用，从数据库加载用户加入的群聊并登记到索引中，会访问数据库
+     *
+     * @param userId 用户ID
+     */
+    public void userOnline(@NonNull final String userId)
+    {
+        final var groupIds = this.groupRoomStore.findByMemberIds(userId)
+                                                .stream()
+                                                .map(GroupRoom::getId)
+                                                .collect(Collectors.toCollection(ConcurrentHashMap::newKeySet));
+
+        this.groupsOfOnlineUser.compute(userId, (key, previous) ->
+        {
+            if (previous != null)
+            {
+                previous.forEach(groupId -> this.leave(groupId, userId));
+            }
+
+            // 加载期间用户已经下线
+            if (!this.presenceRegistry.isOnline(userId))
+            {
+                return null;
+            }
+
+            groupIds.forEach(groupId -> this.join(groupId, userId));
+
+            return groupIds;
+        });
+    }
+
+    /**
+     * 用户下线时调用，从索引中移除该用户
+     *
+     * @param userId 用户ID
+     */
+    public void userOffline(@NonNull final String userId)
+    {
+        this.groupsOfOnlineUser.computeIfPresent(userId, (key, groupIds) ->
+        {
+            groupIds.forEach(groupId -> this.leave(groupId, userId));
+
+            return null;
+        });
+    }
+
+    /**
+     * 用户加入群聊后调用，用户在线时立即登记
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     */
+    public void memberAdded(@NonNull final String groupId, @NonNull final String userId)
+    {
+        this.groupsOfOnlineUser.computeIfPresent(userId, (key, groupIds) ->
+        {
+            groupIds.add(groupId);
+            this.join(groupId, userId);
+
+            return groupIds;
+        });
+    }
+
+    /**
+     * 用户退出群聊后调用
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     */
+    public void memberRemoved(@NonNull final String groupId, @NonNull final String userId)
+    {
+        this.groupsOfOnlineUser.computeIfPresent(userId, (key, groupIds) ->
+        {
+            groupIds.remove(groupId);
+            this.leave(groupId, userId);
+
+            return groupIds;
+        });
+    }
+
+    /**
+     * 群聊当前的在线成员
+     *
+     * @param groupId 群聊ID
+     * @return 在线成员 ID 的只读视图，遍历期间成员上下线不会抛出异常
+     */
+    public Set<String> onlineMembers(@NonNull final String groupId)
+    {
+        final var members = this.onlineMembers.get(groupId);
+
+        return members == null ? Set.of() : Collections.unmodifiableSet(members);
+    }
+
+    /**
+     * 从索引中判断在线用户是否为群聊成员
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     * @return 用户不在索引中（离线或尚未加载完成）时返回 null，调用方需要查询数据库
+     */
+    @Nullable
+    public Boolean isMember(@NonNull final String groupId, @NonNull final String userId)
+    {
+        final var groupIds = this.groupsOfOnlineUser.get(userId);
+
+        return groupIds == null ? null : groupIds.contains(groupId);
+    }
+
+    private void join(final String groupId, final String userId)
+    {
+        this.onlineMembers.compute(groupId, (key, members) ->
+        {
+            final var joined = members != null ? members : ConcurrentHashMap.<String>newKeySet();
+            joined.add(userId);
+
+            return joined;
+        });
+    }
+
+    private void leave(final String groupId, final String userId)
+    {
+        this.onlineMembers.computeIfPresent(groupId, (key, members) ->
+        {
+            members.remove(userId);
+
+            return members.isEmpty() ? null : members;
+        });
+    }
+}
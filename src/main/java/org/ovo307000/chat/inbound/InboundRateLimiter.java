@@ -0,0 +1,340 @@
+package org.ovo307000.chat.inbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站 SEND 帧的限流
+ *
+ * <p>
+ * 注册在客户端入站通道上，在帧到达控制器（以及 MongoDB 写入）之前按目的地规则检查两个令牌桶：
+ * 会话的桶，以及会话所属用户（见 PresenceRegistry）的桶，同一用户的多个会话共用后者。
+ * 令牌桶在第一次使用时创建，取令牌是一次 CAS（见 {@link TokenBucket}），热路径上没有锁；
+ * 会话断开时回收该会话的桶，空闲的用户桶由定时任务回收。
+ * </p>
+ *
+ * <p>
+ * 超过限制的帧被丢弃并计入 chat.inbound.rate.limited 指标（默认 reject-action 为 drop，只丢弃）。
+ * reject-action 为 error 时同时向会话发送 ERROR 帧，帧上带有原帧的 receipt-id（如果有）和 retry-after 头（毫秒）；
+ * 按 STOMP 协议，发送 ERROR 帧后 Spring 会关闭连接，因此每次超限都会断开会话。
+ * 先取会话的令牌再取用户的令牌，被用户维度拒绝时归还会话的令牌。
+ * </p>
+ */
+@Slf4j
+@Component
+public class InboundRateLimiter implements ChannelInterceptor, MeterBinder
+{
+    /* ERROR 帧上建议客户端等待的毫秒数 */
+    public static final String RETRY_AFTER_HEADER = "retry-after";
+
+    /* 目的地到规则下标的缓存最多保存的目的地数，超过后不再缓存，避免客户端用随机目的地撑大缓存 */
+    private static final int MAX_CACHED_DESTINATIONS = 1_024;
+
+    private static final int NO_RULE = -1;
+
+    private final ChatProperties.RateLimit config;
+
+    private final PresenceRegistry presenceRegistry;
+
+    private final ObjectProvider<MessageChannel> clientOutboundChannel;
+
+    private final List<ChatProperties.RateLimit.Rule> rules;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    /* 目的地 -> 第一个匹配的规则下标 */
+    private final Map<String, Integer> ruleIndexes = new ConcurrentHashMap<>();
+
+    /* 用户 ID -> 每个规则的令牌桶，不限制用户维度的规则对应 null */
+    private final Map<String, TokenBucket[]> userBuckets = new ConcurrentHashMap<>();
+
+    /* 会话 ID -> 每个规则的令牌桶 */
+    private final Map<String, TokenBucket[]> sessionBuckets = new ConcurrentHashMap<>();
+
+    /* 规则下标 -> [用户维度, 会话维度] 的拒绝计数 */
+    @Nullable
+    private Counter[][] rejected;
+
+    public InboundRateLimiter(@NonNull final ChatProperties chatProperties,
+                              @NonNull final PresenceRegistry presenceRegistry,
+                              @Qualifier("clientOutboundChannel") final ObjectProvider<MessageChannel> clientOutboundChannel)
+    {
+        this.config                = chatProperties.getRateLimit();
+        this.presenceRegistry      = presenceRegistry;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.rules                 = List.copyOf(this.config.getRules());
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel)
+    {
+        final var headers = message.getHeaders();
+
+        if (!this.config.isEnabled() || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE)
+        {
+            return message;
+        }
+
+        final var destination = SimpMessageHeaderAccessor.getDestination(headers);
+        final var sessionId   = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (destination == null || sessionId == null)
+        {
+            return message;
+        }
+
+        final var ruleIndex = this.ruleIndexOf(destination);
+
+        if (ruleIndex == NO_RULE)
+        {
+            return message;
+        }
+
+        final var now            = System.nanoTime();
+        final var sessionBuckets = this.sessionBuckets.computeIfAbsent(sessionId, key -> this.newBuckets(false));
+        var       wait           = tryAcquire(sessionBuckets, ruleIndex, now);
+        var       scope          = Scope.SESSION;
+
+        if (wait == 0)
+        {
+            final var userId = this.presenceRegistry.userOf(sessionId)
+                                                    .orElse(null);
+
+            if (userId != null)
+            {
+                wait  = tryAcquire(this.userBuckets.computeIfAbsent(userId, key -> this.newBuckets(true)),
+                                   ruleIndex,
+                                   now);
+                scope = Scope.USER;
+
+                // 被用户维度拒绝的帧不占用会话的令牌
+                if (wait != 0)
+                {
+                    release(sessionBuckets, ruleIndex);
+                }
+            }
+        }
+
+        if (wait == 0)
+        {
+            return message;
+        }
+
+        this.reject(message, sessionId, destination, ruleIndex, scope, wait);
+
+        return null;
+    }
+
+    @EventListener
+    public void onSessionDisconnect(final SessionDisconnectEvent event)
+    {
+        this.sessionBuckets.remove(event.getSessionId());
+    }
+
+    /**
+     * 回收空闲的令牌桶
+     */
+    @Scheduled(fixedDelayString = "${chat.rate-limit.eviction-interval-millis:60000}")
+    public void evictIdleBuckets()
+    {
+        final var now       = System.nanoTime();
+        final var idleNanos = this.config.getIdleTimeout()
+                                         .toNanos();
+
+        this.userBuckets.values()
+                        .removeIf(buckets -> isIdle(buckets, now, idleNanos));
+        this.sessionBuckets.values()
+                           .removeIf(buckets -> isIdle(buckets, now, idleNanos));
+    }
+
+    /**
+     * 当前的令牌桶组数（用户数加会话数）
+     */
+    public int size()
+    {
+        return this.userBuckets.size() + this.sessionBuckets.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        final var counters = new Counter[this.rules.size()][];
+
+        for (int i = 0; i < this.rules.size(); i++)
+        {
+            counters[i] = new Counter[Scope.values().length];
+
+            for (final var scope : Scope.values())
+            {
+                counters[i][scope.ordinal()] = Counter.builder("chat.inbound.rate.limited")
+                                                      .description("Inbound STOMP frames rejected by rate limiting")
+                                                      .tag("destination",
+                                                           this.rules.get(i)
+                                                                     .getDestination())
+                                                      .tag("scope", scope.tag)
+                                                      .register(meterRegistry);
+            }
+        }
+
+        this.rejected = counters;
+
+        Gauge.builder("chat.inbound.rate.buckets", this, InboundRateLimiter::size)
+             .description("Users and sessions with live rate limiting buckets")
+             .register(meterRegistry);
+    }
+
+    private int ruleIndexOf(final String destination)
+    {
+        final var cached = this.ruleIndexes.get(destination);
+
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        var index = NO_RULE;
+
+        for (int i = 0; i < this.rules.size(); i++)
+        {
+            if (this.pathMatcher.match(this.rules.get(i)
+                                                 .getDestination(), destination))
+            {
+                index = i;
+
+                break;
+            }
+        }
+
+        if (this.ruleIndexes.size() < MAX_CACHED_DESTINATIONS)
+        {
+            this.ruleIndexes.put(destination, index);
+        }
+
+        return index;
+    }
+
+    private TokenBucket[] newBuckets(final boolean user)
+    {
+        final var now     = System.nanoTime();
+        final var buckets = new TokenBucket[this.rules.size()];
+
+        for (int i = 0; i < buckets.length; i++)
+        {
+            final var rule  = this.rules.get(i);
+            final var rate  = user ? rule.getUserRate() : rule.getSessionRate();
+            final var burst = user ? rule.getUserBurst() : rule.getSessionBurst();
+
+            buckets[i] = rate > 0 && burst > 0 ? new TokenBucket(rate, burst, now) : null;
+        }
+
+        return buckets;
+    }
+
+    private void reject(final Message<?> message,
+                        final String sessionId,
+                        final String destination,
+                        final int ruleIndex,
+                        final Scope scope,
+                        final long waitNanos)
+    {
+        final var counters = this.rejected;
+
+        if (counters != null)
+        {
+            counters[ruleIndex][scope.ordinal()].increment();
+        }
+
+        log.debug("Rejected inbound frame to {} from session {} by {} rate limit", destination, sessionId, scope.tag);
+
+        if (this.config.getRejectAction() != ChatProperties.RateLimit.RejectAction.ERROR)
+        {
+            return;
+        }
+
+        final var error = StompHeaderAccessor.create(StompCommand.ERROR);
+        error.setSessionId(sessionId);
+        error.setMessage("Rate limit exceeded for " + destination);
+        error.setNativeHeader(RETRY_AFTER_HEADER,
+                              String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos))));
+
+        final var receipt = StompHeaderAccessor.wrap(message)
+                                               .getReceipt();
+
+        if (receipt != null)
+        {
+            error.setReceiptId(receipt);
+        }
+
+        this.clientOutboundChannel.getObject()
+                                  .send(MessageBuilder.createMessage(new byte[0], error.getMessageHeaders()));
+    }
+
+    private static long tryAcquire(final TokenBucket[] buckets, final int ruleIndex, final long now)
+    {
+        final var bucket = buckets[ruleIndex];
+
+        return bucket == null ? 0 : bucket.tryAcquire(now);
+    }
+
+    private static void release(final TokenBucket[] buckets, final int ruleIndex)
+    {
+        final var bucket = buckets[ruleIndex];
+
+        if (bucket != null)
+        {
+            bucket.release();
+        }
+    }
+
+    private static boolean isIdle(final TokenBucket[] buckets, final long now, final long idleNanos)
+    {
+        return Arrays.stream(buckets)
+                     .filter(Objects::nonNull)
+                     .allMatch(bucket -> bucket.isIdle(now, idleNanos));
+    }
+
+    /**
+     * 拒绝帧的令牌桶所在的维度
+     */
+    private enum Scope
+    {
+        USER("user"),
+        SESSION("session");
+
+        private final String tag;
+
+        Scope(final String tag)
+        {
+            this.tag = tag;
+        }
+    }
+}
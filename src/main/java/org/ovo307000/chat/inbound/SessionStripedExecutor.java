@@ -0,0 +1,262 @@
+package org.ovo307000.chat.inbound;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按会话保序、不同会话并行的客户端入站通道执行器
+ *
+ * <p>
+ * Spring 默认用一个普通线程池处理入站通道，同一会话连续发送的帧可能被不同线程同时处理，到达控制器的顺序与发送顺序不一致。
+ * 这里把任务按消息的 sessionId 哈希到固定数量的通道（stripe），每个通道内的任务严格按提交顺序逐个执行；
+ * 通道本身不占线程，有任务时才作为一个批次提交到共享线程池，因此不同会话的帧仍然分散到所有线程上并行处理。
+ * 通道数远大于线程数，两个繁忙会话落在同一通道上互相等待的概率很小；通道是固定数组，不需要按会话创建和回收状态。
+ * </p>
+ *
+ * <p>
+ * 入站通道为每个订阅者（注解方法处理器、代理、用户目的地处理器）各提交一个任务，它们落在同一通道，也保持先后顺序。
+ * 不带 sessionId 的任务直接交给线程池执行。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SessionStripedExecutor implements TaskExecutor, MeterBinder
+{
+    /* 一个通道每次最多连续执行的任务数，之后重新排队，避免一个繁忙会话长期占用线程 */
+    private static final int MAX_BATCH = 64;
+
+    private final Lane[] lanes;
+
+    private final ThreadPoolExecutor pool;
+
+    /* 已提交但还没有执行完的任务数 */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public SessionStripedExecutor(@NonNull final ChatProperties chatProperties)
+    {
+        final var config      = chatProperties.getExecutor();
+        final var threads     = config.getInboundThreads();
+        final var stripes     = config.getInboundStripes();
+        // 线程数默认为 CPU 核数的两倍，与 Spring 默认的入站线程池相同
+        final var threadCount = threads > 0
+                                ? threads
+                                : Runtime.getRuntime()
+                                         .availableProcessors() * 2;
+        final var laneCount   = stripes > 0 ? stripes : threadCount * 64;
+        final var counter     = new AtomicInteger();
+
+        this.pool = new ThreadPoolExecutor(threadCount,
+                                           threadCount,
+                                           60,
+                                           TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<>(),
+                                           runnable ->
+                                           {
+                                               final var thread = new Thread(runnable,
+                                                                             "chat-inbound-" +
+                                                                             counter.incrementAndGet());
+                                               thread.setDaemon(true);
+
+                                               return thread;
+                                           });
+        this.lanes = new Lane[laneCount];
+
+        for (int i = 0; i < laneCount; i++)
+        {
+            this.lanes[i] = new Lane();
+        }
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable task)
+    {
+        final var key = keyOf(task);
+
+        this.queued.incrementAndGet();
+
+        if (key == null)
+        {
+            this.pool.execute(() -> this.run(task));
+
+            return;
+        }
+
+        this.lanes[this.stripeOf(key)].submit(task);
+    }
+
+    /**
+     * 会话所在的通道下标
+     *
+     * @param sessionId 会话 ID
+     * @return 通道下标
+     */
+    int stripeOf(final String sessionId)
+    {
+        return Math.floorMod(spread(sessionId.hashCode()), this.lanes.length);
+    }
+
+    /**
+     * 已提交但还没有执行完的任务数
+     */
+    public int queued()
+    {
+        return this.queued.get();
+    }
+
+    /**
+     * 线程数
+     */
+    public int threads()
+    {
+        return this.pool.getCorePoolSize();
+    }
+
+    /**
+     * 通道数
+     */
+    public int stripes()
+    {
+        return this.lanes.length;
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        Gauge.builder("chat.inbound.dispatch.queued", this, SessionStripedExecutor::queued)
+             .description("Inbound STOMP tasks submitted and not yet completed")
+             .baseUnit("tasks")
+             .register(meterRegistry);
+        Gauge.builder("chat.inbound.dispatch.active", this.pool, ThreadPoolExecutor::getActiveCount)
+             .description("Inbound dispatch threads currently running a lane")
+             .baseUnit("threads")
+             .register(meterRegistry);
+    }
+
+    /**
+     * 停止接收任务，等待已提交的任务执行完；既是组件也作为 clientInboundChannelExecutor Bean 注册，可能被调用两次
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        if (this.pool.isShutdown())
+        {
+            return;
+        }
+
+        this.pool.shutdown();
+
+        try
+        {
+            if (!this.pool.awaitTermination(5, TimeUnit.SECONDS))
+            {
+                log.warn("Inbound dispatch did not finish in time, {} tasks dropped", this.queued());
+                this.pool.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+            this.pool.shutdownNow();
+        }
+    }
+
+    private void run(final Runnable task)
+    {
+        try
+        {
+            task.run();
+        }
+        catch (RuntimeException e)
+        {
+            // 与线程池不同，一个任务失败不能中断同一通道后续的任务
+            log.error("Error occurred while handling inbound message", e);
+        }
+        finally
+        {
+            this.queued.decrementAndGet();
+        }
+    }
+
+    @Nullable
+    private static String keyOf(final Runnable task)
+    {
+        return task instanceof MessageHandlingRunnable runnable
+               ? SimpMessageHeaderAccessor.getSessionId(runnable.getMessage()
+                                                                .getHeaders())
+               : null;
+    }
+
+    /**
+     * 与 HashMap 相同，把高位混入低位，避免只有高位不同的会话 ID 落在同一通道
+     */
+    private static int spread(final int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * 一个保序通道，任意时刻最多只有一个线程在执行它的任务
+     */
+    private final class Lane implements Runnable
+    {
+        private final Queue<Runnable> tasks     = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean   scheduled = new AtomicBoolean();
+
+        private void submit(final Runnable task)
+        {
+            this.tasks.add(task);
+            this.schedule();
+        }
+
+        private void schedule()
+        {
+            if (this.scheduled.compareAndSet(false, true))
+            {
+                SessionStripedExecutor.this.pool.execute(this);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            for (int i = 0; i < MAX_BATCH; i++)
+            {
+                final var task = this.tasks.poll();
+
+                if (task == null)
+                {
+                    break;
+                }
+
+                SessionStripedExecutor.this.run(task);
+            }
+
+            this.scheduled.set(false);
+
+            // 释放之后提交的任务看到 scheduled 为 true 时不会调度，需要在这里补上
+            if (!this.tasks.isEmpty())
+            {
+                this.schedule();
+            }
+        }
+    }
+}
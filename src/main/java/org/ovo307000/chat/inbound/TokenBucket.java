@@ -0,0 +1,79 @@
+package org.ovo307000.chat.inbound;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的令牌桶
+ *
+ * <p>
+ * 按 GCRA（通用信元速率算法）实现，与容量为 burst、每秒补充 rate 个令牌的令牌桶等价：
+ * 只记录一个“理论到达时间”，每取一个令牌向后推进一个补充间隔，推进后超过当前时间 burst 个间隔时拒绝。
+ * 状态只有一个 long，取令牌是一次 CAS，不需要单独的补充线程，也不需要加锁。
+ * 理论到达时间不晚于当前时间的桶已经补满，回收后重新创建不会改变限流结果。
+ * </p>
+ */
+final class TokenBucket
+{
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    /* 理论到达时间（System.nanoTime） */
+    private final AtomicLong arrival;
+
+    /**
+     * @param rate  每秒补充的令牌数
+     * @param burst 容量
+     * @param now   当前时间（纳秒），新建的桶是满的
+     */
+    TokenBucket(final double rate, final int burst, final long now)
+    {
+        this.intervalNanos  = Math.max(1, (long) (1_000_000_000 / rate));
+        this.toleranceNanos = this.intervalNanos * burst;
+        this.arrival        = new AtomicLong(now);
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @param now 当前时间（纳秒）
+     * @return 取到时返回 0，否则返回距离下一个令牌可用的纳秒数
+     */
+    long tryAcquire(final long now)
+    {
+        while (true)
+        {
+            final var current = this.arrival.get();
+            final var next    = Math.max(current - now, 0) + this.intervalNanos;
+
+            if (next > this.toleranceNanos)
+            {
+                return next - this.toleranceNanos;
+            }
+
+            if (this.arrival.compareAndSet(current, now + next))
+            {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 归还一个刚取到的令牌，用于帧被另一个维度的桶拒绝时
+     */
+    void release()
+    {
+        this.arrival.addAndGet(-this.intervalNanos);
+    }
+
+    /**
+     * 桶是否已经补满并空闲了至少 idleNanos
+     *
+     * @param now       当前时间（纳秒）
+     * @param idleNanos 空闲时间（纳秒）
+     * @return 空闲时返回 true
+     */
+    boolean isIdle(final long now, final long idleNanos)
+    {
+        return now - this.arrival.get() >= idleNanos;
+    }
+}
@@ -0,0 +1,170 @@
+package org.ovo307000.chat.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.NonNull;
+import org.ovo307000.chat.broker.ShardedBrokerMessageHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 聊天消息处理链路的 Micrometer 指标，通过 Actuator 的 /actuator/metrics 暴露
+ *
+ * <ul>
+ *     <li>chat.message.process：SEND 帧进入客户端入站通道（见 ReceiveTimestampInterceptor）到 processChatMessage 把消息交给代理分发的耗时，
+ *     包含限流、入站执行器排队和控制器处理</li>
+ *     <li>chat.room.resolve：解析聊天室 ID 的耗时，result 标签为 existing / created / group / absent（group 为群聊成员解析到群聊 ID）</li>
+ *     <li>chat.message.persist：从提交保存到写入完成的耗时，mode 标签为持久化模式，outcome 标签为 success / failure，
+ *     outcome=failure 的计数即保存失败次数</li>
+ *     <li>chat.broker.fanout：每条发布到代理的消息实际投递到的订阅数（分片代理）</li>
+ *     <li>chat.broker.backlog：分片代理各分片队列中尚未处理的消息数</li>
+ *     <li>chat.persistence.backlog：写后队列中等待写入的消息数，由 ChatMessageWriteBehindBuffer 注册</li>
+ * </ul>
+ *
+ * <p>
+ * 执行器和 STOMP 通道的积压由 Spring Boot 自动注册的 executor.* 指标提供，按 name 标签区分：
+ * taskExecutor（见 AsyncConfig）、clientInboundChannelExecutor、clientOutboundChannelExecutor、brokerChannelExecutor，
+ * 例如 executor.active 为活跃线程数，executor.queued 为排队任务数。
+ * chat.executor.inbound-mode 为 ordered 时，入站通道改由 SessionStripedExecutor 执行，
+ * 对应的指标为 chat.inbound.dispatch.queued 和 chat.inbound.dispatch.active。
+ * </p>
+ *
+ * <p>
+ * 带标签的计时器按标签值缓存，热路径上不重复构建和注册。
+ * </p>
+ */
+@Component
+public class ChatMetrics
+{
+    private final MeterRegistry       meterRegistry;
+    private final Timer               processTimer;
+    private final DistributionSummary fanOutSummary;
+
+    /* 解析结果 -> chat.room.resolve 计时器 */
+    private final Map<String, Timer> roomResolutionTimers = new ConcurrentHashMap<>();
+
+    /* 持久化模式 -> chat.message.persist 计时器，下标 0 为 success，1 为 failure */
+    private final Map<String, Timer[]> persistenceTimers = new ConcurrentHashMap<>();
+
+    public ChatMetrics(@NonNull final MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+        this.processTimer  = Timer.builder("chat.message.process")
+                                  .description("Time from receiving a chat message to handing it to the broker")
+                                  .register(meterRegistry);
+        this.fanOutSummary = DistributionSummary.builder("chat.broker.fanout")
+                                                .description("Number of subscriptions each published message is delivered to")
+                                                .baseUnit("subscriptions")
+                                                .register(meterRegistry);
+    }
+
+    /**
+     * 开始计时
+     *
+     * @return 计时样本，结束时交给对应的 stop 方法
+     */
+    public Timer.Sample start()
+    {
+        return Timer.start(this.meterRegistry);
+    }
+
+    /**
+     * 当前的单调时钟读数（纳秒），与指标注册表使用同一个时钟
+     *
+     * @return 单调时钟读数
+     */
+    public long monotonicTime()
+    {
+        return this.meterRegistry.config()
+                                 .clock()
+                                 .monotonicTime();
+    }
+
+    /**
+     * 记录一条消息从收到到交给代理分发的耗时
+     *
+     * @param receivedAt 收到消息时的 {@link #monotonicTime()} 读数
+     */
+    public void stopProcess(final long receivedAt)
+    {
+        this.processTimer.record(this.monotonicTime() - receivedAt, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次聊天室 ID 解析的耗时
+     *
+     * @param sample 开始解析时的计时样本
+     * @param result 解析结果：existing / created / group / absent
+     */
+    public void stopRoomResolution(@NonNull final Timer.Sample sample, @NonNull final String result)
+    {
+        sample.stop(this.roomResolutionTimers.computeIfAbsent(result,
+                                                              key -> Timer.builder("chat.room.resolve")
+                                                                          .description("Time to resolve the chat room of a sender/receiver pair")
+                                                                          .tag("result", key)
+                                                                          .register(this.meterRegistry)));
+    }
+
+    /**
+     * 提交保存操作，并在其完成时记录耗时和结果
+     *
+     * @param mode 持久化模式
+     * @param save 提交保存操作并返回其 Future
+     * @param <T>  保存结果类型
+     * @return 保存操作的 Future
+     */
+    public <T> CompletableFuture<T> timePersistence(@NonNull final String mode,
+                                                    @NonNull final Supplier<CompletableFuture<T>> save)
+    {
+        final var timers = this.persistenceTimers.computeIfAbsent(mode,
+                                                                  key -> new Timer[]{this.persistenceTimer(key, "success"),
+                                                                                     this.persistenceTimer(key, "failure")});
+        final var sample = this.start();
+        final var future = save.get();
+
+        future.whenComplete((result, ex) -> sample.stop(timers[ex == null ? 0 : 1]));
+
+        return future;
+    }
+
+    /**
+     * 记录一条消息的投递数
+     *
+     * @param subscriptions 消息投递到的订阅数
+     */
+    public void recordFanOut(final int subscriptions)
+    {
+        this.fanOutSummary.record(subscriptions);
+    }
+
+    /**
+     * 为分片代理注册积压量指标，并接收其投递数
+     *
+     * @param broker 分片代理
+     */
+    public void bindBroker(@NonNull final ShardedBrokerMessageHandler broker)
+    {
+        Gauge.builder("chat.broker.backlog", broker, ShardedBrokerMessageHandler::backlog)
+             .description("Messages queued in broker shards and not yet dispatched")
+             .baseUnit("messages")
+             .register(this.meterRegistry);
+
+        broker.setFanOutRecorder(this::recordFanOut);
+    }
+
+    private Timer persistenceTimer(final String mode, final String outcome)
+    {
+        return Timer.builder("chat.message.persist")
+                    .description("Time from submitting a chat message for persistence until it is written")
+                    .tag("mode", mode)
+                    .tag("outcome", outcome)
+                    .register(this.meterRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+package org.ovo307000.chat.metrics;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 在 SEND 帧进入客户端入站通道时记录收到的时间
+ *
+ * <p>
+ * 注册在入站通道的第一个拦截器位置，时间戳（{@link ChatMetrics#monotonicTime()} 的读数）写入 {@link #RECEIVED_AT_HEADER} 头，
+ * 控制器在把消息交给代理分发后据此记录 chat.message.process，耗时因此包含限流和入站执行器中的排队，而不只是控制器方法本身。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ReceiveTimestampInterceptor implements ChannelInterceptor
+{
+    /* 收到帧时的单调时钟读数（纳秒） */
+    public static final String RECEIVED_AT_HEADER = "chat.receivedAt";
+
+    private final ChatMetrics chatMetrics;
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel)
+    {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE)
+        {
+            return message;
+        }
+
+        final var receivedAt = this.chatMetrics.monotonicTime();
+        final var accessor   = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+
+        // STOMP 解码出的帧的头保持可变，直接写入，不复制消息
+        if (accessor != null && accessor.isMutable())
+        {
+            accessor.setHeader(RECEIVED_AT_HEADER, receivedAt);
+
+            return message;
+        }
+
+        return MessageBuilder.fromMessage(message)
+                             .setHeader(RECEIVED_AT_HEADER, receivedAt)
+                             .build();
+    }
+}
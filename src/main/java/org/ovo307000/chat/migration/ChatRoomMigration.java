@@ -0,0 +1,139 @@
+package org.ovo307000.chat.migration;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.module.entity.ChatRoom;
+import org.ovo307000.chat.service.ChatRoomService;
+import org.ovo307000.chat.storage.ConditionalOnMongoStorage;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 将旧版本的镜像双文档聊天室合并为规范化的单文档聊天室
+ *
+ * <p>
+ * 旧版本为每一对用户写入两个互为镜像的 ChatRoom 文档，文档 ID 由 MongoDB 生成（ObjectId 类型），
+ * 而消息的 chatRoomId 可能是其中任一文档的 ID，也可能是 "a ❤ b" 形式的 chatId。
+ * 新版本每对用户只有一个以 {@link ChatRoomService#chatRoomIdOf} 为 ID 的文档（字符串类型），
+ * 因此只需处理 _id 为 ObjectId 的遗留文档，迁移完成后每次启动的检查开销很小。
+ * </p>
+ *
+ * <p>
+ * 每个遗留文档的处理步骤：改写引用它的消息的 chatRoomId → 写入规范化聊天室 → 删除遗留文档。
+ * 每一步都是幂等的，中途失败后重新启动会继续完成迁移。
+ * </p>
+ *
+ * <p>
+ * 迁移在所有单例创建完成后、Web 服务器启动之前执行，此时还没有任何 STOMP 或 REST 请求，
+ * 最近消息缓存和聊天室 ID 缓存不会在合并完成前缓存规范化聊天室的不完整历史。
+ * </p>
+ *
+ * <p>
+ * 内存存储引擎没有遗留文档，也没有 MongoTemplate，使用它时不注册迁移。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnMongoStorage
+@ConditionalOnProperty(prefix = "chat.migration", name = "merge-mirrored-chat-rooms", matchIfMissing = true)
+public class ChatRoomMigration implements SmartInitializingSingleton
+{
+    /* BSON 中 ObjectId 的类型编号 */
+    private static final int OBJECT_ID_TYPE = 7;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated()
+    {
+        final var legacyQuery = Query.query(Criteria.where("_id")
+                                                    .type(OBJECT_ID_TYPE));
+        final var legacyRooms = this.mongoTemplate.find(legacyQuery,
+                                                        Document.class,
+                                                        this.mongoTemplate.getCollectionName(ChatRoom.class));
+
+        if (legacyRooms.isEmpty())
+        {
+            return;
+        }
+
+        log.info("Merging {} legacy mirrored chat room documents", legacyRooms.size());
+
+        final var merged = new HashSet<String>();
+
+        for (final var legacyRoom : legacyRooms)
+        {
+            try
+            {
+                merged.add(this.mergeLegacyRoom(legacyRoom));
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Failed to merge legacy chat room {}", legacyRoom.get("_id"), e);
+            }
+        }
+
+        log.info("Merged legacy chat rooms into {} canonical chat rooms", merged.size());
+    }
+
+    /**
+     * 合并一个遗留的聊天室文档
+     *
+     * @param legacyRoom 遗留的聊天室文档
+     * @return 合并后的规范化聊天室ID
+     */
+    private String mergeLegacyRoom(@NonNull final Document legacyRoom)
+    {
+        final var legacyId   = legacyRoom.getObjectId("_id");
+        final var senderId   = Objects.requireNonNull(legacyRoom.getString("senderId"), "senderId");
+        final var receiverId = Objects.requireNonNull(legacyRoom.getString("receiverId"), "receiverId");
+
+        final var chatRoomId    = ChatRoomService.chatRoomIdOf(senderId, receiverId);
+        final var firstIsSender = senderId.compareTo(receiverId) <= 0;
+
+        // 消息中可能引用的旧聊天室ID：文档的 ObjectId 字符串形式，以及旧的 chatId
+        final var legacyReferences = new HashSet<>(List.of(legacyId.toHexString()));
+        final var legacyChatId     = legacyRoom.getString("chatId");
+
+        if (legacyChatId != null && !legacyChatId.equals(chatRoomId))
+        {
+            legacyReferences.add(legacyChatId);
+        }
+
+        final var updated = this.mongoTemplate.updateMulti(Query.query(Criteria.where("chatRoomId")
+                                                                               .in(legacyReferences)),
+                                                           Update.update("chatRoomId", chatRoomId),
+                                                           ChatMessage.class);
+
+        this.mongoTemplate.save(ChatRoom.builder()
+                                        .id(chatRoomId)
+                                        .chatId(chatRoomId)
+                                        .senderId(firstIsSender ? senderId : receiverId)
+                                        .receiverId(firstIsSender ? receiverId : senderId)
+                                        .build());
+
+        this.mongoTemplate.remove(Query.query(Criteria.where("_id")
+                                                      .is(legacyId)),
+                                  ChatRoom.class);
+
+        log.debug("Merged legacy chat room {} into {} ({} messages updated)",
+                  legacyId,
+                  chatRoomId,
+                  updated.getModifiedCount());
+
+        return chatRoomId;
+    }
+}
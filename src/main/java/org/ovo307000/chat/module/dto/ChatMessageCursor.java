@@ -0,0 +1,74 @@
+package org.ovo307000.chat.module.dto;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 聊天记录分页游标，由消息的时间戳和 ID 组成的键集（keyset）
+ * 时间戳相同时使用消息 ID 作为第二排序键，保证游标在同一时间戳下仍然唯一且有序
+ *
+ * @param timestamp 游标所在消息的时间戳
+ * @param id        游标所在消息的 ID
+ */
+public record ChatMessageCursor(LocalDateTime timestamp, String id)
+{
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 以指定消息的位置创建游标
+     *
+     * @param chatMessage 游标指向的消息
+     * @return 指向该消息的游标
+     */
+    public static ChatMessageCursor of(@NonNull final ChatMessage chatMessage)
+    {
+        return new ChatMessageCursor(chatMessage.getTimestamp(), chatMessage.getId());
+    }
+
+    /**
+     * 将客户端传回的游标字符串解码为游标对象
+     *
+     * @param encoded 由 {@link #encode()} 生成的游标字符串
+     * @return 解码后的游标
+     * @throws IllegalArgumentException 如果游标格式不正确
+     */
+    public static ChatMessageCursor decode(@NonNull final String encoded)
+    {
+        try
+        {
+            final var decoded = new String(Base64.getUrlDecoder()
+                                                 .decode(encoded), StandardCharsets.UTF_8);
+            final var index = decoded.indexOf(SEPARATOR);
+
+            if (index <= 0 || index == decoded.length() - 1)
+            {
+                throw new IllegalArgumentException("Malformed chat message cursor: " + encoded);
+            }
+
+            return new ChatMessageCursor(LocalDateTime.parse(decoded.substring(0, index)),
+                                         decoded.substring(index + 1));
+        }
+        catch (RuntimeException e)
+        {
+            throw new IllegalArgumentException("Malformed chat message cursor: " + encoded, e);
+        }
+    }
+
+    /**
+     * 将游标编码为 URL 安全的字符串，供客户端在下一次请求中传回
+     *
+     * @return 编码后的游标字符串
+     */
+    public String encode()
+    {
+        final var raw = this.timestamp + SEPARATOR + this.id;
+
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
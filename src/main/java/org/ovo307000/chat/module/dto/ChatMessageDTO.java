@@ -9,6 +9,7 @@ import java.util.List;
 // ChatMessageDTO 类用于表示聊天消息的数据传输对象
 public record ChatMessageDTO(String id,          // 消息的唯一标识符
                              String chatId,      // 聊天室的唯一标识符
+                             Long seq,           // 聊天室内的消息序号
                              String senderId,    // 发送消息的用户ID
                              String receiverId,  // 接收消息的用户ID
                              String content,     // 消息的具体内容
@@ -21,13 +22,20 @@ public record ChatMessageDTO(String id,          // 消息的唯一标识符
         // 使用Stream API处理chatMessages列表
         return chatMessages.stream()
                            // 将每个ChatMessage对象映射为新的ChatMessageDTO对象
-                           .map(chatMessage -> new ChatMessageDTO(chatMessage.getId(),
-                                                                  chatMessage.getChatRoomId(),
-                                                                  chatMessage.getSenderId(),
-                                                                  chatMessage.getReceiverId(),
-                                                                  chatMessage.getContent(),
-                                                                  chatMessage.getTimestamp()))
+                           .map(ChatMessageDTO::fromChatMessage)
                            // 收集转换后的对象到一个新的List中
                            .toList();
     }
+
+    // 静态方法，用于将单个ChatMessage实体转换为ChatMessageDTO
+    public static ChatMessageDTO fromChatMessage(final ChatMessage chatMessage)
+    {
+        return new ChatMessageDTO(chatMessage.getId(),
+                                  chatMessage.getChatRoomId(),
+                                  chatMessage.getSeq(),
+                                  chatMessage.getSenderId(),
+                                  chatMessage.getReceiverId(),
+                                  chatMessage.getContent(),
+                                  chatMessage.getTimestamp());
+    }
 }
@@ -0,0 +1,29 @@
+package org.ovo307000.chat.module.dto;
+
+import org.ovo307000.chat.service.ChatMessageService;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 按序号增量同步的结果
+ *
+ * @param messages 序号大于请求位置的消息，按序号从小到大排列
+ * @param lastSeq  本次同步到的位置，作为 since 参数传回可继续同步
+ * @param hasMore  是否还有更多消息，为 false 时客户端已经与服务端一致
+ */
+public record ChatMessageDeltaDTO(List<ChatMessageDTO> messages, long lastSeq, boolean hasMore) implements Serializable
+{
+    /**
+     * 由服务层的增量同步结果构建
+     *
+     * @param delta 增量同步结果
+     * @return 增量同步结果 DTO
+     */
+    public static ChatMessageDeltaDTO fromDelta(final ChatMessageService.ChatMessageDelta delta)
+    {
+        return new ChatMessageDeltaDTO(ChatMessageDTO.fromChatMessages(delta.messages()),
+                                       delta.lastSeq(),
+                                       delta.hasMore());
+    }
+}
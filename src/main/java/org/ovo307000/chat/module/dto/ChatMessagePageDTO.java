@@ -0,0 +1,56 @@
+package org.ovo307000.chat.module.dto;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 聊天记录分页结果
+ *
+ * @param messages     本页消息，按时间从旧到新排列
+ * @param beforeCursor 本页最旧一条消息的游标，作为 before 参数传回可继续向前翻页；本页为空时为 null
+ * @param afterCursor  本页最新一条消息的游标，作为 after 参数传回可获取更新的消息；本页为空时为 null
+ * @param hasMore      在翻页方向上是否还有更多消息
+ */
+public record ChatMessagePageDTO(List<ChatMessageDTO> messages,
+                                 String beforeCursor,
+                                 String afterCursor,
+                                 boolean hasMore) implements Serializable
+{
+    /**
+     * 由按时间正序排列的查询结果构建分页结果
+     * 查询时多取一条用于判断是否还有更多数据，多出的那一条位于翻页方向的末端，会被丢弃
+     *
+     * @param chatMessages 按时间正序排列的消息，最多为 limit + 1 条
+     * @param limit        本页大小
+     * @param backward     是否为向前（更旧的消息）翻页
+     * @return 分页结果
+     */
+    public static ChatMessagePageDTO fromChatMessages(final List<? extends ChatMessage> chatMessages,
+                                                      final int limit,
+                                                      final boolean backward)
+    {
+        final var hasMore = chatMessages.size() > limit;
+
+        // 向前翻页时多出的一条是最旧的消息（列表头部），向后翻页时是最新的消息（列表尾部）
+        final List<? extends ChatMessage> page = hasMore
+                                                 ? backward
+                                                   ? chatMessages.subList(chatMessages.size() - limit,
+                                                                          chatMessages.size())
+                                                   : chatMessages.subList(0, limit)
+                                                 : chatMessages;
+
+        if (page.isEmpty())
+        {
+            return new ChatMessagePageDTO(List.of(), null, null, false);
+        }
+
+        return new ChatMessagePageDTO(ChatMessageDTO.fromChatMessages(page),
+                                      ChatMessageCursor.of(page.get(0))
+                                                       .encode(),
+                                      ChatMessageCursor.of(page.get(page.size() - 1))
+                                                       .encode(),
+                                      hasMore);
+    }
+}
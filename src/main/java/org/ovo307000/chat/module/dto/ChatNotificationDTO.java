@@ -6,8 +6,9 @@ import org.ovo307000.chat.module.entity.ChatNotification;
 /**
  * DTO for {@link org.ovo307000.chat.module.entity.ChatNotification}
  * 此记录类用于传输聊天通知信息。
+ * seq 为消息在聊天室内的序号，客户端断线重连后以收到的最大序号请求增量同步；通知不是由消息生成时为 null。
  */
-public record ChatNotificationDTO(String id, String senderId, String receiverId, String content)
+public record ChatNotificationDTO(String id, Long seq, String senderId, String receiverId, String content)
 {
     /**
      * 将 ChatNotification 实体转换为 ChatNotificationDTO。
@@ -18,6 +19,7 @@ public record ChatNotificationDTO(String id, String senderId, String receiverId,
     public static ChatNotificationDTO fromChatNotification(final ChatNotification chatNotification)
     {
         return new ChatNotificationDTO(chatNotification.getId(),
+                                       null,
                                        chatNotification.getSenderId(),
                                        chatNotification.getReceiverId(),
                                        chatNotification.getContent());
@@ -32,6 +34,7 @@ public record ChatNotificationDTO(String id, String senderId, String receiverId,
     public static ChatNotificationDTO fromChatMessage(final ChatMessage chatMessage)
     {
         return new ChatNotificationDTO(chatMessage.getId(),
+                                       chatMessage.getSeq(),
                                        chatMessage.getSenderId(),
                                        chatMessage.getReceiverId(),
                                        chatMessage.getContent());
@@ -0,0 +1,22 @@
+package org.ovo307000.chat.module.dto;
+
+import org.ovo307000.chat.search.MessageSearchIndex;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 消息检索结果中的一条消息
+ *
+ * @param message 命中的消息
+ * @param score   相关度得分，越大越相关
+ */
+public record ChatSearchHitDTO(ChatMessageDTO message, double score) implements Serializable
+{
+    public static List<ChatSearchHitDTO> fromHits(final List<MessageSearchIndex.Hit> hits)
+    {
+        return hits.stream()
+                   .map(hit -> new ChatSearchHitDTO(ChatMessageDTO.fromChatMessage(hit.message()), hit.score()))
+                   .toList();
+    }
+}
@@ -0,0 +1,30 @@
+package org.ovo307000.chat.module.dto;
+
+import org.ovo307000.chat.search.MessageSearchIndex;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 消息检索的分页结果
+ *
+ * @param query   查询文本
+ * @param hits    本页结果，按相关度从高到低排列
+ * @param page    页码，从 0 开始
+ * @param size    页大小
+ * @param hasMore 是否还有下一页
+ */
+public record ChatSearchResultDTO(String query,
+                                  List<ChatSearchHitDTO> hits,
+                                  int page,
+                                  int size,
+                                  boolean hasMore) implements Serializable
+{
+    public static ChatSearchResultDTO fromSearchResult(final String query,
+                                                       final MessageSearchIndex.SearchResult result,
+                                                       final int page,
+                                                       final int size)
+    {
+        return new ChatSearchResultDTO(query, ChatSearchHitDTO.fromHits(result.hits()), page, size, result.hasMore());
+    }
+}
@@ -0,0 +1,28 @@
+package org.ovo307000.chat.module.dto;
+
+import org.ovo307000.chat.module.entity.GroupRoom;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * 群聊数据传输对象，创建群聊时 id 可以为空，由服务端生成
+ *
+ * @param id        群聊ID
+ * @param name      群聊名称
+ * @param ownerId   创建者的用户ID
+ * @param memberIds 成员的用户ID
+ */
+public record GroupRoomDTO(String id, String name, String ownerId, Set<String> memberIds) implements Serializable
+{
+    /**
+     * 从GroupRoom实体类转换为GroupRoomDTO对象
+     *
+     * @param groupRoom 群聊实体
+     * @return 群聊数据传输对象
+     */
+    public static GroupRoomDTO fromGroupRoom(final GroupRoom groupRoom)
+    {
+        return new GroupRoomDTO(groupRoom.getId(), groupRoom.getName(), groupRoom.getOwnerId(), groupRoom.getMemberIds());
+    }
+}
@@ -0,0 +1,12 @@
+package org.ovo307000.chat.module.dto;
+
+/**
+ * 客户端上报的读取位置
+ *
+ * @param userId 读取消息的用户ID
+ * @param peerId 聊天对象的用户ID，群聊时为群聊ID
+ * @param seq    已读的最大消息序号
+ */
+public record ReadCursorDTO(String userId, String peerId, long seq)
+{
+}
@@ -0,0 +1,14 @@
+package org.ovo307000.chat.module.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 用户上线时一次性下发的未读摘要，只包含有未读消息的聊天室
+ *
+ * @param userId 用户ID
+ * @param rooms  各聊天室的未读摘要
+ */
+public record UnreadBundleDTO(String userId, List<UnreadRoomDTO> rooms) implements Serializable
+{
+}
@@ -0,0 +1,23 @@
+package org.ovo307000.chat.module.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 单个聊天室的未读摘要
+ *
+ * @param chatRoomId  聊天室ID
+ * @param peerId      聊天对象的用户ID，群聊时为群聊ID
+ * @param lastReadSeq 用户在该聊天室中已读的最大序号
+ * @param messages    已读位置之后对方发来的消息，按序号从小到大排列，最多 max-messages-per-room 条
+ * @param lastSeq     本摘要同步到的位置，作为 since 参数传给增量同步接口可继续获取
+ * @param hasMore     是否还有更多未读消息
+ */
+public record UnreadRoomDTO(String chatRoomId,
+                            String peerId,
+                            long lastReadSeq,
+                            List<ChatMessageDTO> messages,
+                            long lastSeq,
+                            boolean hasMore) implements Serializable
+{
+}
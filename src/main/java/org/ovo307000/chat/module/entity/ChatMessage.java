@@ -2,6 +2,7 @@ package org.ovo307000.chat.module.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -10,6 +11,13 @@ import java.time.LocalDateTime;
 @Setter
 @Builder
 @Document
+// 支撑按 (timestamp, id) 键集分页的复合索引，每页历史记录只需一次索引范围扫描
+@CompoundIndex(name = "chatRoomId_timestamp_id", def = "{'chatRoomId': 1, 'timestamp': 1, '_id': 1}")
+// 支撑按序号增量同步，并保证聊天室内序号唯一；引入序号之前写入的消息没有 seq 字段，不受唯一约束
+@CompoundIndex(name = "chatRoomId_seq",
+               def = "{'chatRoomId': 1, 'seq': 1}",
+               unique = true,
+               partialFilter = "{'seq': {$exists: true}}")
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatMessage
@@ -21,6 +29,9 @@ public class ChatMessage
     /* 聊天室 ID */
     private String chatRoomId;
 
+    /* 聊天室内单调递增的序号，由服务端在持久化前分配 */
+    private Long seq;
+
     /* 发送者 ID */
     private String senderId;
 
@@ -32,4 +43,17 @@ public class ChatMessage
 
     /* 时间戳 */
     private LocalDateTime timestamp;
+
+    /**
+     * 创建尚未分配序号的消息，序号在保存时由服务端分配
+     */
+    public ChatMessage(final String id,
+                       final String chatRoomId,
+                       final String senderId,
+                       final String receiverId,
+                       final String content,
+                       final LocalDateTime timestamp)
+    {
+        this(id, chatRoomId, null, senderId, receiverId, content, timestamp);
+    }
 }
@@ -2,6 +2,7 @@ package org.ovo307000.chat.module.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Getter
@@ -12,16 +13,18 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @AllArgsConstructor
 public class ChatRoom
 {
-    /* 聊天室 ID */
+    /* 聊天室 ID，由两个参与者的 ID 按字典序拼接而成，见 ChatRoomService#chatRoomIdOf */
     @Id
     private String id;
 
-    /* 聊天室名称 */
+    /* 聊天室名称，与聊天室 ID 相同 */
     private String chatId;
 
-    /* 发送者 ID */
+    /* 字典序较小的参与者 ID，与 receiverId 一起用于查询用户参与的全部聊天室 */
+    @Indexed
     private String senderId;
 
-    /* 接收者 ID */
+    /* 字典序较大的参与者 ID */
+    @Indexed
     private String receiverId;
 }
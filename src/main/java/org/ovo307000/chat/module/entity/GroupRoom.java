@@ -0,0 +1,31 @@
+package org.ovo307000.chat.module.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Set;
+
+@Getter
+@Setter
+@Builder
+@Document
+@NoArgsConstructor
+@AllArgsConstructor
+public class GroupRoom
+{
+    /* 群聊 ID，带有 GroupRoomService#GROUP_ID_PREFIX 前缀，同时作为群聊消息的聊天室 ID 和接收者 ID */
+    @Id
+    private String id;
+
+    /* 群聊名称 */
+    private String name;
+
+    /* 创建者的用户 ID */
+    private String ownerId;
+
+    /* 成员的用户 ID，多键索引用于查询用户加入的全部群聊 */
+    @Indexed
+    private Set<String> memberIds;
+}
@@ -0,0 +1,54 @@
+package org.ovo307000.chat.module.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Getter
+@Setter
+@Builder
+@Document
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadCursor
+{
+    /* 读取位置 ID，由用户 ID 和聊天室 ID 拼接而成，见 ReadCursor#idOf */
+    @Id
+    private String id;
+
+    /* 用户 ID，用户上线时按它查询全部读取位置 */
+    @Indexed
+    private String userId;
+
+    /* 聊天室 ID */
+    private String chatRoomId;
+
+    /* 用户在该聊天室中已读的最大消息序号 */
+    private long lastReadSeq;
+
+    /**
+     * 计算读取位置 ID
+     *
+     * @param userId     用户ID
+     * @param chatRoomId 聊天室ID
+     * @return 读取位置 ID
+     */
+    public static String idOf(final String userId, final String chatRoomId)
+    {
+        return userId + "|" + chatRoomId;
+    }
+
+    /**
+     * 创建读取位置
+     *
+     * @param userId      用户ID
+     * @param chatRoomId  聊天室ID
+     * @param lastReadSeq 已读的最大消息序号
+     * @return 读取位置
+     */
+    public static ReadCursor of(final String userId, final String chatRoomId, final long lastReadSeq)
+    {
+        return new ReadCursor(idOf(userId, chatRoomId), userId, chatRoomId, lastReadSeq);
+    }
+}
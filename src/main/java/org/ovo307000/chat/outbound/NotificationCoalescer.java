@@ -0,0 +1,339 @@
+package org.ovo307000.chat.outbound;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 出站消息的合并发送
+ *
+ * <p>
+ * 客户端可以在 SUBSCRIBE 帧中携带 coalesce 头（合并窗口，毫秒）开启合并，可选的 coalesce-max 头指定单帧最多合并的消息数。
+ * 开启后，发往该订阅的 JSON 消息不再逐条发送：窗口内的消息拼接为一个 JSON 数组，作为一个 MESSAGE 帧发送，
+ * 帧上的 coalesced 头为数组长度。窗口从缓冲区中的第一条消息开始计时，凑满 coalesce-max 条时立即发送。
+ * 开启合并的订阅收到的消息总是数组（即使只有一条），未开启的订阅不受影响。
+ * </p>
+ *
+ * <p>
+ * 必须注册在出站通道拦截器的最前面：合并后的帧重新经过出站通道，后续拦截器（例如 CBOR 转写）处理的是整个数组。
+ * </p>
+ */
+@Slf4j
+@Component
+public class NotificationCoalescer implements ChannelInterceptor, MeterBinder
+{
+    /* SUBSCRIBE 帧中声明合并窗口（毫秒）的头 */
+    public static final String COALESCE_HEADER = "coalesce";
+
+    /* SUBSCRIBE 帧中声明单帧最多合并消息数的头 */
+    public static final String COALESCE_MAX_HEADER = "coalesce-max";
+
+    /* 合并后的 MESSAGE 帧上标记数组长度的头 */
+    public static final String COALESCED_HEADER = "coalesced";
+
+    private final ChatProperties.Coalescing config;
+
+    /* 会话 ID -> 订阅 ID -> 合并缓冲区 */
+    private final Map<String, Map<String, Lane>> lanes = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private DistributionSummary batchSize;
+
+    public NotificationCoalescer(@NonNull final ChatProperties chatProperties)
+    {
+        this.config    = chatProperties.getCoalescing();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+                                                                    {
+                                                                        final var thread = new Thread(runnable,
+                                                                                                      "chat-coalescer");
+                                                                        thread.setDaemon(true);
+
+                                                                        return thread;
+                                                                    });
+    }
+
+    @EventListener
+    public void onSessionSubscribe(final SessionSubscribeEvent event)
+    {
+        final var accessor       = StompHeaderAccessor.wrap(event.getMessage());
+        final var sessionId      = accessor.getSessionId();
+        final var subscriptionId = accessor.getSubscriptionId();
+        final var window         = accessor.getFirstNativeHeader(COALESCE_HEADER);
+
+        if (sessionId == null || subscriptionId == null || window == null)
+        {
+            return;
+        }
+
+        final var lane = this.parseLane(window, accessor.getFirstNativeHeader(COALESCE_MAX_HEADER));
+
+        if (lane == null)
+        {
+            log.debug("Ignoring invalid coalescing request '{}' of session {}", window, sessionId);
+
+            return;
+        }
+
+        this.lanes.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>())
+                  .put(subscriptionId, lane);
+    }
+
+    @EventListener
+    public void onSessionUnsubscribe(final SessionUnsubscribeEvent event)
+    {
+        final var accessor  = StompHeaderAccessor.wrap(event.getMessage());
+        final var sessionId = accessor.getSessionId();
+
+        if (sessionId == null || accessor.getSubscriptionId() == null)
+        {
+            return;
+        }
+
+        final var subscriptions = this.lanes.get(sessionId);
+
+        if (subscriptions != null)
+        {
+            subscriptions.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(final SessionDisconnectEvent event)
+    {
+        // 会话已经关闭，缓冲区中尚未发送的消息无处可发，直接丢弃
+        this.lanes.remove(event.getSessionId());
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel)
+    {
+        final var headers = message.getHeaders();
+
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE ||
+            !(message.getPayload() instanceof byte[]))
+        {
+            return message;
+        }
+
+        final var lane = this.laneOf(SimpMessageHeaderAccessor.getSessionId(headers),
+                                     SimpMessageHeaderAccessor.getSubscriptionId(headers));
+
+        if (lane == null)
+        {
+            return message;
+        }
+
+        final var accessor    = SimpMessageHeaderAccessor.wrap(message);
+        final var contentType = accessor.getContentType();
+
+        // 已经合并过的帧直接放行；只有 JSON 消息可以拼接为数组
+        if (accessor.getFirstNativeHeader(COALESCED_HEADER) != null ||
+            contentType == null ||
+            !MediaType.APPLICATION_JSON.isCompatibleWith(contentType))
+        {
+            return message;
+        }
+
+        @SuppressWarnings("unchecked") final var json = (Message<byte[]>) message;
+
+        final List<Message<byte[]>> full;
+        final boolean               first;
+
+        synchronized (lane)
+        {
+            first = lane.pending.isEmpty();
+            lane.pending.add(json);
+            full = lane.pending.size() >= lane.maxItems ? lane.drain() : null;
+        }
+
+        if (full != null)
+        {
+            // 凑满一帧立即发送，本条消息包含在其中
+            this.send(full, channel);
+        }
+        else if (first)
+        {
+            this.scheduler.schedule(() -> this.flush(lane, channel), lane.windowMicros, TimeUnit.MICROSECONDS);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        this.batchSize = DistributionSummary.builder("chat.outbound.coalesced")
+                                            .description("Messages carried by each coalesced outbound frame")
+                                            .baseUnit("messages")
+                                            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * 合并窗口到期，发送缓冲区中的消息
+     */
+    private void flush(final Lane lane, final MessageChannel channel)
+    {
+        final List<Message<byte[]>> batch;
+
+        synchronized (lane)
+        {
+            batch = lane.drain();
+        }
+
+        // 窗口内已经凑满一帧发送过时，缓冲区可能为空
+        if (!batch.isEmpty())
+        {
+            try
+            {
+                this.send(batch, channel);
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("Failed to send {} coalesced messages", batch.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 将一批 JSON 消息拼接为一个 JSON 数组帧并发送，沿用第一条消息的会话、订阅和目的地
+     */
+    private void send(final List<Message<byte[]>> batch, final MessageChannel channel)
+    {
+        var length = 1 + batch.size();
+
+        for (final var message : batch)
+        {
+            length += message.getPayload().length;
+        }
+
+        // 逐字节拼接已经编码好的 JSON，不重新序列化
+        final var payload  = new byte[length];
+        var       position = 0;
+        payload[position++] = '[';
+
+        for (int i = 0; i < batch.size(); i++)
+        {
+            if (i > 0)
+            {
+                payload[position++] = ',';
+            }
+
+            final var json = batch.get(i)
+                                  .getPayload();
+            System.arraycopy(json, 0, payload, position, json.length);
+            position += json.length;
+        }
+
+        payload[position] = ']';
+
+        final var accessor = SimpMessageHeaderAccessor.wrap(batch.get(0));
+        accessor.setNativeHeader(COALESCED_HEADER, String.valueOf(batch.size()));
+
+        if (this.batchSize != null)
+        {
+            this.batchSize.record(batch.size());
+        }
+
+        channel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    @Nullable
+    private Lane laneOf(@Nullable final String sessionId, @Nullable final String subscriptionId)
+    {
+        if (sessionId == null || subscriptionId == null)
+        {
+            return null;
+        }
+
+        final var subscriptions = this.lanes.get(sessionId);
+
+        return subscriptions == null ? null : subscriptions.get(subscriptionId);
+    }
+
+    /**
+     * 按客户端请求的参数创建合并缓冲区，参数超出配置的上限时截断
+     *
+     * @return 参数无法解析时返回 null
+     */
+    @Nullable
+    private Lane parseLane(final String window, @Nullable final String max)
+    {
+        try
+        {
+            final var windowMillis = Math.min(Long.parseLong(window.trim()),
+                                              this.config.getMaxWindow()
+                                                         .toMillis());
+            final var maxItems     = max == null
+                                     ? this.config.getMaxBatchSize()
+                                     : Math.min(Integer.parseInt(max.trim()), this.config.getMaxBatchSize());
+
+            if (windowMillis <= 0 || maxItems <= 0)
+            {
+                return null;
+            }
+
+            return new Lane(TimeUnit.MILLISECONDS.toMicros(windowMillis), maxItems);
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 单个订阅的合并缓冲区，通过对象锁保护
+     */
+    private static final class Lane
+    {
+        private final long                  windowMicros;
+        private final int                   maxItems;
+        private final List<Message<byte[]>> pending = new ArrayList<>();
+
+        private Lane(final long windowMicros, final int maxItems)
+        {
+            this.windowMicros = windowMicros;
+            this.maxItems     = maxItems;
+        }
+
+        private List<Message<byte[]>> drain()
+        {
+            final var batch = new ArrayList<>(this.pending);
+            this.pending.clear();
+
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.ovo307000.chat.outbound;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+
+/**
+ * 聊天通知的一次编码、多处投递
+ *
+ * <p>
+ * SimpMessagingTemplate#convertAndSend 每调用一次就通过消息转换器（Jackson）编码一次负载，
+ * 同一条通知发给多个接收者时，编码开销与接收者数量成正比。
+ * 这里先把通知编码为一个不可变的 {@link Message}（负载为 byte[]，带 content-type），
+ * 再发送到每个目的地：SimpMessagingTemplate#send 只为每个目的地复制消息头，负载字节数组在所有目的地之间共享，
+ * 下游（代理、出站通道拦截器）都不修改负载，只会在需要转写时生成新的数组。
+ * 只有一个目的地时直接使用 convertAndSend，它在转换得到的消息头上原地设置目的地，比共享负载少复制一次消息头。
+ * </p>
+ *
+ * <p>
+ * 目的地与 convertAndSendToUser 使用的相同，即客户端订阅的 /user/{userId}/queue/messages，用户的每个会话都会收到。
+ * 代理只处理 /user 和 /topic 前缀（见 WebsocketConfig），不要直接发送到其他前缀的会话目的地，代理会丢弃这些消息。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationDispatcher
+{
+    /* 客户端订阅的个人队列 */
+    public static final String MESSAGES_QUEUE = "/queue/messages";
+
+    private final SimpMessagingTemplate brokerMessagingTemplate;
+
+    /**
+     * 将通知编码为可以重复发送的消息
+     *
+     * @param notification 聊天通知
+     * @return 负载为编码后字节的不可变消息，不含目的地
+     * @throws MessageConversionException 如果没有消息转换器能够编码该通知
+     */
+    public Message<byte[]> encode(@NonNull final ChatNotificationDTO notification)
+    {
+        // 不附带消息头访问器，发送时由 SimpMessagingTemplate 为每个目的地复制消息头
+        final var encoded = this.brokerMessagingTemplate.getMessageConverter()
+                                                        .toMessage(notification, null);
+
+        if (encoded == null || !(encoded.getPayload() instanceof byte[]))
+        {
+            throw new MessageConversionException("Unable to encode notification to a byte payload");
+        }
+
+        @SuppressWarnings("unchecked") final var bytes = (Message<byte[]>) encoded;
+
+        return bytes;
+    }
+
+    /**
+     * 编码一次，发送到每个用户的个人队列（用户的每个会话都会收到）
+     *
+     * @param notification 聊天通知
+     * @param userIds      接收者的用户ID
+     */
+    public void sendToUsers(@NonNull final ChatNotificationDTO notification, @NonNull final Collection<String> userIds)
+    {
+        if (userIds.isEmpty())
+        {
+            return;
+        }
+
+        if (userIds.size() == 1)
+        {
+            this.brokerMessagingTemplate.convertAndSendToUser(userIds.iterator()
+                                                                     .next(), MESSAGES_QUEUE, notification);
+
+            return;
+        }
+
+        final var encoded = this.encode(notification);
+
+        for (final var userId : userIds)
+        {
+            this.sendToUser(userId, encoded);
+        }
+    }
+
+    /**
+     * 将已经编码的通知发送到用户的个人队列
+     *
+     * @param userId  接收者的用户ID
+     * @param encoded {@link #encode(ChatNotificationDTO)} 的结果
+     */
+    public void sendToUser(@NonNull final String userId, @NonNull final Message<byte[]> encoded)
+    {
+        // 与 convertAndSendToUser 相同，用户名中的 / 需要转义
+        this.brokerMessagingTemplate.send(this.brokerMessagingTemplate.getUserDestinationPrefix() +
+                                          StringUtils.replace(userId, "/", "%2F") +
+                                          MESSAGES_QUEUE, encoded);
+    }
+}
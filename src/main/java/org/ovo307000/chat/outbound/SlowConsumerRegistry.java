@@ -0,0 +1,269 @@
+package org.ovo307000.chat.outbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跟踪所有 WebSocket 会话的出站积压
+ *
+ * <p>
+ * 为每个会话创建 {@link SlowConsumerSessionDecorator}，并定期检查卡在一次发送中超过时间上限的会话：
+ * 这样的会话如果不再有新消息发来，装饰器自己没有机会检查，需要由这里断开。
+ * 每个会话的积压字节数以 chat.websocket.session.backlog 指标导出（带 session 标签，会话断开时移除），
+ * 丢弃、合并和断开的次数以计数器导出。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SlowConsumerRegistry implements MeterBinder
+{
+    private final ChatProperties.SlowConsumer config;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    /* 会话 ID -> 装饰后的会话 */
+    private final Map<String, Tracked> sessions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    @Nullable
+    private MeterRegistry meterRegistry;
+
+    @Nullable
+    private Counter dropped;
+
+    @Nullable
+    private Counter summarized;
+
+    private final Map<SlowConsumerSessionDecorator.Reason, Counter> disconnects =
+            new EnumMap<>(SlowConsumerSessionDecorator.Reason.class);
+
+    public SlowConsumerRegistry(@NonNull final ChatProperties chatProperties)
+    {
+        this.config    = chatProperties.getSlowConsumer();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+                                                                    {
+                                                                        final var thread = new Thread(runnable,
+                                                                                                      "chat-slow-consumer");
+                                                                        thread.setDaemon(true);
+
+                                                                        return thread;
+                                                                    });
+
+        this.scheduler.scheduleWithFixedDelay(this::closeStuckSessions,
+                                              this.config.getCheckIntervalMillis(),
+                                              this.config.getCheckIntervalMillis(),
+                                              TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 装饰一个新建立的会话
+     *
+     * @param session         原始会话
+     * @param sendTimeLimit   单次发送的最长时间（毫秒），来自 WebSocketTransportRegistration
+     * @param bufferSizeLimit 等待发送的帧的最大字节数，来自 WebSocketTransportRegistration
+     * @return 装饰后的会话
+     */
+    public WebSocketSession decorate(final WebSocketSession session, final int sendTimeLimit, final int bufferSizeLimit)
+    {
+        final var decorator = new SlowConsumerSessionDecorator(session,
+                                                               sendTimeLimit,
+                                                               bufferSizeLimit,
+                                                               this.config.getPolicy(),
+                                                               this::isCritical,
+                                                               new SessionListener(session.getId()));
+
+        this.sessions.put(session.getId(), new Tracked(decorator, this.registerBacklog(session.getId(), decorator)));
+
+        return decorator;
+    }
+
+    /**
+     * 会话关闭后停止跟踪，并移除它的积压指标
+     *
+     * @param sessionId 会话 ID
+     */
+    public void remove(final String sessionId)
+    {
+        final var tracked = this.sessions.remove(sessionId);
+
+        if (tracked != null && tracked.backlog() != null && this.meterRegistry != null)
+        {
+            this.meterRegistry.remove(tracked.backlog());
+        }
+    }
+
+    /**
+     * 当前跟踪的会话数
+     */
+    public int size()
+    {
+        return this.sessions.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+        this.dropped = Counter.builder("chat.websocket.slow.dropped")
+                              .description("Non-critical outbound frames dropped from slow sessions")
+                              .baseUnit("frames")
+                              .register(meterRegistry);
+        this.summarized = Counter.builder("chat.websocket.slow.summarized")
+                                 .description("Non-critical outbound frames replaced by summary frames")
+                                 .baseUnit("frames")
+                                 .register(meterRegistry);
+
+        for (final var reason : SlowConsumerSessionDecorator.Reason.values())
+        {
+            this.disconnects.put(reason,
+                                 Counter.builder("chat.websocket.slow.disconnects")
+                                        .description("Slow sessions disconnected for exceeding a limit")
+                                        .tag("reason", reason.name()
+                                                             .toLowerCase())
+                                        .register(meterRegistry));
+        }
+
+        Gauge.builder("chat.websocket.session.backlog.max", this, SlowConsumerRegistry::maxBacklog)
+             .description("Largest outbound backlog among all WebSocket sessions")
+             .baseUnit("bytes")
+             .register(meterRegistry);
+
+        // 绑定之前建立的会话补充注册积压指标
+        this.sessions.replaceAll((sessionId, tracked) -> tracked.backlog() != null
+                                                         ? tracked
+                                                         : new Tracked(tracked.session(),
+                                                                       this.registerBacklog(sessionId,
+                                                                                            tracked.session())));
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * 断开卡在一次发送中超过时间上限的会话
+     */
+    void closeStuckSessions()
+    {
+        try
+        {
+            this.sessions.values()
+                         .forEach(tracked -> tracked.session()
+                                                    .closeIfSendTimeLimitExceeded());
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Error occurred while checking slow WebSocket sessions", e);
+        }
+    }
+
+    /**
+     * MESSAGE 帧的目的地是否匹配 critical-destinations 中的某个模式
+     */
+    boolean isCritical(final String destination)
+    {
+        return this.config.getCriticalDestinations()
+                          .stream()
+                          .anyMatch(pattern -> this.pathMatcher.match(pattern, destination));
+    }
+
+    private double maxBacklog()
+    {
+        return this.sessions.values()
+                            .stream()
+                            .mapToInt(tracked -> tracked.session()
+                                                        .getBufferSize())
+                            .max()
+                            .orElse(0);
+    }
+
+    @Nullable
+    private Meter registerBacklog(final String sessionId, final SlowConsumerSessionDecorator session)
+    {
+        if (this.meterRegistry == null || !this.config.isPerSessionMetrics())
+        {
+            return null;
+        }
+
+        return Gauge.builder("chat.websocket.session.backlog", session, SlowConsumerSessionDecorator::getBufferSize)
+                    .description("Outbound bytes waiting to be sent to a WebSocket session")
+                    .baseUnit("bytes")
+                    .tag("session", sessionId)
+                    .strongReference(false)
+                    .register(this.meterRegistry);
+    }
+
+    /**
+     * 跟踪中的会话和它的积压指标
+     */
+    private record Tracked(SlowConsumerSessionDecorator session, @Nullable Meter backlog)
+    {
+    }
+
+    /**
+     * 将装饰器的回调记入指标
+     */
+    private class SessionListener implements SlowConsumerSessionDecorator.Listener
+    {
+        private final String sessionId;
+
+        private SessionListener(final String sessionId)
+        {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public void dropped(final int frames)
+        {
+            log.debug("Dropped {} outbound frames of slow session {}", frames, this.sessionId);
+
+            if (SlowConsumerRegistry.this.dropped != null)
+            {
+                SlowConsumerRegistry.this.dropped.increment(frames);
+            }
+        }
+
+        @Override
+        public void summarized(final int frames)
+        {
+            log.debug("Summarized {} outbound frames of slow session {}", frames, this.sessionId);
+
+            if (SlowConsumerRegistry.this.summarized != null)
+            {
+                SlowConsumerRegistry.this.summarized.increment(frames);
+            }
+        }
+
+        @Override
+        public void disconnected(final SlowConsumerSessionDecorator.Reason reason)
+        {
+            final var counter = SlowConsumerRegistry.this.disconnects.get(reason);
+
+            if (counter != null)
+            {
+                counter.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package org.ovo307000.chat.outbound;
+
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.lang.Nullable;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 按慢消费者策略限制积压的 WebSocket 会话装饰器，替代 Spring 默认的 ConcurrentWebSocketSessionDecorator
+ *
+ * <p>
+ * 与 Spring 的实现相同，同一时刻只有一个线程向底层会话写入，其他线程把帧放入缓冲区后立即返回，不会被慢客户端阻塞。
+ * 不同之处在于缓冲区超过上限时的处理：Spring 只能断开会话或不加区分地丢弃最旧的帧，
+ * 这里先按 STOMP 帧头区分关键帧（CONNECTED、RECEIPT、ERROR 等非 MESSAGE 帧，以及目的地属于 critical-destinations 的 MESSAGE 帧）
+ * 和可以通过增量同步补回的非关键帧，再按策略丢弃最旧的非关键帧、把非关键帧替换为摘要帧，或者断开会话。
+ * 只剩关键帧仍然超过上限，或者单次发送超过时间上限时，总是断开会话。
+ * </p>
+ *
+ * <p>
+ * 摘要帧是发往原订阅的 MESSAGE 帧，带有 summary:true 和 dropped（被替换的消息数）头，消息体为 {"dropped":N}，
+ * 客户端收到后应当按序号增量同步该聊天室。
+ * </p>
+ */
+@Slf4j
+public class SlowConsumerSessionDecorator extends WebSocketSessionDecorator
+{
+    /* 摘要帧上的标记头 */
+    public static final String SUMMARY_HEADER = "summary";
+
+    /* 摘要帧上记录被替换的消息数的头 */
+    public static final String DROPPED_HEADER = "dropped";
+
+    /* 解析帧头时最多读取的字节数 */
+    private static final int MAX_HEADER_BYTES = 1_024;
+
+    private static final AtomicLong SUMMARY_IDS = new AtomicLong();
+
+    private final int                                   sendTimeLimit;
+    private final int                                   bufferSizeLimit;
+    private final ChatProperties.SlowConsumer.Policy    policy;
+    private final Predicate<String>                     criticalDestination;
+    private final Listener                              listener;
+
+    /* 等待发送的帧，由 bufferLock 保护 */
+    private final Deque<Frame> buffer     = new ArrayDeque<>();
+    private final Lock         bufferLock = new ReentrantLock();
+    private       int          bufferSize;
+
+    private final Lock flushLock = new ReentrantLock();
+    private final Lock closeLock = new ReentrantLock();
+
+    private volatile long    sendStartTime;
+    private volatile int     backlog;
+    private volatile boolean limitExceeded;
+    private volatile boolean closeInProgress;
+
+    /**
+     * @param delegate            底层会话
+     * @param sendTimeLimit       单次发送的最长时间（毫秒）
+     * @param bufferSizeLimit     等待发送的帧的最大字节数
+     * @param policy              超过上限时的处理方式
+     * @param criticalDestination 判断 MESSAGE 帧的目的地是否为关键目的地
+     * @param listener            丢弃、合并和断开的回调，用于记录指标
+     */
+    public SlowConsumerSessionDecorator(final WebSocketSession delegate,
+                                        final int sendTimeLimit,
+                                        final int bufferSizeLimit,
+                                        final ChatProperties.SlowConsumer.Policy policy,
+                                        final Predicate<String> criticalDestination,
+                                        final Listener listener)
+    {
+        super(delegate);
+
+        this.sendTimeLimit       = sendTimeLimit;
+        this.bufferSizeLimit     = bufferSizeLimit;
+        this.policy              = policy;
+        this.criticalDestination = criticalDestination;
+        this.listener            = listener;
+    }
+
+    /**
+     * 等待发送的帧的字节数，不包括正在写入的帧
+     */
+    public int getBufferSize()
+    {
+        return this.backlog;
+    }
+
+    /**
+     * 当前这次发送已经持续的时间（毫秒），没有正在进行的发送时为 0
+     */
+    public long getTimeSinceSendStarted()
+    {
+        final var start = this.sendStartTime;
+
+        return start > 0 ? System.currentTimeMillis() - start : 0;
+    }
+
+    /**
+     * 当前这次发送是否超过了时间上限
+     */
+    public boolean isSendTimeLimitExceeded()
+    {
+        return this.getTimeSinceSendStarted() > this.sendTimeLimit;
+    }
+
+    @Override
+    public void sendMessage(final WebSocketMessage<?> message) throws IOException
+    {
+        if (this.shouldNotSend())
+        {
+            return;
+        }
+
+        final var frame = Frame.of(message, this.criticalDestination);
+
+        this.bufferLock.lock();
+
+        try
+        {
+            this.buffer.add(frame);
+            this.resize(frame.size());
+        }
+        finally
+        {
+            this.bufferLock.unlock();
+        }
+
+        do
+        {
+            if (!this.tryFlushBuffer())
+            {
+                // 另一个线程正在写入，由当前线程检查积压，然后返回
+                this.checkLimits();
+
+                break;
+            }
+        }
+        while (this.backlog > 0 && !this.shouldNotSend());
+    }
+
+    @Override
+    public void close(final CloseStatus status) throws IOException
+    {
+        if (!this.closeLock.tryLock())
+        {
+            return;
+        }
+
+        try
+        {
+            if (this.closeInProgress)
+            {
+                return;
+            }
+
+            this.closeInProgress = true;
+
+            super.close(this.limitExceeded ? CloseStatus.SESSION_NOT_RELIABLE : status);
+        }
+        finally
+        {
+            this.closeLock.unlock();
+        }
+    }
+
+    private boolean shouldNotSend()
+    {
+        return this.limitExceeded || this.closeInProgress;
+    }
+
+    private boolean tryFlushBuffer() throws IOException
+    {
+        if (!this.flushLock.tryLock())
+        {
+            return false;
+        }
+
+        try
+        {
+            while (!this.shouldNotSend())
+            {
+                final var frame = this.poll();
+
+                if (frame == null)
+                {
+                    break;
+                }
+
+                this.sendStartTime = System.currentTimeMillis();
+                this.getDelegate()
+                    .sendMessage(frame.message());
+                this.sendStartTime = 0;
+            }
+        }
+        finally
+        {
+            this.sendStartTime = 0;
+            this.flushLock.unlock();
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private Frame poll()
+    {
+        this.bufferLock.lock();
+
+        try
+        {
+            final var frame = this.buffer.poll();
+
+            if (frame != null)
+            {
+                this.resize(-frame.size());
+            }
+
+            return frame;
+        }
+        finally
+        {
+            this.bufferLock.unlock();
+        }
+    }
+
+    private void checkLimits()
+    {
+        if (this.isSendTimeLimitExceeded())
+        {
+            this.exceeded("Send time " + this.getTimeSinceSendStarted() + " (ms) exceeded the limit", Reason.SEND_TIME);
+        }
+
+        if (this.backlog <= this.bufferSizeLimit)
+        {
+            return;
+        }
+
+        var dropped    = 0;
+        var summarized = 0;
+        var overflow   = false;
+
+        this.bufferLock.lock();
+
+        try
+        {
+            if (this.bufferSize > this.bufferSizeLimit)
+            {
+                switch (this.policy)
+                {
+                    case DROP_OLDEST -> dropped = this.dropOldest();
+                    case SUMMARIZE -> summarized = this.summarize();
+                    case DISCONNECT ->
+                    {
+                    }
+                }
+
+                overflow = this.bufferSize > this.bufferSizeLimit;
+            }
+        }
+        finally
+        {
+            this.bufferLock.unlock();
+        }
+
+        if (dropped > 0)
+        {
+            this.listener.dropped(dropped);
+        }
+
+        if (summarized > 0)
+        {
+            this.listener.summarized(summarized);
+        }
+
+        if (overflow)
+        {
+            this.exceeded("Buffer size " + this.backlog + " bytes exceeded the limit", Reason.BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * 从最旧的帧开始丢弃非关键帧，直到低于上限，调用方必须持有 bufferLock
+     *
+     * @return 丢弃的帧数
+     */
+    private int dropOldest()
+    {
+        final var iterator = this.buffer.iterator();
+        var       dropped  = 0;
+
+        while (this.bufferSize > this.bufferSizeLimit && iterator.hasNext())
+        {
+            final var frame = iterator.next();
+
+            if (!frame.critical())
+            {
+                iterator.remove();
+                this.resize(-frame.size());
+                dropped++;
+            }
+        }
+
+        return dropped;
+    }
+
+    /**
+     * 将全部非关键帧替换为每个 (目的地, 订阅) 一个摘要帧，摘要帧追加在剩余关键帧之后，调用方必须持有 bufferLock
+     *
+     * @return 被替换的消息数（不包括之前已经合并进摘要帧的消息）
+     */
+    private int summarize()
+    {
+        final var groups     = new LinkedHashMap<String, Frame>();
+        final var counts     = new LinkedHashMap<String, Integer>();
+        final var iterator   = this.buffer.iterator();
+        var       summarized = 0;
+
+        while (iterator.hasNext())
+        {
+            final var frame = iterator.next();
+
+            if (frame.critical())
+            {
+                continue;
+            }
+
+            iterator.remove();
+            this.resize(-frame.size());
+
+            // 心跳没有目的地，直接丢弃
+            if (frame.destination() == null)
+            {
+                continue;
+            }
+
+            final var key = frame.destination() + '\n' + frame.subscription();
+            groups.putIfAbsent(key, frame);
+            counts.merge(key, frame.messages(), Integer::sum);
+
+            if (frame.messages() == 1)
+            {
+                summarized++;
+            }
+        }
+
+        groups.forEach((key, first) ->
+                       {
+                           final var summary = Frame.summary(first, counts.get(key));
+                           this.buffer.add(summary);
+                           this.resize(summary.size());
+                       });
+
+        return summarized;
+    }
+
+    private void resize(final int delta)
+    {
+        this.bufferSize += delta;
+        this.backlog = this.bufferSize;
+    }
+
+    private void exceeded(final String reason, final Reason kind)
+    {
+        if (this.limitExceeded)
+        {
+            return;
+        }
+
+        this.limitExceeded = true;
+
+        this.bufferLock.lock();
+
+        try
+        {
+            this.buffer.clear();
+            this.resize(-this.bufferSize);
+        }
+        finally
+        {
+            this.bufferLock.unlock();
+        }
+
+        this.listener.disconnected(kind);
+
+        log.warn("Disconnecting slow WebSocket session {}: {}", this.getId(), reason);
+
+        // SubProtocolWebSocketHandler 捕获该异常后关闭会话
+        throw new SessionLimitExceededException(reason + " for session " + this.getId(), CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    /**
+     * 断开发送超过时间上限的会话，供没有新消息触发检查的卡住会话使用
+     *
+     * @return 会话确实超时并被断开时返回 true
+     */
+    public boolean closeIfSendTimeLimitExceeded()
+    {
+        if (this.limitExceeded || !this.isSendTimeLimitExceeded())
+        {
+            return false;
+        }
+
+        try
+        {
+            this.exceeded("Send time " + this.getTimeSinceSendStarted() + " (ms) exceeded the limit", Reason.SEND_TIME);
+        }
+        catch (SessionLimitExceededException e)
+        {
+            try
+            {
+                this.close(e.getStatus());
+            }
+            catch (IOException | RuntimeException closeError)
+            {
+                log.debug("Error occurred while closing slow WebSocket session {}", this.getId(), closeError);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 断开会话的原因
+     */
+    public enum Reason
+    {
+        BUFFER_SIZE,
+        SEND_TIME
+    }
+
+    /**
+     * 慢消费者处理的回调
+     */
+    public interface Listener
+    {
+        /**
+         * 丢弃了非关键帧
+         *
+         * @param frames 丢弃的帧数
+         */
+        void dropped(int frames);
+
+        /**
+         * 将非关键帧替换成了摘要帧
+         *
+         * @param frames 被替换的帧数
+         */
+        void summarized(int frames);
+
+        /**
+         * 断开了会话
+         *
+         * @param reason 原因
+         */
+        void disconnected(Reason reason);
+    }
+
+    /**
+     * 缓冲区中的一个帧
+     *
+     * @param message      编码后的 STOMP 帧
+     * @param size         字节数（文本帧为字符数），与 Spring 计算缓冲区大小的方式一致
+     * @param critical     是否为关键帧
+     * @param destination  MESSAGE 帧的目的地（未反转义），其他帧为 null
+     * @param subscription MESSAGE 帧的订阅ID（未反转义），其他帧为 null
+     * @param messages     帧代表的消息数，摘要帧为合并的消息数
+     */
+    private record Frame(WebSocketMessage<?> message,
+                         int size,
+                         boolean critical,
+                         @Nullable String destination,
+                         @Nullable String subscription,
+                         int messages)
+    {
+        private static Frame of(final WebSocketMessage<?> message, final Predicate<String> criticalDestination)
+        {
+            final var header  = header(message);
+            final var lineEnd = header.indexOf('\n');
+            final var command = (lineEnd < 0 ? header : header.substring(0, lineEnd)).trim();
+
+            // 只有一个换行的帧是心跳
+            if (command.isEmpty())
+            {
+                return new Frame(message, message.getPayloadLength(), false, null, null, 1);
+            }
+
+            if (!"MESSAGE".equals(command))
+            {
+                return new Frame(message, message.getPayloadLength(), true, null, null, 1);
+            }
+
+            String destination  = null;
+            String subscription = null;
+
+            for (final var line : header.substring(lineEnd + 1)
+                                        .split("\r?\n"))
+            {
+                if (line.isEmpty())
+                {
+                    break;
+                }
+
+                // 重复的头以第一个为准
+                if (destination == null && line.startsWith("destination:"))
+                {
+                    destination = line.substring("destination:".length());
+                }
+                else if (subscription == null && line.startsWith("subscription:"))
+                {
+                    subscription = line.substring("subscription:".length());
+                }
+            }
+
+            final var critical = destination != null && criticalDestination.test(destination);
+
+            return new Frame(message, message.getPayloadLength(), critical, destination, subscription, 1);
+        }
+
+        private static Frame summary(final Frame first, final int dropped)
+        {
+            final var body  = "{\"dropped\":" + dropped + "}";
+            final var frame = "MESSAGE\n" +
+                              "destination:" + first.destination() + '\n' +
+                              (first.subscription() == null ? "" : "subscription:" + first.subscription() + '\n') +
+                              "message-id:summary-" + SUMMARY_IDS.incrementAndGet() + '\n' +
+                              "content-type:application/json\n" +
+                              "content-length:" + body.length() + '\n' +
+                              SUMMARY_HEADER + ":true\n" +
+                              DROPPED_HEADER + ':' + dropped + '\n' +
+                              '\n' +
+                              body + '\0';
+
+            // 与被替换的帧使用相同的 WebSocket 帧类型
+            final WebSocketMessage<?> message = first.message() instanceof BinaryMessage
+                                                ? new BinaryMessage(frame.getBytes(StandardCharsets.UTF_8))
+                                                : new TextMessage(frame);
+
+            return new Frame(message, message.getPayloadLength(), false, first.destination(), first.subscription(), dropped);
+        }
+
+        /**
+         * 读取帧开头不超过 MAX_HEADER_BYTES 的部分，足够包含命令和常用的头
+         */
+        private static String header(final WebSocketMessage<?> message)
+        {
+            if (message instanceof TextMessage text)
+            {
+                final var payload = text.getPayload();
+
+                return payload.length() > MAX_HEADER_BYTES ? payload.substring(0, MAX_HEADER_BYTES) : payload;
+            }
+
+            if (message.getPayload() instanceof ByteBuffer bytes)
+            {
+                final var slice = bytes.duplicate();
+                slice.limit(Math.min(slice.limit(), slice.position() + MAX_HEADER_BYTES));
+
+                return StandardCharsets.UTF_8.decode(slice)
+                                             .toString();
+            }
+
+            return "";
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package org.ovo307000.chat.persistence;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息的写后（write-behind）缓冲区
+ *
+ * <p>
+ * 消息先进入有界内存队列，由单个后台线程按批写入 MongoDB（insertMany）。
+ * 凑满 batchSize 条，或者批次中最早的消息已等待 maxLatency 时，立即写入当前批次，
+ * 因此吞吐量随批大小增长，而不受单次往返时间限制。
+ * </p>
+ *
+ * <p>
+ * 队列已满时入队最多等待 offerTimeout，超时则返回失败的 Future，以此向上游施加背压。
+ * 批量写入失败时（例如批次中有重复 ID）退化为逐条保存，只有真正失败的消息对应的 Future 会失败。
+ * 关闭时会先停止接收新消息，再在 shutdownTimeout 内写完队列中剩余的消息；关闭期间才完成入队的消息直接失败。
+ * 生命周期阶段低于 Web 服务器和消息处理器，先于它们启动、在它们停止接收入站消息之后才停止。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ChatMessageWriteBehindBuffer implements SmartLifecycle, MeterBinder
+{
+    /* 队列为空时等待新消息的时间，也是检查停止标志的间隔 */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /* 生命周期阶段：低于 Web 服务器的优雅关闭（最早停止接收请求的阶段）和 STOMP 消息处理器的默认阶段 */
+    static final int PHASE = WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 1024;
+
+    private final ChatMessageStore            chatMessageStore;
+    private final ChatProperties.Persistence  config;
+    private final BlockingQueue<PendingWrite> queue;
+
+    private volatile boolean running;
+    private volatile Thread  flusher;
+
+    public ChatMessageWriteBehindBuffer(@NonNull final ChatMessageStore chatMessageStore,
+                                        @NonNull final ChatProperties chatProperties)
+    {
+        this.chatMessageStore = chatMessageStore;
+        this.config           = chatProperties.getPersistence();
+        this.queue            = new ArrayBlockingQueue<>(this.config.getQueueCapacity());
+    }
+
+    /**
+     * 将消息加入写后队列
+     *
+     * @param chatMessage 待保存的消息
+     * @return 消息实际写入数据库后完成的 Future；队列已满或缓冲区未运行时返回失败的 Future
+     */
+    public CompletableFuture<ChatMessage> enqueue(@NonNull final ChatMessage chatMessage)
+    {
+        if (!this.running)
+        {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Write-behind buffer is not running"));
+        }
+
+        final var pending = new PendingWrite(chatMessage, new CompletableFuture<>(), System.nanoTime());
+
+        try
+        {
+            if (!this.queue.offer(pending,
+                                  this.config.getOfferTimeout()
+                                             .toNanos(),
+                                  TimeUnit.NANOSECONDS))
+            {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Write-behind queue is full"));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // 入队可能阻塞到 offerTimeout，期间缓冲区可能已经停止并清空了队列；
+        // 此时仍能从队列中移除说明没有线程会再处理它，直接让 Future 失败，否则由后台线程或 stop 负责完成
+        if (!this.running && this.queue.remove(pending))
+        {
+            pending.future()
+                   .completeExceptionally(new RejectedExecutionException("Write-behind buffer stopped"));
+        }
+
+        return pending.future();
+    }
+
+    /**
+     * 当前队列中等待写入的消息数
+     *
+     * @return 队列长度
+     */
+    public int backlog()
+    {
+        return this.queue.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        Gauge.builder("chat.persistence.backlog", this, ChatMessageWriteBehindBuffer::backlog)
+             .description("Chat messages waiting in the write-behind queue")
+             .baseUnit("messages")
+             .register(meterRegistry);
+    }
+
+    @Override
+    public boolean isAutoStartup()
+    {
+        // 只有在写后模式下才启动后台线程
+        return this.config.getMode() == ChatProperties.Persistence.Mode.WRITE_BEHIND;
+    }
+
+    @Override
+    public int getPhase()
+    {
+        return PHASE;
+    }
+
+    @Override
+    public void start()
+    {
+        this.running = true;
+        this.flusher = new Thread(this::flushLoop, "chat-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+
+        log.info("Chat message write-behind buffer started (batchSize={}, maxLatency={})",
+                 this.config.getBatchSize(),
+                 this.config.getMaxLatency());
+    }
+
+    @Override
+    public void stop()
+    {
+        this.running = false;
+
+        final var thread = this.flusher;
+
+        if (thread == null)
+        {
+            return;
+        }
+
+        try
+        {
+            thread.join(this.config.getShutdownTimeout()
+                                   .toMillis());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+
+        if (thread.isAlive())
+        {
+            log.warn("Write-behind buffer did not drain within {}, {} messages left unsaved",
+                     this.config.getShutdownTimeout(),
+                     this.queue.size());
+        }
+
+        // 兜底：把仍在队列中的消息标记为失败，避免调用方永远等待
+        final var leftover = new ArrayList<PendingWrite>();
+        this.queue.drainTo(leftover);
+        leftover.forEach(pending -> pending.future()
+                                           .completeExceptionally(new RejectedExecutionException(
+                                                   "Write-behind buffer stopped")));
+
+        this.flusher = null;
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return this.running;
+    }
+
+    /**
+     * 后台写入循环：停止后继续写完队列中剩余的消息再退出
+     */
+    private void flushLoop()
+    {
+        final var batchSize  = this.config.getBatchSize();
+        final var maxLatency = this.config.getMaxLatency()
+                                          .toNanos();
+        final var batch      = new ArrayList<PendingWrite>(batchSize);
+
+        while (this.running || !this.queue.isEmpty())
+        {
+            try
+            {
+                final var first = this.queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (first == null)
+                {
+                    continue;
+                }
+
+                batch.add(first);
+
+                // 批次的截止时间从最早一条消息入队时开始计算
+                final var deadline = first.enqueuedAt() + maxLatency;
+
+                while (batch.size() < batchSize)
+                {
+                    // 先无等待地取走已经在队列中的消息
+                    if (this.queue.drainTo(batch, batchSize - batch.size()) > 0)
+                    {
+                        continue;
+                    }
+
+                    final var remaining = deadline - System.nanoTime();
+
+                    if (remaining <= 0 || !this.running)
+                    {
+                        break;
+                    }
+
+                    final var next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+                    if (next == null)
+                    {
+                        break;
+                    }
+
+                    batch.add(next);
+                }
+
+                this.write(batch);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Unexpected error in write-behind flush loop", e);
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 批量写入一批消息，失败时退化为逐条保存
+     *
+     * @param batch 待写入的消息
+     */
+    private void write(@NonNull final List<PendingWrite> batch)
+    {
+        final var messages = batch.stream()
+                                  .map(PendingWrite::chatMessage)
+                                  .toList();
+
+        // 在客户端预先分配 ID：有序批量插入中途失败时，已写入的消息在逐条保存时只会被覆盖，而不会重复写入
+        messages.stream()
+                .filter(chatMessage -> chatMessage.getId() == null)
+                .forEach(chatMessage -> chatMessage.setId(ObjectId.get()
+                                                                  .toHexString()));
+
+        try
+        {
+            final var saved = this.chatMessageStore.insert(messages);
+
+            for (int i = 0; i < batch.size(); i++)
+            {
+                batch.get(i)
+                     .future()
+                     .complete(saved.get(i));
+            }
+
+            log.debug("Write-behind flushed {} chat messages", batch.size());
+        }
+        catch (RuntimeException batchError)
+        {
+            log.warn("Batch insert of {} chat messages failed, falling back to individual saves",
+                     batch.size(),
+                     batchError);
+
+            for (final var pending : batch)
+            {
+                try
+                {
+                    pending.future()
+                           .complete(this.chatMessageStore.save(pending.chatMessage()));
+                }
+                catch (RuntimeException e)
+                {
+                    pending.future()
+                           .completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 队列中等待写入的消息
+     *
+     * @param chatMessage 待写入的消息
+     * @param future      写入完成后完成的 Future
+     * @param enqueuedAt  入队时间（System.nanoTime）
+     */
+    private record PendingWrite(ChatMessage chatMessage, CompletableFuture<ChatMessage> future, long enqueuedAt)
+    {
+    }
+}
@@ -0,0 +1,51 @@
+package org.ovo307000.chat.presence;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.service.UserService;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * 监听 STOMP 会话事件并更新在线状态
+ *
+ * <p>
+ * 客户端在 CONNECT 帧中携带 login 头（用户昵称）时，会话建立即视为上线；
+ * 未携带时，由随后的 /app/user.addUser 或 /app/user.connectUser 消息将会话绑定到用户。
+ * 会话断开（包括异常断开）时总会释放该会话。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PresenceEventListener
+{
+    /* CONNECT 帧中可选的用户全名头 */
+    public static final String FULL_NAME_HEADER = "fullName";
+
+    private final UserService userService;
+
+    @EventListener
+    public void onSessionConnect(final SessionConnectEvent event)
+    {
+        final var accessor  = StompHeaderAccessor.wrap(event.getMessage());
+        final var sessionId = accessor.getSessionId();
+        final var login     = accessor.getLogin();
+
+        if (sessionId == null || login == null || login.isBlank())
+        {
+            return;
+        }
+
+        this.userService.sessionConnected(sessionId, login, accessor.getFirstNativeHeader(FULL_NAME_HEADER));
+    }
+
+    @EventListener
+    public void onSessionDisconnect(final SessionDisconnectEvent event)
+    {
+        this.userService.sessionDisconnected(event.getSessionId());
+    }
+}
@@ -0,0 +1,280 @@
+package org.ovo307000.chat.presence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.NonNull;
+import org.ovo307000.chat.module.entity.User;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的在线状态注册表
+ *
+ * <p>
+ * 以 STOMP 会话为单位记录在线用户：同一用户可以同时有多个会话（多个标签页或设备），
+ * 只有第一个会话建立时用户才变为在线，最后一个会话断开时才变为离线。
+ * 每个用户的状态是不可变的 {@link Presence}，通过 ConcurrentHashMap#compute 原子替换，
+ * 因此读取在线用户列表不需要加锁，也不需要访问数据库。
+ * </p>
+ *
+ * <p>
+ * 上线帧在入站通道中排队时会话可能已经断开，这样的帧晚于断开事件到达。断开的会话ID因此会保留一段时间，
+ * 之后到达的上线请求被忽略，避免已关闭的会话让用户永远保持在线。
+ * </p>
+ */
+@Component
+public class PresenceRegistry
+{
+    /* 断开的会话ID保留的时间，远长于入站帧排队的时间 */
+    private static final Duration CLOSED_SESSION_RETENTION = Duration.ofMinutes(10);
+
+    /* 会话ID -> 用户ID */
+    private final Map<String, String>   sessions = new ConcurrentHashMap<>();
+    /* 用户ID -> 在线状态 */
+    private final Map<String, Presence> users    = new ConcurrentHashMap<>();
+
+    /* 已断开的会话ID，断开事件之后才到达的上线请求据此忽略 */
+    private final Cache<String, Boolean> closedSessions = Caffeine.newBuilder()
+                                                                  .expireAfterWrite(CLOSED_SESSION_RETENTION)
+                                                                  .build();
+
+    /**
+     * 记录一个会话上线
+     * 同一会话重复上线是幂等的，只会更新用户的全名；已经断开的会话不会再上线
+     *
+     * @param sessionId 会话ID
+     * @param userId    用户ID（昵称）
+     * @param fullName  用户全名，未知时为 null，此时保留之前记录的全名
+     * @return 如果该用户因此从离线变为在线则返回 true
+     */
+    public boolean connect(@NonNull final String sessionId, @NonNull final String userId, @Nullable final String fullName)
+    {
+        if (this.isClosed(sessionId))
+        {
+            return false;
+        }
+
+        final var previousUser = this.sessions.put(sessionId, userId);
+
+        // 同一会话换了用户（例如同一连接先后登录不同账号），先从旧用户中移除
+        if (previousUser != null && !previousUser.equals(userId))
+        {
+            this.release(previousUser, sessionId);
+        }
+
+        final var becameOnline = new boolean[1];
+
+        this.users.compute(userId, (key, presence) ->
+        {
+            if (presence == null)
+            {
+                becameOnline[0] = true;
+
+                return new Presence(userId, fullName, Set.of(sessionId));
+            }
+
+            return presence.withSession(sessionId, fullName);
+        });
+
+        // 登记期间会话断开：disconnect 先记录断开的会话再移除登记，因此这里一定能看到记录，由这里撤销登记。
+        // disconnect 可能在用户状态更新之前就已经移除了会话，所以无论会话是否还在都要从用户状态中移除
+        if (this.isClosed(sessionId))
+        {
+            this.sessions.remove(sessionId, userId);
+            this.release(userId, sessionId);
+
+            return false;
+        }
+
+        return becameOnline[0];
+    }
+
+    /**
+     * 记录一个会话断开
+     *
+     * @param sessionId 会话ID
+     * @return 如果该会话所属的用户因此变为离线则返回该用户ID
+     */
+    public Optional<String> disconnect(@NonNull final String sessionId)
+    {
+        // 先记录断开的会话，再移除登记，与 connect 中的检查顺序相反
+        this.closedSessions.put(sessionId, Boolean.TRUE);
+
+        final var userId = this.sessions.remove(sessionId);
+
+        if (userId == null)
+        {
+            return Optional.empty();
+        }
+
+        return this.release(userId, sessionId) ? Optional.of(userId) : Optional.empty();
+    }
+
+    /**
+     * 将用户的所有会话标记为离线，例如用户主动登出
+     *
+     * @param userId 用户ID
+     * @return 如果该用户之前在线则返回 true
+     */
+    public boolean disconnectUser(@NonNull final String userId)
+    {
+        final var presence = this.users.remove(userId);
+
+        if (presence == null)
+        {
+            return false;
+        }
+
+        presence.sessionIds()
+                .forEach(sessionId -> this.sessions.remove(sessionId, userId));
+
+        return true;
+    }
+
+    /**
+     * 判断用户是否在线
+     *
+     * @param userId 用户ID
+     * @return 在线返回 true
+     */
+    public boolean isOnline(@NonNull final String userId)
+    {
+        return this.users.containsKey(userId);
+    }
+
+    /**
+     * 获取用户当前的在线状态
+     *
+     * @param userId 用户ID
+     * @return 用户在线时返回其状态，否则为空
+     */
+    public Optional<Presence> get(@NonNull final String userId)
+    {
+        return Optional.ofNullable(this.users.get(userId));
+    }
+
+    /**
+     * 获取会话所属的用户
+     *
+     * @param sessionId 会话ID
+     * @return 会话已绑定用户时返回用户ID，否则为空
+     */
+    public Optional<String> userOf(@NonNull final String sessionId)
+    {
+        return Optional.ofNullable(this.sessions.get(sessionId));
+    }
+
+    /**
+     * 当前所有在线用户的快照
+     *
+     * @return 在线用户列表，状态均为 ONLINE
+     */
+    public List<User> onlineUsers()
+    {
+        return this.users.values()
+                         .stream()
+                         .map(Presence::toUser)
+                         .toList();
+    }
+
+    /**
+     * 当前在线用户数
+     *
+     * @return 在线用户数
+     */
+    public int onlineUserCount()
+    {
+        return this.users.size();
+    }
+
+    private boolean isClosed(final String sessionId)
+    {
+        return this.closedSessions.getIfPresent(sessionId) != null;
+    }
+
+    /**
+     * 从用户的在线状态中移除一个会话，没有剩余会话时移除该用户
+     *
+     * @return 如果用户因此变为离线则返回 true
+     */
+    private boolean release(final String userId, final String sessionId)
+    {
+        final var becameOffline = new boolean[1];
+
+        this.users.computeIfPresent(userId, (key, presence) ->
+        {
+            final var remaining = presence.withoutSession(sessionId);
+
+            if (remaining.sessionIds()
+                         .isEmpty())
+            {
+                becameOffline[0] = true;
+
+                return null;
+            }
+
+            return remaining;
+        });
+
+        return becameOffline[0];
+    }
+
+    /**
+     * 单个用户的在线状态，不可变
+     *
+     * @param nickName   用户昵称（用户ID）
+     * @param fullName   用户全名，可能为 null
+     * @param sessionIds 该用户当前的会话ID集合
+     */
+    public record Presence(String nickName, String fullName, Set<String> sessionIds)
+    {
+        Presence withSession(final String sessionId, @Nullable final String newFullName)
+        {
+            final var fullName = newFullName != null ? newFullName : this.fullName;
+
+            if (this.sessionIds.contains(sessionId))
+            {
+                return fullName == null || fullName.equals(this.fullName)
+                       ? this
+                       : new Presence(this.nickName, fullName, this.sessionIds);
+            }
+
+            final var sessions = new HashSet<>(this.sessionIds);
+            sessions.add(sessionId);
+
+            return new Presence(this.nickName, fullName, Set.copyOf(sessions));
+        }
+
+        Presence withoutSession(final String sessionId)
+        {
+            if (!this.sessionIds.contains(sessionId))
+            {
+                return this;
+            }
+
+            final var sessions = new HashSet<>(this.sessionIds);
+            sessions.remove(sessionId);
+
+            return new Presence(this.nickName, this.fullName, Set.copyOf(sessions));
+        }
+
+        User toUser()
+        {
+            final var user = new User();
+            user.setNickName(this.nickName);
+            user.setFullName(this.fullName);
+            user.setStatus(UserStatus.ONLINE);
+
+            return user;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.ovo307000.chat.presence;
+
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.ovo307000.chat.storage.UserStore;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线状态的异步、合并写入器
+ *
+ * <p>
+ * 在线状态以 {@link PresenceRegistry} 为准，MongoDB 中的 status 字段只是一个异步快照。
+ * 状态变化只记录每个用户的最新状态，由定时任务批量写入，
+ * 同一用户在一个写入周期内的多次上线、下线只会产生一次写入。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PresenceStatusWriter
+{
+    private final UserStore userStore;
+
+    /* 等待写入的用户状态，只保留每个用户的最新状态 */
+    private final Map<String, UserStatus> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 记录用户的最新状态，等待下一次批量写入
+     *
+     * @param userId 用户ID
+     * @param status 最新状态
+     */
+    public void markDirty(@NonNull final String userId, @NonNull final UserStatus status)
+    {
+        this.pending.put(userId, status);
+    }
+
+    /**
+     * 将等待写入的状态批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-millis:1000}")
+    public void flush()
+    {
+        if (this.pending.isEmpty())
+        {
+            return;
+        }
+
+        // 逐个取出，取出期间发生的新变化会留在 pending 中等待下一次写入
+        final var snapshot = new HashMap<String, UserStatus>();
+
+        for (final var userId : this.pending.keySet())
+        {
+            final var status = this.pending.remove(userId);
+
+            if (status != null)
+            {
+                snapshot.put(userId, status);
+            }
+        }
+
+        try
+        {
+            this.userStore.updateStatuses(snapshot);
+
+            log.debug("Flushed presence status of {} users", snapshot.size());
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Error occurred while flushing presence status of {} users", snapshot.size(), e);
+
+            // 写入失败时放回，除非期间已经有了更新的状态
+            snapshot.forEach(this.pending::putIfAbsent);
+        }
+    }
+
+    /**
+     * 关闭前写入剩余的状态
+     */
+    @PreDestroy
+    public void close()
+    {
+        this.flush();
+    }
+}
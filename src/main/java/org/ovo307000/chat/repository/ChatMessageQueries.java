@@ -0,0 +1,136 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+
+/**
+ * 聊天消息的键集分页查询，阻塞和响应式两种仓库实现共用
+ * 查询条件与 ChatMessage 上的 (chatRoomId, timestamp, _id) 复合索引一致，每一页只需一次索引范围扫描
+ */
+final class ChatMessageQueries
+{
+    private ChatMessageQueries()
+    {
+    }
+
+    /**
+     * 游标之前（更旧）的消息，按时间倒序
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最新的消息开始
+     * @param limit      最多返回的消息数
+     * @return 查询
+     */
+    static Query pageBefore(final String chatRoomId, @Nullable final ChatMessageCursor cursor, final int limit)
+    {
+        final var criteria = Criteria.where("chatRoomId")
+                                     .is(chatRoomId);
+
+        // timestamp < t OR (timestamp = t AND id < id)
+        if (cursor != null)
+        {
+            criteria.orOperator(Criteria.where("timestamp")
+                                        .lt(cursor.timestamp()),
+                                Criteria.where("timestamp")
+                                        .is(cursor.timestamp())
+                                        .and("id")
+                                        .lt(cursor.id()));
+        }
+
+        return Query.query(criteria)
+                    .with(Sort.by(Sort.Direction.DESC, "timestamp", "id"))
+                    .limit(limit);
+    }
+
+    /**
+     * 序号在 (afterSeq, upToSeq] 区间内的消息，按序号正序
+     *
+     * @param chatRoomId 聊天室ID
+     * @param afterSeq   起始序号（不包含）
+     * @param upToSeq    结束序号（包含）
+     * @param limit      最多返回的消息数
+     * @return 查询
+     */
+    static Query sinceSeq(final String chatRoomId, final long afterSeq, final long upToSeq, final int limit)
+    {
+        return Query.query(Criteria.where("chatRoomId")
+                                   .is(chatRoomId)
+                                   .and("seq")
+                                   .gt(afterSeq)
+                                   .lte(upToSeq))
+                    .with(Sort.by(Sort.Direction.ASC, "seq"))
+                    .limit(limit);
+    }
+
+    /**
+     * 聊天室中序号最大的一条消息，只返回 seq 字段
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 查询
+     */
+    static Query maxSeq(final String chatRoomId)
+    {
+        final var query = Query.query(Criteria.where("chatRoomId")
+                                              .is(chatRoomId)
+                                              .and("seq")
+                                              .exists(true))
+                               .with(Sort.by(Sort.Direction.DESC, "seq"))
+                               .limit(1);
+        query.fields()
+             .include("seq");
+
+        return query;
+    }
+
+    /**
+     * 游标之后（更新）且时间早于 cutoff 的消息，按时间正序，用于归档
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param cutoff     只查询时间早于该时间的消息
+     * @param limit      最多返回的消息数
+     * @return 查询
+     */
+    static Query archivable(final String chatRoomId,
+                            @Nullable final ChatMessageCursor cursor,
+                            final LocalDateTime cutoff,
+                            final int limit)
+    {
+        return pageAfter(chatRoomId, cursor, limit).addCriteria(Criteria.where("timestamp")
+                                                                        .lt(cutoff));
+    }
+
+    /**
+     * 游标之后（更新）的消息，按时间正序
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param limit      最多返回的消息数
+     * @return 查询
+     */
+    static Query pageAfter(final String chatRoomId, @Nullable final ChatMessageCursor cursor, final int limit)
+    {
+        final var criteria = Criteria.where("chatRoomId")
+                                     .is(chatRoomId);
+
+        // timestamp > t OR (timestamp = t AND id > id)
+        if (cursor != null)
+        {
+            criteria.orOperator(Criteria.where("timestamp")
+                                        .gt(cursor.timestamp()),
+                                Criteria.where("timestamp")
+                                        .is(cursor.timestamp())
+                                        .and("id")
+                                        .gt(cursor.id()));
+        }
+
+        return Query.query(criteria)
+                    .with(Sort.by(Sort.Direction.ASC, "timestamp", "id"))
+                    .limit(limit);
+    }
+}
@@ -4,19 +4,11 @@ import org.ovo307000.chat.module.entity.ChatMessage;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
  * 聊天消息仓库接口，用于操作MongoDB中的聊天消息数据
+ * 历史查询由 {@link ChatMessageRepositoryCustom} 提供，启用归档时透明拼接本地归档中的旧消息
  */
 @Component
-public interface ChatMessageRepository extends MongoRepository<ChatMessage, String>
+public interface ChatMessageRepository extends MongoRepository<ChatMessage, String>, ChatMessageRepositoryCustom
 {
-    /**
-     * 根据聊天室ID查询聊天消息列表
-     *
-     * @param chatRoomId 聊天室ID，用于定位特定聊天室的聊天消息
-     * @return 与指定聊天室ID相关的聊天消息列表
-     */
-    List<ChatMessage> findByChatRoomId(String chatRoomId);
 }
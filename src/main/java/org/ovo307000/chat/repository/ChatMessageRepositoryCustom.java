@@ -0,0 +1,95 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 聊天消息仓库的自定义片段，提供基于 (timestamp, id) 键集的分页查询
+ * 查询条件与 ChatMessage 上的 (chatRoomId, timestamp, _id) 复合索引一致，每一页只需一次索引范围扫描
+ * 启用归档时，除 findArchivable 和 findChatRoomIds 外的查询都会拼接 ChatArchive 中的旧消息，调用方无需区分两部分
+ */
+public interface ChatMessageRepositoryCustom
+{
+    /**
+     * 查询聊天室的全部消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findByChatRoomId(String chatRoomId);
+
+    /**
+     * 查询游标之前（更旧）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最新的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间倒序排列的消息列表
+     */
+    List<ChatMessage> findPageBefore(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+
+    /**
+     * 查询游标之后（更新）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findPageAfter(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+
+    /**
+     * 查询序号在 (afterSeq, upToSeq] 区间内的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param afterSeq   起始序号（不包含）
+     * @param upToSeq    结束序号（包含）
+     * @param limit      最多返回的消息数
+     * @return 按序号正序排列的消息列表
+     */
+    List<ChatMessage> findSinceSeq(String chatRoomId, long afterSeq, long upToSeq, int limit);
+
+    /**
+     * 查询聊天室中已存储的最大序号
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 最大序号，聊天室没有带序号的消息时为 0
+     */
+    long findMaxSeq(String chatRoomId);
+
+    /**
+     * 以游标方式按时间正序读取聊天室的全部消息，每次只从数据库拉取一批文档
+     * 返回的 Stream 持有数据库游标，使用完毕后必须关闭
+     *
+     * @param chatRoomId 聊天室ID
+     * @param batchSize  游标每批拉取的文档数
+     * @return 按时间正序排列的消息流
+     */
+    Stream<ChatMessage> streamByChatRoomId(String chatRoomId, int batchSize);
+
+    /**
+     * 查询 MongoDB 中可以归档的消息：时间早于 cutoff，且在归档末尾之后，不拼接归档
+     *
+     * @param chatRoomId 聊天室ID
+     * @param after      归档末尾，为 null 时从最旧的消息开始
+     * @param cutoff     只返回时间早于该时间的消息
+     * @param limit      最多返回的消息数
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findArchivable(String chatRoomId,
+                                     @Nullable ChatMessageCursor after,
+                                     LocalDateTime cutoff,
+                                     int limit);
+
+    /**
+     * 查询 MongoDB 中有消息的全部聊天室ID
+     *
+     * @return 聊天室ID列表
+     */
+    List<String> findChatRoomIds();
+}
@@ -0,0 +1,118 @@
+package org.ovo307000.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * {@link ChatMessageRepositoryCustom} 的 MongoTemplate 实现
+ * 每个查询先访问 MongoDB，再由 {@link ChatArchive} 拼接归档中的旧消息，顺序不能颠倒，见 ChatArchive
+ */
+@RequiredArgsConstructor
+public class ChatMessageRepositoryCustomImpl implements ChatMessageRepositoryCustom
+{
+    private final MongoTemplate mongoTemplate;
+    private final ChatArchive   chatArchive;
+
+    @Override
+    public List<ChatMessage> findByChatRoomId(final String chatRoomId)
+    {
+        try (final var messages = this.chatArchive.stitchStream(chatRoomId,
+                                                                this.mongoTemplate.stream(byChatRoomId(chatRoomId),
+                                                                                          ChatMessage.class)))
+        {
+            return messages.toList();
+        }
+    }
+
+    @Override
+    public List<ChatMessage> findPageBefore(final String chatRoomId,
+                                            @Nullable final ChatMessageCursor cursor,
+                                            final int limit)
+    {
+        final var hot = this.mongoTemplate.find(ChatMessageQueries.pageBefore(chatRoomId, cursor, limit),
+                                                ChatMessage.class);
+
+        return this.chatArchive.stitchPageBefore(chatRoomId, cursor, limit, hot);
+    }
+
+    @Override
+    public List<ChatMessage> findPageAfter(final String chatRoomId,
+                                           @Nullable final ChatMessageCursor cursor,
+                                           final int limit)
+    {
+        final var hot = this.mongoTemplate.find(ChatMessageQueries.pageAfter(chatRoomId, cursor, limit),
+                                                ChatMessage.class);
+
+        return this.chatArchive.stitchPageAfter(chatRoomId, cursor, limit, hot);
+    }
+
+    @Override
+    public List<ChatMessage> findSinceSeq(final String chatRoomId,
+                                          final long afterSeq,
+                                          final long upToSeq,
+                                          final int limit)
+    {
+        final var hot = this.mongoTemplate.find(ChatMessageQueries.sinceSeq(chatRoomId, afterSeq, upToSeq, limit),
+                                                ChatMessage.class);
+
+        return this.chatArchive.stitchSinceSeq(chatRoomId, afterSeq, upToSeq, limit, hot);
+    }
+
+    @Override
+    public long findMaxSeq(final String chatRoomId)
+    {
+        // 沿 (chatRoomId, seq) 索引倒序取第一条
+        final var latest = this.mongoTemplate.findOne(ChatMessageQueries.maxSeq(chatRoomId), ChatMessage.class);
+
+        // 聊天室的消息可能已经全部归档
+        return this.chatArchive.stitchMaxSeq(chatRoomId,
+                                             latest == null || latest.getSeq() == null ? 0 : latest.getSeq());
+    }
+
+    @Override
+    public Stream<ChatMessage> streamByChatRoomId(final String chatRoomId, final int batchSize)
+    {
+        final var query = byChatRoomId(chatRoomId).cursorBatchSize(batchSize);
+
+        return this.chatArchive.stitchStream(chatRoomId, this.mongoTemplate.stream(query, ChatMessage.class));
+    }
+
+    @Override
+    public List<ChatMessage> findArchivable(final String chatRoomId,
+                                            @Nullable final ChatMessageCursor after,
+                                            final LocalDateTime cutoff,
+                                            final int limit)
+    {
+        return this.mongoTemplate.find(ChatMessageQueries.archivable(chatRoomId, after, cutoff, limit),
+                                       ChatMessage.class);
+    }
+
+    @Override
+    public List<String> findChatRoomIds()
+    {
+        // 复合索引以 chatRoomId 开头，distinct 只需跳跃扫描索引
+        return this.mongoTemplate.findDistinct(new Query(), "chatRoomId", ChatMessage.class, String.class);
+    }
+
+    /**
+     * 聊天室的全部消息，按时间正序
+     * 与分页查询使用同一个复合索引，按索引顺序返回，无需在数据库端排序
+     */
+    private static Query byChatRoomId(final String chatRoomId)
+    {
+        return Query.query(Criteria.where("chatRoomId")
+                                   .is(chatRoomId))
+                    .with(Sort.by(Sort.Direction.ASC, "timestamp", "id"));
+    }
+}
@@ -1,24 +1,24 @@
 package org.ovo307000.chat.repository;
 
-import lombok.NonNull;
 import org.ovo307000.chat.module.entity.ChatRoom;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
+import java.util.List;
 
 /**
  * 聊天室仓库接口，处理与MongoDB相关的聊天室数据操作
+ * 聊天室ID可由两个用户ID直接计算（见 ChatRoomService#chatRoomIdOf），因此按ID查询即可
  */
 @Component
 public interface ChatRoomRepository extends MongoRepository<ChatRoom, String>
 {
     /**
-     * 根据发送者和接收者的ID查找聊天室
+     * 查询用户参与的全部聊天室，两个参数通常传入同一个用户ID
      *
-     * @param senderId   发送者的ID，不能为空
-     * @param receiverId 接收者的ID，不能为空
-     * @return 如果找到匹配的聊天室，则返回包含该聊天室的Optional对象；否则返回空的Optional
+     * @param senderId   字典序较小的参与者 ID
+     * @param receiverId 字典序较大的参与者 ID
+     * @return 聊天室列表
      */
-    Optional<ChatRoom> findBySenderIdAndReceiverId(@NonNull String senderId, @NonNull String receiverId);
+    List<ChatRoom> findBySenderIdOrReceiverId(String senderId, String receiverId);
 }
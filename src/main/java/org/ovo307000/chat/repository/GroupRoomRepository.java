@@ -0,0 +1,31 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 群聊仓库接口，处理与MongoDB相关的群聊数据操作
+ */
+@Component
+public interface GroupRoomRepository extends MongoRepository<GroupRoom, String>, GroupRoomRepositoryCustom
+{
+    /**
+     * 查询用户加入的全部群聊
+     *
+     * @param memberId 成员的用户ID
+     * @return 群聊列表
+     */
+    List<GroupRoom> findByMemberIds(String memberId);
+
+    /**
+     * 判断用户是否为群聊成员
+     *
+     * @param id       群聊ID
+     * @param memberId 用户ID
+     * @return 是成员时返回 true
+     */
+    boolean existsByIdAndMemberIds(String id, String memberId);
+}
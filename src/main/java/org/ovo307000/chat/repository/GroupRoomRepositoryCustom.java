@@ -0,0 +1,25 @@
+package org.ovo307000.chat.repository;
+
+/**
+ * 群聊仓库的自定义片段，提供原子的成员变更操作
+ */
+public interface GroupRoomRepositoryCustom
+{
+    /**
+     * 将用户加入群聊，已经是成员时不变
+     *
+     * @param groupId  群聊ID
+     * @param memberId 用户ID
+     * @return 群聊存在时返回 true
+     */
+    boolean addMember(String groupId, String memberId);
+
+    /**
+     * 将用户移出群聊，不是成员时不变
+     *
+     * @param groupId  群聊ID
+     * @param memberId 用户ID
+     * @return 群聊存在时返回 true
+     */
+    boolean removeMember(String groupId, String memberId);
+}
@@ -0,0 +1,41 @@
+package org.ovo307000.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * {@link GroupRoomRepositoryCustom} 的 MongoTemplate 实现
+ *
+ * <p>
+ * 成员变更使用 $addToSet / $pull 在服务端原子完成，不需要先读出整个成员列表，并发加入和退出不会互相覆盖
+ * </p>
+ */
+@RequiredArgsConstructor
+public class GroupRoomRepositoryCustomImpl implements GroupRoomRepositoryCustom
+{
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean addMember(final String groupId, final String memberId)
+    {
+        return this.mongoTemplate.updateFirst(byId(groupId), new Update().addToSet("memberIds", memberId), GroupRoom.class)
+                                 .getMatchedCount() > 0;
+    }
+
+    @Override
+    public boolean removeMember(final String groupId, final String memberId)
+    {
+        return this.mongoTemplate.updateFirst(byId(groupId), new Update().pull("memberIds", memberId), GroupRoom.class)
+                                 .getMatchedCount() > 0;
+    }
+
+    private static Query byId(final String groupId)
+    {
+        return Query.query(Criteria.where("id")
+                                   .is(groupId));
+    }
+}
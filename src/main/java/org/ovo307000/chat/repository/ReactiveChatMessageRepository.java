@@ -0,0 +1,15 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天消息的响应式仓库，供不阻塞请求线程的读取路径使用
+ * 与 {@link ChatMessageRepository} 操作同一个集合
+ */
+@Component
+public interface ReactiveChatMessageRepository
+        extends ReactiveMongoRepository<ChatMessage, String>, ReactiveChatMessageRepositoryCustom
+{
+}
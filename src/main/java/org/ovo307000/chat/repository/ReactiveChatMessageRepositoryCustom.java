@@ -0,0 +1,32 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+
+/**
+ * 响应式聊天消息仓库的自定义片段，与 {@link ChatMessageRepositoryCustom} 的分页查询相同
+ */
+public interface ReactiveChatMessageRepositoryCustom
+{
+    /**
+     * 查询游标之前（更旧）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最新的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间倒序排列的消息
+     */
+    Flux<ChatMessage> findPageBefore(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+
+    /**
+     * 查询游标之后（更新）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间正序排列的消息
+     */
+    Flux<ChatMessage> findPageAfter(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+}
@@ -0,0 +1,71 @@
+package org.ovo307000.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * {@link ReactiveChatMessageRepositoryCustom} 的 ReactiveMongoTemplate 实现
+ * 先收集 MongoDB 的一页结果，聊天室有归档时在 boundedElastic 线程上拼接归档（读取映射的分段可能触发缺页 I/O）
+ */
+@RequiredArgsConstructor
+public class ReactiveChatMessageRepositoryCustomImpl implements ReactiveChatMessageRepositoryCustom
+{
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ChatArchive           chatArchive;
+
+    @Override
+    public Flux<ChatMessage> findPageBefore(final String chatRoomId,
+                                            @Nullable final ChatMessageCursor cursor,
+                                            final int limit)
+    {
+        final var hot = this.reactiveMongoTemplate.find(ChatMessageQueries.pageBefore(chatRoomId, cursor, limit),
+                                                        ChatMessage.class);
+
+        return hot.collectList()
+                  .flatMapMany(page -> this.stitch(chatRoomId,
+                                                   () -> this.chatArchive.stitchPageBefore(chatRoomId, cursor, limit, page),
+                                                   page));
+    }
+
+    @Override
+    public Flux<ChatMessage> findPageAfter(final String chatRoomId,
+                                           @Nullable final ChatMessageCursor cursor,
+                                           final int limit)
+    {
+        final var hot = this.reactiveMongoTemplate.find(ChatMessageQueries.pageAfter(chatRoomId, cursor, limit),
+                                                        ChatMessage.class);
+
+        return hot.collectList()
+                  .flatMapMany(page -> this.stitch(chatRoomId,
+                                                   () -> this.chatArchive.stitchPageAfter(chatRoomId, cursor, limit, page),
+                                                   page));
+    }
+
+    /**
+     * MongoDB 的结果返回之后再判断聊天室是否有归档，与阻塞实现一样先查 MongoDB 再查归档
+     */
+    private Flux<ChatMessage> stitch(final String chatRoomId,
+                                     final Callable<List<ChatMessage>> stitched,
+                                     final List<ChatMessage> hot)
+    {
+        if (!this.chatArchive.contains(chatRoomId))
+        {
+            return Flux.fromIterable(hot);
+        }
+
+        return Mono.fromCallable(stitched)
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .flatMapIterable(Function.identity());
+    }
+}
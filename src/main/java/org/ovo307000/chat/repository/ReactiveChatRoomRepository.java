@@ -0,0 +1,13 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.entity.ChatRoom;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天室的响应式仓库，响应式读取路径在聊天室 ID 缓存未命中时用它确认聊天室是否存在
+ */
+@Component
+public interface ReactiveChatRoomRepository extends ReactiveMongoRepository<ChatRoom, String>
+{
+}
@@ -0,0 +1,22 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * 群聊的响应式仓库，响应式读取路径在成员索引中找不到用户时用它确认群聊成员身份
+ */
+@Component
+public interface ReactiveGroupRoomRepository extends ReactiveMongoRepository<GroupRoom, String>
+{
+    /**
+     * 判断用户是否为群聊成员
+     *
+     * @param id       群聊ID
+     * @param memberId 用户ID
+     * @return 是成员时为 true
+     */
+    Mono<Boolean> existsByIdAndMemberIds(String id, String memberId);
+}
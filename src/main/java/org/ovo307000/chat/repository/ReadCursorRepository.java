@@ -0,0 +1,22 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.entity.ReadCursor;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 读取位置仓库接口，保存每个用户在每个聊天室中已读的最大消息序号
+ */
+@Component
+public interface ReadCursorRepository extends MongoRepository<ReadCursor, String>, ReadCursorRepositoryCustom
+{
+    /**
+     * 查询用户在所有聊天室中的读取位置
+     *
+     * @param userId 用户ID
+     * @return 读取位置列表
+     */
+    List<ReadCursor> findByUserId(String userId);
+}
@@ -0,0 +1,18 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.entity.ReadCursor;
+
+import java.util.Collection;
+
+/**
+ * 读取位置仓库的自定义片段，提供批量推进读取位置的操作
+ */
+public interface ReadCursorRepositoryCustom
+{
+    /**
+     * 批量推进读取位置，不存在时创建；已存储的位置比给定位置更新时保持不变，因此重复或乱序写入都是安全的
+     *
+     * @param readCursors 新的读取位置
+     */
+    void advanceAll(Collection<ReadCursor> readCursors);
+}
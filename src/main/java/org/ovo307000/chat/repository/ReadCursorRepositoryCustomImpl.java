@@ -0,0 +1,41 @@
+package org.ovo307000.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.entity.ReadCursor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+
+/**
+ * {@link ReadCursorRepositoryCustom} 的 MongoTemplate 实现，所有更新在一次无序批量写入中完成
+ */
+@RequiredArgsConstructor
+public class ReadCursorRepositoryCustomImpl implements ReadCursorRepositoryCustom
+{
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void advanceAll(final Collection<ReadCursor> readCursors)
+    {
+        if (readCursors.isEmpty())
+        {
+            return;
+        }
+
+        final var bulk = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReadCursor.class);
+
+        // $max 只让读取位置前进，多个节点或失败重试时不会把位置写回更旧的值
+        readCursors.forEach(readCursor -> bulk.upsert(Query.query(Criteria.where("id")
+                                                                          .is(readCursor.getId())),
+                                                      new Update().max("lastReadSeq", readCursor.getLastReadSeq())
+                                                                  .setOnInsert("userId", readCursor.getUserId())
+                                                                  .setOnInsert("chatRoomId",
+                                                                               readCursor.getChatRoomId())));
+
+        bulk.execute();
+    }
+}
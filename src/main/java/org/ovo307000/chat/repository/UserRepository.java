@@ -14,7 +14,7 @@ import java.util.Optional;
  */
 
 @Component
-public interface UserRepository extends MongoRepository<User, String>
+public interface UserRepository extends MongoRepository<User, String>, UserRepositoryCustom
 {
     /**
      * 通过昵称查找用户
@@ -0,0 +1,18 @@
+package org.ovo307000.chat.repository;
+
+import org.ovo307000.chat.module.enumeration.UserStatus;
+
+import java.util.Map;
+
+/**
+ * 用户仓库的自定义片段，提供批量更新用户状态的操作
+ */
+public interface UserRepositoryCustom
+{
+    /**
+     * 批量更新用户状态，只修改 status 字段，不存在的用户会被忽略
+     *
+     * @param statuses 用户ID到新状态的映射
+     */
+    void updateStatuses(Map<String, UserStatus> statuses);
+}
@@ -0,0 +1,38 @@
+package org.ovo307000.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.entity.User;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Map;
+
+/**
+ * {@link UserRepositoryCustom} 的 MongoTemplate 实现，所有更新在一次无序批量写入中完成
+ */
+@RequiredArgsConstructor
+public class UserRepositoryCustomImpl implements UserRepositoryCustom
+{
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void updateStatuses(final Map<String, UserStatus> statuses)
+    {
+        if (statuses.isEmpty())
+        {
+            return;
+        }
+
+        final var bulk = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+
+        statuses.forEach((userId, status) -> bulk.updateOne(Query.query(Criteria.where("nickName")
+                                                                                .is(userId)),
+                                                            Update.update("status", status)));
+
+        bulk.execute();
+    }
+}
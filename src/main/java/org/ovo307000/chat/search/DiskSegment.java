@@ -0,0 +1,355 @@
+package org.ovo307000.chat.search;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 映射到内存的只读索引分段
+ *
+ * <p>
+ * 文件由 {@link SegmentWriter} 写入，依次为：文件头（64 字节）、数据区（文档的存储字段、词元字节和倒排列表、聊天室 ID 字节）、
+ * 聊天室表、词元表、文档表。三张表都是定长表项，聊天室表按 ID 的字节序排列，词元表按 (聊天室编号, 词元字节) 排列，
+ * 查找时在映射的内存上二分，打开分段不需要把词典加载到堆中。倒排列表为 (文档号差值, 词频) 的变长整数序列。
+ * </p>
+ */
+final class DiskSegment implements IndexSegment
+{
+    /* 聊天室表项：名称偏移、名称长度、文档数、词元总数 */
+    private static final int ROOM_ENTRY_BYTES = 4 + 4 + 4 + 8;
+
+    /* 词元表项：聊天室编号、词元偏移、词元长度、倒排列表偏移、文档数 */
+    private static final int TERM_ENTRY_BYTES = 4 * 5;
+
+    /* 文档表项：存储偏移、聊天室编号、词元数 */
+    private static final int DOC_ENTRY_BYTES = 4 * 3;
+
+    private final Path             path;
+    private final MappedByteBuffer buffer;
+    private final int              docCount;
+    private final int              roomCount;
+    private final int              termCount;
+    private final int              roomsOffset;
+    private final int              termsOffset;
+    private final int              docsOffset;
+
+    private DiskSegment(final Path path, final MappedByteBuffer buffer) throws IOException
+    {
+        if (buffer.capacity() < SegmentWriter.HEADER_BYTES ||
+            buffer.getInt(0) != SegmentWriter.MAGIC ||
+            buffer.getInt(4) != SegmentWriter.VERSION)
+        {
+            throw new IOException("Not a search segment: " + path);
+        }
+
+        this.path        = path;
+        this.buffer      = buffer;
+        this.docCount    = buffer.getInt(8);
+        this.roomCount   = buffer.getInt(12);
+        this.termCount   = buffer.getInt(16);
+        this.roomsOffset = buffer.getInt(20);
+        this.termsOffset = buffer.getInt(24);
+        this.docsOffset  = buffer.getInt(28);
+    }
+
+    /**
+     * 打开并映射分段文件
+     *
+     * @param path 分段文件
+     * @return 分段
+     * @throws IOException 如果文件无法读取或格式不正确
+     */
+    static DiskSegment open(final Path path) throws IOException
+    {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return new DiskSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path path()
+    {
+        return this.path;
+    }
+
+    @Override
+    public int docCount()
+    {
+        return this.docCount;
+    }
+
+    @Nullable
+    @Override
+    public RoomStats roomStats(final String chatRoomId)
+    {
+        final var room = this.room(chatRoomId.getBytes(StandardCharsets.UTF_8));
+
+        if (room < 0)
+        {
+            return null;
+        }
+
+        final var entry = this.roomsOffset + room * ROOM_ENTRY_BYTES;
+
+        return new RoomStats(this.buffer.getInt(entry + 8), this.buffer.getLong(entry + 12));
+    }
+
+    @Nullable
+    @Override
+    public PostingsCursor postings(final String chatRoomId, final String term)
+    {
+        final var room = this.room(chatRoomId.getBytes(StandardCharsets.UTF_8));
+
+        if (room < 0)
+        {
+            return null;
+        }
+
+        final var bytes = term.getBytes(StandardCharsets.UTF_8);
+        var       low   = 0;
+        var       high  = this.termCount - 1;
+
+        while (low <= high)
+        {
+            final var middle     = (low + high) >>> 1;
+            final var entry      = this.termsOffset + middle * TERM_ENTRY_BYTES;
+            var       comparison = Integer.compare(this.buffer.getInt(entry), room);
+
+            if (comparison == 0)
+            {
+                comparison = this.compareBytes(this.buffer.getInt(entry + 4), this.buffer.getInt(entry + 8), bytes);
+            }
+
+            if (comparison < 0)
+            {
+                low = middle + 1;
+            }
+            else if (comparison > 0)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return this.postingsAt(middle);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int length(final int doc)
+    {
+        return this.buffer.getInt(this.docsOffset + doc * DOC_ENTRY_BYTES + 8);
+    }
+
+    @Override
+    public ChatMessage document(final int doc)
+    {
+        final var entry  = this.docsOffset + doc * DOC_ENTRY_BYTES;
+        final var fields = new String[4];
+        var       offset = this.buffer.getInt(entry);
+
+        for (int i = 0; i < fields.length; i++)
+        {
+            final var length = this.buffer.getInt(offset);
+            offset += Integer.BYTES;
+
+            if (length >= 0)
+            {
+                fields[i] = this.string(offset, length);
+                offset += length;
+            }
+        }
+
+        final var epochSecond = this.buffer.getLong(offset);
+        final var nano        = this.buffer.getInt(offset + Long.BYTES);
+        final var seq         = this.buffer.getLong(offset + Long.BYTES + Integer.BYTES);
+
+        return new ChatMessage(fields[0],
+                               this.roomName(this.buffer.getInt(entry + 4)),
+                               seq == SegmentWriter.ABSENT ? null : seq,
+                               fields[1],
+                               fields[2],
+                               fields[3],
+                               epochSecond == SegmentWriter.ABSENT
+                               ? null
+                               : LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+    }
+
+    /* 以下方法供合并时按词元表顺序遍历 */
+
+    int termCount()
+    {
+        return this.termCount;
+    }
+
+    int roomCount()
+    {
+        return this.roomCount;
+    }
+
+    String roomName(final int room)
+    {
+        final var entry = this.roomsOffset + room * ROOM_ENTRY_BYTES;
+
+        return this.string(this.buffer.getInt(entry), this.buffer.getInt(entry + 4));
+    }
+
+    int termRoom(final int term)
+    {
+        return this.buffer.getInt(this.termsOffset + term * TERM_ENTRY_BYTES);
+    }
+
+    byte[] termBytes(final int term)
+    {
+        final var entry = this.termsOffset + term * TERM_ENTRY_BYTES;
+        final var bytes = new byte[this.buffer.getInt(entry + 8)];
+        this.buffer.get(this.buffer.getInt(entry + 4), bytes);
+
+        return bytes;
+    }
+
+    PostingsCursor postingsAt(final int term)
+    {
+        final var entry = this.termsOffset + term * TERM_ENTRY_BYTES;
+
+        return new Cursor(this.buffer.getInt(entry + 12), this.buffer.getInt(entry + 16));
+    }
+
+    /**
+     * 按 UTF-8 字节二分查找聊天室编号，不存在时返回负数
+     */
+    private int room(final byte[] name)
+    {
+        var low  = 0;
+        var high = this.roomCount - 1;
+
+        while (low <= high)
+        {
+            final var middle     = (low + high) >>> 1;
+            final var entry      = this.roomsOffset + middle * ROOM_ENTRY_BYTES;
+            final var comparison = this.compareBytes(this.buffer.getInt(entry), this.buffer.getInt(entry + 4), name);
+
+            if (comparison < 0)
+            {
+                low = middle + 1;
+            }
+            else if (comparison > 0)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    private String string(final int offset, final int length)
+    {
+        final var bytes = new byte[length];
+        this.buffer.get(offset, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 比较映射内存中的一段字节与给定字节（无符号字典序），不复制
+     */
+    private int compareBytes(final int offset, final int length, final byte[] other)
+    {
+        final var common = Math.min(length, other.length);
+
+        for (int i = 0; i < common; i++)
+        {
+            final var comparison = Integer.compare(Byte.toUnsignedInt(this.buffer.get(offset + i)),
+                                                   Byte.toUnsignedInt(other[i]));
+
+            if (comparison != 0)
+            {
+                return comparison;
+            }
+        }
+
+        return Integer.compare(length, other.length);
+    }
+
+    /**
+     * 直接在映射内存上解码的倒排列表
+     */
+    private final class Cursor implements PostingsCursor
+    {
+        private final int df;
+        private       int position;
+        private       int read;
+        private       int doc;
+        private       int tf;
+
+        private Cursor(final int position, final int df)
+        {
+            this.position = position;
+            this.df       = df;
+        }
+
+        @Override
+        public int df()
+        {
+            return this.df;
+        }
+
+        @Override
+        public boolean next()
+        {
+            if (this.read == this.df)
+            {
+                return false;
+            }
+
+            this.doc += this.readVarInt();
+            this.tf = this.readVarInt();
+            this.read++;
+
+            return true;
+        }
+
+        @Override
+        public int doc()
+        {
+            return this.doc;
+        }
+
+        @Override
+        public int tf()
+        {
+            return this.tf;
+        }
+
+        private int readVarInt()
+        {
+            var value = 0;
+            var shift = 0;
+            int current;
+
+            do
+            {
+                current = DiskSegment.this.buffer.get(this.position++);
+                value |= (current & 0x7F) << shift;
+                shift += 7;
+            }
+            while ((current & 0x80) != 0);
+
+            return value;
+        }
+    }
+}
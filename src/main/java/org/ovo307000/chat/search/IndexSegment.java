@@ -0,0 +1,59 @@
+package org.ovo307000.chat.search;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+
+/**
+ * 可以检索的索引分段：内存中的 {@link SegmentBuilder} 或磁盘上的 {@link DiskSegment}
+ *
+ * <p>
+ * 倒排列表按 (聊天室, 词元) 组织，查询只访问用户所在聊天室的倒排列表，
+ * 代价与这些聊天室中的匹配数成正比，与索引的总文档数无关。
+ * </p>
+ */
+interface IndexSegment
+{
+    /**
+     * 分段中的文档数，文档号为 [0, docCount)
+     */
+    int docCount();
+
+    /**
+     * 聊天室在分段中的文档数和词元总数
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 聊天室在分段中没有文档时返回 null
+     */
+    @Nullable
+    RoomStats roomStats(String chatRoomId);
+
+    /**
+     * 词元在聊天室中的倒排列表
+     *
+     * @param chatRoomId 聊天室ID
+     * @param term       词元
+     * @return 没有匹配时返回 null
+     */
+    @Nullable
+    PostingsCursor postings(String chatRoomId, String term);
+
+    /**
+     * 文档的词元数，用于 BM25 的长度归一化
+     */
+    int length(int doc);
+
+    /**
+     * 读取文档对应的消息
+     */
+    ChatMessage document(int doc);
+
+    /**
+     * 聊天室在分段中的统计
+     *
+     * @param docCount    文档数
+     * @param totalLength 词元总数
+     */
+    record RoomStats(int docCount, long totalLength)
+    {
+    }
+}
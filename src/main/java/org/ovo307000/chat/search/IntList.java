@@ -0,0 +1,42 @@
+package org.ovo307000.chat.search;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的 int 数组，避免 List&lt;Integer&gt; 的装箱开销
+ */
+final class IntList
+{
+    private int[] values;
+    private int   size;
+
+    IntList(final int capacity)
+    {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    void add(final int value)
+    {
+        if (this.size == this.values.length)
+        {
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
+
+        this.values[this.size++] = value;
+    }
+
+    int get(final int index)
+    {
+        return this.values[index];
+    }
+
+    void set(final int index, final int value)
+    {
+        this.values[index] = value;
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+}
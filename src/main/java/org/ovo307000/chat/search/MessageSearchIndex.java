@@ -0,0 +1,1043 @@
+package org.ovo307000.chat.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 消息内容的全文索引
+ *
+ * <p>
+ * 索引由若干分段组成：新消息写入内存中的分段，达到 flush-threshold 条或每隔 flush-interval-millis 写成磁盘上的不可变分段；
+ * 同一层级（文档数在同一个 merge-factor 的幂次区间内）的相邻分段达到 merge-factor 个时，在后台合并为一个，
+ * 分段数随文档总数对数增长。写盘和合并都在单独的维护线程中进行，不阻塞消息的保存和检索。
+ * 分段中保存了消息的完整字段，检索结果不需要再查询 MongoDB 或归档。
+ * </p>
+ *
+ * <p>
+ * 倒排列表按 (聊天室, 词元) 组织，检索只读取用户所在聊天室的倒排列表，按 BM25 打分（多个词元之间为“或”的关系），
+ * 用大小为 offset + limit + 1 的堆保留得分最高的结果，代价与这些聊天室中的匹配数成正比，与索引的总文档数无关。
+ * </p>
+ *
+ * <p>
+ * 磁盘上的分段列表记录在 segments 文件中，写入新分段或合并完成后原子地替换。
+ * 进程崩溃时，尚未写入磁盘的内存分段会丢失（最多 flush-interval-millis 内的消息），这些消息仍然可以在聊天记录中查到，
+ * 删除索引目录后重启即可重建。首次启动（没有 backfilled 标记）时，在后台从 MongoDB 和归档回填全部历史消息。
+ * </p>
+ */
+@Slf4j
+@Component
+public class MessageSearchIndex implements MeterBinder
+{
+    static final String MANIFEST_FILE   = "segments";
+    static final String BACKFILLED_FILE = "backfilled";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /* BM25 参数 */
+    private static final double K1 = 1.2;
+    private static final double B  = 0.75;
+
+    /* 回填时允许等待写盘的内存分段数 */
+    private static final int MAX_PENDING_FLUSHES = 2;
+
+    /* 查询最多使用的词元数 */
+    private static final int MAX_QUERY_TERMS = 32;
+
+    /* 得分相同时较新的文档（分段靠后、文档号较大）排在前面 */
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingDouble(Candidate::score)
+                                                                       .thenComparingInt(Candidate::segment)
+                                                                       .thenComparingInt(Candidate::doc);
+
+    private final ChatMessageStore chatMessageStore;
+    private final ChatArchive      chatArchive;
+
+    private final boolean enabled;
+    private final Path    directory;
+    private final int     flushThreshold;
+    private final int     mergeFactor;
+    private final int     maxSegmentDocs;
+    private final int     backfillBatchSize;
+
+    /* 保护内存分段的修改，以及分段列表的替换 */
+    private final ReentrantReadWriteLock liveLock = new ReentrantReadWriteLock();
+
+    /* 写盘和合并的单线程执行器，分段列表中的磁盘部分只由它修改 */
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable ->
+                                                                                  {
+                                                                                      final var thread = new Thread(runnable,
+                                                                                                                    "search-maintenance");
+                                                                                      thread.setDaemon(true);
+
+                                                                                      return thread;
+                                                                                  });
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /* 回填期间实时建立索引的消息ID，回填时跳过，避免重复 */
+    private final Set<String> indexedDuringBackfill = ConcurrentHashMap.newKeySet();
+
+    private volatile State   state = new State(List.of(), List.of(), new SegmentBuilder());
+    private volatile boolean backfillNeeded;
+    private volatile boolean backfilling;
+    private volatile boolean closed;
+
+    private Timer queryTimer;
+
+    public MessageSearchIndex(@NonNull final ChatProperties chatProperties,
+                              @NonNull final ChatMessageStore chatMessageStore,
+                              @NonNull final ChatArchive chatArchive)
+    {
+        final var config = chatProperties.getSearch();
+
+        this.chatMessageStore  = chatMessageStore;
+        this.chatArchive       = chatArchive;
+        this.enabled           = config.isEnabled();
+        this.directory         = Path.of(config.getDirectory());
+        this.flushThreshold    = Math.max(config.getFlushThreshold(), 1);
+        this.mergeFactor       = Math.max(config.getMergeFactor(), 2);
+        this.maxSegmentDocs    = Math.max(config.getMaxSegmentDocs(), 1);
+        this.backfillBatchSize = Math.max(config.getBackfillBatchSize(), 1);
+
+        if (this.enabled)
+        {
+            this.open();
+        }
+    }
+
+    /**
+     * 是否启用全文检索
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * 为一条已经保存的消息建立索引，返回后即可被检索到
+     *
+     * @param message 已经保存的消息
+     */
+    public void index(@NonNull final ChatMessage message)
+    {
+        if (!this.enabled || message.getId() == null || message.getChatRoomId() == null)
+        {
+            return;
+        }
+
+        if (this.backfilling)
+        {
+            this.indexedDuringBackfill.add(message.getId());
+        }
+
+        this.add(message);
+    }
+
+    /**
+     * 在指定的聊天室中检索消息
+     *
+     * @param chatRoomIds 检索范围，通常是用户参与的全部聊天室
+     * @param query       查询文本，按与消息内容相同的规则分词
+     * @param offset      跳过的结果数
+     * @param limit       最多返回的结果数
+     * @return 按得分从高到低排列的结果
+     * @throws IllegalStateException 如果未启用全文检索
+     */
+    public SearchResult search(@NonNull final Collection<String> chatRoomIds,
+                               @NonNull final String query,
+                               final int offset,
+                               final int limit)
+    {
+        if (!this.enabled)
+        {
+            throw new IllegalStateException("Message search is disabled");
+        }
+
+        final var start  = System.nanoTime();
+        final var result = this.doSearch(Set.copyOf(chatRoomIds), query, Math.max(offset, 0), Math.max(limit, 0));
+
+        if (this.queryTimer != null)
+        {
+            this.queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        return result;
+    }
+
+    /**
+     * 将内存中的分段交给维护线程写入磁盘
+     */
+    @Scheduled(fixedDelayString = "${chat.search.flush-interval-millis:5000}")
+    public void flush()
+    {
+        if (!this.enabled)
+        {
+            return;
+        }
+
+        this.liveLock.writeLock()
+                     .lock();
+
+        try
+        {
+            this.sealLive();
+        }
+        finally
+        {
+            this.liveLock.writeLock()
+                         .unlock();
+        }
+
+        // 上一次写盘失败的分段也会在这里重试
+        if (!this.state.flushing()
+                       .isEmpty())
+        {
+            this.submit(this::flushPending);
+        }
+    }
+
+    /**
+     * 首次启动时在后台回填历史消息，不阻塞应用启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill()
+    {
+        if (!this.enabled || !this.backfillNeeded)
+        {
+            return;
+        }
+
+        this.backfilling = true;
+
+        final var thread = new Thread(this::backfill, "search-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 关闭前将内存中的分段写入磁盘，并等待维护线程完成
+     */
+    @PreDestroy
+    public void close()
+    {
+        this.closed = true;
+        this.flush();
+        this.maintenance.shutdown();
+
+        try
+        {
+            if (!this.maintenance.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                log.warn("Search index maintenance did not finish before shutdown");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull final MeterRegistry meterRegistry)
+    {
+        Gauge.builder("chat.search.segments", this, index -> index.state.disk()
+                                                                    .size())
+             .description("Immutable search index segments on disk")
+             .register(meterRegistry);
+        Gauge.builder("chat.search.documents", this, index -> index.state.segments()
+                                                                     .stream()
+                                                                     .mapToLong(IndexSegment::docCount)
+                                                                     .sum())
+             .description("Chat messages in the search index")
+             .baseUnit("messages")
+             .register(meterRegistry);
+
+        this.queryTimer = Timer.builder("chat.search.query")
+                               .description("Time spent evaluating message search queries")
+                               .register(meterRegistry);
+    }
+
+    /**
+     * 回填 MongoDB 和归档中的全部消息，完成并写入磁盘后写入 backfilled 标记
+     */
+    void backfill()
+    {
+        try
+        {
+            final var chatRoomIds = new LinkedHashSet<>(this.chatMessageStore.findChatRoomIds());
+            chatRoomIds.addAll(this.chatArchive.rooms());
+
+            log.info("Backfilling search index from {} chat rooms", chatRoomIds.size());
+
+            var total = 0L;
+
+            for (final var chatRoomId : chatRoomIds)
+            {
+                try (final var messages = this.chatMessageStore.streamByChatRoomId(chatRoomId,
+                                                                                   this.backfillBatchSize))
+                {
+                    final var iterator = messages.iterator();
+
+                    while (iterator.hasNext())
+                    {
+                        if (this.closed)
+                        {
+                            return;
+                        }
+
+                        final var message = iterator.next();
+
+                        if (message.getId() != null && !this.indexedDuringBackfill.contains(message.getId()))
+                        {
+                            this.add(message);
+                            total++;
+                        }
+
+                        // 回填比写盘快得多，等待维护线程追上，避免待写盘的分段在内存中堆积
+                        if (this.state.flushing()
+                                      .size() > MAX_PENDING_FLUSHES)
+                        {
+                            this.awaitMaintenance();
+                        }
+                    }
+                }
+            }
+
+            final var backfilled = total;
+
+            this.submit(() ->
+                        {
+                            this.liveLock.writeLock()
+                                         .lock();
+
+                            try
+                            {
+                                this.sealLive();
+                            }
+                            finally
+                            {
+                                this.liveLock.writeLock()
+                                             .unlock();
+                            }
+
+                            this.flushPending();
+
+                            // 回填的文档全部写入磁盘后才写入标记，否则下次启动重新回填
+                            if (this.state.flushing()
+                                          .isEmpty())
+                            {
+                                this.writeMarker();
+                                this.backfillNeeded = false;
+
+                                log.info("Backfilled {} chat messages into the search index", backfilled);
+                            }
+                        });
+        }
+        catch (RuntimeException | ExecutionException e)
+        {
+            log.error("Error occurred while backfilling the search index, it will be rebuilt on next start", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+        finally
+        {
+            this.backfilling = false;
+            this.indexedDuringBackfill.clear();
+        }
+    }
+
+    /**
+     * 等待已经提交给维护线程的任务完成
+     */
+    void awaitMaintenance() throws InterruptedException, ExecutionException
+    {
+        this.maintenance.submit(() ->
+                                {
+                                })
+                        .get();
+    }
+
+    private void add(final ChatMessage message)
+    {
+        final var tokens = MessageTokenizer.tokenize(message.getContent());
+
+        // 没有词元的消息永远不会被检索到
+        if (tokens.isEmpty())
+        {
+            return;
+        }
+
+        final boolean sealed;
+
+        this.liveLock.writeLock()
+                     .lock();
+
+        try
+        {
+            this.state.live()
+                      .add(message, tokens);
+
+            sealed = this.state.live()
+                               .docCount() >= this.flushThreshold && this.sealLive();
+        }
+        finally
+        {
+            this.liveLock.writeLock()
+                         .unlock();
+        }
+
+        if (sealed)
+        {
+            this.submit(this::flushPending);
+        }
+    }
+
+    /**
+     * 将内存分段移入待写盘列表，换上新的内存分段，调用方必须持有写锁
+     *
+     * @return 内存分段为空时返回 false
+     */
+    private boolean sealLive()
+    {
+        final var current = this.state;
+
+        if (current.live()
+                   .docCount() == 0)
+        {
+            return false;
+        }
+
+        final var flushing = new ArrayList<>(current.flushing());
+        flushing.add(current.live());
+
+        this.state = new State(current.disk(), List.copyOf(flushing), new SegmentBuilder());
+
+        return true;
+    }
+
+    private void submit(final Runnable task)
+    {
+        try
+        {
+            this.maintenance.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            log.debug("Search index is closed, skipping maintenance");
+        }
+    }
+
+    /**
+     * 按顺序将待写盘的分段写入磁盘，完成后检查是否需要合并，只在维护线程中运行
+     */
+    private void flushPending()
+    {
+        for (final var builder : this.state.flushing())
+        {
+            final DiskSegment segment;
+
+            try
+            {
+                segment = this.writeSegment(builder::write);
+            }
+            catch (IOException | UncheckedIOException e)
+            {
+                // 写盘失败的分段留在内存中继续提供检索，下一次写盘时重试
+                log.error("Error occurred while flushing {} documents to the search index", builder.docCount(), e);
+
+                return;
+            }
+
+            this.liveLock.writeLock()
+                         .lock();
+
+            try
+            {
+                final var current = this.state;
+                final var disk    = new ArrayList<>(current.disk());
+                disk.add(segment);
+
+                this.state = new State(List.copyOf(disk),
+                                       current.flushing()
+                                              .stream()
+                                              .filter(flushing -> flushing != builder)
+                                              .toList(),
+                                       current.live());
+            }
+            finally
+            {
+                this.liveLock.writeLock()
+                             .unlock();
+            }
+
+            this.writeManifest();
+        }
+
+        this.mergeSegments();
+    }
+
+    /**
+     * 反复合并同一层级的相邻分段，直到没有可以合并的分段，只在维护线程中运行
+     */
+    private void mergeSegments()
+    {
+        while (!this.closed)
+        {
+            final var disk = this.state.disk();
+            final var from = this.findMergeStart(disk);
+
+            if (from < 0)
+            {
+                return;
+            }
+
+            final var sources = List.copyOf(disk.subList(from, from + this.mergeFactor));
+            final DiskSegment merged;
+
+            try
+            {
+                merged = this.writeSegment(path -> SegmentMerger.merge(sources, path));
+            }
+            catch (IOException | UncheckedIOException e)
+            {
+                log.error("Error occurred while merging {} search index segments", sources.size(), e);
+
+                return;
+            }
+
+            this.liveLock.writeLock()
+                         .lock();
+
+            try
+            {
+                // 磁盘分段只由维护线程修改，位置不会变化
+                final var current  = this.state;
+                final var replaced = new ArrayList<>(current.disk());
+                replaced.subList(from, from + sources.size())
+                        .clear();
+                replaced.add(from, merged);
+
+                this.state = new State(List.copyOf(replaced), current.flushing(), current.live());
+            }
+            finally
+            {
+                this.liveLock.writeLock()
+                             .unlock();
+            }
+
+            this.writeManifest();
+
+            // 正在进行的检索仍然持有旧分段的映射，删除文件不影响它们
+            sources.forEach(source -> this.deleteQuietly(source.path()));
+
+            log.debug("Merged {} search index segments into {} ({} documents)",
+                      sources.size(),
+                      merged.path()
+                            .getFileName(),
+                      merged.docCount());
+        }
+    }
+
+    /**
+     * 查找第一组可以合并的相邻分段
+     *
+     * @return 起始位置，没有可以合并的分段时返回 -1
+     */
+    private int findMergeStart(final List<DiskSegment> disk)
+    {
+        for (int from = 0; from + this.mergeFactor <= disk.size(); from++)
+        {
+            final var level = this.level(disk.get(from)
+                                             .docCount());
+            var       total = 0L;
+            var       found = true;
+
+            for (int i = from; i < from + this.mergeFactor && found; i++)
+            {
+                final var docCount = disk.get(i)
+                                         .docCount();
+                total += docCount;
+                found = this.level(docCount) == level && docCount < this.maxSegmentDocs;
+            }
+
+            if (found && total <= this.maxSegmentDocs)
+            {
+                return from;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 分段的层级：满足 docCount >= flushThreshold * mergeFactor^level 的最大 level
+     */
+    private int level(final int docCount)
+    {
+        var level = 0;
+        var bound = (long) this.flushThreshold * this.mergeFactor;
+
+        while (docCount >= bound)
+        {
+            level++;
+            bound *= this.mergeFactor;
+        }
+
+        return level;
+    }
+
+    private DiskSegment writeSegment(final SegmentSink sink) throws IOException
+    {
+        final var name      = String.format("%s%010d%s", SEGMENT_PREFIX, this.generation.getAndIncrement(), SEGMENT_SUFFIX);
+        final var target    = this.directory.resolve(name);
+        final var temporary = this.directory.resolve(name + ".tmp");
+
+        Files.deleteIfExists(temporary);
+        sink.writeTo(temporary);
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+
+        return DiskSegment.open(target);
+    }
+
+    private void writeManifest()
+    {
+        final var names = this.state.disk()
+                                    .stream()
+                                    .map(segment -> segment.path()
+                                                           .getFileName()
+                                                           .toString())
+                                    .toList();
+
+        try
+        {
+            final var temporary = this.directory.resolve(MANIFEST_FILE + ".tmp");
+            Files.write(temporary, names);
+            Files.move(temporary,
+                       this.directory.resolve(MANIFEST_FILE),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            // 分段列表没有更新时，重启后新分段被当作孤立文件删除，相当于这部分索引丢失
+            log.error("Error occurred while writing the search index manifest", e);
+        }
+    }
+
+    private void writeMarker()
+    {
+        try
+        {
+            Files.writeString(this.directory.resolve(BACKFILLED_FILE), "");
+        }
+        catch (IOException e)
+        {
+            log.error("Error occurred while writing the search index backfill marker", e);
+        }
+    }
+
+    /**
+     * 打开磁盘上的分段；没有回填标记或分段损坏时清空目录，重新回填
+     */
+    private void open()
+    {
+        try
+        {
+            Files.createDirectories(this.directory);
+
+            if (Files.exists(this.directory.resolve(BACKFILLED_FILE)))
+            {
+                this.openSegments();
+
+                return;
+            }
+        }
+        catch (IOException | UncheckedIOException e)
+        {
+            log.warn("Search index in {} is unreadable, rebuilding it", this.directory, e);
+        }
+
+        this.state          = new State(List.of(), List.of(), new SegmentBuilder());
+        this.backfillNeeded = true;
+
+        try (final var files = Files.list(this.directory))
+        {
+            files.filter(Files::isRegularFile)
+                 .forEach(this::deleteQuietly);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to clear search index directory " + this.directory, e);
+        }
+    }
+
+    private void openSegments() throws IOException
+    {
+        final var manifest = this.directory.resolve(MANIFEST_FILE);
+        final var names    = Files.exists(manifest) ? Files.readAllLines(manifest) : List.<String>of();
+        final var segments = new ArrayList<DiskSegment>();
+
+        for (final var name : names)
+        {
+            if (!name.isBlank())
+            {
+                segments.add(DiskSegment.open(this.directory.resolve(name)));
+            }
+        }
+
+        // 删除写盘或合并途中崩溃留下的文件，以及合并后没有来得及删除的旧分段
+        final var referenced = new HashSet<>(names);
+
+        try (final var files = Files.list(this.directory))
+        {
+            files.filter(path ->
+                         {
+                             final var name = path.getFileName()
+                                                  .toString();
+
+                             return name.startsWith(SEGMENT_PREFIX) && !referenced.contains(name);
+                         })
+                 .forEach(this::deleteQuietly);
+        }
+
+        var next = 0L;
+
+        for (final var name : names)
+        {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+            {
+                next = Math.max(next,
+                                Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                              name.length() - SEGMENT_SUFFIX.length())) + 1);
+            }
+        }
+
+        this.generation.set(next);
+        this.state = new State(List.copyOf(segments), List.of(), new SegmentBuilder());
+
+        log.info("Opened search index with {} segments and {} documents in {}",
+                 segments.size(),
+                 segments.stream()
+                         .mapToLong(DiskSegment::docCount)
+                         .sum(),
+                 this.directory);
+    }
+
+    private void deleteQuietly(final Path path)
+    {
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to delete search index file {}", path, e);
+        }
+    }
+
+    private SearchResult doSearch(final Set<String> chatRoomIds, final String query, final int offset, final int limit)
+    {
+        final var terms = MessageTokenizer.tokenize(query)
+                                          .stream()
+                                          .distinct()
+                                          .limit(MAX_QUERY_TERMS)
+                                          .toList();
+
+        if (terms.isEmpty() || chatRoomIds.isEmpty() || limit == 0)
+        {
+            return new SearchResult(List.of(), false);
+        }
+
+        final var segments = this.state.segments();
+
+        // 第一遍：统计检索范围内的文档数、平均长度和各词元的文档频率
+        final var statistics = new Statistics(terms.size());
+
+        for (final var segment : segments)
+        {
+            this.locked(segment, () -> statistics.collect(segment, chatRoomIds, terms));
+        }
+
+        if (statistics.docCount == 0)
+        {
+            return new SearchResult(List.of(), false);
+        }
+
+        final var weights = new double[terms.size()];
+
+        for (int i = 0; i < weights.length; i++)
+        {
+            final var df = statistics.dfs[i];
+            weights[i] = Math.log(1 + (statistics.docCount - df + 0.5) / (df + 0.5));
+        }
+
+        final var averageLength = Math.max((double) statistics.totalLength / statistics.docCount, 1);
+
+        // 第二遍：逐个 (分段, 聊天室) 按文档号归并倒排列表打分，只保留最好的 offset + limit + 1 个
+        final var capacity = offset + limit + 1;
+        final var top      = new PriorityQueue<>(capacity, WORST_FIRST);
+
+        for (int i = 0; i < segments.size(); i++)
+        {
+            final var segment = segments.get(i);
+            final var ordinal = i;
+
+            this.locked(segment, () ->
+            {
+                for (final var chatRoomId : chatRoomIds)
+                {
+                    score(segment, ordinal, chatRoomId, terms, weights, averageLength, top, capacity);
+                }
+            });
+        }
+
+        final var candidates = new ArrayList<>(top);
+        candidates.sort(WORST_FIRST.reversed());
+
+        // 回填与实时索引之间可能有极少量重复，按消息ID去重
+        final var seen = new HashSet<String>();
+        final var hits = new ArrayList<Hit>();
+
+        for (final var candidate : candidates)
+        {
+            final var segment = segments.get(candidate.segment());
+            final var message = new ChatMessage[1];
+            this.locked(segment, () -> message[0] = segment.document(candidate.doc()));
+
+            if (seen.add(message[0].getId()))
+            {
+                hits.add(new Hit(message[0], candidate.score()));
+            }
+        }
+
+        if (hits.size() <= offset)
+        {
+            return new SearchResult(List.of(), false);
+        }
+
+        return new SearchResult(List.copyOf(hits.subList(offset, Math.min(offset + limit, hits.size()))),
+                                hits.size() > offset + limit);
+    }
+
+    private static void score(final IndexSegment segment,
+                              final int ordinal,
+                              final String chatRoomId,
+                              final List<String> terms,
+                              final double[] weights,
+                              final double averageLength,
+                              final PriorityQueue<Candidate> top,
+                              final int capacity)
+    {
+        final var cursors = new PostingsCursor[terms.size()];
+        var       active  = 0;
+
+        for (int i = 0; i < cursors.length; i++)
+        {
+            final var cursor = segment.postings(chatRoomId, terms.get(i));
+
+            if (cursor != null && cursor.next())
+            {
+                cursors[i] = cursor;
+                active++;
+            }
+        }
+
+        while (active > 0)
+        {
+            var doc = Integer.MAX_VALUE;
+
+            for (final var cursor : cursors)
+            {
+                if (cursor != null)
+                {
+                    doc = Math.min(doc, cursor.doc());
+                }
+            }
+
+            final var norm  = K1 * (1 - B + B * segment.length(doc) / averageLength);
+            var       score = 0.0;
+
+            for (int i = 0; i < cursors.length; i++)
+            {
+                if (cursors[i] != null && cursors[i].doc() == doc)
+                {
+                    final var tf = cursors[i].tf();
+                    score += weights[i] * tf * (K1 + 1) / (tf + norm);
+
+                    if (!cursors[i].next())
+                    {
+                        cursors[i] = null;
+                        active--;
+                    }
+                }
+            }
+
+            final var candidate = new Candidate(ordinal, doc, score);
+
+            if (top.size() < capacity)
+            {
+                top.add(candidate);
+            }
+            else if (WORST_FIRST.compare(candidate, top.peek()) > 0)
+            {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+    }
+
+    /**
+     * 访问内存分段时持有读锁，磁盘分段不可变，直接访问
+     */
+    private void locked(final IndexSegment segment, final Runnable action)
+    {
+        if (!(segment instanceof SegmentBuilder))
+        {
+            action.run();
+
+            return;
+        }
+
+        this.liveLock.readLock()
+                     .lock();
+
+        try
+        {
+            action.run();
+        }
+        finally
+        {
+            this.liveLock.readLock()
+                         .unlock();
+        }
+    }
+
+    /**
+     * 检索结果中的一条消息
+     *
+     * @param message 消息
+     * @param score   BM25 得分
+     */
+    public record Hit(ChatMessage message, double score)
+    {
+    }
+
+    /**
+     * 一页检索结果
+     *
+     * @param hits    按得分从高到低排列的结果
+     * @param hasMore 之后是否还有更多结果
+     */
+    public record SearchResult(List<Hit> hits, boolean hasMore)
+    {
+    }
+
+    /**
+     * 分段列表的快照：磁盘分段、等待写盘的内存分段和正在写入的内存分段，按从旧到新排列
+     */
+    private record State(List<DiskSegment> disk, List<SegmentBuilder> flushing, SegmentBuilder live)
+    {
+        List<IndexSegment> segments()
+        {
+            final var segments = new ArrayList<IndexSegment>(this.disk.size() + this.flushing.size() + 1);
+            segments.addAll(this.disk);
+            segments.addAll(this.flushing);
+            segments.add(this.live);
+
+            return segments;
+        }
+    }
+
+    private record Candidate(int segment, int doc, double score)
+    {
+    }
+
+    /**
+     * 检索范围内的统计量
+     */
+    private static final class Statistics
+    {
+        private final long[] dfs;
+        private       long   docCount;
+        private       long   totalLength;
+
+        private Statistics(final int terms)
+        {
+            this.dfs = new long[terms];
+        }
+
+        private void collect(final IndexSegment segment, final Set<String> chatRoomIds, final List<String> terms)
+        {
+            for (final var chatRoomId : chatRoomIds)
+            {
+                final var roomStats = segment.roomStats(chatRoomId);
+
+                if (roomStats == null)
+                {
+                    continue;
+                }
+
+                this.docCount += roomStats.docCount();
+                this.totalLength += roomStats.totalLength();
+
+                for (int i = 0; i < terms.size(); i++)
+                {
+                    final var cursor = segment.postings(chatRoomId, terms.get(i));
+
+                    if (cursor != null)
+                    {
+                        this.dfs[i] += cursor.df();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 将分段写入指定文件
+     */
+    @FunctionalInterface
+    private interface SegmentSink
+    {
+        void writeTo(Path path) throws IOException;
+    }
+}
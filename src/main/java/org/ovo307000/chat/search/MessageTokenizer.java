@@ -0,0 +1,121 @@
+package org.ovo307000.chat.search;
+
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 消息内容的分词器，建立索引和解析查询使用同一套规则
+ *
+ * <ul>
+ *     <li>字母和数字组成的连续片段为一个词元，统一转为小写</li>
+ *     <li>汉字、平假名、片假名之间没有空格，连续片段切分为相邻两字的二元组（bigram），只有一个字的片段保留单字</li>
+ *     <li>其余字符（空白、标点、表情等）都是分隔符</li>
+ * </ul>
+ */
+public final class MessageTokenizer
+{
+    /* 单个词元的最大长度（字符），更长的部分被截断，避免没有分隔符的超长文本撑大词典 */
+    private static final int MAX_TOKEN_LENGTH = 32;
+
+    private MessageTokenizer()
+    {
+    }
+
+    /**
+     * 将文本切分为词元
+     *
+     * @param text 文本，可以为空
+     * @return 按出现顺序排列的词元，可能包含重复
+     */
+    public static List<String> tokenize(@Nullable final String text)
+    {
+        if (text == null || text.isEmpty())
+        {
+            return List.of();
+        }
+
+        final var tokens = new ArrayList<String>();
+        final var word   = new StringBuilder();
+        var       index  = 0;
+
+        while (index < text.length())
+        {
+            final var codePoint = text.codePointAt(index);
+
+            if (isIdeographic(codePoint))
+            {
+                flush(word, tokens);
+
+                // 收集连续的表意文字片段
+                var end   = index;
+                var count = 0;
+
+                while (end < text.length() && isIdeographic(text.codePointAt(end)))
+                {
+                    end += Character.charCount(text.codePointAt(end));
+                    count++;
+                }
+
+                if (count == 1)
+                {
+                    tokens.add(text.substring(index, end));
+                }
+                else
+                {
+                    var first = index;
+
+                    for (int i = 0; i < count - 1; i++)
+                    {
+                        final var second = first + Character.charCount(text.codePointAt(first));
+                        final var next   = second + Character.charCount(text.codePointAt(second));
+
+                        tokens.add(text.substring(first, next));
+                        first = second;
+                    }
+                }
+
+                index = end;
+
+                continue;
+            }
+
+            if (Character.isLetterOrDigit(codePoint))
+            {
+                if (word.length() < MAX_TOKEN_LENGTH)
+                {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            }
+            else
+            {
+                flush(word, tokens);
+            }
+
+            index += Character.charCount(codePoint);
+        }
+
+        flush(word, tokens);
+
+        return tokens;
+    }
+
+    private static void flush(final StringBuilder word, final List<String> tokens)
+    {
+        if (!word.isEmpty())
+        {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isIdeographic(final int codePoint)
+    {
+        final var script = Character.UnicodeScript.of(codePoint);
+
+        return script == Character.UnicodeScript.HAN ||
+               script == Character.UnicodeScript.HIRAGANA ||
+               script == Character.UnicodeScript.KATAKANA;
+    }
+}
@@ -0,0 +1,29 @@
+package org.ovo307000.chat.search;
+
+/**
+ * 一个词元在一个聊天室中的倒排列表，按文档号递增遍历
+ */
+interface PostingsCursor
+{
+    /**
+     * 包含该词元的文档数
+     */
+    int df();
+
+    /**
+     * 前进到下一个文档
+     *
+     * @return 没有更多文档时返回 false
+     */
+    boolean next();
+
+    /**
+     * 当前文档号，调用 {@link #next()} 之后有效
+     */
+    int doc();
+
+    /**
+     * 词元在当前文档中出现的次数
+     */
+    int tf();
+}
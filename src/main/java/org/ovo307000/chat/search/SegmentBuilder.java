@@ -0,0 +1,194 @@
+package org.ovo307000.chat.search;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内存中的索引分段，新消息先写入这里，积累到一定数量后写成 {@link DiskSegment}
+ *
+ * <p>
+ * 本身不是线程安全的，由 {@link MessageSearchIndex} 通过读写锁保护；写入磁盘后不再修改。
+ * </p>
+ */
+final class SegmentBuilder implements IndexSegment
+{
+    private final List<ChatMessage> documents = new ArrayList<>();
+    private final IntList           lengths   = new IntList(256);
+
+    /* 聊天室 ID -> 词元 -> 倒排列表 */
+    private final Map<String, Map<String, Postings>> postings = new HashMap<>();
+
+    /* 聊天室 ID -> 文档数和词元总数 */
+    private final Map<String, long[]> rooms = new HashMap<>();
+
+    /**
+     * 添加一个文档
+     *
+     * @param message 消息
+     * @param tokens  消息内容的词元
+     */
+    void add(final ChatMessage message, final List<String> tokens)
+    {
+        final var doc = this.documents.size();
+
+        this.documents.add(message);
+        this.lengths.add(tokens.size());
+
+        final var stats = this.rooms.computeIfAbsent(message.getChatRoomId(), key -> new long[2]);
+        stats[0]++;
+        stats[1] += tokens.size();
+
+        // 统计文档内的词频，保持词元首次出现的顺序
+        final var frequencies = new LinkedHashMap<String, Integer>();
+        tokens.forEach(token -> frequencies.merge(token, 1, Integer::sum));
+
+        final var roomPostings = this.postings.computeIfAbsent(message.getChatRoomId(), key -> new HashMap<>());
+        frequencies.forEach((term, tf) -> roomPostings.computeIfAbsent(term, key -> new Postings())
+                                                      .add(doc, tf));
+    }
+
+    /**
+     * 写入磁盘分段
+     *
+     * @param path 分段文件，不能已经存在
+     * @throws IOException 如果写入失败
+     */
+    void write(final Path path) throws IOException
+    {
+        try (final var writer = new SegmentWriter(path))
+        {
+            for (int doc = 0; doc < this.documents.size(); doc++)
+            {
+                writer.addDocument(this.documents.get(doc), this.lengths.get(doc));
+            }
+
+            for (final var room : sortedByBytes(this.postings.keySet()))
+            {
+                final var roomPostings = this.postings.get(room);
+
+                for (final var term : sortedByBytes(roomPostings.keySet()))
+                {
+                    final var list = roomPostings.get(term);
+                    writer.startTerm(room, term.getBytes(StandardCharsets.UTF_8));
+
+                    for (int i = 0; i < list.docs.size(); i++)
+                    {
+                        writer.addPosting(list.docs.get(i), list.tfs.get(i));
+                    }
+                }
+            }
+
+            writer.finish();
+        }
+    }
+
+    @Override
+    public int docCount()
+    {
+        return this.documents.size();
+    }
+
+    @Nullable
+    @Override
+    public RoomStats roomStats(final String chatRoomId)
+    {
+        final var stats = this.rooms.get(chatRoomId);
+
+        return stats == null ? null : new RoomStats((int) stats[0], stats[1]);
+    }
+
+    @Nullable
+    @Override
+    public PostingsCursor postings(final String chatRoomId, final String term)
+    {
+        final var roomPostings = this.postings.get(chatRoomId);
+        final var list         = roomPostings == null ? null : roomPostings.get(term);
+
+        return list == null ? null : list.cursor();
+    }
+
+    @Override
+    public int length(final int doc)
+    {
+        return this.lengths.get(doc);
+    }
+
+    @Override
+    public ChatMessage document(final int doc)
+    {
+        return this.documents.get(doc);
+    }
+
+    private static List<String> sortedByBytes(final Iterable<String> values)
+    {
+        final var sorted = new ArrayList<byte[]>();
+        values.forEach(value -> sorted.add(value.getBytes(StandardCharsets.UTF_8)));
+        sorted.sort(Arrays::compareUnsigned);
+
+        return sorted.stream()
+                     .map(bytes -> new String(bytes, StandardCharsets.UTF_8))
+                     .toList();
+    }
+
+    /**
+     * 一个 (聊天室, 词元) 的倒排列表
+     */
+    private static final class Postings
+    {
+        private final IntList docs = new IntList(4);
+        private final IntList tfs  = new IntList(4);
+
+        private void add(final int doc, final int tf)
+        {
+            this.docs.add(doc);
+            this.tfs.add(tf);
+        }
+
+        /**
+         * 只遍历创建时已经存在的文档
+         */
+        private PostingsCursor cursor()
+        {
+            final var size = this.docs.size();
+
+            return new PostingsCursor()
+            {
+                private int index = -1;
+
+                @Override
+                public int df()
+                {
+                    return size;
+                }
+
+                @Override
+                public boolean next()
+                {
+                    return ++this.index < size;
+                }
+
+                @Override
+                public int doc()
+                {
+                    return Postings.this.docs.get(this.index);
+                }
+
+                @Override
+                public int tf()
+                {
+                    return Postings.this.tfs.get(this.index);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.ovo307000.chat.search;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 将相邻的若干磁盘分段合并为一个
+ *
+ * <p>
+ * 文档按分段顺序依次写入，第 i 个分段的文档号整体偏移前面分段的文档数；
+ * 词元表在各分段内已经按 (聊天室, 词元) 的字节序排列，多路归并后相同的键按分段顺序拼接倒排列表，文档号仍然递增。
+ * 整个过程只顺序读取映射的内存、顺序写出新文件，内存占用与分段大小无关。
+ * </p>
+ */
+final class SegmentMerger
+{
+    private static final Comparator<Entry> ORDER = Comparator.<Entry, byte[]>comparing(Entry::room,
+                                                                                       Arrays::compareUnsigned)
+                                                             .thenComparing(Entry::term, Arrays::compareUnsigned)
+                                                             .thenComparingInt(Entry::segment);
+
+    private SegmentMerger()
+    {
+    }
+
+    /**
+     * 合并分段
+     *
+     * @param segments 按新旧顺序排列的分段
+     * @param path     合并结果，不能已经存在
+     * @throws IOException 如果读取或写入失败
+     */
+    static void merge(final List<DiskSegment> segments, final Path path) throws IOException
+    {
+        try (final var writer = new SegmentWriter(path))
+        {
+            final var docBases  = new int[segments.size()];
+            final var roomNames = new String[segments.size()][];
+            final var roomBytes = new byte[segments.size()][][];
+            var       docBase   = 0;
+
+            for (int i = 0; i < segments.size(); i++)
+            {
+                final var segment = segments.get(i);
+                docBases[i] = docBase;
+
+                for (int doc = 0; doc < segment.docCount(); doc++)
+                {
+                    writer.addDocument(segment.document(doc), segment.length(doc));
+                }
+
+                docBase += segment.docCount();
+
+                roomNames[i] = new String[segment.roomCount()];
+                roomBytes[i] = new byte[segment.roomCount()][];
+
+                for (int room = 0; room < segment.roomCount(); room++)
+                {
+                    roomNames[i][room] = segment.roomName(room);
+                    roomBytes[i][room] = roomNames[i][room].getBytes(StandardCharsets.UTF_8);
+                }
+            }
+
+            final var queue = new PriorityQueue<>(ORDER);
+
+            for (int i = 0; i < segments.size(); i++)
+            {
+                if (segments.get(i)
+                            .termCount() > 0)
+                {
+                    queue.add(entry(segments.get(i), i, 0, roomBytes[i]));
+                }
+            }
+
+            while (!queue.isEmpty())
+            {
+                final var first = queue.peek();
+                writer.startTerm(roomNames[first.segment()][first.roomOrdinal()], first.term());
+
+                // 取出所有键相同的表项，它们按分段顺序出队
+                while (!queue.isEmpty() && sameKey(queue.peek(), first))
+                {
+                    final var current = queue.poll();
+                    final var segment = segments.get(current.segment());
+                    final var cursor  = segment.postingsAt(current.index());
+
+                    while (cursor.next())
+                    {
+                        writer.addPosting(docBases[current.segment()] + cursor.doc(), cursor.tf());
+                    }
+
+                    if (current.index() + 1 < segment.termCount())
+                    {
+                        queue.add(entry(segment, current.segment(), current.index() + 1, roomBytes[current.segment()]));
+                    }
+                }
+            }
+
+            writer.finish();
+        }
+    }
+
+    private static Entry entry(final DiskSegment segment, final int ordinal, final int index, final byte[][] roomBytes)
+    {
+        final var room = segment.termRoom(index);
+
+        return new Entry(ordinal, index, room, roomBytes[room], segment.termBytes(index));
+    }
+
+    private static boolean sameKey(final Entry left, final Entry right)
+    {
+        return Arrays.equals(left.room(), right.room()) && Arrays.equals(left.term(), right.term());
+    }
+
+    /**
+     * 某个分段词元表中的一项
+     */
+    private record Entry(int segment, int index, int roomOrdinal, byte[] room, byte[] term)
+    {
+    }
+}
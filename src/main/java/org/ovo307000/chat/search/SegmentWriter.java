@@ -0,0 +1,274 @@
+package org.ovo307000.chat.search;
+
+import org.ovo307000.chat.module.entity.ChatMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 顺序写入一个磁盘分段，格式见 {@link DiskSegment}
+ *
+ * <p>
+ * 先按文档号顺序调用 {@link #addDocument(ChatMessage, int)} 写入全部文档，
+ * 再按 (聊天室 ID 的 UTF-8 字节, 词元的 UTF-8 字节) 的无符号字典序调用 {@link #startTerm(String, byte[])}
+ * 和 {@link #addPosting(int, int)} 写入倒排列表，最后调用 {@link #finish()}。
+ * 数据区边写边输出，内存中只保留定长的表项，分段大小与内存占用无关。
+ * </p>
+ */
+final class SegmentWriter implements Closeable
+{
+    static final int MAGIC        = 0x43534958;
+    static final int VERSION      = 1;
+    static final int HEADER_BYTES = 64;
+
+    /* 没有序号或时间戳时写入的值 */
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private final FileChannel      channel;
+    private final DataOutputStream out;
+
+    /* 文档表：存储偏移、临时聊天室编号、词元数 */
+    private final IntList storedOffsets = new IntList(1_024);
+    private final IntList docRooms      = new IntList(1_024);
+    private final IntList lengths       = new IntList(1_024);
+
+    /* 聊天室 ID -> 临时编号（按首次出现的顺序），finish 时按字节序重新编号 */
+    private final Map<String, Integer> roomIds     = new HashMap<>();
+    private final List<String>         roomNames   = new ArrayList<>();
+    private final IntList              roomDocs    = new IntList(16);
+    private final List<long[]>         roomLengths = new ArrayList<>();
+
+    /* 词元表：临时聊天室编号、词元偏移、词元长度、倒排列表偏移、文档数 */
+    private final IntList termRooms       = new IntList(1_024);
+    private final IntList termOffsets     = new IntList(1_024);
+    private final IntList termLengths     = new IntList(1_024);
+    private final IntList postingsOffsets = new IntList(1_024);
+    private final IntList dfs             = new IntList(1_024);
+
+    private int lastDoc;
+
+    SegmentWriter(final Path path) throws IOException
+    {
+        this.channel = FileChannel.open(path,
+                                        StandardOpenOption.CREATE_NEW,
+                                        StandardOpenOption.WRITE);
+        this.out     = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.channel), 1 << 16));
+
+        // 文件头最后写入
+        this.out.write(new byte[HEADER_BYTES]);
+    }
+
+    /**
+     * 写入下一个文档
+     *
+     * @param message 消息
+     * @param length  消息内容的词元数
+     */
+    void addDocument(final ChatMessage message, final int length) throws IOException
+    {
+        final var room = this.roomIds.computeIfAbsent(message.getChatRoomId(), name ->
+        {
+            this.roomNames.add(name);
+            this.roomDocs.add(0);
+            this.roomLengths.add(new long[1]);
+
+            return this.roomNames.size() - 1;
+        });
+
+        this.roomDocs.set(room, this.roomDocs.get(room) + 1);
+        this.roomLengths.get(room)[0] += length;
+
+        this.storedOffsets.add(this.position());
+        this.docRooms.add(room);
+        this.lengths.add(length);
+
+        final var timestamp = message.getTimestamp();
+
+        this.writeString(message.getId());
+        this.writeString(message.getSenderId());
+        this.writeString(message.getReceiverId());
+        this.writeString(message.getContent());
+        this.out.writeLong(timestamp == null ? ABSENT : timestamp.toEpochSecond(ZoneOffset.UTC));
+        this.out.writeInt(timestamp == null ? 0 : timestamp.getNano());
+        this.out.writeLong(message.getSeq() == null ? ABSENT : message.getSeq());
+    }
+
+    /**
+     * 开始写入一个 (聊天室, 词元) 的倒排列表
+     *
+     * @param chatRoomId 聊天室ID，必须是已经写入的文档所在的聊天室
+     * @param term       词元的 UTF-8 字节
+     */
+    void startTerm(final String chatRoomId, final byte[] term) throws IOException
+    {
+        final var room = this.roomIds.get(chatRoomId);
+
+        if (room == null)
+        {
+            throw new IllegalArgumentException("No document in chat room " + chatRoomId);
+        }
+
+        this.termRooms.add(room);
+        this.termOffsets.add(this.position());
+        this.termLengths.add(term.length);
+        this.out.write(term);
+
+        this.postingsOffsets.add(this.position());
+        this.dfs.add(0);
+        this.lastDoc = 0;
+    }
+
+    /**
+     * 向当前倒排列表追加一个文档，文档号必须递增
+     *
+     * @param doc 文档号
+     * @param tf  词元在文档中出现的次数
+     */
+    void addPosting(final int doc, final int tf) throws IOException
+    {
+        final var term = this.dfs.size() - 1;
+
+        writeVarInt(this.out, doc - this.lastDoc);
+        writeVarInt(this.out, tf);
+
+        this.dfs.set(term, this.dfs.get(term) + 1);
+        this.lastDoc = doc;
+    }
+
+    /**
+     * 写入聊天室表、词元表、文档表和文件头，并刷盘
+     */
+    void finish() throws IOException
+    {
+        // 聊天室按 UTF-8 字节序重新编号，与词元的写入顺序一致
+        final var names = this.roomNames.stream()
+                                        .map(name -> name.getBytes(StandardCharsets.UTF_8))
+                                        .toArray(byte[][]::new);
+        final var order = new Integer[names.length];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (left, right) -> Arrays.compareUnsigned(names[left], names[right]));
+
+        final var ordinals    = new int[order.length];
+        final var nameOffsets = new int[order.length];
+
+        for (int ordinal = 0; ordinal < order.length; ordinal++)
+        {
+            ordinals[order[ordinal]] = ordinal;
+            nameOffsets[ordinal]     = this.position();
+            this.out.write(names[order[ordinal]]);
+        }
+
+        final var roomsOffset = this.position();
+
+        for (final var room : order)
+        {
+            this.out.writeInt(nameOffsets[ordinals[room]]);
+            this.out.writeInt(names[room].length);
+            this.out.writeInt(this.roomDocs.get(room));
+            this.out.writeLong(this.roomLengths.get(room)[0]);
+        }
+
+        final var termsOffset = this.position();
+
+        for (int i = 0; i < this.dfs.size(); i++)
+        {
+            this.out.writeInt(ordinals[this.termRooms.get(i)]);
+            this.out.writeInt(this.termOffsets.get(i));
+            this.out.writeInt(this.termLengths.get(i));
+            this.out.writeInt(this.postingsOffsets.get(i));
+            this.out.writeInt(this.dfs.get(i));
+        }
+
+        final var docsOffset = this.position();
+
+        for (int doc = 0; doc < this.lengths.size(); doc++)
+        {
+            this.out.writeInt(this.storedOffsets.get(doc));
+            this.out.writeInt(ordinals[this.docRooms.get(doc)]);
+            this.out.writeInt(this.lengths.get(doc));
+        }
+
+        this.out.flush();
+
+        final var header = ByteBuffer.allocate(HEADER_BYTES)
+                                     .putInt(MAGIC)
+                                     .putInt(VERSION)
+                                     .putInt(this.lengths.size())
+                                     .putInt(order.length)
+                                     .putInt(this.dfs.size())
+                                     .putInt(roomsOffset)
+                                     .putInt(termsOffset)
+                                     .putInt(docsOffset)
+                                     .rewind();
+
+        while (header.hasRemaining())
+        {
+            this.channel.write(header, header.position());
+        }
+
+        this.channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+
+    private int position() throws IOException
+    {
+        // DataOutputStream#size 在超过 Integer.MAX_VALUE 后保持不变
+        if (this.out.size() == Integer.MAX_VALUE)
+        {
+            throw new IOException("Search segment exceeds 2 GB");
+        }
+
+        return this.out.size();
+    }
+
+    private void writeString(final String value) throws IOException
+    {
+        if (value == null)
+        {
+            this.out.writeInt(-1);
+
+            return;
+        }
+
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.out.writeInt(bytes.length);
+        this.out.write(bytes);
+    }
+
+    private static void writeVarInt(final DataOutputStream out, final int value) throws IOException
+    {
+        var remaining = value;
+
+        while ((remaining & ~0x7F) != 0)
+        {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+
+        out.writeByte(remaining);
+    }
+}
@@ -0,0 +1,159 @@
+package org.ovo307000.chat.sequence;
+
+import lombok.NonNull;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.springframework.stereotype.Component;
+
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聊天室内单调递增的消息序号分配器
+ *
+ * <p>
+ * 每个聊天室维护一个独立的计数器，消息持久化前分配下一个序号（从 1 开始）。
+ * 计数器在该聊天室第一次使用时从数据库中已存储的最大序号恢复，恢复过程按聊天室 ID 分段加锁，
+ * 不同分段的聊天室可以并行恢复，同一个聊天室只恢复一次；恢复之后的分配只锁定该聊天室自己的计数器。
+ * </p>
+ *
+ * <p>
+ * 序号在写入数据库之前分配，并发写入可能乱序完成，因此分配器同时维护每个聊天室的“提交水位”：
+ * 小于等于水位的序号都已经写入完成（成功或失败）。按序号增量同步时只返回水位以内的消息，
+ * 客户端推进到返回的位置后不会漏掉仍在写入中的更小序号。
+ * </p>
+ *
+ * <p>
+ * 分配器只在本进程内保证唯一性；(chatRoomId, seq) 上的唯一索引会拒绝多实例部署时产生的重复序号。
+ * </p>
+ */
+@Component
+public class ChatSequenceAllocator
+{
+    private final ChatMessageStore                        chatMessageStore;
+    private final Object[]                                stripes;
+    private final ConcurrentHashMap<String, RoomSequence> sequences = new ConcurrentHashMap<>();
+
+    public ChatSequenceAllocator(@NonNull final ChatMessageStore chatMessageStore,
+                                 @NonNull final ChatProperties chatProperties)
+    {
+        this.chatMessageStore = chatMessageStore;
+        this.stripes          = new Object[Math.max(1,
+                                                    chatProperties.getSequence()
+                                                                  .getStripes())];
+
+        for (int i = 0; i < this.stripes.length; i++)
+        {
+            this.stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * 为聊天室分配下一个序号，调用方必须在写入结束后调用 {@link #complete(String, long)}
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 新的序号
+     */
+    public long allocate(@NonNull final String chatRoomId)
+    {
+        return this.sequenceOf(chatRoomId)
+                   .allocate();
+    }
+
+    /**
+     * 标记序号对应的写入已经结束（无论成功与否），推进聊天室的提交水位
+     *
+     * @param chatRoomId 聊天室ID
+     * @param seq        {@link #allocate(String)} 分配的序号
+     */
+    public void complete(@NonNull final String chatRoomId, final long seq)
+    {
+        this.sequenceOf(chatRoomId)
+            .complete(seq);
+    }
+
+    /**
+     * 聊天室的提交水位：小于等于该值的序号都已经写入结束
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 提交水位，聊天室没有任何带序号的消息时为 0
+     */
+    public long committed(@NonNull final String chatRoomId)
+    {
+        return this.sequenceOf(chatRoomId)
+                   .committed();
+    }
+
+    private RoomSequence sequenceOf(final String chatRoomId)
+    {
+        final var sequence = this.sequences.get(chatRoomId);
+
+        if (sequence != null)
+        {
+            return sequence;
+        }
+
+        // 恢复需要查询数据库，不能放在 ConcurrentHashMap.computeIfAbsent 中执行，否则会阻塞同一个桶中的其他聊天室
+        synchronized (this.stripes[Math.floorMod(chatRoomId.hashCode(), this.stripes.length)])
+        {
+            final var existing = this.sequences.get(chatRoomId);
+
+            if (existing != null)
+            {
+                return existing;
+            }
+
+            final var recovered = new RoomSequence(this.chatMessageStore.findMaxSeq(chatRoomId));
+            this.sequences.put(chatRoomId, recovered);
+
+            return recovered;
+        }
+    }
+
+    /**
+     * 单个聊天室的计数器和提交水位
+     */
+    static final class RoomSequence
+    {
+        /* 最后分配的序号 */
+        private long allocated;
+
+        /* 提交水位 */
+        private long committed;
+
+        /* 已经结束、但前面还有未结束序号的写入 */
+        private final TreeSet<Long> completedAhead = new TreeSet<>();
+
+        RoomSequence(final long recovered)
+        {
+            this.allocated = recovered;
+            this.committed = recovered;
+        }
+
+        synchronized long allocate()
+        {
+            return ++this.allocated;
+        }
+
+        synchronized void complete(final long seq)
+        {
+            if (seq <= this.committed || seq > this.allocated)
+            {
+                return;
+            }
+
+            this.completedAhead.add(seq);
+
+            // 水位只能连续推进
+            while (!this.completedAhead.isEmpty() && this.completedAhead.first() == this.committed + 1)
+            {
+                this.committed = this.completedAhead.pollFirst();
+            }
+        }
+
+        synchronized long committed()
+        {
+            return this.committed;
+        }
+    }
+}
@@ -2,17 +2,33 @@ package org.ovo307000.chat.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
 import org.ovo307000.chat.module.entity.ChatMessage;
-import org.ovo307000.chat.repository.ChatMessageRepository;
+import org.ovo307000.chat.persistence.ChatMessageWriteBehindBuffer;
+import org.ovo307000.chat.search.MessageSearchIndex;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 /**
  * ChatMessageService 提供异步服务来处理聊天消息的保存和检索。
- * 它依赖于 ChatRoomService 来获取聊天室 ID，并与 ChatMessageRepository 交互来存取数据库中的消息。
+ * 它依赖于 ChatRoomService 来获取聊天室 ID，并与 ChatMessageStore 交互来存取数据库中的消息。
  */
 @Slf4j
 @Service
@@ -20,12 +36,33 @@ import java.util.concurrent.CompletableFuture;
 public class ChatMessageService
 {
     // 依赖的服务和存储库，用于处理聊天室和消息
-    private final ChatRoomService       chatRoomService;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatRoomService              chatRoomService;
+    private final ChatMessageStore             chatMessageStore;
+    private final ChatMessageWriteBehindBuffer chatMessageWriteBehindBuffer;
+    private final ChatProperties               chatProperties;
+    private final ChatMetrics                  chatMetrics;
+    // 各聊天室最近消息的内存缓存，首页历史记录优先由它提供
+    private final RecentMessageCache           recentMessageCache;
+    // 聊天室内消息序号的分配器
+    private final ChatSequenceAllocator        chatSequenceAllocator;
+    // 读取位置的合并写入器，发送消息意味着已经读到了这里
+    private final ReadCursorWriter             readCursorWriter;
+    // 消息内容的全文索引，保存成功的消息立即可以被检索到
+    private final MessageSearchIndex           messageSearchIndex;
+    // 运行阻塞的 MongoDB I/O 的执行器，见 AsyncConfig
+    @Qualifier("taskExecutor")
+    private final Executor                     taskExecutor;
 
     /**
      * 异步保存聊天消息。
      *
+     * <p>
+     * 在 write-behind 持久化模式下，消息进入 {@link ChatMessageWriteBehindBuffer} 批量写入，
+     * 返回的 Future 在消息实际写入数据库后完成；否则逐条保存。
+     * 写入成功的消息会追加到 {@link RecentMessageCache}，并加入 {@link MessageSearchIndex}。
+     * 消息的聊天室序号（seq）在调用返回前同步分配，调用方可以立即将其随通知下发。
+     * </p>
+     *
      * @param chatMessage 待保存的聊天消息对象，不能为空。
      * @return CompletableFuture<ChatMessage> 保存操作的异步结果。
      * @throws IllegalArgumentException 如果找不到对应的聊天室。
@@ -41,8 +78,55 @@ public class ChatMessageService
         // 设置消息的聊天室 ID
         chatMessage.setChatRoomId(chatRoomId);
 
-        // 异步保存消息并返回未来的结果
-        return CompletableFuture.supplyAsync(() -> this.chatMessageRepository.save(chatMessage));
+        // 键集分页依赖时间戳，客户端未提供时使用服务端时间。
+        // MongoDB 只保存到毫秒，截断后缓存中的消息和游标与数据库读出的完全一致，同一毫秒内的消息按 ID 排序
+        final var timestamp = chatMessage.getTimestamp() == null ? LocalDateTime.now() : chatMessage.getTimestamp();
+        chatMessage.setTimestamp(timestamp.truncatedTo(ChronoUnit.MILLIS));
+
+        // 序号由服务端分配，忽略客户端提交的值
+        final var seq = this.chatSequenceAllocator.allocate(chatRoomId);
+        chatMessage.setSeq(seq);
+
+        // 发送者自己的消息不算未读，同时说明发送者已经读到了这里
+        this.readCursorWriter.advance(chatMessage.getSenderId(), chatRoomId, seq);
+
+        final var mode = this.chatProperties.getPersistence()
+                                            .getMode();
+
+        final CompletableFuture<ChatMessage> saved;
+
+        try
+        {
+            if (mode == ChatProperties.Persistence.Mode.WRITE_BEHIND)
+            {
+                // 进入写后队列，由后台线程批量写入
+                saved = this.chatMetrics.timePersistence(mode.name(),
+                                                         () -> this.chatMessageWriteBehindBuffer.enqueue(chatMessage));
+            }
+            else
+            {
+                // 异步保存消息并返回未来的结果
+                saved = this.chatMetrics.timePersistence(mode.name(),
+                                                         () -> CompletableFuture.supplyAsync(() -> this.chatMessageStore.save(
+                                                                 chatMessage), this.taskExecutor));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // 未能提交写入，也要结束该序号，否则提交水位会停在这里
+            this.chatSequenceAllocator.complete(chatRoomId, seq);
+
+            throw e;
+        }
+
+        // 写入结束（无论成功与否）后推进提交水位；写入成功后消息才带有 ID，此时再追加到最近消息缓存和全文索引
+        return saved.whenComplete((message, error) -> this.chatSequenceAllocator.complete(chatRoomId, seq))
+                    .thenApply(message ->
+                               {
+                                   this.afterSaved(message);
+
+                                   return message;
+                               });
     }
 
     /**
@@ -61,6 +145,228 @@ public class ChatMessageService
                                                    .orElseThrow(() -> new IllegalArgumentException("Chat room not found"));
 
         // 异步检索聊天室的所有消息并返回未来的结果
-        return CompletableFuture.supplyAsync(() -> this.chatMessageRepository.findByChatRoomId(chatRoomId));
+        return CompletableFuture.supplyAsync(() -> this.chatMessageStore.findByChatRoomId(chatRoomId),
+                                             this.taskExecutor);
+    }
+
+    /**
+     * 异步分页获取两个用户之间的聊天消息。
+     *
+     * <p>
+     * 使用 (timestamp, id) 键集分页：before 与 after 最多只能指定一个；都不指定时返回最新的一页。
+     * 为了让调用方判断是否还有更多数据，返回结果最多包含 pageSize + 1 条消息，且总是按时间正序排列，
+     * 多出的那一条位于翻页方向的末端（向前翻页时在头部，向后翻页时在尾部）。
+     * 首页（不指定游标）优先由 {@link RecentMessageCache} 提供，命中时不访问数据库，返回的 Future 已经完成。
+     * </p>
+     *
+     * @param senderId   发送者的唯一标识，不能为空。
+     * @param receiverId 接收者的唯一标识，不能为空。
+     * @param before     获取该游标之前（更旧）的消息，可以为空。
+     * @param after      获取该游标之后（更新）的消息，可以为空。
+     * @param pageSize   页大小，应先经过 {@link #resolvePageSize(Integer)} 处理。
+     * @return CompletableFuture<List < ChatMessage>> 按时间正序排列的消息列表的异步结果。
+     * @throws IllegalArgumentException 如果找不到对应的聊天室，或同时指定了 before 和 after。
+     */
+    public CompletableFuture<List<ChatMessage>> fetchChatMessagePageAsync(@NonNull final String senderId,
+                                                                          @NonNull final String receiverId,
+                                                                          @Nullable final ChatMessageCursor before,
+                                                                          @Nullable final ChatMessageCursor after,
+                                                                          final int pageSize)
+    {
+        if (before != null && after != null)
+        {
+            throw new IllegalArgumentException("Only one of 'before' and 'after' cursors may be specified");
+        }
+
+        // 获取发送者和接收者之间的聊天室 ID，如果不存在则抛出异常
+        final var chatRoomId = this.chatRoomService.getChatRoomId(senderId, receiverId, false)
+                                                   .orElseThrow(() -> new IllegalArgumentException("Chat room not found"));
+
+        // 多取一条用于判断是否还有更多数据
+        final var fetchSize = pageSize + 1;
+
+        if (after != null)
+        {
+            return CompletableFuture.supplyAsync(() -> this.chatMessageStore.findPageAfter(chatRoomId,
+                                                                                            after,
+                                                                                            fetchSize),
+                                                 this.taskExecutor);
+        }
+
+        final var firstPage = before == null && this.recentMessageCache.covers(fetchSize);
+
+        if (firstPage)
+        {
+            final var cached = this.recentMessageCache.latest(chatRoomId, fetchSize);
+
+            if (cached != null)
+            {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        return CompletableFuture.supplyAsync(() ->
+                                             {
+                                                 final var newest = this.chatMessageStore.findPageBefore(chatRoomId,
+                                                                                                         before,
+                                                                                                         fetchSize);
+
+                                                 // 首页未命中时用查询结果填充缓存，之后的首页读取不再访问数据库
+                                                 if (firstPage)
+                                                 {
+                                                     this.recentMessageCache.populate(chatRoomId, newest, fetchSize);
+                                                 }
+
+                                                 // 倒序查询后反转为正序
+                                                 final var page = new ArrayList<>(newest);
+                                                 Collections.reverse(page);
+
+                                                 return page;
+                                             }, this.taskExecutor);
+    }
+
+    /**
+     * 异步获取两个用户之间序号大于 afterSeq 的消息，用于客户端断线重连后的增量同步。
+     *
+     * <p>
+     * 只返回提交水位以内的消息（见 {@link ChatSequenceAllocator}），因此客户端推进到结果中的最大序号后，
+     * 不会漏掉仍在写入中的更小序号。返回结果最多包含 limit + 1 条消息，多出的一条用于判断是否还有更多数据。
+     * </p>
+     *
+     * @param senderId   发送者的唯一标识，不能为空。
+     * @param receiverId 接收者的唯一标识，不能为空。
+     * @param afterSeq   客户端已经收到的最大序号，不包含在结果中。
+     * @param limit      单次返回的消息数，应先经过 {@link #resolveDeltaSize(Integer)} 处理。
+     * @return CompletableFuture<ChatMessageDelta> 按序号正序排列的消息及本次同步到的位置。
+     * @throws IllegalArgumentException 如果找不到对应的聊天室。
+     */
+    public CompletableFuture<ChatMessageDelta> fetchChatMessagesSinceAsync(@NonNull final String senderId,
+                                                                           @NonNull final String receiverId,
+                                                                           final long afterSeq,
+                                                                           final int limit)
+    {
+        // 获取发送者和接收者之间的聊天室 ID，如果不存在则抛出异常
+        final var chatRoomId = this.chatRoomService.getChatRoomId(senderId, receiverId, false)
+                                                   .orElseThrow(() -> new IllegalArgumentException("Chat room not found"));
+
+        return CompletableFuture.supplyAsync(() ->
+                                             {
+                                                 final var committed = this.chatSequenceAllocator.committed(chatRoomId);
+
+                                                 if (committed <= afterSeq)
+                                                 {
+                                                     return new ChatMessageDelta(List.of(), afterSeq, false);
+                                                 }
+
+                                                 // 多取一条用于判断是否还有更多数据
+                                                 final var messages = this.chatMessageStore.findSinceSeq(chatRoomId,
+                                                                                                         afterSeq,
+                                                                                                         committed,
+                                                                                                         limit + 1);
+
+                                                 if (messages.size() > limit)
+                                                 {
+                                                     final var page = messages.subList(0, limit);
+
+                                                     return new ChatMessageDelta(page,
+                                                                                 page.get(limit - 1)
+                                                                                     .getSeq(),
+                                                                                 true);
+                                                 }
+
+                                                 // 水位以内的消息已经全部返回，失败写入留下的空洞也一并跳过
+                                                 return new ChatMessageDelta(messages, committed, false);
+                                             }, this.taskExecutor);
+    }
+
+    /**
+     * 以游标方式按时间正序读取两个用户之间的全部聊天消息，用于导出和客户端重新同步。
+     *
+     * <p>
+     * 消息在调用方消费时才从数据库逐批拉取，内存中最多驻留一批文档，与会话的消息总数无关。
+     * 返回的 Stream 持有数据库游标，调用方必须在使用完毕后关闭（例如 try-with-resources）。
+     * </p>
+     *
+     * @param senderId   发送者的唯一标识，不能为空。
+     * @param receiverId 接收者的唯一标识，不能为空。
+     * @return Stream<ChatMessage> 按时间正序排列的消息流。
+     * @throws IllegalArgumentException 如果找不到对应的聊天室。
+     */
+    public Stream<ChatMessage> streamChatMessages(@NonNull final String senderId, @NonNull final String receiverId)
+    {
+        // 获取发送者和接收者之间的聊天室 ID，如果不存在则抛出异常
+        final var chatRoomId = this.chatRoomService.getChatRoomId(senderId, receiverId, false)
+                                                   .orElseThrow(() -> new IllegalArgumentException("Chat room not found"));
+
+        return this.chatMessageStore.streamByChatRoomId(chatRoomId,
+                                                        this.chatProperties.getHistory()
+                                                                           .getExportBatchSize());
+    }
+
+    /**
+     * 将客户端请求的页大小规范到 [1, maxPageSize] 区间内，未指定时使用默认页大小。
+     *
+     * @param requested 客户端请求的页大小，可以为空。
+     * @return 实际使用的页大小。
+     */
+    public int resolvePageSize(@Nullable final Integer requested)
+    {
+        return this.chatProperties.getHistory()
+                                  .resolvePageSize(requested);
+    }
+
+    /**
+     * 将客户端请求的增量同步条数规范到 [1, maxDeltaSize] 区间内，未指定时使用 maxDeltaSize。
+     *
+     * @param requested 客户端请求的条数，可以为空。
+     * @return 实际使用的条数。
+     */
+    public int resolveDeltaSize(@Nullable final Integer requested)
+    {
+        final var max = this.chatProperties.getSequence()
+                                           .getMaxDeltaSize();
+
+        return requested == null || requested <= 0 ? max : Math.min(requested, max);
+    }
+
+    /**
+     * 将已经写入数据库的消息追加到最近消息缓存和全文索引。
+     * 两者都只是加速读取的副本，失败时分别记录日志，不影响保存的结果：
+     * 缓存失败时使该聊天室的缓存失效，之后从数据库重新加载；索引失败时该消息暂时无法被检索到。
+     *
+     * @param chatMessage 已经保存的消息
+     */
+    private void afterSaved(final ChatMessage chatMessage)
+    {
+        try
+        {
+            this.recentMessageCache.append(chatMessage);
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Failed to cache saved chat message {}", chatMessage.getId(), e);
+
+            this.recentMessageCache.invalidate(chatMessage.getChatRoomId());
+        }
+
+        try
+        {
+            this.messageSearchIndex.index(chatMessage);
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Failed to index saved chat message {}", chatMessage.getId(), e);
+        }
+    }
+
+    /**
+     * 按序号增量同步的结果
+     *
+     * @param messages 按序号正序排列的消息
+     * @param lastSeq  本次同步到的位置，作为下一次请求的 afterSeq
+     * @param hasMore  是否还有更多消息
+     */
+    public record ChatMessageDelta(List<ChatMessage> messages, long lastSeq, boolean hasMore)
+    {
     }
 }
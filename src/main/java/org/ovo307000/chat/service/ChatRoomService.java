@@ -3,13 +3,14 @@ package org.ovo307000.chat.service;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.metrics.ChatMetrics;
 import org.ovo307000.chat.module.entity.ChatRoom;
-import org.ovo307000.chat.repository.ChatRoomRepository;
+import org.ovo307000.chat.storage.ChatRoomStore;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * 聊天室服务类，用于处理聊天室相关的业务逻辑
@@ -19,12 +20,45 @@ import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class ChatRoomService
 {
-    private final ChatRoomRepository chatRoomRepository;
+    private final ChatRoomStore    chatRoomStore;
+    private final ChatRoomIdCache  chatRoomIdCache;
+    private final ChatMetrics      chatMetrics;
+    private final GroupRoomService groupRoomService;
+
+    /**
+     * 计算两个用户之间的规范化聊天室ID
+     *
+     * <p>
+     * 每一对用户只对应一个聊天室，聊天室ID由两个用户ID按字典序排列后拼接而成，
+     * 与谁先发送消息无关，因此无需查询数据库即可得到
+     * </p>
+     *
+     * @param userId      其中一个用户的ID
+     * @param otherUserId 另一个用户的ID
+     * @return 规范化的聊天室ID
+     */
+    public static String chatRoomIdOf(@NonNull final String userId, @NonNull final String otherUserId)
+    {
+        return userId.compareTo(otherUserId) <= 0
+               ? String.format("%s ❤ %s", userId, otherUserId)
+               : String.format("%s ❤ %s", otherUserId, userId);
+    }
 
     /**
      * 根据发送者和接收者的ID获取聊天室ID
      * 如果聊天室不存在且参数指示需要创建，则创建新聊天室
      *
+     * <p>
+     * 聊天室ID可以直接由两个用户ID计算得到，这里只需确认聊天室是否存在。
+     * 确认结果（包括“聊天室不存在”的否定结果）会缓存在 {@link ChatRoomIdCache} 中，
+     * 稳定状态下发送消息和读取历史记录都不需要访问数据库
+     * </p>
+     *
+     * <p>
+     * 接收者是群聊 ID 时（见 {@link GroupRoomService#isGroupId(String)}），聊天室ID就是群聊ID，
+     * 只有群聊成员才能得到它；群聊不会在这里创建
+     * </p>
+     *
      * @param senderId                发送者的ID，用于查找或创建聊天室
      * @param receiverId              接收者的ID，用于查找或创建聊天室
      * @param createNewRoomIfNotExist 如果为true且聊天室不存在时，尝试创建新聊天室
@@ -35,49 +69,79 @@ public class ChatRoomService
                                           @NonNull final String receiverId,
                                           final boolean createNewRoomIfNotExist)
     {
-        // 尝试根据发送者和接收者ID查找现有的聊天室
-        return this.chatRoomRepository.findBySenderIdAndReceiverId(senderId, receiverId)
-                                      .map(ChatRoom::getId) // 如果找到聊天室，返回其ID
-                                      .or(() ->
-                                          {
-                                              // 如果没有找到聊天室并且参数指示需要创建新聊天室
-                                              if (createNewRoomIfNotExist)
-                                              {
-                                                  // 创建并保存新聊天室，然后返回其ID
-                                                  return Optional.of(this.createAndSaveChatRoom(senderId, receiverId));
-                                              }
-
-                                              // 如果不需要创建新的聊天室或者创建失败，则返回空的Optional
-                                              return Optional.empty();
-                                          });
+        final var sample = this.chatMetrics.start();
+
+        if (GroupRoomService.isGroupId(receiverId))
+        {
+            final var member = this.groupRoomService.isMember(receiverId, senderId);
+            this.chatMetrics.stopRoomResolution(sample, member ? "group" : "absent");
+
+            return member ? Optional.of(receiverId) : Optional.empty();
+        }
+
+        final var canonicalId = chatRoomIdOf(senderId, receiverId);
+
+        // 先查缓存，未命中时确认数据库中是否存在该聊天室
+        final var chatRoomId = this.chatRoomIdCache.get(canonicalId,
+                                                        () -> this.chatRoomStore.existsById(canonicalId)
+                                                              ? Optional.of(canonicalId)
+                                                              : Optional.empty());
+
+        // 如果找到聊天室，或者不需要创建新聊天室，直接返回
+        if (chatRoomId.isPresent() || !createNewRoomIfNotExist)
+        {
+            this.chatMetrics.stopRoomResolution(sample, chatRoomId.isPresent() ? "existing" : "absent");
+
+            return chatRoomId;
+        }
+
+        // 创建并保存新聊天室，然后返回其ID
+        final var createdId = this.createAndSaveChatRoom(senderId, receiverId);
+        this.chatMetrics.stopRoomResolution(sample, "created");
+
+        return Optional.of(createdId);
     }
 
+    /**
+     * 创建并保存两个用户之间的聊天室
+     *
+     * <p>
+     * 聊天室ID是确定的，重复保存只会覆盖同一个文档，因此该操作是幂等的。
+     * 保存同步完成后才返回，保证随后写入的消息引用的聊天室一定存在
+     * </p>
+     *
+     * @param senderId   发送者的ID
+     * @param receiverId 接收者的ID
+     * @return 聊天室ID
+     */
     @Transactional
     public String createAndSaveChatRoom(@NonNull final String senderId, @NonNull final String receiverId)
     {
-        final var chatId = String.format("%s ❤ %s", senderId, receiverId);
-
-        final var senderReceiverChatRoom = ChatRoom.builder()
-                                                   .senderId(senderId)
-                                                   .receiverId(receiverId)
-                                                   .chatId(chatId)
-                                                   .build();
-
-        final var receiverSenderChatRoom = ChatRoom.builder()
-                                                   .senderId(receiverId)
-                                                   .receiverId(senderId)
-                                                   .chatId(chatId)
-                                                   .build();
-
-        CompletableFuture.runAsync(() -> this.chatRoomRepository.save(senderReceiverChatRoom))
-                         .thenRunAsync(() -> this.chatRoomRepository.save(receiverSenderChatRoom))
-                         .thenRun(() -> log.info("Chat room created and saved: {}", chatId))
-                         .exceptionally(throwable ->
-                                        {
-                                            log.error("Error occurred while creating chat room: {}", chatId, throwable);
-
-                                            return null;
-                                        });
+        final var chatId = chatRoomIdOf(senderId, receiverId);
+
+        // 参与者按字典序存放，与聊天室ID中的顺序一致
+        final var firstIsSender = senderId.compareTo(receiverId) <= 0;
+        final var chatRoom = ChatRoom.builder()
+                                     .id(chatId)
+                                     .chatId(chatId)
+                                     .senderId(firstIsSender ? senderId : receiverId)
+                                     .receiverId(firstIsSender ? receiverId : senderId)
+                                     .build();
+
+        try
+        {
+            this.chatRoomStore.save(chatRoom);
+            log.info("Chat room created and saved: {}", chatId);
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Error occurred while creating chat room: {}", chatId, e);
+
+            throw e;
+        }
+
+        // 记录到缓存中，覆盖之前缓存的否定结果
+        this.chatRoomIdCache.put(chatId);
 
         return chatId;
     }
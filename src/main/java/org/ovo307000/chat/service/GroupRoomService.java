@@ -0,0 +1,158 @@
+package org.ovo307000.chat.service;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.group.GroupMembershipIndex;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.ovo307000.chat.storage.GroupRoomStore;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 群聊服务类，用于处理群聊的创建、成员变更和消息扇出的目标成员
+ *
+ * <p>
+ * 群聊 ID 带有 {@link #GROUP_ID_PREFIX} 前缀，客户端以群聊 ID 作为消息的接收者，
+ * 群聊消息只持久化一次（聊天室 ID 即群聊 ID），再扇出到所有在线成员的个人队列，见 {@link GroupMembershipIndex}。
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GroupRoomService
+{
+    /* 群聊 ID 的前缀，用于区分群聊和用户 */
+    public static final String GROUP_ID_PREFIX = "group:";
+
+    private final GroupRoomStore       groupRoomStore;
+    private final GroupMembershipIndex groupMembershipIndex;
+
+    /**
+     * 判断接收者 ID 是否为群聊 ID
+     *
+     * @param id 接收者 ID
+     * @return 是群聊 ID 时返回 true
+     */
+    public static boolean isGroupId(@NonNull final String id)
+    {
+        return id.startsWith(GROUP_ID_PREFIX);
+    }
+
+    /**
+     * 创建群聊，创建者总是成员
+     *
+     * @param ownerId   创建者的用户ID
+     * @param name      群聊名称
+     * @param memberIds 初始成员的用户ID
+     * @return 创建的群聊
+     */
+    public GroupRoom createGroup(@NonNull final String ownerId,
+                                 @NonNull final String name,
+                                 @NonNull final Collection<String> memberIds)
+    {
+        final var members = new LinkedHashSet<String>();
+        members.add(ownerId);
+        members.addAll(memberIds);
+
+        final var groupRoom = GroupRoom.builder()
+                                       .id(GROUP_ID_PREFIX + UUID.randomUUID())
+                                       .name(name)
+                                       .ownerId(ownerId)
+                                       .memberIds(members)
+                                       .build();
+
+        this.groupRoomStore.save(groupRoom);
+        log.info("Group room created and saved: {} with {} members", groupRoom.getId(), members.size());
+
+        members.forEach(memberId -> this.groupMembershipIndex.memberAdded(groupRoom.getId(), memberId));
+
+        return groupRoom;
+    }
+
+    /**
+     * 将用户加入群聊
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     * @throws IllegalArgumentException 如果群聊不存在
+     */
+    public void addMember(@NonNull final String groupId, @NonNull final String userId)
+    {
+        if (!this.groupRoomStore.addMember(groupId, userId))
+        {
+            throw new IllegalArgumentException("Group room not found");
+        }
+
+        this.groupMembershipIndex.memberAdded(groupId, userId);
+    }
+
+    /**
+     * 将用户移出群聊
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     * @throws IllegalArgumentException 如果群聊不存在
+     */
+    public void removeMember(@NonNull final String groupId, @NonNull final String userId)
+    {
+        if (!this.groupRoomStore.removeMember(groupId, userId))
+        {
+            throw new IllegalArgumentException("Group room not found");
+        }
+
+        this.groupMembershipIndex.memberRemoved(groupId, userId);
+    }
+
+    /**
+     * 查询用户加入的全部群聊
+     *
+     * @param userId 用户ID
+     * @return 群聊列表
+     */
+    public List<GroupRoom> findGroupsOf(@NonNull final String userId)
+    {
+        return this.groupRoomStore.findByMemberIds(userId);
+    }
+
+    /**
+     * 判断用户是否为群聊成员，在线用户直接从索引中判断，不访问数据库
+     *
+     * @param groupId 群聊ID
+     * @param userId  用户ID
+     * @return 是成员时返回 true
+     */
+    public boolean isMember(@NonNull final String groupId, @NonNull final String userId)
+    {
+        final var indexed = this.groupMembershipIndex.isMember(groupId, userId);
+
+        return indexed != null ? indexed : this.groupRoomStore.existsByIdAndMemberIds(groupId, userId);
+    }
+
+    /**
+     * 群聊消息扇出的目标成员：除发送者以外的所有在线成员
+     *
+     * @param groupId  群聊ID
+     * @param senderId 发送者的用户ID
+     * @return 成员的用户ID列表
+     */
+    public List<String> onlineRecipientsOf(@NonNull final String groupId, @NonNull final String senderId)
+    {
+        final var memberIds = new ArrayList<String>();
+
+        for (final var memberId : this.groupMembershipIndex.onlineMembers(groupId))
+        {
+            if (!memberId.equals(senderId))
+            {
+                memberIds.add(memberId);
+            }
+        }
+
+        return memberIds;
+    }
+}
@@ -0,0 +1,115 @@
+package org.ovo307000.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatRoom;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.ovo307000.chat.search.MessageSearchIndex;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * MessageSearchService 在用户参与的全部聊天室（包括群聊）中检索消息内容。
+ * 检索范围在服务端根据用户ID确定，用户只能检索到自己所在聊天室中的消息。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageSearchService
+{
+    // 消息内容的全文索引
+    private final MessageSearchIndex messageSearchIndex;
+    // 查询用户参与的单聊聊天室
+    private final ChatRoomStore      chatRoomStore;
+    // 查询用户加入的群聊
+    private final GroupRoomService   groupRoomService;
+    private final ChatProperties     chatProperties;
+    // 运行阻塞的 MongoDB I/O 的执行器，见 AsyncConfig
+    @Qualifier("taskExecutor")
+    private final Executor           taskExecutor;
+
+    /**
+     * 是否启用全文检索
+     */
+    public boolean isEnabled()
+    {
+        return this.messageSearchIndex.isEnabled();
+    }
+
+    /**
+     * 异步检索用户参与的全部聊天室中的消息。
+     *
+     * @param userId 用户ID。
+     * @param query  查询文本。
+     * @param page   页码，从 0 开始。
+     * @param size   页大小，调用方应先通过 {@link #resolvePageSize(Integer)} 规范。
+     * @return 按相关度从高到低排列的一页结果；翻到 max-results 之后时 hasMore 为 false。
+     * @throws IllegalArgumentException 如果页码为负数或超出 max-results 的范围。
+     * @throws IllegalStateException    如果未启用全文检索。
+     */
+    public CompletableFuture<MessageSearchIndex.SearchResult> searchAsync(@NonNull final String userId,
+                                                                         @NonNull final String query,
+                                                                         final int page,
+                                                                         final int size)
+    {
+        if (!this.isEnabled())
+        {
+            throw new IllegalStateException("Message search is disabled");
+        }
+
+        final var maxResults = this.chatProperties.getSearch()
+                                                  .getMaxResults();
+        final var offset     = (long) page * size;
+
+        if (page < 0 || offset >= maxResults)
+        {
+            throw new IllegalArgumentException("Page out of range: " + page);
+        }
+
+        // 最后一页截断到 max-results，之后不再提示有更多结果
+        final var limit = (int) Math.min(size, maxResults - offset);
+
+        return CompletableFuture.supplyAsync(() ->
+                                             {
+                                                 final var chatRoomIds = new HashSet<String>();
+
+                                                 this.chatRoomStore.findByParticipant(userId)
+                                                                   .stream()
+                                                                   .map(ChatRoom::getId)
+                                                                   .forEach(chatRoomIds::add);
+                                                 this.groupRoomService.findGroupsOf(userId)
+                                                                      .stream()
+                                                                      .map(GroupRoom::getId)
+                                                                      .forEach(chatRoomIds::add);
+
+                                                 final var result = this.messageSearchIndex.search(chatRoomIds,
+                                                                                                   query,
+                                                                                                   (int) offset,
+                                                                                                   limit);
+
+                                                 return offset + limit >= maxResults
+                                                        ? new MessageSearchIndex.SearchResult(result.hits(), false)
+                                                        : result;
+                                             }, this.taskExecutor);
+    }
+
+    /**
+     * 将客户端请求的页大小规范到 [1, maxPageSize] 区间内，未指定时使用默认页大小。
+     *
+     * @param requested 客户端请求的页大小，可以为空。
+     * @return 实际使用的页大小。
+     */
+    public int resolvePageSize(@Nullable final Integer requested)
+    {
+        return this.chatProperties.getSearch()
+                                  .resolvePageSize(requested);
+    }
+}
@@ -0,0 +1,191 @@
+package org.ovo307000.chat.service;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.group.GroupMembershipIndex;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ReactiveChatMessageStore;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ReactiveChatMessageService 是 {@link ChatMessageService} 读取路径的响应式版本。
+ *
+ * <p>
+ * 通过响应式 MongoDB 驱动读取聊天记录，等待数据库期间不占用任何线程，
+ * 请求线程在返回 Mono 后立即释放，结果就绪时再由驱动的事件线程完成响应。
+ * 聊天室 ID 与阻塞路径共用 {@link ChatRoomIdCache}，缓存未命中时通过响应式仓库确认聊天室是否存在。
+ * 群聊与阻塞路径一样只对成员可见，在线成员直接从 {@link GroupMembershipIndex} 中判断。
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class ReactiveChatMessageService
+{
+    private final ReactiveChatMessageStore reactiveChatMessageStore;
+    private final ChatRoomIdCache          chatRoomIdCache;
+    private final ChatProperties           chatProperties;
+    private final ChatMetrics              chatMetrics;
+    private final RecentMessageCache       recentMessageCache;
+    private final GroupMembershipIndex     groupMembershipIndex;
+
+    /**
+     * 查找两个用户之间的聊天室ID，不会创建新聊天室。
+     * 接收者是群聊 ID 时，语义与 {@link ChatRoomService#getChatRoomId} 相同：只有群聊成员才能得到群聊ID。
+     *
+     * @param senderId   发送者的唯一标识，不能为空。
+     * @param receiverId 接收者的唯一标识（用户ID或群聊ID），不能为空。
+     * @return Mono<String> 聊天室ID，聊天室不存在或发送者不是群聊成员时为空。
+     */
+    public Mono<String> findChatRoomId(@NonNull final String senderId, @NonNull final String receiverId)
+    {
+        return Mono.defer(() ->
+                          {
+                              final var sample = this.chatMetrics.start();
+
+                              if (GroupRoomService.isGroupId(receiverId))
+                              {
+                                  return this.findGroupId(sample, receiverId, senderId);
+                              }
+
+                              final var canonicalId = ChatRoomService.chatRoomIdOf(senderId, receiverId);
+                              final var cached      = this.chatRoomIdCache.getIfPresent(canonicalId);
+
+                              // 缓存命中时不访问数据库，否则确认聊天室是否存在并缓存结果（包括否定结果）
+                              final var exists = cached != null
+                                                 ? Mono.just(cached.isPresent())
+                                                 : this.reactiveChatMessageStore.existsChatRoom(canonicalId)
+                                                                                .doOnNext(found -> this.remember(
+                                                                                        canonicalId,
+                                                                                        found));
+
+                              return exists.doOnNext(found -> this.chatMetrics.stopRoomResolution(sample,
+                                                                                                  found
+                                                                                                  ? "existing"
+                                                                                                  : "absent"))
+                                           .filter(Boolean::booleanValue)
+                                           .map(found -> canonicalId);
+                          });
+    }
+
+    /**
+     * 分页获取两个用户之间的聊天消息，语义与 {@link ChatMessageService#fetchChatMessagePageAsync} 相同：
+     * 结果最多包含 pageSize + 1 条消息，总是按时间正序排列，多出的那一条位于翻页方向的末端。
+     * 首页与阻塞路径共用 {@link RecentMessageCache}。
+     *
+     * @param senderId   发送者的唯一标识，不能为空。
+     * @param receiverId 接收者的唯一标识，不能为空。
+     * @param before     获取该游标之前（更旧）的消息，可以为空。
+     * @param after      获取该游标之后（更新）的消息，可以为空。
+     * @param pageSize   页大小，应先经过 {@link #resolvePageSize(Integer)} 处理。
+     * @return Mono<List < ChatMessage>> 按时间正序排列的消息列表；聊天室不存在时以 IllegalArgumentException 结束。
+     */
+    public Mono<List<ChatMessage>> fetchChatMessagePage(@NonNull final String senderId,
+                                                        @NonNull final String receiverId,
+                                                        @Nullable final ChatMessageCursor before,
+                                                        @Nullable final ChatMessageCursor after,
+                                                        final int pageSize)
+    {
+        if (before != null && after != null)
+        {
+            return Mono.error(new IllegalArgumentException("Only one of 'before' and 'after' cursors may be specified"));
+        }
+
+        // 多取一条用于判断是否还有更多数据
+        final var fetchSize = pageSize + 1;
+
+        return this.findChatRoomId(senderId, receiverId)
+                   .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Chat room not found")))
+                   .flatMap(chatRoomId ->
+                            {
+                                if (after != null)
+                                {
+                                    return this.reactiveChatMessageStore.findPageAfter(chatRoomId,
+                                                                                       after,
+                                                                                       fetchSize)
+                                                                        .collectList();
+                                }
+
+                                final var firstPage = before == null && this.recentMessageCache.covers(fetchSize);
+                                final var cached    = firstPage
+                                                      ? this.recentMessageCache.latest(chatRoomId, fetchSize)
+                                                      : null;
+
+                                if (cached != null)
+                                {
+                                    return Mono.just(cached);
+                                }
+
+                                return this.reactiveChatMessageStore.findPageBefore(chatRoomId,
+                                                                                    before,
+                                                                                    fetchSize)
+                                                                    .collectList()
+                                                                    .doOnNext(newest ->
+                                                                              {
+                                                                                  // 首页未命中时用查询结果填充缓存
+                                                                                  if (firstPage)
+                                                                                  {
+                                                                                      this.recentMessageCache.populate(
+                                                                                              chatRoomId,
+                                                                                              newest,
+                                                                                              fetchSize);
+                                                                                  }
+
+                                                                                  // 倒序查询后反转为正序
+                                                                                  Collections.reverse(newest);
+                                                                              });
+                            });
+    }
+
+    /**
+     * 将客户端请求的页大小规范到 [1, maxPageSize] 区间内，未指定时使用默认页大小。
+     *
+     * @param requested 客户端请求的页大小，可以为空。
+     * @return 实际使用的页大小。
+     */
+    public int resolvePageSize(@Nullable final Integer requested)
+    {
+        return this.chatProperties.getHistory()
+                                  .resolvePageSize(requested);
+    }
+
+    /**
+     * 确认用户是否为群聊成员，在线用户直接从索引中判断，否则通过响应式仓库确认
+     */
+    private Mono<String> findGroupId(final Timer.Sample sample, final String groupId, final String memberId)
+    {
+        final var indexed = this.groupMembershipIndex.isMember(groupId, memberId);
+        final var member  = indexed != null
+                            ? Mono.just(indexed)
+                            : this.reactiveChatMessageStore.isGroupMember(groupId, memberId);
+
+        return member.doOnNext(found -> this.chatMetrics.stopRoomResolution(sample, found ? "group" : "absent"))
+                     .filter(Boolean::booleanValue)
+                     .map(found -> groupId);
+    }
+
+    /**
+     * 缓存聊天室是否存在的确认结果
+     */
+    private void remember(final String chatRoomId, final boolean exists)
+    {
+        if (exists)
+        {
+            this.chatRoomIdCache.put(chatRoomId);
+        }
+        else
+        {
+            this.chatRoomIdCache.putAbsent(chatRoomId);
+        }
+    }
+}
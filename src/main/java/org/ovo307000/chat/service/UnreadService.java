@@ -0,0 +1,203 @@
+package org.ovo307000.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageDTO;
+import org.ovo307000.chat.module.dto.UnreadBundleDTO;
+import org.ovo307000.chat.module.dto.UnreadRoomDTO;
+import org.ovo307000.chat.module.entity.ReadCursor;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.ovo307000.chat.storage.GroupRoomStore;
+import org.ovo307000.chat.storage.ReadCursorStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * 未读消息服务
+ *
+ * <p>
+ * 每个用户在每个聊天室中的读取位置是一个消息序号（见 {@link ChatSequenceAllocator}），
+ * 客户端上报的读取位置和用户自己发送的消息都会推进它，由 {@link ReadCursorWriter} 合并后批量写入。
+ * 用户上线时，按读取位置和各聊天室的提交水位找出有未读消息的聊天室，一次性返回所有聊天室的未读摘要，
+ * 客户端不需要再逐个会话拉取历史记录。
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class UnreadService
+{
+    private final ChatRoomService       chatRoomService;
+    private final ChatRoomStore         chatRoomStore;
+    private final GroupRoomStore        groupRoomStore;
+    private final ChatMessageStore      chatMessageStore;
+    private final ReadCursorStore       readCursorStore;
+    private final ReadCursorWriter      readCursorWriter;
+    private final ChatSequenceAllocator chatSequenceAllocator;
+    private final ChatProperties        chatProperties;
+    // 运行阻塞的 MongoDB I/O 的执行器，见 AsyncConfig
+    @Qualifier("taskExecutor")
+    private final Executor              taskExecutor;
+
+    /**
+     * 推进用户在与 peerId 的聊天室中的读取位置，稍后批量写入数据库。
+     * 读取位置只会前进，超过聊天室提交水位的值按提交水位处理，否则之后的消息都会被当作已读。
+     *
+     * @param userId 读取消息的用户ID，不能为空。
+     * @param peerId 聊天对象的用户ID，不能为空。
+     * @param seq    已读的最大消息序号。
+     * @throws IllegalArgumentException 如果找不到对应的聊天室，或 seq 为负数。
+     */
+    public void markRead(@NonNull final String userId, @NonNull final String peerId, final long seq)
+    {
+        if (seq < 0)
+        {
+            throw new IllegalArgumentException("Read cursor must not be negative");
+        }
+
+        final var chatRoomId = this.chatRoomService.getChatRoomId(userId, peerId, false)
+                                                   .orElseThrow(() -> new IllegalArgumentException("Chat room not found"));
+
+        this.readCursorWriter.advance(userId,
+                                      chatRoomId,
+                                      Math.min(seq, this.chatSequenceAllocator.committed(chatRoomId)));
+    }
+
+    /**
+     * 异步获取用户所有聊天室的未读摘要
+     *
+     * <p>
+     * 先用两次查询取得用户参与的聊天室和读取位置，读取位置已经达到提交水位的聊天室不再访问数据库；
+     * 其余聊天室各自查询一次读取位置之后的消息，这些查询并行执行，全部完成后汇总为一个结果。
+     * </p>
+     *
+     * @param userId 用户ID，不能为空。
+     * @return CompletableFuture<UnreadBundleDTO> 只包含有未读消息的聊天室的未读摘要。
+     */
+    public CompletableFuture<UnreadBundleDTO> fetchUnreadAsync(@NonNull final String userId)
+    {
+        final var limit = Math.max(1,
+                                   this.chatProperties.getUnread()
+                                                      .getMaxMessagesPerRoom());
+
+        return CompletableFuture.supplyAsync(() -> this.roomCursorsOf(userId), this.taskExecutor)
+                                .thenCompose(roomCursors ->
+                                             {
+                                                 // 不在任务中等待其他任务，避免有界线程池被互相等待的任务占满
+                                                 final var summaries = roomCursors.stream()
+                                                                                  .map(roomCursor -> CompletableFuture.supplyAsync(
+                                                                                          () -> this.summarize(userId,
+                                                                                                               roomCursor,
+                                                                                                               limit),
+                                                                                          this.taskExecutor))
+                                                                                  .toList();
+
+                                                 return CompletableFuture.allOf(summaries.toArray(CompletableFuture[]::new))
+                                                                         .thenApply(done -> new UnreadBundleDTO(userId,
+                                                                                                                summaries.stream()
+                                                                                                                         .map(CompletableFuture::join)
+                                                                                                                         .filter(Objects::nonNull)
+                                                                                                                         .toList()));
+                                             });
+    }
+
+    /**
+     * 用户参与的全部聊天室（包括群聊）及其读取位置，尚未写入数据库的读取位置优先
+     */
+    private List<RoomCursor> roomCursorsOf(final String userId)
+    {
+        final var lastRead = this.readCursorStore.findByUserId(userId)
+                                                 .stream()
+                                                 .collect(Collectors.toMap(ReadCursor::getChatRoomId,
+                                                                           ReadCursor::getLastReadSeq,
+                                                                           Math::max));
+        this.readCursorWriter.pendingFor(userId)
+                             .forEach((chatRoomId, seq) -> lastRead.merge(chatRoomId, seq, Math::max));
+
+        final var chatRooms = this.chatRoomStore.findByParticipant(userId)
+                                                .stream()
+                                                .map(chatRoom -> new RoomCursor(chatRoom.getId(),
+                                                                                userId.equals(chatRoom.getSenderId())
+                                                                                ? chatRoom.getReceiverId()
+                                                                                : chatRoom.getSenderId(),
+                                                                                lastRead.getOrDefault(chatRoom.getId(),
+                                                                                                      0L)));
+
+        // 群聊的聊天对象就是群聊本身，客户端以群聊ID上报读取位置
+        final var groupRooms = this.groupRoomStore.findByMemberIds(userId)
+                                                  .stream()
+                                                  .map(groupRoom -> new RoomCursor(groupRoom.getId(),
+                                                                                   groupRoom.getId(),
+                                                                                   lastRead.getOrDefault(groupRoom.getId(),
+                                                                                                         0L)));
+
+        return Stream.concat(chatRooms, groupRooms)
+                     .toList();
+    }
+
+    /**
+     * 单个聊天室的未读摘要
+     *
+     * @return 没有未读消息时返回 null
+     */
+    @Nullable
+    private UnreadRoomDTO summarize(final String userId, final RoomCursor roomCursor, final int limit)
+    {
+        final var committed = this.chatSequenceAllocator.committed(roomCursor.chatRoomId());
+
+        if (committed <= roomCursor.lastReadSeq())
+        {
+            return null;
+        }
+
+        // 多取一条用于判断是否还有更多数据
+        final var messages = this.chatMessageStore.findSinceSeq(roomCursor.chatRoomId(),
+                                                                roomCursor.lastReadSeq(),
+                                                                committed,
+                                                                limit + 1);
+        final var hasMore  = messages.size() > limit;
+        final var page     = hasMore ? messages.subList(0, limit) : messages;
+
+        // 用户自己从其他设备发送的消息不算未读
+        final var unread = page.stream()
+                               .filter(chatMessage -> !userId.equals(chatMessage.getSenderId()))
+                               .toList();
+
+        if (unread.isEmpty() && !hasMore)
+        {
+            return null;
+        }
+
+        return new UnreadRoomDTO(roomCursor.chatRoomId(),
+                                 roomCursor.peerId(),
+                                 roomCursor.lastReadSeq(),
+                                 ChatMessageDTO.fromChatMessages(unread),
+                                 hasMore
+                                 ? page.get(page.size() - 1)
+                                       .getSeq()
+                                 : committed,
+                                 hasMore);
+    }
+
+    /**
+     * 用户在一个聊天室中的读取位置
+     *
+     * @param chatRoomId  聊天室ID
+     * @param peerId      聊天对象的用户ID
+     * @param lastReadSeq 已读的最大消息序号
+     */
+    private record RoomCursor(String chatRoomId, String peerId, long lastReadSeq)
+    {
+    }
+}
@@ -2,23 +2,35 @@ package org.ovo307000.chat.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.group.GroupMembershipIndex;
 import org.ovo307000.chat.module.entity.User;
 import org.ovo307000.chat.module.enumeration.UserStatus;
-import org.ovo307000.chat.repository.UserRepository;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.ovo307000.chat.presence.PresenceStatusWriter;
+import org.ovo307000.chat.storage.UserStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * 用户服务类
  *
  * <p>
- * 该服务类提供了对用户相关的操作，包括保存用户，更新用户状态，检查用户是否存在以及查找在线用户
- * 使用了Lombok的@Slf4j和@RequiredArgsConstructor注解，分别用于日志记录和自动注入 UserRepository
+ * 该服务类提供了对用户相关的操作，包括保存用户，更新用户状态以及查找在线用户
+ * 使用了Lombok的@Slf4j和@RequiredArgsConstructor注解，分别用于日志记录和自动注入 UserStore
+ * 所有阻塞的数据库操作都在注入的 taskExecutor 上执行，见 AsyncConfig
+ * </p>
+ *
+ * <p>
+ * 在线状态以内存中的 {@link PresenceRegistry} 为准，由 STOMP 会话事件驱动，支持同一用户的多个会话。
+ * 上线、下线和在线用户查询都不访问数据库，数据库中的 status 字段由 {@link PresenceStatusWriter} 异步合并写入。
  * </p>
  */
 @Slf4j
@@ -26,146 +38,168 @@ import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class UserService
 {
-    private final UserRepository userRepository;
+    /* 没有 STOMP 会话ID时（例如非 WebSocket 调用），以该前缀加用户昵称作为会话标识 */
+    private static final String DETACHED_SESSION_PREFIX = "user:";
+
+    private final UserStore            userStore;
+    // 运行阻塞的 MongoDB I/O 的执行器，见 AsyncConfig
+    @Qualifier("taskExecutor")
+    private final Executor             taskExecutor;
+    private final PresenceRegistry     presenceRegistry;
+    private final PresenceStatusWriter presenceStatusWriter;
+    // 群聊的在线成员索引，随用户上下线更新
+    private final GroupMembershipIndex groupMembershipIndex;
 
     /**
      * 异步保存用户
      *
      * <p>
-     * 该方法用于异步保存用户到数据库中，首先设置用户状态为在线，然后使用 CompletableFuture 异步执行保存操作
+     * 该方法用于异步保存用户到数据库中，首先设置用户状态为在线，然后使用 CompletableFuture 异步执行保存操作，
+     * 同时将当前会话登记为在线
      * </p>
      *
-     * @param user 需要保存的用户对象，不能为空
+     * @param user      需要保存的用户对象，不能为空
+     * @param sessionId 用户所在的 STOMP 会话ID，可以为空
      */
     @Transactional
-    public void saveUserAsync(@NonNull final User user)
+    public void saveUserAsync(@NonNull final User user, @Nullable final String sessionId)
     {
         log.info("Saving user: {}", user.getNickName());
 
         user.setStatus(UserStatus.ONLINE);
 
-        CompletableFuture.runAsync(() -> this.userRepository.save(user))
-                         .thenAcceptAsync(u -> log.info("User saved: {}", user.getNickName()));
+        CompletableFuture.runAsync(() -> this.userStore.save(user), this.taskExecutor)
+                         .thenRun(() -> log.info("User saved: {}", user.getNickName()))
+                         .exceptionally(throwable ->
+                                        {
+                                            log.error("Error occurred while saving user: {}",
+                                                      user.getNickName(),
+                                                      throwable);
+
+                                            return null;
+                                        });
+
+        this.markOnline(user, sessionId);
     }
 
     /**
-     * 异步更新用户状态为离线
+     * 更新用户状态为离线
      *
      * <p>
-     * 该方法用于异步更新用户状态为离线，如果用户存在于数据库中，则更新其状态为离线
-     * 如果用户不存在，则抛出 IllegalArgumentException 异常
+     * 用户主动登出时调用，该用户的所有会话都会被标记为离线，数据库中的状态稍后异步写入
      * </p>
      *
      * @param user 需要更新状态的用户对象，不能为空
      */
-    @Transactional
     public void updateStatusToOfflineAsync(@NonNull final User user)
     {
         log.info("Updating user status to offline: {}", user.getNickName());
 
-        if (this.isUserExistInDatabase(user))
-        {
-            CompletableFuture.runAsync(() ->
-                                       {
-                                           user.setStatus(UserStatus.OFFLINE);
-                                           this.userRepository.save(user);
-
-                                           log.info("User disconnected successfully and status updated: {}",
-                                                    user.getNickName());
-                                       })
-                             .exceptionally(throwable ->
-                                            {
-                                                log.error("Error occurred while updating user status: {}",
-                                                          user.getNickName(),
-                                                          throwable);
+        Assert.notNull(user.getNickName(), "User nickname cannot be null");
 
-                                                return null;
-                                            });
-        }
-        else
-        {
-            log.error("User not in database: {}", user.getNickName());
+        user.setStatus(UserStatus.OFFLINE);
 
-            throw new IllegalArgumentException("User does not exist in database");
+        if (this.presenceRegistry.disconnectUser(user.getNickName()))
+        {
+            this.presenceStatusWriter.markDirty(user.getNickName(), UserStatus.OFFLINE);
+            this.groupMembershipIndex.userOffline(user.getNickName());
         }
     }
 
     /**
-     * 检查用户是否存在于数据库中
+     * 查找在线用户
      *
      * <p>
-     * 该方法通过用户 Nickname 来查询数据库，以确定该用户是否已经存在
-     * 它使用了Optional的isPresent方法来检查查询结果是否存在，而不是直接处理查询结果对象
+     * 在线用户直接取自内存中的在线状态注册表，不访问数据库，返回的 Future 总是已经完成
      * </p>
      *
-     * @param user 需要检查的用户对象
-     * @return 如果用户存在返回true，否则返回false
-     * @throws IllegalArgumentException 如果用户的Nickname为空
+     * @return 包含在线用户列表的 Future 对象
      */
-    private boolean isUserExistInDatabase(@NonNull final User user)
+    public CompletableFuture<List<User>> findConnectedUsersAsync()
     {
-        log.debug("Checking if user exists in database: {}", user.getNickName());
+        log.debug("Finding connected users");
 
-        Assert.notNull(user.getNickName(), "User nickname cannot be null");
-
-        return this.userRepository.findById(user.getNickName())
-                                  .isPresent();
+        return CompletableFuture.completedFuture(this.presenceRegistry.onlineUsers());
     }
 
     /**
-     * 查找在线用户
+     * 更新用户状态为在线
      *
      * <p>
-     * 该方法用于异步查找所有在线用户，返回一个包含在线用户的 Future 对象
+     * 将当前会话登记到在线状态注册表，用户从离线变为在线时，数据库中的状态稍后异步写入
      * </p>
      *
-     * @return 包含在线用户列表的 Future 对象，如果用户不存在则为 null
+     * @param user      需要更新状态的用户对象
+     * @param sessionId 用户所在的 STOMP 会话ID，可以为空
      */
-    public CompletableFuture<List<User>> findConnectedUsersAsync()
+    public void updateStatusToOnlineAsync(@NonNull final User user, @Nullable final String sessionId)
     {
-        log.info("Finding connected users");
+        log.info("Updating user status to online: {}", user.getNickName());
 
-        return CompletableFuture.supplyAsync(() -> this.userRepository.findByStatus(UserStatus.ONLINE));
+        this.markOnline(user, sessionId);
     }
 
     /**
-     * 异步更新用户状态为在线
+     * STOMP 会话建立时调用
      *
-     * <p>
-     * 该方法用于异步更新用户状态为在线，如果用户存在于数据库中，则更新其状态为在线
-     * 如果用户不存在，则抛出 IllegalArgumentException 异常
-     * </p>
-     *
-     * @param user 需要更新状态的用户对象
+     * @param sessionId 会话ID
+     * @param userId    用户ID
+     * @param fullName  用户全名，可以为空
      */
-    public void updateStatusToOnlineAsync(final User user)
+    public void sessionConnected(@NonNull final String sessionId,
+                                 @NonNull final String userId,
+                                 @Nullable final String fullName)
     {
-        log.info("Updating user status to online: {}", user.getNickName());
-
-        if (this.isUserExistInDatabase(user))
+        if (this.presenceRegistry.connect(sessionId, userId, fullName))
         {
-            CompletableFuture.runAsync(() ->
-                                       {
-                                           user.setStatus(UserStatus.ONLINE);
-                                           this.userRepository.save(user);
-
-                                           log.info("User connected successfully and status updated: {}",
-                                                    user.getNickName());
-                                       })
+            log.info("User connected: {}", userId);
+
+            this.presenceStatusWriter.markDirty(userId, UserStatus.ONLINE);
+
+            // 加载用户加入的群聊需要查询数据库，不阻塞会话事件
+            CompletableFuture.runAsync(() -> this.groupMembershipIndex.userOnline(userId), this.taskExecutor)
                              .exceptionally(throwable ->
                                             {
-                                                log.error("Error occurred while updating user status: {}",
-                                                          user.getNickName(),
+                                                log.error("Error occurred while indexing group rooms of user: {}",
+                                                          userId,
                                                           throwable);
 
                                                 return null;
                                             });
         }
-        else
-        {
-            log.error("User does not exist in database: {}", user.getNickName());
+    }
 
-            throw new IllegalArgumentException("User does not exist in database");
-        }
+    /**
+     * STOMP 会话断开时调用，用户的最后一个会话断开时该用户变为离线
+     *
+     * @param sessionId 会话ID
+     */
+    public void sessionDisconnected(@NonNull final String sessionId)
+    {
+        this.presenceRegistry.disconnect(sessionId)
+                             .ifPresent(userId ->
+                                        {
+                                            log.info("User disconnected: {}", userId);
+
+                                            this.presenceStatusWriter.markDirty(userId, UserStatus.OFFLINE);
+                                            this.groupMembershipIndex.userOffline(userId);
+                                        });
+    }
+
+    /**
+     * 将用户的会话登记为在线
+     *
+     * @param user      用户
+     * @param sessionId 会话ID，为空时使用以用户昵称生成的会话标识
+     */
+    private void markOnline(@NonNull final User user, @Nullable final String sessionId)
+    {
+        Assert.notNull(user.getNickName(), "User nickname cannot be null");
+
+        user.setStatus(UserStatus.ONLINE);
+
+        this.sessionConnected(sessionId != null ? sessionId : DETACHED_SESSION_PREFIX + user.getNickName(),
+                              user.getNickName(),
+                              user.getFullName());
     }
 }
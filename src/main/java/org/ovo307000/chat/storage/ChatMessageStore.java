@@ -0,0 +1,123 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 聊天消息的存储接口，由 chat.storage.engine 选择的存储引擎实现
+ *
+ * <p>
+ * 引擎负责透明拼接 {@link org.ovo307000.chat.archive.ChatArchive} 中的归档消息：查询方法返回的是热数据与归档合并后的结果，
+ * 只有 {@link #findArchivable} 和 {@link #findChatRoomIds} 只涉及引擎自己保存的消息。
+ * 返回的消息可能与其他调用者共享，调用者不应修改它们。
+ * </p>
+ */
+public interface ChatMessageStore
+{
+    /**
+     * 保存消息，没有 ID 时分配新的 ID，相同 ID 的消息会被覆盖
+     *
+     * @param chatMessage 消息
+     * @return 保存的消息（带 ID）
+     */
+    ChatMessage save(ChatMessage chatMessage);
+
+    /**
+     * 批量插入新消息
+     *
+     * @param chatMessages 消息
+     * @return 保存的消息（带 ID）
+     * @throws org.springframework.dao.DuplicateKeyException 如果某条消息的 ID 或 (聊天室, 序号) 已经存在
+     */
+    List<ChatMessage> insert(List<ChatMessage> chatMessages);
+
+    /**
+     * 删除消息，不存在的 ID 会被忽略
+     *
+     * @param ids 消息 ID
+     */
+    void deleteAllById(Iterable<String> ids);
+
+    /**
+     * 查询聊天室的全部消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findByChatRoomId(String chatRoomId);
+
+    /**
+     * 查询游标之前（更旧）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最新的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间倒序排列的消息列表
+     */
+    List<ChatMessage> findPageBefore(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+
+    /**
+     * 查询游标之后（更新）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findPageAfter(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+
+    /**
+     * 查询序号在 (afterSeq, upToSeq] 区间内的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param afterSeq   起始序号（不包含）
+     * @param upToSeq    结束序号（包含）
+     * @param limit      最多返回的消息数
+     * @return 按序号正序排列的消息列表
+     */
+    List<ChatMessage> findSinceSeq(String chatRoomId, long afterSeq, long upToSeq, int limit);
+
+    /**
+     * 查询聊天室中已存储的最大序号
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 最大序号，聊天室没有带序号的消息时为 0
+     */
+    long findMaxSeq(String chatRoomId);
+
+    /**
+     * 按时间正序逐条读取聊天室的全部消息
+     * 返回的 Stream 可能持有数据库游标，使用完毕后必须关闭
+     *
+     * @param chatRoomId 聊天室ID
+     * @param batchSize  游标每批拉取的文档数
+     * @return 按时间正序排列的消息流
+     */
+    Stream<ChatMessage> streamByChatRoomId(String chatRoomId, int batchSize);
+
+    /**
+     * 查询可以归档的消息：时间早于 cutoff，且在归档末尾之后，不拼接归档
+     *
+     * @param chatRoomId 聊天室ID
+     * @param after      归档末尾，为 null 时从最旧的消息开始
+     * @param cutoff     只返回时间早于该时间的消息
+     * @param limit      最多返回的消息数
+     * @return 按时间正序排列的消息列表
+     */
+    List<ChatMessage> findArchivable(String chatRoomId,
+                                     @Nullable ChatMessageCursor after,
+                                     LocalDateTime cutoff,
+                                     int limit);
+
+    /**
+     * 查询引擎中有消息的全部聊天室ID
+     *
+     * @return 聊天室ID列表
+     */
+    List<String> findChatRoomIds();
+}
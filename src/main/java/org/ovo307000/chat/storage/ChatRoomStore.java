@@ -0,0 +1,35 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.entity.ChatRoom;
+
+import java.util.List;
+
+/**
+ * 单聊聊天室的存储接口，由 chat.storage.engine 选择的存储引擎实现
+ */
+public interface ChatRoomStore
+{
+    /**
+     * 判断聊天室是否存在
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 存在时返回 true
+     */
+    boolean existsById(String chatRoomId);
+
+    /**
+     * 保存聊天室，相同 ID 的聊天室会被覆盖
+     *
+     * @param chatRoom 聊天室
+     * @return 保存的聊天室
+     */
+    ChatRoom save(ChatRoom chatRoom);
+
+    /**
+     * 查询用户参与的全部聊天室
+     *
+     * @param userId 用户ID
+     * @return 聊天室列表
+     */
+    List<ChatRoom> findByParticipant(String userId);
+}
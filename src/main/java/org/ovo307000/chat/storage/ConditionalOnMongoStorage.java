@@ -0,0 +1,21 @@
+package org.ovo307000.chat.storage;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.lang.annotation.*;
+
+/**
+ * 仅在使用 MongoDB 存储引擎（chat.storage.engine 为 mongo 或未配置）时注册组件
+ *
+ * <p>
+ * 需要和其他 {@link ConditionalOnProperty} 条件组合时（例如 ChatRoomMigration 的开关）使用这个注解，
+ * 因为同一个类上不能重复声明 {@link ConditionalOnProperty}。
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@ConditionalOnProperty(prefix = "chat.storage", name = "engine", havingValue = "mongo", matchIfMissing = true)
+public @interface ConditionalOnMongoStorage
+{
+}
@@ -0,0 +1,54 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.entity.GroupRoom;
+
+import java.util.List;
+
+/**
+ * 群聊的存储接口，由 chat.storage.engine 选择的存储引擎实现
+ */
+public interface GroupRoomStore
+{
+    /**
+     * 保存群聊，相同 ID 的群聊会被覆盖
+     *
+     * @param groupRoom 群聊
+     * @return 保存的群聊
+     */
+    GroupRoom save(GroupRoom groupRoom);
+
+    /**
+     * 将用户加入群聊，已经是成员时不变
+     *
+     * @param groupId  群聊ID
+     * @param memberId 用户ID
+     * @return 群聊存在时返回 true
+     */
+    boolean addMember(String groupId, String memberId);
+
+    /**
+     * 将用户移出群聊，不是成员时不变
+     *
+     * @param groupId  群聊ID
+     * @param memberId 用户ID
+     * @return 群聊存在时返回 true
+     */
+    boolean removeMember(String groupId, String memberId);
+
+    /**
+     * 查询用户加入的全部群聊
+     *
+     * @param memberId 成员的用户ID
+     * @return 群聊列表
+     */
+    List<GroupRoom> findByMemberIds(String memberId);
+
+    /**
+     * 判断用户是否为群聊成员
+     *
+     * @param id       群聊ID
+     * @param memberId 用户ID
+     * @return 是成员时返回 true
+     */
+    boolean existsByIdAndMemberIds(String id, String memberId);
+}
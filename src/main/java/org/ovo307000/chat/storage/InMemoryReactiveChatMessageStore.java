@@ -0,0 +1,66 @@
+package org.ovo307000.chat.storage;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 内存引擎的 {@link ReactiveChatMessageStore}
+ * 只读内存时直接在订阅线程上完成；聊天室有归档时在 boundedElastic 线程上读取（读取映射的分段可能触发缺页 I/O）
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "chat.storage", name = "engine", havingValue = "memory")
+public class InMemoryReactiveChatMessageStore implements ReactiveChatMessageStore
+{
+    private final InMemoryStorageEngine inMemoryStorageEngine;
+    private final ChatArchive           chatArchive;
+
+    @Override
+    public Mono<Boolean> existsChatRoom(@NonNull final String chatRoomId)
+    {
+        return Mono.fromSupplier(() -> this.inMemoryStorageEngine.existsById(chatRoomId));
+    }
+
+    @Override
+    public Mono<Boolean> isGroupMember(@NonNull final String groupId, @NonNull final String memberId)
+    {
+        return Mono.fromSupplier(() -> this.inMemoryStorageEngine.existsByIdAndMemberIds(groupId, memberId));
+    }
+
+    @Override
+    public Flux<ChatMessage> findPageBefore(@NonNull final String chatRoomId,
+                                            @Nullable final ChatMessageCursor cursor,
+                                            final int limit)
+    {
+        return this.read(chatRoomId, () -> this.inMemoryStorageEngine.findPageBefore(chatRoomId, cursor, limit));
+    }
+
+    @Override
+    public Flux<ChatMessage> findPageAfter(@NonNull final String chatRoomId,
+                                           @Nullable final ChatMessageCursor cursor,
+                                           final int limit)
+    {
+        return this.read(chatRoomId, () -> this.inMemoryStorageEngine.findPageAfter(chatRoomId, cursor, limit));
+    }
+
+    private Flux<ChatMessage> read(final String chatRoomId, final Supplier<List<ChatMessage>> page)
+    {
+        final var messages = Mono.fromSupplier(page);
+
+        return (this.chatArchive.contains(chatRoomId) ? messages.subscribeOn(Schedulers.boundedElastic()) : messages)
+                .flatMapIterable(Function.identity());
+    }
+}
@@ -0,0 +1,712 @@
+package org.ovo307000.chat.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.*;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 进程内存中的存储引擎，chat.storage.engine 为 memory 时启用
+ *
+ * <p>
+ * 不需要数据库，所有操作都是内存中的并发数据结构访问：消息按聊天室保存在 {@link RoomMessageIndex} 的并发跳表中，
+ * 另有消息 ID 到消息的哈希索引，用于覆盖保存和按 ID 删除；同一 ID 的写入在该索引的 compute 中串行化。
+ * 用户、聊天室、群聊和读取位置保存在 ConcurrentHashMap 中，并维护参与者到聊天室、成员到群聊的反向索引，
+ * 代替 MongoDB 中 senderId、receiverId 和 memberIds 上的索引。群聊在修改成员时整体替换（写时复制），读取不加锁。
+ * </p>
+ *
+ * <p>
+ * 与 MongoDB 引擎的语义保持一致：消息查询同样拼接 {@link ChatArchive} 中的归档消息，批量插入遇到重复的 ID
+ * 或 (聊天室, 序号) 时抛出 DuplicateKeyException。返回的实体与存储的实体是同一个对象，调用者不应修改。
+ * </p>
+ *
+ * <p>
+ * 启用快照时，数据有变化就按间隔把全部数据以 CBOR 流式写入快照目录（先写临时文件再原子替换），关闭时再写一次，
+ * 启动时从快照恢复。快照不是时间点一致的：写快照期间并发写入的数据可能只有一部分包含在其中。
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chat.storage", name = "engine", havingValue = "memory")
+public class InMemoryStorageEngine implements UserStore, ChatRoomStore, GroupRoomStore, ChatMessageStore, ReadCursorStore
+{
+    /* 快照文件名 */
+    static final String SNAPSHOT_FILE = "storage.snapshot";
+
+    /* 快照格式版本，格式不兼容时递增 */
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    private final ChatProperties.Storage config;
+
+    private final ChatArchive chatArchive;
+
+    private final ObjectMapper snapshotMapper;
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    private final Map<String, ChatRoom> chatRooms = new ConcurrentHashMap<>();
+
+    /* 用户 ID -> 参与的聊天室 ID */
+    private final Map<String, Set<String>> chatRoomsByParticipant = new ConcurrentHashMap<>();
+
+    private final Map<String, GroupRoom> groupRooms = new ConcurrentHashMap<>();
+
+    /* 用户 ID -> 加入的群聊 ID */
+    private final Map<String, Set<String>> groupRoomsByMember = new ConcurrentHashMap<>();
+
+    /* 用户 ID -> 聊天室 ID -> 读取位置 */
+    private final Map<String, Map<String, ReadCursor>> readCursors = new ConcurrentHashMap<>();
+
+    /* 消息 ID -> 消息 */
+    private final Map<String, ChatMessage> messagesById = new ConcurrentHashMap<>();
+
+    /* 聊天室 ID -> 消息索引 */
+    private final Map<String, RoomMessageIndex> rooms = new ConcurrentHashMap<>();
+
+    /* 每次写入递增，与上次快照时的值相同说明数据没有变化 */
+    private final AtomicLong version = new AtomicLong();
+
+    private long snapshotVersion;
+
+    public InMemoryStorageEngine(@NonNull final ChatProperties chatProperties, @NonNull final ChatArchive chatArchive)
+    {
+        this.config         = chatProperties.getStorage();
+        this.chatArchive    = chatArchive;
+        this.snapshotMapper = CBORMapper.builder()
+                                        .addModule(new JavaTimeModule())
+                                        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                                        .build();
+    }
+
+    @Override
+    public User save(@NonNull final User user)
+    {
+        Assert.notNull(user.getNickName(), "User nickname cannot be null");
+
+        this.users.put(user.getNickName(), user);
+        this.version.incrementAndGet();
+
+        return user;
+    }
+
+    @Override
+    public void updateStatuses(@NonNull final Map<String, UserStatus> statuses)
+    {
+        statuses.forEach((userId, status) -> this.users.computeIfPresent(userId,
+                                                                         (key, user) -> new User(user.getNickName(),
+                                                                                                 user.getFullName(),
+                                                                                                 user.getPassword(),
+                                                                                                 status)));
+        this.version.incrementAndGet();
+    }
+
+    @Override
+    public boolean existsById(@NonNull final String chatRoomId)
+    {
+        return this.chatRooms.containsKey(chatRoomId);
+    }
+
+    @Override
+    public ChatRoom save(@NonNull final ChatRoom chatRoom)
+    {
+        Assert.notNull(chatRoom.getId(), "Chat room id cannot be null");
+
+        this.chatRooms.compute(chatRoom.getId(), (id, previous) ->
+        {
+            if (previous != null)
+            {
+                this.unindexParticipants(previous);
+            }
+
+            index(this.chatRoomsByParticipant, chatRoom.getSenderId(), id);
+            index(this.chatRoomsByParticipant, chatRoom.getReceiverId(), id);
+
+            return chatRoom;
+        });
+        this.version.incrementAndGet();
+
+        return chatRoom;
+    }
+
+    @Override
+    public List<ChatRoom> findByParticipant(@NonNull final String userId)
+    {
+        return lookup(this.chatRoomsByParticipant, userId, this.chatRooms);
+    }
+
+    @Override
+    public GroupRoom save(@NonNull final GroupRoom groupRoom)
+    {
+        Assert.notNull(groupRoom.getId(), "Group room id cannot be null");
+
+        final var members = groupRoom.getMemberIds() == null ? Set.<String>of() : groupRoom.getMemberIds();
+
+        this.groupRooms.compute(groupRoom.getId(), (id, previous) ->
+        {
+            if (previous != null)
+            {
+                previous.getMemberIds()
+                        .forEach(memberId -> unindex(this.groupRoomsByMember, memberId, id));
+            }
+
+            members.forEach(memberId -> index(this.groupRoomsByMember, memberId, id));
+
+            // 保存副本，之后的成员变更整体替换副本，不修改调用者持有的对象
+            return withMembers(groupRoom, new LinkedHashSet<>(members));
+        });
+        this.version.incrementAndGet();
+
+        return groupRoom;
+    }
+
+    @Override
+    public boolean addMember(@NonNull final String groupId, @NonNull final String memberId)
+    {
+        final var updated = this.groupRooms.computeIfPresent(groupId, (id, groupRoom) ->
+        {
+            if (groupRoom.getMemberIds()
+                         .contains(memberId))
+            {
+                return groupRoom;
+            }
+
+            final var members = new LinkedHashSet<>(groupRoom.getMemberIds());
+            members.add(memberId);
+            index(this.groupRoomsByMember, memberId, id);
+
+            return withMembers(groupRoom, members);
+        });
+        this.version.incrementAndGet();
+
+        return updated != null;
+    }
+
+    @Override
+    public boolean removeMember(@NonNull final String groupId, @NonNull final String memberId)
+    {
+        final var updated = this.groupRooms.computeIfPresent(groupId, (id, groupRoom) ->
+        {
+            if (!groupRoom.getMemberIds()
+                          .contains(memberId))
+            {
+                return groupRoom;
+            }
+
+            final var members = new LinkedHashSet<>(groupRoom.getMemberIds());
+            members.remove(memberId);
+            unindex(this.groupRoomsByMember, memberId, id);
+
+            return withMembers(groupRoom, members);
+        });
+        this.version.incrementAndGet();
+
+        return updated != null;
+    }
+
+    @Override
+    public List<GroupRoom> findByMemberIds(@NonNull final String memberId)
+    {
+        return lookup(this.groupRoomsByMember, memberId, this.groupRooms);
+    }
+
+    @Override
+    public boolean existsByIdAndMemberIds(@NonNull final String id, @NonNull final String memberId)
+    {
+        final var groupRoom = this.groupRooms.get(id);
+
+        return groupRoom != null && groupRoom.getMemberIds()
+                                             .contains(memberId);
+    }
+
+    @Override
+    public ChatMessage save(@NonNull final ChatMessage chatMessage)
+    {
+        this.put(chatMessage, true);
+        this.version.incrementAndGet();
+
+        return chatMessage;
+    }
+
+    @Override
+    public List<ChatMessage> insert(@NonNull final List<ChatMessage> chatMessages)
+    {
+        try
+        {
+            // 与 MongoDB 的有序批量插入相同，遇到重复键时停止，之前的消息已经插入
+            for (final var chatMessage : chatMessages)
+            {
+                this.put(chatMessage, false);
+            }
+        }
+        finally
+        {
+            this.version.incrementAndGet();
+        }
+
+        return chatMessages;
+    }
+
+    @Override
+    public void deleteAllById(@NonNull final Iterable<String> ids)
+    {
+        for (final var id : ids)
+        {
+            this.messagesById.computeIfPresent(id, (key, chatMessage) ->
+            {
+                this.roomOf(chatMessage.getChatRoomId())
+                    .remove(chatMessage);
+
+                return null;
+            });
+        }
+
+        this.version.incrementAndGet();
+    }
+
+    @Override
+    public List<ChatMessage> findByChatRoomId(@NonNull final String chatRoomId)
+    {
+        try (final var messages = this.streamByChatRoomId(chatRoomId, 0))
+        {
+            return messages.toList();
+        }
+    }
+
+    @Override
+    public List<ChatMessage> findPageBefore(@NonNull final String chatRoomId,
+                                            @Nullable final ChatMessageCursor cursor,
+                                            final int limit)
+    {
+        final var room = this.rooms.get(chatRoomId);
+        final var hot  = room == null ? List.<ChatMessage>of() : room.pageBefore(cursor, limit);
+
+        return this.chatArchive.stitchPageBefore(chatRoomId, cursor, limit, hot);
+    }
+
+    @Override
+    public List<ChatMessage> findPageAfter(@NonNull final String chatRoomId,
+                                           @Nullable final ChatMessageCursor cursor,
+                                           final int limit)
+    {
+        final var room = this.rooms.get(chatRoomId);
+        final var hot  = room == null ? List.<ChatMessage>of() : room.pageAfter(cursor, limit);
+
+        return this.chatArchive.stitchPageAfter(chatRoomId, cursor, limit, hot);
+    }
+
+    @Override
+    public List<ChatMessage> findSinceSeq(@NonNull final String chatRoomId,
+                                          final long afterSeq,
+                                          final long upToSeq,
+                                          final int limit)
+    {
+        final var room = this.rooms.get(chatRoomId);
+        final var hot  = room == null ? List.<ChatMessage>of() : room.sinceSeq(afterSeq, upToSeq, limit);
+
+        return this.chatArchive.stitchSinceSeq(chatRoomId, afterSeq, upToSeq, limit, hot);
+    }
+
+    @Override
+    public long findMaxSeq(@NonNull final String chatRoomId)
+    {
+        final var room = this.rooms.get(chatRoomId);
+
+        return this.chatArchive.stitchMaxSeq(chatRoomId, room == null ? 0 : room.maxSeq());
+    }
+
+    @Override
+    public Stream<ChatMessage> streamByChatRoomId(@NonNull final String chatRoomId, final int batchSize)
+    {
+        final var room = this.rooms.get(chatRoomId);
+
+        return this.chatArchive.stitchStream(chatRoomId, room == null ? Stream.empty() : room.stream());
+    }
+
+    @Override
+    public List<ChatMessage> findArchivable(@NonNull final String chatRoomId,
+                                            @Nullable final ChatMessageCursor after,
+                                            @NonNull final LocalDateTime cutoff,
+                                            final int limit)
+    {
+        final var room = this.rooms.get(chatRoomId);
+
+        return room == null ? List.of() : room.archivable(after, cutoff, limit);
+    }
+
+    @Override
+    public List<String> findChatRoomIds()
+    {
+        return this.rooms.entrySet()
+                         .stream()
+                         .filter(entry -> !entry.getValue()
+                                                .isEmpty())
+                         .map(Map.Entry::getKey)
+                         .toList();
+    }
+
+    @Override
+    public List<ReadCursor> findByUserId(@NonNull final String userId)
+    {
+        final var cursors = this.readCursors.get(userId);
+
+        return cursors == null ? List.of() : List.copyOf(cursors.values());
+    }
+
+    @Override
+    public void advanceAll(@NonNull final Collection<ReadCursor> readCursors)
+    {
+        for (final var readCursor : readCursors)
+        {
+            this.readCursors.computeIfAbsent(readCursor.getUserId(), userId -> new ConcurrentHashMap<>())
+                            .merge(readCursor.getChatRoomId(),
+                                   readCursor,
+                                   (stored, advanced) -> advanced.getLastReadSeq() > stored.getLastReadSeq()
+                                                         ? advanced
+                                                         : stored);
+        }
+
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * 存储的消息总数
+     */
+    public int messageCount()
+    {
+        return this.messagesById.size();
+    }
+
+    /**
+     * 启动时从快照恢复
+     */
+    @PostConstruct
+    public void restore()
+    {
+        final var file = this.snapshotFile();
+
+        if (!this.config.isSnapshotEnabled() || !Files.exists(file))
+        {
+            return;
+        }
+
+        final var start = System.nanoTime();
+
+        try (final var parser = this.snapshotMapper.createParser(Files.newInputStream(file)))
+        {
+            this.readSnapshot(parser);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to restore storage snapshot " + file, e);
+        }
+
+        synchronized (this)
+        {
+            this.snapshotVersion = this.version.get();
+        }
+
+        log.info("Restored {} users, {} chat rooms, {} group rooms and {} messages from {} in {} ms",
+                 this.users.size(),
+                 this.chatRooms.size(),
+                 this.groupRooms.size(),
+                 this.messagesById.size(),
+                 file,
+                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 数据有变化时保存快照
+     */
+    @Scheduled(fixedDelayString = "${chat.storage.snapshot-interval-millis:60000}")
+    public synchronized void snapshot()
+    {
+        final var current = this.version.get();
+
+        if (!this.config.isSnapshotEnabled() || current == this.snapshotVersion)
+        {
+            return;
+        }
+
+        final var file      = this.snapshotFile();
+        final var temporary = file.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        final var start     = System.nanoTime();
+
+        try
+        {
+            Files.createDirectories(file.getParent());
+
+            try (final var generator = this.snapshotMapper.createGenerator(Files.newOutputStream(temporary)))
+            {
+                this.writeSnapshot(generator);
+            }
+
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            // 保留上一次的快照，下次继续尝试
+            log.error("Failed to write storage snapshot {}", file, e);
+
+            return;
+        }
+
+        this.snapshotVersion = current;
+
+        log.debug("Wrote storage snapshot with {} messages to {} in {} ms",
+                  this.messagesById.size(),
+                  file,
+                  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 关闭前保存最后一次快照
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        this.snapshot();
+    }
+
+    /**
+     * 加入或覆盖消息
+     *
+     * @param chatMessage 消息，没有 ID 时分配新的 ID
+     * @param overwrite   ID 已经存在时覆盖，否则抛出 DuplicateKeyException
+     */
+    private void put(final ChatMessage chatMessage, final boolean overwrite)
+    {
+        Assert.notNull(chatMessage.getChatRoomId(), "Chat room id cannot be null");
+
+        if (chatMessage.getId() == null)
+        {
+            chatMessage.setId(ObjectId.get()
+                                      .toHexString());
+        }
+
+        this.messagesById.compute(chatMessage.getId(), (id, previous) ->
+        {
+            if (previous != null && !overwrite)
+            {
+                throw new DuplicateKeyException("Duplicate chat message id " + id);
+            }
+
+            if (previous != null)
+            {
+                this.roomOf(previous.getChatRoomId())
+                    .remove(previous);
+            }
+
+            try
+            {
+                this.roomOf(chatMessage.getChatRoomId())
+                    .add(chatMessage);
+            }
+            catch (DuplicateKeyException e)
+            {
+                // 新消息的序号冲突，保留原来的消息
+                if (previous != null)
+                {
+                    this.roomOf(previous.getChatRoomId())
+                        .add(previous);
+                }
+
+                throw e;
+            }
+
+            return chatMessage;
+        });
+    }
+
+    private RoomMessageIndex roomOf(final String chatRoomId)
+    {
+        return this.rooms.computeIfAbsent(chatRoomId, key -> new RoomMessageIndex());
+    }
+
+    private void unindexParticipants(final ChatRoom chatRoom)
+    {
+        unindex(this.chatRoomsByParticipant, chatRoom.getSenderId(), chatRoom.getId());
+        unindex(this.chatRoomsByParticipant, chatRoom.getReceiverId(), chatRoom.getId());
+    }
+
+    private Path snapshotFile()
+    {
+        return Path.of(this.config.getSnapshotDirectory())
+                   .resolve(SNAPSHOT_FILE);
+    }
+
+    private void writeSnapshot(final JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeNumberField("format", SNAPSHOT_FORMAT);
+        this.writeArray(generator, "users", this.users.values());
+        this.writeArray(generator, "chatRooms", this.chatRooms.values());
+        this.writeArray(generator, "groupRooms", this.groupRooms.values());
+        this.writeArray(generator, "readCursors", this.readCursors.values()
+                                                                  .stream()
+                                                                  .flatMap(cursors -> cursors.values()
+                                                                                             .stream())
+                                                                  .toList());
+
+        // 消息按聊天室逐条写出，不在内存中另外构建完整的列表
+        generator.writeArrayFieldStart("messages");
+
+        for (final var room : this.rooms.values())
+        {
+            try (final var messages = room.stream())
+            {
+                for (final var iterator = messages.iterator(); iterator.hasNext(); )
+                {
+                    this.snapshotMapper.writeValue(generator, iterator.next());
+                }
+            }
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writeArray(final JsonGenerator generator,
+                            final String name,
+                            final Collection<?> values) throws IOException
+    {
+        generator.writeArrayFieldStart(name);
+
+        for (final var value : values)
+        {
+            this.snapshotMapper.writeValue(generator, value);
+        }
+
+        generator.writeEndArray();
+    }
+
+    private void readSnapshot(final JsonParser parser) throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+        {
+            throw new IOException("Malformed storage snapshot");
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            final var name = parser.currentName();
+            parser.nextToken();
+
+            switch (name)
+            {
+                case "format" ->
+                {
+                    if (parser.getIntValue() != SNAPSHOT_FORMAT)
+                    {
+                        throw new IOException("Unsupported storage snapshot format " + parser.getIntValue());
+                    }
+                }
+                case "users" -> this.readArray(parser, User.class, this::save);
+                case "chatRooms" -> this.readArray(parser, ChatRoom.class, this::save);
+                case "groupRooms" -> this.readArray(parser, GroupRoom.class, this::save);
+                case "readCursors" -> this.readArray(parser, ReadCursor.class, cursor -> this.advanceAll(List.of(cursor)));
+                case "messages" -> this.readArray(parser, ChatMessage.class, message -> this.put(message, true));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private <T> void readArray(final JsonParser parser,
+                               final Class<T> type,
+                               final Consumer<T> consumer) throws IOException
+    {
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+        {
+            consumer.accept(this.snapshotMapper.readValue(parser, type));
+        }
+    }
+
+    private static GroupRoom withMembers(final GroupRoom groupRoom, final Set<String> memberIds)
+    {
+        return GroupRoom.builder()
+                        .id(groupRoom.getId())
+                        .name(groupRoom.getName())
+                        .ownerId(groupRoom.getOwnerId())
+                        .memberIds(Collections.unmodifiableSet(memberIds))
+                        .build();
+    }
+
+    private static void index(final Map<String, Set<String>> index, @Nullable final String key, final String id)
+    {
+        if (key != null)
+        {
+            index.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet())
+                 .add(id);
+        }
+    }
+
+    private static void unindex(final Map<String, Set<String>> index, @Nullable final String key, final String id)
+    {
+        if (key != null)
+        {
+            index.computeIfPresent(key, (ignored, ids) ->
+            {
+                ids.remove(id);
+
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private static <T> List<T> lookup(final Map<String, Set<String>> index,
+                                      final String key,
+                                      final Map<String, T> entities)
+    {
+        final var ids = index.get(key);
+
+        if (ids == null)
+        {
+            return List.of();
+        }
+
+        final var found = new ArrayList<T>(ids.size());
+
+        for (final var id : ids)
+        {
+            final var entity = entities.get(id);
+
+            if (entity != null)
+            {
+                found.add(entity);
+            }
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,54 @@
+package org.ovo307000.chat.storage;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.repository.ReactiveChatMessageRepository;
+import org.ovo307000.chat.repository.ReactiveChatRoomRepository;
+import org.ovo307000.chat.repository.ReactiveGroupRoomRepository;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 基于响应式 MongoDB 驱动的 {@link ReactiveChatMessageStore}，等待数据库期间不占用线程
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnMongoStorage
+public class MongoReactiveChatMessageStore implements ReactiveChatMessageStore
+{
+    private final ReactiveChatMessageRepository reactiveChatMessageRepository;
+    private final ReactiveChatRoomRepository    reactiveChatRoomRepository;
+    private final ReactiveGroupRoomRepository   reactiveGroupRoomRepository;
+
+    @Override
+    public Mono<Boolean> existsChatRoom(@NonNull final String chatRoomId)
+    {
+        return this.reactiveChatRoomRepository.existsById(chatRoomId);
+    }
+
+    @Override
+    public Mono<Boolean> isGroupMember(@NonNull final String groupId, @NonNull final String memberId)
+    {
+        return this.reactiveGroupRoomRepository.existsByIdAndMemberIds(groupId, memberId);
+    }
+
+    @Override
+    public Flux<ChatMessage> findPageBefore(@NonNull final String chatRoomId,
+                                            @Nullable final ChatMessageCursor cursor,
+                                            final int limit)
+    {
+        return this.reactiveChatMessageRepository.findPageBefore(chatRoomId, cursor, limit);
+    }
+
+    @Override
+    public Flux<ChatMessage> findPageAfter(@NonNull final String chatRoomId,
+                                           @Nullable final ChatMessageCursor cursor,
+                                           final int limit)
+    {
+        return this.reactiveChatMessageRepository.findPageAfter(chatRoomId, cursor, limit);
+    }
+}
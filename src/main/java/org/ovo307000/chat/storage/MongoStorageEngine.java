@@ -0,0 +1,184 @@
+package org.ovo307000.chat.storage;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.*;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.ovo307000.chat.repository.*;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 基于 MongoDB 的存储引擎（默认），直接委托给 Spring Data 仓库
+ *
+ * <p>
+ * 查询条件、索引和归档拼接都在仓库实现中（见 ChatMessageRepositoryCustomImpl），这里只做接口适配。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnMongoStorage
+public class MongoStorageEngine implements UserStore, ChatRoomStore, GroupRoomStore, ChatMessageStore, ReadCursorStore
+{
+    private final UserRepository        userRepository;
+    private final ChatRoomRepository    chatRoomRepository;
+    private final GroupRoomRepository   groupRoomRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ReadCursorRepository  readCursorRepository;
+
+    @Override
+    public User save(@NonNull final User user)
+    {
+        return this.userRepository.save(user);
+    }
+
+    @Override
+    public void updateStatuses(@NonNull final Map<String, UserStatus> statuses)
+    {
+        this.userRepository.updateStatuses(statuses);
+    }
+
+    @Override
+    public boolean existsById(@NonNull final String chatRoomId)
+    {
+        return this.chatRoomRepository.existsById(chatRoomId);
+    }
+
+    @Override
+    public ChatRoom save(@NonNull final ChatRoom chatRoom)
+    {
+        return this.chatRoomRepository.save(chatRoom);
+    }
+
+    @Override
+    public List<ChatRoom> findByParticipant(@NonNull final String userId)
+    {
+        // 参与者按字典序分别存放在两个字段中
+        return this.chatRoomRepository.findBySenderIdOrReceiverId(userId, userId);
+    }
+
+    @Override
+    public GroupRoom save(@NonNull final GroupRoom groupRoom)
+    {
+        return this.groupRoomRepository.save(groupRoom);
+    }
+
+    @Override
+    public boolean addMember(@NonNull final String groupId, @NonNull final String memberId)
+    {
+        return this.groupRoomRepository.addMember(groupId, memberId);
+    }
+
+    @Override
+    public boolean removeMember(@NonNull final String groupId, @NonNull final String memberId)
+    {
+        return this.groupRoomRepository.removeMember(groupId, memberId);
+    }
+
+    @Override
+    public List<GroupRoom> findByMemberIds(@NonNull final String memberId)
+    {
+        return this.groupRoomRepository.findByMemberIds(memberId);
+    }
+
+    @Override
+    public boolean existsByIdAndMemberIds(@NonNull final String id, @NonNull final String memberId)
+    {
+        return this.groupRoomRepository.existsByIdAndMemberIds(id, memberId);
+    }
+
+    @Override
+    public ChatMessage save(@NonNull final ChatMessage chatMessage)
+    {
+        return this.chatMessageRepository.save(chatMessage);
+    }
+
+    @Override
+    public List<ChatMessage> insert(@NonNull final List<ChatMessage> chatMessages)
+    {
+        return this.chatMessageRepository.insert(chatMessages);
+    }
+
+    @Override
+    public void deleteAllById(@NonNull final Iterable<String> ids)
+    {
+        this.chatMessageRepository.deleteAllById(ids);
+    }
+
+    @Override
+    public List<ChatMessage> findByChatRoomId(@NonNull final String chatRoomId)
+    {
+        return this.chatMessageRepository.findByChatRoomId(chatRoomId);
+    }
+
+    @Override
+    public List<ChatMessage> findPageBefore(@NonNull final String chatRoomId,
+                                            @Nullable final ChatMessageCursor cursor,
+                                            final int limit)
+    {
+        return this.chatMessageRepository.findPageBefore(chatRoomId, cursor, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findPageAfter(@NonNull final String chatRoomId,
+                                           @Nullable final ChatMessageCursor cursor,
+                                           final int limit)
+    {
+        return this.chatMessageRepository.findPageAfter(chatRoomId, cursor, limit);
+    }
+
+    @Override
+    public List<ChatMessage> findSinceSeq(@NonNull final String chatRoomId,
+                                          final long afterSeq,
+                                          final long upToSeq,
+                                          final int limit)
+    {
+        return this.chatMessageRepository.findSinceSeq(chatRoomId, afterSeq, upToSeq, limit);
+    }
+
+    @Override
+    public long findMaxSeq(@NonNull final String chatRoomId)
+    {
+        return this.chatMessageRepository.findMaxSeq(chatRoomId);
+    }
+
+    @Override
+    public Stream<ChatMessage> streamByChatRoomId(@NonNull final String chatRoomId, final int batchSize)
+    {
+        return this.chatMessageRepository.streamByChatRoomId(chatRoomId, batchSize);
+    }
+
+    @Override
+    public List<ChatMessage> findArchivable(@NonNull final String chatRoomId,
+                                            @Nullable final ChatMessageCursor after,
+                                            @NonNull final LocalDateTime cutoff,
+                                            final int limit)
+    {
+        return this.chatMessageRepository.findArchivable(chatRoomId, after, cutoff, limit);
+    }
+
+    @Override
+    public List<String> findChatRoomIds()
+    {
+        return this.chatMessageRepository.findChatRoomIds();
+    }
+
+    @Override
+    public List<ReadCursor> findByUserId(@NonNull final String userId)
+    {
+        return this.readCursorRepository.findByUserId(userId);
+    }
+
+    @Override
+    public void advanceAll(@NonNull final Collection<ReadCursor> readCursors)
+    {
+        this.readCursorRepository.advanceAll(readCursors);
+    }
+}
@@ -0,0 +1,50 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 聊天记录读取路径的响应式存储接口，由 chat.storage.engine 选择的存储引擎实现，见 ReactiveChatMessageService
+ */
+public interface ReactiveChatMessageStore
+{
+    /**
+     * 判断单聊聊天室是否存在
+     *
+     * @param chatRoomId 聊天室ID
+     * @return 存在时为 true
+     */
+    Mono<Boolean> existsChatRoom(String chatRoomId);
+
+    /**
+     * 判断用户是否为群聊成员
+     *
+     * @param groupId  群聊ID
+     * @param memberId 用户ID
+     * @return 是成员时为 true，群聊不存在时为 false
+     */
+    Mono<Boolean> isGroupMember(String groupId, String memberId);
+
+    /**
+     * 查询游标之前（更旧）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最新的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间倒序排列的消息
+     */
+    Flux<ChatMessage> findPageBefore(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+
+    /**
+     * 查询游标之后（更新）的消息
+     *
+     * @param chatRoomId 聊天室ID
+     * @param cursor     游标，为 null 时从最旧的消息开始
+     * @param limit      最多返回的消息数
+     * @return 按时间正序排列的消息
+     */
+    Flux<ChatMessage> findPageAfter(String chatRoomId, @Nullable ChatMessageCursor cursor, int limit);
+}
@@ -0,0 +1,27 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.entity.ReadCursor;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 读取位置的存储接口，由 chat.storage.engine 选择的存储引擎实现
+ */
+public interface ReadCursorStore
+{
+    /**
+     * 查询用户在所有聊天室中的读取位置
+     *
+     * @param userId 用户ID
+     * @return 读取位置列表
+     */
+    List<ReadCursor> findByUserId(String userId);
+
+    /**
+     * 批量推进读取位置，不存在时创建；已存储的位置比给定位置更新时保持不变，因此重复或乱序写入都是安全的
+     *
+     * @param readCursors 新的读取位置
+     */
+    void advanceAll(Collection<ReadCursor> readCursors);
+}
@@ -0,0 +1,215 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * 内存引擎中一个聊天室的消息索引
+ *
+ * <p>
+ * 两个并发跳表分别对应 MongoDB 中的 (chatRoomId, timestamp, _id) 和 (chatRoomId, seq) 复合索引：
+ * 前者按 (时间戳, ID) 排序，支撑键集分页、全量读取和归档扫描；后者按序号排序，支撑增量同步和最大序号查询。
+ * 时间戳在键中保存为 long 纳秒数，比较时先比较原始类型，只有时间戳相同时才比较 ID 字符串；序号索引的键就是序号。
+ * 读取不加锁，得到的是跳表的弱一致视图，与 MongoDB 在并发写入时的可见性相同。
+ * </p>
+ *
+ * <p>
+ * 同一条消息的增删由 {@link InMemoryStorageEngine} 按消息 ID 串行化，这里不再加锁。
+ * </p>
+ */
+final class RoomMessageIndex
+{
+    private final ConcurrentSkipListMap<TimeKey, ChatMessage> byTime = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListMap<Long, ChatMessage> bySeq = new ConcurrentSkipListMap<>();
+
+    /**
+     * 加入消息
+     *
+     * @param chatMessage 带 ID 的消息
+     * @throws DuplicateKeyException 如果聊天室中已经有另一条消息使用了相同的序号
+     */
+    void add(final ChatMessage chatMessage)
+    {
+        final var seq = chatMessage.getSeq();
+
+        // 与 (chatRoomId, seq) 唯一索引相同，先占用序号，冲突时不修改任何索引
+        if (seq != null)
+        {
+            final var existing = this.bySeq.putIfAbsent(seq, chatMessage);
+
+            if (existing != null && existing != chatMessage)
+            {
+                throw new DuplicateKeyException("Duplicate seq " + seq + " in chat room " + chatMessage.getChatRoomId());
+            }
+        }
+
+        this.byTime.put(TimeKey.of(chatMessage), chatMessage);
+    }
+
+    /**
+     * 移除消息
+     *
+     * @param chatMessage 之前加入的消息
+     */
+    void remove(final ChatMessage chatMessage)
+    {
+        this.byTime.remove(TimeKey.of(chatMessage), chatMessage);
+
+        if (chatMessage.getSeq() != null)
+        {
+            this.bySeq.remove(chatMessage.getSeq(), chatMessage);
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return this.byTime.isEmpty();
+    }
+
+    int size()
+    {
+        return this.byTime.size();
+    }
+
+    /**
+     * 游标之前（更旧）的消息，按时间倒序
+     */
+    List<ChatMessage> pageBefore(@Nullable final ChatMessageCursor cursor, final int limit)
+    {
+        final var older = cursor == null ? this.byTime : this.byTime.headMap(TimeKey.of(cursor), false);
+
+        return take(older.descendingMap()
+                         .values(), limit);
+    }
+
+    /**
+     * 游标之后（更新）的消息，按时间正序
+     */
+    List<ChatMessage> pageAfter(@Nullable final ChatMessageCursor cursor, final int limit)
+    {
+        final var newer = cursor == null ? this.byTime : this.byTime.tailMap(TimeKey.of(cursor), false);
+
+        return take(newer.values(), limit);
+    }
+
+    /**
+     * 序号在 (afterSeq, upToSeq] 区间内的消息，按序号正序
+     */
+    List<ChatMessage> sinceSeq(final long afterSeq, final long upToSeq, final int limit)
+    {
+        if (afterSeq >= upToSeq)
+        {
+            return List.of();
+        }
+
+        return take(this.bySeq.subMap(afterSeq, false, upToSeq, true)
+                              .values(), limit);
+    }
+
+    /**
+     * 最大序号，没有带序号的消息时为 0
+     */
+    long maxSeq()
+    {
+        final var last = this.bySeq.lastEntry();
+
+        return last == null ? 0 : last.getKey();
+    }
+
+    /**
+     * 游标之后且时间早于 cutoff 的消息，按时间正序
+     */
+    List<ChatMessage> archivable(@Nullable final ChatMessageCursor after, final LocalDateTime cutoff, final int limit)
+    {
+        // ID 为空字符串的键排在同一时间戳的所有消息之前，因此 headMap 恰好是时间早于 cutoff 的消息
+        final var end = new TimeKey(nanosOf(cutoff), "");
+
+        if (after == null)
+        {
+            return take(this.byTime.headMap(end, false)
+                                   .values(), limit);
+        }
+
+        final var start = TimeKey.of(after);
+
+        if (start.compareTo(end) >= 0)
+        {
+            return List.of();
+        }
+
+        return take(this.byTime.subMap(start, false, end, false)
+                               .values(), limit);
+    }
+
+    /**
+     * 全部消息，按时间正序
+     */
+    Stream<ChatMessage> stream()
+    {
+        return this.byTime.values()
+                          .stream();
+    }
+
+    private static List<ChatMessage> take(final Collection<ChatMessage> messages, final int limit)
+    {
+        final var page = new ArrayList<ChatMessage>(Math.min(Math.max(limit, 0), 64));
+
+        for (final var message : messages)
+        {
+            if (page.size() >= limit)
+            {
+                break;
+            }
+
+            page.add(message);
+        }
+
+        return page;
+    }
+
+    private static long nanosOf(@Nullable final LocalDateTime timestamp)
+    {
+        // 与 MongoDB 相同，没有时间戳的消息排在最前面
+        if (timestamp == null)
+        {
+            return Long.MIN_VALUE;
+        }
+
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+    }
+
+    /**
+     * 键集分页的排序键：先按时间戳（纳秒），再按 ID
+     */
+    private record TimeKey(long nanos, String id) implements Comparable<TimeKey>
+    {
+        static TimeKey of(final ChatMessage chatMessage)
+        {
+            return new TimeKey(nanosOf(chatMessage.getTimestamp()), chatMessage.getId());
+        }
+
+        static TimeKey of(final ChatMessageCursor cursor)
+        {
+            return new TimeKey(nanosOf(cursor.timestamp()), cursor.id());
+        }
+
+        @Override
+        public int compareTo(final TimeKey other)
+        {
+            final var byNanos = Long.compare(this.nanos, other.nanos);
+
+            return byNanos != 0 ? byNanos : this.id.compareTo(other.id);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.ovo307000.chat.storage;
+
+import org.ovo307000.chat.module.entity.User;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+
+import java.util.Map;
+
+/**
+ * 用户的存储接口，由 chat.storage.engine 选择的存储引擎实现
+ */
+public interface UserStore
+{
+    /**
+     * 保存用户，相同昵称的用户会被覆盖
+     *
+     * @param user 用户
+     * @return 保存的用户
+     */
+    User save(User user);
+
+    /**
+     * 批量更新用户状态，只修改 status 字段，不存在的用户会被忽略
+     *
+     * @param statuses 用户ID到新状态的映射
+     */
+    void updateStatuses(Map<String, UserStatus> statuses);
+}
@@ -0,0 +1,136 @@
+package org.ovo307000.chat.unread;
+
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ovo307000.chat.module.entity.ReadCursor;
+import org.ovo307000.chat.storage.ReadCursorStore;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读取位置的异步、合并写入器
+ *
+ * <p>
+ * 客户端每读到一条消息就可能上报一次读取位置，逐条写库的代价与消息量成正比。
+ * 这里只在内存中记录每个 (用户, 聊天室) 的最大已读序号，由定时任务批量写入，
+ * 同一聊天室在一个写入周期内的多次上报只会产生一次写入。
+ * 读取位置只会前进，尚未写入的位置可以通过 {@link #pendingFor(String)} 与数据库中的值合并。
+ * 等待写入的位置按用户分组，查询一个用户的位置不需要遍历其他用户的位置。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReadCursorWriter
+{
+    private final ReadCursorStore readCursorStore;
+
+    /*
+     * 等待写入的读取位置：用户ID -> 聊天室ID -> 读取位置，只保留每个 (用户, 聊天室) 的最大序号。
+     * 内层映射只在外层映射的 compute 中修改，并由 flush 整个取出，取出后不会再有写入落到它上面
+     */
+    private final Map<String, Map<String, ReadCursor>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 推进用户在聊天室中的读取位置，等待下一次批量写入
+     *
+     * @param userId     用户ID
+     * @param chatRoomId 聊天室ID
+     * @param seq        已读的最大消息序号
+     */
+    public void advance(@NonNull final String userId, @NonNull final String chatRoomId, final long seq)
+    {
+        this.merge(ReadCursor.of(userId, chatRoomId, seq));
+    }
+
+    /**
+     * 用户尚未写入数据库的读取位置
+     *
+     * @param userId 用户ID
+     * @return 聊天室ID到已读最大序号的映射
+     */
+    public Map<String, Long> pendingFor(@NonNull final String userId)
+    {
+        final var result    = new HashMap<String, Long>();
+        final var chatRooms = this.pending.get(userId);
+
+        if (chatRooms != null)
+        {
+            chatRooms.forEach((chatRoomId, readCursor) -> result.put(chatRoomId, readCursor.getLastReadSeq()));
+        }
+
+        return result;
+    }
+
+    /**
+     * 将等待写入的读取位置批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${chat.unread.flush-interval-millis:1000}")
+    public void flush()
+    {
+        if (this.pending.isEmpty())
+        {
+            return;
+        }
+
+        // 逐个取出，取出期间发生的新变化会留在 pending 中等待下一次写入
+        final var snapshot = new ArrayList<ReadCursor>();
+
+        for (final var userId : this.pending.keySet())
+        {
+            final var chatRooms = this.pending.remove(userId);
+
+            if (chatRooms != null)
+            {
+                snapshot.addAll(chatRooms.values());
+            }
+        }
+
+        try
+        {
+            this.readCursorStore.advanceAll(snapshot);
+
+            log.debug("Flushed {} read cursors", snapshot.size());
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Error occurred while flushing {} read cursors", snapshot.size(), e);
+
+            // 写入失败时放回，与期间产生的新位置取较大者
+            snapshot.forEach(this::merge);
+        }
+    }
+
+    /**
+     * 关闭前写入剩余的读取位置
+     */
+    @PreDestroy
+    public void close()
+    {
+        this.flush();
+    }
+
+    private void merge(final ReadCursor readCursor)
+    {
+        this.pending.compute(readCursor.getUserId(), (userId, chatRooms) ->
+        {
+            final var result = chatRooms == null ? new ConcurrentHashMap<String, ReadCursor>() : chatRooms;
+
+            result.merge(readCursor.getChatRoomId(), readCursor, ReadCursorWriter::newer);
+
+            return result;
+        });
+    }
+
+    private static ReadCursor newer(final ReadCursor current, final ReadCursor candidate)
+    {
+        return candidate.getLastReadSeq() > current.getLastReadSeq() ? candidate : current;
+    }
+}
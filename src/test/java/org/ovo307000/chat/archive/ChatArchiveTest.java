@@ -0,0 +1,198 @@
+package org.ovo307000.chat.archive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatArchiveTest
+{
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private ChatProperties chatProperties;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.chatProperties = new ChatProperties();
+
+        final var config = this.chatProperties.getArchive();
+        config.setEnabled(true);
+        config.setDirectory(this.directory.toString());
+        // 很小的分段和索引间隔，让少量消息就跨越多个块和分段
+        config.setSegmentSize(DataSize.ofBytes(1_024));
+        config.setIndexInterval(4);
+    }
+
+    @Test
+    void testPagesAcrossBlocksAndSegments()
+    {
+        final var archive = new ChatArchive(this.chatProperties);
+        archive.append("room", messages(0, 50));
+
+        // 验证结果：从最新开始倒序翻页
+        final var newest = archive.stitchPageBefore("room", null, 5, List.of());
+        assertEquals(List.of("m49", "m48", "m47", "m46", "m45"), ids(newest));
+
+        // 游标落在块的中间
+        final var older = archive.stitchPageBefore("room", ChatMessageCursor.of(newest.get(4)), 3, List.of());
+        assertEquals(List.of("m44", "m43", "m42"), ids(older));
+
+        final var after = archive.stitchPageAfter("room", ChatMessageCursor.of(message(17)), 4, List.of());
+        assertEquals(List.of("m18", "m19", "m20", "m21"), ids(after));
+
+        // 内容完整地往返
+        final var restored = after.get(0);
+        assertEquals("room", restored.getChatRoomId());
+        assertEquals(19L, restored.getSeq());
+        assertEquals("content 18", restored.getContent());
+        assertEquals(BASE.plusSeconds(18)
+                         .plusNanos(123_456_789), restored.getTimestamp());
+        assertEquals(message(49).getId(),
+                     archive.tail("room")
+                            .id());
+
+        // 没有归档的聊天室直接返回 MongoDB 的结果
+        final var hot = List.of(message(1));
+        assertSame(hot, archive.stitchPageBefore("other", null, 5, hot));
+    }
+
+    @Test
+    void testStitchMergesAndDeduplicatesHotAndArchivedMessages()
+    {
+        final var archive = new ChatArchive(this.chatProperties);
+        archive.append("room", messages(0, 10));
+
+        // 准备测试数据：m9 归档后尚未从 MongoDB 删除，m5x 是时间戳落在归档范围内的迟到消息
+        final var late = ChatMessage.builder()
+                                    .id("m5x")
+                                    .chatRoomId("room")
+                                    .seq(11L)
+                                    .timestamp(message(5).getTimestamp())
+                                    .build();
+        final var hot = new ArrayList<>(List.of(message(11), message(10), message(9), late));
+
+        // 调用被测试的方法
+        final var page = archive.stitchPageBefore("room", null, 6, hot);
+
+        // 验证结果
+        assertEquals(List.of("m11", "m10", "m9", "m8", "m7", "m6"), ids(page));
+        assertEquals(List.of("m5x", "m5", "m4"),
+                     ids(archive.stitchPageBefore("room", ChatMessageCursor.of(message(6)), 3, List.of(late))));
+
+        // MongoDB 已经凑满一页且都比归档新，不读取归档
+        final var full = List.of(message(12), message(11));
+        assertSame(full, archive.stitchPageBefore("room", null, 2, full));
+
+        // 按序号合并，序号相同即同一条消息
+        final var sinceSeq = archive.stitchSinceSeq("room", 7, 12, 10, List.of(message(9), message(10), message(11)));
+        assertEquals(List.of("m7", "m8", "m9", "m10", "m11"), ids(sinceSeq));
+        assertEquals(10, archive.stitchMaxSeq("room", 0));
+        assertEquals(12, archive.stitchMaxSeq("room", 12));
+
+        try (var stream = archive.stitchStream("room", Stream.of(late, message(9), message(10))))
+        {
+            assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m5x", "m6", "m7", "m8", "m9", "m10"),
+                         ids(stream.toList()));
+        }
+    }
+
+    @Test
+    void testReopenRecoversUnindexedBlocksAndTornIndex() throws IOException
+    {
+        new ChatArchive(this.chatProperties).append("room", messages(0, 30));
+
+        // 准备测试数据：截掉索引文件末尾的一部分，模拟写入索引时崩溃
+        final var roomDirectory = Files.list(this.directory)
+                                       .findFirst()
+                                       .orElseThrow();
+        final var index         = roomDirectory.resolve(RoomArchive.INDEX_FILE);
+
+        try (var channel = FileChannel.open(index, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 7);
+        }
+
+        // 调用被测试的方法：重新打开后继续追加
+        final var reopened = new ChatArchive(this.chatProperties);
+        assertTrue(reopened.contains("room"));
+        assertEquals("m29",
+                     reopened.tail("room")
+                             .id());
+
+        reopened.append("room", messages(30, 40));
+
+        // 验证结果：全部消息按顺序可读
+        try (var stream = reopened.stitchStream("room", Stream.empty()))
+        {
+            assertEquals(ids(messages(0, 40)), ids(stream.toList()));
+        }
+
+        assertEquals(List.of("m21", "m22"),
+                     ids(reopened.stitchPageAfter("room", ChatMessageCursor.of(message(20)), 2, List.of())));
+
+        // 乱序追加被拒绝
+        assertThrows(IllegalArgumentException.class, () -> reopened.append("room", List.of(message(3))));
+    }
+
+    @Test
+    void testDisabledArchiveIsTransparent()
+    {
+        this.chatProperties.getArchive()
+                           .setEnabled(false);
+
+        final var archive = new ChatArchive(this.chatProperties);
+        final var hot     = List.of(message(1));
+
+        assertFalse(archive.contains("room"));
+        assertSame(hot, archive.stitchPageAfter("room", null, 5, hot));
+        assertThrows(IllegalStateException.class, () -> archive.append("room", hot));
+    }
+
+    private static List<ChatMessage> messages(final int from, final int to)
+    {
+        return IntStream.range(from, to)
+                        .mapToObj(ChatArchiveTest::message)
+                        .toList();
+    }
+
+    private static ChatMessage message(final int index)
+    {
+        return ChatMessage.builder()
+                          .id("m" + index)
+                          .chatRoomId("room")
+                          .seq(index + 1L)
+                          .senderId("alice")
+                          .receiverId("bob")
+                          .content("content " + index)
+                          .timestamp(BASE.plusSeconds(index)
+                                         .plusNanos(123_456_789))
+                          .build();
+    }
+
+    private static List<String> ids(final List<ChatMessage> messages)
+    {
+        return messages.stream()
+                       .map(ChatMessage::getId)
+                       .toList();
+    }
+}
@@ -0,0 +1,100 @@
+package org.ovo307000.chat.archive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ChatMessageStore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatArchiverTest
+{
+    @Mock
+    private ChatArchive chatArchive;
+
+    @Mock
+    private ChatMessageStore chatMessageStore;
+
+    @Spy
+    private ChatProperties chatProperties = new ChatProperties();
+
+    @InjectMocks
+    private ChatArchiver chatArchiver;
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+
+        this.chatProperties.getArchive()
+                           .setBatchSize(2);
+    }
+
+    @Test
+    void testArchiveMovesBatchesAfterTail()
+    {
+        // 准备测试数据：两批消息，第二批不满一批
+        final var cutoff = LocalDateTime.of(2024, 1, 1, 0, 0);
+        final var first  = List.of(message("1", 1), message("2", 2));
+        final var second = List.of(message("3", 3));
+        final var tail   = ChatMessageCursor.of(first.get(1));
+
+        when(this.chatArchive.tail("room")).thenReturn(null, tail);
+        when(this.chatMessageStore.findArchivable("room", null, cutoff, 2)).thenReturn(first);
+        when(this.chatMessageStore.findArchivable("room", tail, cutoff, 2)).thenReturn(second);
+
+        // 调用被测试的方法
+        final var moved = this.chatArchiver.archive("room", cutoff);
+
+        // 验证结果：先追加到归档，再从 MongoDB 删除
+        assertEquals(3, moved);
+
+        final var inOrder = inOrder(this.chatArchive, this.chatMessageStore);
+        inOrder.verify(this.chatArchive)
+               .append("room", first);
+        inOrder.verify(this.chatMessageStore)
+               .deleteAllById(List.of("1", "2"));
+        inOrder.verify(this.chatArchive)
+               .append("room", second);
+        inOrder.verify(this.chatMessageStore)
+               .deleteAllById(List.of("3"));
+    }
+
+    @Test
+    void testFailedAppendKeepsMessagesInMongo()
+    {
+        when(this.chatArchive.isEnabled()).thenReturn(true);
+        when(this.chatMessageStore.findChatRoomIds()).thenReturn(List.of("room"));
+        when(this.chatMessageStore.findArchivable(eq("room"), any(), any(), eq(2)))
+                .thenReturn(List.of(message("1", 1)));
+        doThrow(new IllegalArgumentException("out of order")).when(this.chatArchive)
+                                                              .append(eq("room"), any());
+
+        // 调用被测试的方法：单个聊天室失败不会抛出
+        this.chatArchiver.archive();
+
+        // 验证结果
+        verify(this.chatMessageStore, never()).deleteAllById(any());
+    }
+
+    private static ChatMessage message(final String id, final int second)
+    {
+        return ChatMessage.builder()
+                          .id(id)
+                          .chatRoomId("room")
+                          .timestamp(LocalDateTime.of(2023, 1, 1, 0, 0, second))
+                          .build();
+    }
+}
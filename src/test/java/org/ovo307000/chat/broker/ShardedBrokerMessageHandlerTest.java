@@ -0,0 +1,187 @@
+package org.ovo307000.chat.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedBrokerMessageHandlerTest
+{
+    private final Queue<Message<?>> outbound = new ConcurrentLinkedQueue<>();
+
+    private ShardedBrokerMessageHandler broker;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 出站通道只记录代理发出的消息
+        this.broker = new ShardedBrokerMessageHandler(new ExecutorSubscribableChannel(),
+                                                      (message, timeout) -> this.outbound.add(message),
+                                                      new ExecutorSubscribableChannel(),
+                                                      List.of("/user", "/topic"),
+                                                      4);
+        this.broker.start();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        this.broker.stop();
+    }
+
+    @Test
+    void testConnectIsAcknowledged()
+    {
+        this.broker.handleMessage(message(SimpMessageType.CONNECT, "s1", null, null, null));
+
+        final var ack = this.awaitOutbound(1)
+                            .get(0);
+
+        assertEquals(SimpMessageType.CONNECT_ACK, SimpMessageHeaderAccessor.getMessageType(ack.getHeaders()));
+        assertEquals("s1", SimpMessageHeaderAccessor.getSessionId(ack.getHeaders()));
+    }
+
+    @Test
+    void testMessageIsDeliveredToExactAndPatternSubscribers()
+    {
+        // 准备测试数据：不同会话分布在不同分片上
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s1", "sub-1", "/topic/room.a", null));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s2", "sub-2", "/topic/room.a", null));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s3", "sub-3", "/topic/room.*", null));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s4", "sub-4", "/topic/room.b", null));
+
+        final var fanOuts = new ConcurrentLinkedQueue<Integer>();
+        this.broker.setFanOutRecorder(fanOuts::add);
+
+        // 调用被测试的方法
+        this.broker.handleMessage(message(SimpMessageType.MESSAGE, null, null, "/topic/room.a", "hello"));
+
+        // 验证结果：s4 订阅的是其他目的地，不应收到消息
+        final var delivered = this.awaitOutbound(3);
+
+        assertEquals(List.of("s1/sub-1", "s2/sub-2", "s3/sub-3"),
+                     delivered.stream()
+                              .map(message -> SimpMessageHeaderAccessor.getSessionId(message.getHeaders()) + "/" +
+                                              SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()))
+                              .sorted()
+                              .toList());
+        delivered.forEach(message -> assertEquals("hello", message.getPayload()));
+
+        // 所有分片分发完成后只上报一次总投递数
+        assertEquals(List.of(3), List.copyOf(fanOuts));
+    }
+
+    @Test
+    void testUnsubscribeAndDisconnectRemoveSubscriptions()
+    {
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s1", "sub-1", "/topic/a", null));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s2", "sub-2", "/topic/a", null));
+        this.broker.handleMessage(message(SimpMessageType.UNSUBSCRIBE, "s1", "sub-1", null, null));
+        this.broker.handleMessage(message(SimpMessageType.DISCONNECT, "s2", null, null, null));
+
+        this.awaitOutbound(1);
+        this.outbound.clear();
+
+        this.broker.handleMessage(message(SimpMessageType.MESSAGE, null, null, "/topic/a", "hello"));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "s3", "sub-3", "/topic/b", null));
+        this.broker.handleMessage(message(SimpMessageType.MESSAGE, null, null, "/topic/b", "marker"));
+
+        // 各分片按顺序处理消息，收到标记消息时 /topic/a 的消息一定已经处理完
+        final var delivered = this.awaitOutbound(1);
+
+        assertEquals(1, delivered.size());
+        assertEquals("marker", delivered.get(0)
+                                        .getPayload());
+    }
+
+    @Test
+    void testUserDestinationIsDeliveredToTargetSession()
+    {
+        // 准备测试数据：与客户端一样订阅 /user/{用户ID}/queue/messages
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "abc", "sub-1", "/user/bob/queue/messages", null));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "def", "sub-1", "/user/carol/queue/messages", null));
+
+        // 调用被测试的方法
+        this.broker.handleMessage(message(SimpMessageType.MESSAGE, null, null, "/user/bob/queue/messages", "hi"));
+
+        final var delivered = this.awaitOutbound(1);
+
+        // 验证结果：只有 bob 的会话收到
+        assertEquals(1, delivered.size());
+        assertEquals("abc", SimpMessageHeaderAccessor.getSessionId(delivered.get(0)
+                                                                            .getHeaders()));
+        assertEquals("hi", delivered.get(0)
+                                    .getPayload());
+    }
+
+    @Test
+    void testDestinationOutsidePrefixesIsDropped()
+    {
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "abc", "sub-1", "/queue/messages-userabc", null));
+        this.broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "abc", "sub-2", "/topic/marker", null));
+
+        // 调用被测试的方法：代理不处理 /queue 前缀，发往会话目的地的消息被丢弃
+        this.broker.handleMessage(message(SimpMessageType.MESSAGE, null, null, "/queue/messages-userabc", "lost"));
+        this.broker.handleMessage(message(SimpMessageType.MESSAGE, null, null, "/topic/marker", "marker"));
+
+        // 验证结果：只收到标记消息
+        final var delivered = this.awaitOutbound(1);
+
+        assertEquals(List.of("marker"),
+                     delivered.stream()
+                              .map(Message::getPayload)
+                              .toList());
+    }
+
+    private static Message<?> message(final SimpMessageType type,
+                                      final String sessionId,
+                                      final String subscriptionId,
+                                      final String destination,
+                                      final String payload)
+    {
+        final var accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+
+        return MessageBuilder.createMessage(payload == null ? new byte[0] : payload, accessor.getMessageHeaders());
+    }
+
+    /**
+     * 等待出站通道至少收到 count 条消息
+     */
+    private List<Message<?>> awaitOutbound(final int count)
+    {
+        final var deadline = System.currentTimeMillis() + 5_000;
+
+        while (this.outbound.size() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.onSpinWait();
+        }
+
+        assertTrue(this.outbound.size() >= count, "Expected " + count + " outbound messages");
+
+        // 再稍等片刻，确认没有多余的消息
+        try
+        {
+            Thread.sleep(50);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+
+        return List.copyOf(this.outbound);
+    }
+}
@@ -0,0 +1,108 @@
+package org.ovo307000.chat.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentMessageCacheTest
+{
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 10, 1, 12, 0);
+
+    private final ChatProperties chatProperties = new ChatProperties();
+
+    private RecentMessageCache recentMessageCache;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.chatProperties.getRecentMessages()
+                           .setCapacity(4);
+        this.recentMessageCache = new RecentMessageCache(this.chatProperties);
+    }
+
+    @Test
+    void testAppendOnlyBufferIsNotServed()
+    {
+        // 只有追加、没有填充过数据库快照时，无法确定是否缺少更早的消息
+        this.recentMessageCache.append(message(1));
+
+        assertNull(this.recentMessageCache.latest("room", 1));
+    }
+
+    @Test
+    void testPopulateThenAppendKeepsNewestInOrder()
+    {
+        // 准备测试数据：数据库快照按时间倒序，数量少于请求条数，说明是聊天室的全部消息
+        this.recentMessageCache.populate("room", List.of(message(2), message(1)), 3);
+
+        // 乱序和重复的追加
+        this.recentMessageCache.append(message(4));
+        this.recentMessageCache.append(message(3));
+        this.recentMessageCache.append(message(2));
+
+        assertEquals(List.of("1", "2", "3", "4"), ids(this.recentMessageCache.latest("room", 4)));
+
+        // 超过容量后丢弃最旧的消息，且不再视为完整
+        this.recentMessageCache.append(message(5));
+
+        assertEquals(List.of("3", "4", "5"), ids(this.recentMessageCache.latest("room", 3)));
+        assertEquals(List.of("2", "3", "4", "5"), ids(this.recentMessageCache.latest("room", 4)));
+        assertNull(this.recentMessageCache.latest("room", 5));
+    }
+
+    @Test
+    void testIncompleteSnapshotServesOnlyWhatItHolds()
+    {
+        // 快照数量等于请求条数，更早的消息可能还有
+        this.recentMessageCache.populate("room", List.of(message(3), message(2)), 2);
+
+        assertEquals(List.of("2", "3"), ids(this.recentMessageCache.latest("room", 2)));
+        assertNull(this.recentMessageCache.latest("room", 3));
+
+        // 完整的快照（空聊天室）可以回答任意不超过容量的请求
+        this.recentMessageCache.populate("empty", List.of(), 3);
+
+        assertEquals(List.of(), this.recentMessageCache.latest("empty", 4));
+    }
+
+    @Test
+    void testColdRoomsAreEvictedUnderMemoryBudget()
+    {
+        this.chatProperties.getRecentMessages()
+                           .setMaxMemory(DataSize.ofKilobytes(8));
+
+        final var cache = new RecentMessageCache(this.chatProperties);
+
+        IntStream.range(0, 100)
+                 .forEach(room -> cache.populate("room" + room, List.of(message(room)), 2));
+
+        final var cached = IntStream.range(0, 100)
+                                    .filter(room -> cache.latest("room" + room, 1) != null)
+                                    .count();
+
+        // 每个缓冲区估计占用数百字节，8KB 预算只能容纳其中一部分
+        assertTrue(cached > 0 && cached < 100, "cached rooms: " + cached);
+    }
+
+    private static ChatMessage message(final int n)
+    {
+        return new ChatMessage(String.valueOf(n), "room", "a", "b", "message " + n, NOW.plusSeconds(n));
+    }
+
+    private static List<String> ids(final List<ChatMessage> messages)
+    {
+        assertNotNull(messages);
+
+        return messages.stream()
+                       .map(ChatMessage::getId)
+                       .toList();
+    }
+}
@@ -0,0 +1,158 @@
+package org.ovo307000.chat.codec;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PayloadFormatNegotiatorTest
+{
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private PayloadCodecs           payloadCodecs;
+    private PayloadFormatNegotiator negotiator;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.payloadCodecs = new PayloadCodecs(Jackson2ObjectMapperBuilder.json()
+                                                                          .build(), Jackson2ObjectMapperBuilder.json());
+        this.negotiator    = new PayloadFormatNegotiator(this.payloadCodecs);
+    }
+
+    @Test
+    void testCborSessionReceivesBinaryPayload() throws Exception
+    {
+        // 准备测试数据：原生 WebSocket 会话在 CONNECT 中请求 CBOR
+        this.negotiator.onSessionConnect(connect("s1", "application/cbor", true));
+
+        final var json = "{\"id\":\"1\",\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+
+        // 调用被测试的方法
+        final var result = this.negotiator.preSend(outbound("s1", json), this.channel);
+
+        // 验证结果
+        assertTrue(this.negotiator.isCborSession("s1"));
+        final var contentType = SimpMessageHeaderAccessor.wrap(result)
+                                                         .getContentType();
+
+        // 只有与 application/octet-stream 兼容的消息才会以 WebSocket 二进制帧发送
+        assertEquals(PayloadCodecs.CBOR_FRAME, contentType);
+        assertTrue(MimeTypeUtils.APPLICATION_OCTET_STREAM.isCompatibleWith(contentType));
+        assertEquals(Map.of("id", "1", "content", "hello"),
+                     this.payloadCodecs.getCborMapper()
+                                       .readValue((byte[]) result.getPayload(), Map.class));
+        assertEquals("s1", SimpMessageHeaderAccessor.getSessionId(result.getHeaders()));
+    }
+
+    @Test
+    void testSockJsAndJsonSessionsAreUnchanged()
+    {
+        // SockJS 会话无法传输二进制帧，即使请求 CBOR 也保持 JSON
+        this.negotiator.onSessionConnect(connect("sockjs", "application/cbor", false));
+        this.negotiator.onSessionConnect(connect("plain", null, true));
+
+        final var json = "{}".getBytes(StandardCharsets.UTF_8);
+
+        for (final var sessionId : new String[]{"sockjs", "plain"})
+        {
+            final var message = outbound(sessionId, json);
+
+            assertSame(message, this.negotiator.preSend(message, this.channel));
+            assertFalse(this.negotiator.isCborSession(sessionId));
+        }
+    }
+
+    @Test
+    void testDisconnectRemovesSession()
+    {
+        this.negotiator.onSessionConnect(connect("s1", "application/json, application/cbor", true));
+        assertTrue(this.negotiator.isCborSession("s1"));
+
+        this.negotiator.onSessionDisconnect(new SessionDisconnectEvent(this,
+                                                                       outbound("s1", new byte[0]),
+                                                                       "s1",
+                                                                       CloseStatus.NORMAL));
+
+        assertFalse(this.negotiator.isCborSession("s1"));
+    }
+
+    @Test
+    void testCborConverterRoundTripsChatMessage()
+    {
+        // 准备测试数据：带 LocalDateTime 的客户端消息
+        final var chatMessage = ChatMessage.builder()
+                                           .senderId("alice")
+                                           .receiverId("bob")
+                                           .content("hello")
+                                           .timestamp(LocalDateTime.of(2024, 10, 1, 12, 30))
+                                           .build();
+        final var converter   = this.payloadCodecs.cborConverter();
+
+        final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(PayloadCodecs.APPLICATION_CBOR);
+
+        final var encoded = converter.toMessage(chatMessage, accessor.getMessageHeaders());
+        final var decoded = (ChatMessage) converter.fromMessage(encoded, ChatMessage.class);
+
+        // 验证结果
+        assertNotNull(decoded);
+        assertEquals("alice", decoded.getSenderId());
+        assertEquals(chatMessage.getTimestamp(), decoded.getTimestamp());
+
+        // 未声明 CBOR 的消息交给 JSON 转换器处理
+        assertNull(converter.fromMessage(MessageBuilder.withPayload("{}".getBytes(StandardCharsets.UTF_8))
+                                                       .build(), ChatMessage.class));
+    }
+
+    private static SessionConnectEvent connect(final String sessionId, final String accept, final boolean binaryFrames)
+    {
+        final var accessor   = StompHeaderAccessor.create(StompCommand.CONNECT);
+        final var attributes = new HashMap<String, Object>();
+
+        if (binaryFrames)
+        {
+            attributes.put(PayloadFormatNegotiator.BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+        }
+
+        if (accept != null)
+        {
+            accessor.setNativeHeader(PayloadFormatNegotiator.ACCEPT_HEADER, accept);
+        }
+
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+
+        return new SessionConnectEvent(PayloadFormatNegotiatorTest.class,
+                                       MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static Message<byte[]> outbound(final String sessionId, final byte[] payload)
+    {
+        final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,62 @@
+package org.ovo307000.chat.config;
+
+import com.mongodb.client.MongoClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ovo307000.chat.migration.ChatRoomMigration;
+import org.ovo307000.chat.repository.ChatMessageRepository;
+import org.ovo307000.chat.repository.ReactiveChatMessageRepository;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.storage.InMemoryStorageEngine;
+import org.ovo307000.chat.storage.ReactiveChatMessageStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存存储引擎下应用在没有 MongoDB 的环境中（端口指向不可用的地址）也能启动，且不创建任何 MongoDB 相关的 Bean
+ */
+@SpringBootTest(properties = {"chat.storage.engine=memory", "spring.data.mongodb.port=1"})
+class MemoryStorageEngineContextTest
+{
+    @TempDir
+    static Path directory;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @DynamicPropertySource
+    static void directories(final DynamicPropertyRegistry registry)
+    {
+        // 归档、搜索索引和快照写入临时目录，不污染工作目录
+        registry.add("chat.archive.directory", () -> directory.resolve("archive").toString());
+        registry.add("chat.search.directory", () -> directory.resolve("search").toString());
+        registry.add("chat.storage.snapshot-directory", () -> directory.resolve("storage").toString());
+    }
+
+    @Test
+    void testContextStartsWithoutMongo()
+    {
+        // 验证结果：存储接口由内存引擎实现
+        assertInstanceOf(InMemoryStorageEngine.class, this.applicationContext.getBean(ChatMessageStore.class));
+        assertNotNull(this.applicationContext.getBean(ReactiveChatMessageStore.class));
+
+        // 验证结果：MongoDB 的客户端、模板、仓库和迁移都没有注册
+        for (final var type : new Class<?>[]{MongoClient.class,
+                                             com.mongodb.reactivestreams.client.MongoClient.class,
+                                             MongoTemplate.class,
+                                             ChatMessageRepository.class,
+                                             ReactiveChatMessageRepository.class,
+                                             ChatRoomMigration.class})
+        {
+            assertEquals(0, this.applicationContext.getBeanNamesForType(type).length, type.getName());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.ovo307000.chat.config;
+
+import org.junit.jupiter.api.Test;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.codec.PayloadFormatNegotiator;
+import org.ovo307000.chat.inbound.InboundRateLimiter;
+import org.ovo307000.chat.inbound.SessionStripedExecutor;
+import org.ovo307000.chat.metrics.ReceiveTimestampInterceptor;
+import org.ovo307000.chat.outbound.NotificationCoalescer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class WebsocketConfigTest
+{
+    @Test
+    void testBrokerUsesOnlyPayloadCodecsConverters()
+    {
+        // 准备测试数据
+        final var payloadCodecs = new PayloadCodecs(Jackson2ObjectMapperBuilder.json()
+                                                                               .build(),
+                                                    Jackson2ObjectMapperBuilder.json());
+        final var websocketConfig = new WebsocketConfig(payloadCodecs,
+                                                        mock(PayloadFormatNegotiator.class),
+                                                        mock(NotificationCoalescer.class),
+                                                        mock(ReceiveTimestampInterceptor.class),
+                                                        mock(InboundRateLimiter.class),
+                                                        mock(SessionStripedExecutor.class),
+                                                        new ChatProperties());
+
+        final var configuration = new DelegatingWebSocketMessageBrokerConfiguration();
+        configuration.setConfigurers(List.of(websocketConfig));
+
+        // 调用被测试的方法
+        final var converters = configuration.brokerMessageConverter()
+                                            .getConverters();
+
+        // 验证结果：只有 CBOR 和 JSON 两个转换器，没有追加带独立 ObjectMapper 的默认转换器
+        assertEquals(List.of(payloadCodecs.getCborMapper(), payloadCodecs.getJsonMapper()),
+                     converters.stream()
+                               .map(converter -> ((MappingJackson2MessageConverter) converter).getObjectMapper())
+                               .toList());
+    }
+}
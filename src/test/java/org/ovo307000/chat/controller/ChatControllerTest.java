@@ -1,18 +1,33 @@
 package org.ovo307000.chat.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
 import org.ovo307000.chat.module.dto.ChatNotificationDTO;
 import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
 import org.ovo307000.chat.service.ChatMessageService;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.ovo307000.chat.service.GroupRoomService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,7 +39,21 @@ class ChatControllerTest
     private ChatMessageService chatMessageService;
 
     @Mock
-    private SimpMessagingTemplate brokerMessagingTemplate;
+    private NotificationDispatcher notificationDispatcher;
+
+    @Mock
+    private GroupRoomService groupRoomService;
+
+    // 使用内存中的指标注册表，便于断言记录的指标
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ChatMetrics chatMetrics = new ChatMetrics(this.meterRegistry);
+
+    // 与 Spring Boot 配置相同的 ObjectMapper（含 JSR-310 模块）
+    @Spy
+    private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                                                                  .build();
 
     @InjectMocks
     private ChatController chatController;
@@ -56,30 +85,124 @@ class ChatControllerTest
                                                                   .plusMinutes(1)));
 
         // 模拟服务方法
-        when(this.chatMessageService.fetchChatMessagesAsync(senderId,
-                                                            receiverId)).thenReturn(CompletableFuture.completedFuture(
+        when(this.chatMessageService.resolvePageSize(null)).thenReturn(50);
+        when(this.chatMessageService.fetchChatMessagePageAsync(senderId,
+                                                               receiverId,
+                                                               null,
+                                                               null,
+                                                               50)).thenReturn(CompletableFuture.completedFuture(
                 messages));
 
         // 执行测试
-        var response = this.chatController.fetchChatMessages(senderId, receiverId);
+        var response = this.chatController.fetchChatMessages(senderId, receiverId, null, null, null);
 
         // 验证结果
         assertNotNull(response);
-        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(200, response.getStatusCode()
+                                  .value());
         assertEquals(2,
                      response.getBody()
+                             .messages()
                              .size());
         assertEquals("Hello",
                      response.getBody()
+                             .messages()
                              .get(0)
                              .content());
         assertEquals("Hi",
                      response.getBody()
+                             .messages()
                              .get(1)
                              .content());
+        assertFalse(response.getBody()
+                            .hasMore());
+        assertEquals(ChatMessageCursor.of(messages.get(0))
+                                      .encode(),
+                     response.getBody()
+                             .beforeCursor());
 
         // 验证服务方法被调用
-        verify(this.chatMessageService, times(1)).fetchChatMessagesAsync(senderId, receiverId);
+        verify(this.chatMessageService, times(1)).fetchChatMessagePageAsync(senderId, receiverId, null, null, 50);
+    }
+
+    @Test
+    void testFetchChatMessagesHasMore()
+    {
+        // 准备测试数据：页大小为 1，返回 2 条说明还有更早的消息
+        var senderId   = "sender1";
+        var receiverId = "receiver1";
+        var cursor     = new ChatMessageCursor(LocalDateTime.now(), "3");
+        var messages = Arrays.asList(new ChatMessage("1",
+                                                     "chatRoom1",
+                                                     senderId,
+                                                     receiverId,
+                                                     "Hello",
+                                                     LocalDateTime.now()),
+                                     new ChatMessage("2",
+                                                     "chatRoom1",
+                                                     receiverId,
+                                                     senderId,
+                                                     "Hi",
+                                                     LocalDateTime.now()
+                                                                  .plusMinutes(1)));
+
+        // 模拟服务方法
+        when(this.chatMessageService.resolvePageSize(1)).thenReturn(1);
+        when(this.chatMessageService.fetchChatMessagePageAsync(eq(senderId),
+                                                               eq(receiverId),
+                                                               eq(cursor),
+                                                               isNull(),
+                                                               eq(1))).thenReturn(CompletableFuture.completedFuture(
+                messages));
+
+        // 执行测试
+        var response = this.chatController.fetchChatMessages(senderId, receiverId, cursor.encode(), null, 1);
+
+        // 验证结果：向前翻页时丢弃最旧的一条
+        assertEquals(200, response.getStatusCode()
+                                  .value());
+        assertTrue(response.getBody()
+                           .hasMore());
+        assertEquals(1,
+                     response.getBody()
+                             .messages()
+                             .size());
+        assertEquals("Hi",
+                     response.getBody()
+                             .messages()
+                             .get(0)
+                             .content());
+    }
+
+    @Test
+    void testFetchChatMessagesWithInvalidCursor()
+    {
+        // 执行测试：格式错误的游标和同时指定 before/after 都返回 400
+        var malformed = this.chatController.fetchChatMessages("sender1", "receiver1", "not-a-cursor", null, null);
+        var both      = this.chatController.fetchChatMessages("sender1", "receiver1", "a", "b", null);
+
+        // 验证结果
+        assertEquals(400, malformed.getStatusCode()
+                                   .value());
+        assertEquals(400, both.getStatusCode()
+                              .value());
+        verify(this.chatMessageService, never()).fetchChatMessagePageAsync(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void testFetchChatMessagesChatRoomNotFound()
+    {
+        // 模拟聊天室不存在
+        when(this.chatMessageService.resolvePageSize(null)).thenReturn(50);
+        when(this.chatMessageService.fetchChatMessagePageAsync("sender1", "nobody", null, null, 50)).thenThrow(
+                new IllegalArgumentException("Chat room not found"));
+
+        // 执行测试
+        var response = this.chatController.fetchChatMessages("sender1", "nobody", null, null, null);
+
+        // 验证结果：与增量同步和导出接口一样返回 404
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNull(response.getBody());
     }
 
     @Test
@@ -90,15 +213,20 @@ class ChatControllerTest
         var receiverId = "receiver1";
 
         // 模拟服务方法抛出异常
-        when(this.chatMessageService.fetchChatMessagesAsync(senderId,
-                                                            receiverId)).thenReturn(CompletableFuture.failedFuture(
+        when(this.chatMessageService.resolvePageSize(null)).thenReturn(50);
+        when(this.chatMessageService.fetchChatMessagePageAsync(senderId,
+                                                               receiverId,
+                                                               null,
+                                                               null,
+                                                               50)).thenReturn(CompletableFuture.failedFuture(
                 new RuntimeException("Test exception")));
 
         // 执行测试并验证异常
-        assertThrows(RuntimeException.class, () -> this.chatController.fetchChatMessages(senderId, receiverId));
+        assertThrows(RuntimeException.class,
+                     () -> this.chatController.fetchChatMessages(senderId, receiverId, null, null, null));
 
         // 验证服务方法被调用
-        verify(this.chatMessageService, times(1)).fetchChatMessagesAsync(senderId, receiverId);
+        verify(this.chatMessageService, times(1)).fetchChatMessagePageAsync(senderId, receiverId, null, null, 50);
     }
 
     @Test
@@ -112,14 +240,46 @@ class ChatControllerTest
                                           "Hello",
                                           LocalDateTime.now());
 
+        // 模拟服务方法
+        when(this.chatMessageService.saveChatMessageAsync(chatMessage)).thenReturn(CompletableFuture.completedFuture(
+                chatMessage));
+
         // 执行测试
-        this.chatController.processChatMessage(chatMessage);
+        this.chatController.processChatMessage(chatMessage, null);
 
         // 验证服务方法被调用
         verify(this.chatMessageService, times(1)).saveChatMessageAsync(chatMessage);
-        verify(this.brokerMessagingTemplate, times(1)).convertAndSendToUser(eq("receiver1"),
-                                                                            eq("/queue/messages"),
-                                                                            any(ChatNotificationDTO.class));
+        verify(this.notificationDispatcher, times(1)).sendToUsers(any(ChatNotificationDTO.class), eq(List.of("receiver1")));
+
+        // 验证记录了一次处理耗时
+        assertEquals(1,
+                     this.meterRegistry.get("chat.message.process")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testProcessGroupChatMessage()
+    {
+        // 准备测试数据：发给群聊的消息
+        var chatMessage = new ChatMessage("1",
+                                          "group:1",
+                                          "sender1",
+                                          "group:1",
+                                          "Hello",
+                                          LocalDateTime.now());
+
+        when(this.chatMessageService.saveChatMessageAsync(chatMessage)).thenReturn(CompletableFuture.completedFuture(
+                chatMessage));
+        when(this.groupRoomService.onlineRecipientsOf("group:1", "sender1")).thenReturn(List.of("m1", "m2", "m3"));
+
+        // 执行测试
+        this.chatController.processChatMessage(chatMessage, null);
+
+        // 验证结果：消息只保存一次，一次发送到所有在线成员的个人队列
+        verify(this.chatMessageService, times(1)).saveChatMessageAsync(chatMessage);
+        verify(this.notificationDispatcher, times(1)).sendToUsers(any(ChatNotificationDTO.class),
+                                                                  eq(List.of("m1", "m2", "m3")));
     }
 
     @Test
@@ -138,12 +298,108 @@ class ChatControllerTest
                                                        .saveChatMessageAsync(chatMessage);
 
         // 执行测试
-        assertDoesNotThrow(() -> this.chatController.processChatMessage(chatMessage));
+        assertDoesNotThrow(() -> this.chatController.processChatMessage(chatMessage, null));
 
         // 验证服务方法被调用，但不会发送消息
         verify(this.chatMessageService, times(1)).saveChatMessageAsync(chatMessage);
-        verify(this.brokerMessagingTemplate, never()).convertAndSendToUser(anyString(),
-                                                                           anyString(),
-                                                                           any(ChatNotificationDTO.class));
+        verify(this.notificationDispatcher, never()).sendToUsers(any(ChatNotificationDTO.class), anyCollection());
+    }
+
+    @Test
+    void testExportChatMessages() throws Exception
+    {
+        // 准备测试数据
+        var timestamp = LocalDateTime.of(2024, 10, 1, 12, 0);
+        var closed    = new AtomicBoolean();
+        var messages = Stream.of(new ChatMessage("1", "chatRoom1", "sender1", "receiver1", "Hello", timestamp),
+                                 new ChatMessage("2", "chatRoom1", "receiver1", "sender1", "Hi\nthere", timestamp))
+                             .onClose(() -> closed.set(true));
+
+        when(this.chatMessageService.streamChatMessages("sender1", "receiver1")).thenReturn(messages);
+
+        // 执行测试
+        var response = this.chatController.exportChatMessages("sender1", "receiver1");
+        var output   = new ByteArrayOutputStream();
+
+        assertNotNull(response.getBody());
+        response.getBody()
+                .writeTo(output);
+
+        // 验证结果：每行一个 JSON 对象，写完后关闭数据库游标
+        var lines = output.toString(StandardCharsets.UTF_8)
+                          .split("\n");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON,
+                     response.getHeaders()
+                             .getContentType());
+        assertTrue(output.toString(StandardCharsets.UTF_8)
+                         .endsWith("\n"));
+        assertEquals(2, lines.length);
+        assertEquals("Hi\nthere",
+                     this.objectMapper.readValue(lines[1], Map.class)
+                                      .get("content"));
+        assertEquals("1",
+                     this.objectMapper.readValue(lines[0], Map.class)
+                                      .get("id"));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void testExportChatMessagesChatRoomNotFound()
+    {
+        // 模拟聊天室不存在
+        when(this.chatMessageService.streamChatMessages("sender1", "nobody")).thenThrow(new IllegalArgumentException(
+                "Chat room not found"));
+
+        // 执行测试
+        var response = this.chatController.exportChatMessages("sender1", "nobody");
+
+        // 验证结果
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void testFetchChatMessagesSince()
+    {
+        // 准备测试数据
+        var message = new ChatMessage("5", "chatRoom1", 5L, "sender1", "receiver1", "Hello", LocalDateTime.now());
+
+        when(this.chatMessageService.resolveDeltaSize(null)).thenReturn(500);
+        when(this.chatMessageService.fetchChatMessagesSinceAsync("sender1", "receiver1", 4L, 500)).thenReturn(
+                CompletableFuture.completedFuture(new ChatMessageService.ChatMessageDelta(List.of(message), 5L, false)));
+
+        // 执行测试
+        var response = this.chatController.fetchChatMessagesSince("sender1", "receiver1", 4L, null);
+
+        // 验证结果
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(5L, response.getBody()
+                                 .lastSeq());
+        assertFalse(response.getBody()
+                            .hasMore());
+        assertEquals(5L,
+                     response.getBody()
+                             .messages()
+                             .get(0)
+                             .seq());
+    }
+
+    @Test
+    void testFetchChatMessagesSinceInvalidRequests()
+    {
+        // 模拟聊天室不存在
+        when(this.chatMessageService.fetchChatMessagesSinceAsync(eq("sender1"), eq("nobody"), anyLong(), anyInt()))
+                .thenThrow(new IllegalArgumentException("Chat room not found"));
+
+        // 验证结果：负数序号返回 400，聊天室不存在返回 404
+        assertEquals(HttpStatus.BAD_REQUEST,
+                     this.chatController.fetchChatMessagesSince("sender1", "receiver1", -1L, null)
+                                        .getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND,
+                     this.chatController.fetchChatMessagesSince("sender1", "nobody", 0L, null)
+                                        .getStatusCode());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,183 @@
+package org.ovo307000.chat.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.ovo307000.chat.broker.ShardedBrokerMessageHandler;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.outbound.NotificationDispatcher;
+import org.ovo307000.chat.service.ChatMessageService;
+import org.ovo307000.chat.service.GroupRoomService;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.DefaultUserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 群聊扇出经过真实的用户目的地处理和消息代理，代理前缀与 WebsocketConfig 相同（/user、/topic）
+ */
+class GroupFanOutIntegrationTest
+{
+    private final Queue<Message<?>> outbound = new ConcurrentLinkedQueue<>();
+
+    private final SubscribableChannel clientInboundChannel = new ExecutorSubscribableChannel();
+    private final SubscribableChannel brokerChannel        = new ExecutorSubscribableChannel();
+
+    private final ChatMessageService chatMessageService = mock(ChatMessageService.class);
+    private final GroupRoomService   groupRoomService   = mock(GroupRoomService.class);
+
+    private AbstractBrokerMessageHandler  broker;
+    private UserDestinationMessageHandler userDestinationMessageHandler;
+    private ChatController                chatController;
+
+    @AfterEach
+    void tearDown()
+    {
+        this.userDestinationMessageHandler.stop();
+        this.broker.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"simple", "sharded"})
+    void testGroupMessageReachesOnlineMembers(final String mode)
+    {
+        this.start(mode);
+
+        // 准备测试数据：与客户端一样订阅 /user/{用户ID}/queue/messages，bob 有两个会话，dave 不是在线成员
+        this.subscribe("b1", "bob");
+        this.subscribe("b2", "bob");
+        this.subscribe("c1", "carol");
+        this.subscribe("d1", "dave");
+
+        final var chatMessage = new ChatMessage("1", "group:1", "alice", "group:1", "hello", LocalDateTime.now());
+
+        when(this.chatMessageService.saveChatMessageAsync(chatMessage)).thenReturn(CompletableFuture.completedFuture(
+                chatMessage));
+        when(this.groupRoomService.onlineRecipientsOf("group:1", "alice")).thenReturn(List.of("bob", "carol"));
+
+        // 调用被测试的方法
+        this.chatController.processChatMessage(chatMessage, null);
+
+        // 验证结果：在线成员的每个会话都收到一次，所有会话共享同一个负载
+        final var delivered = this.awaitMessages(3);
+
+        assertEquals(List.of("b1", "b2", "c1"),
+                     delivered.stream()
+                              .map(message -> SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))
+                              .sorted()
+                              .toList());
+        delivered.forEach(message -> assertSame(delivered.get(0)
+                                                         .getPayload(), message.getPayload()));
+        assertTrue(new String((byte[]) delivered.get(0)
+                                                .getPayload()).contains("\"content\":\"hello\""));
+    }
+
+    private void start(final String mode)
+    {
+        final var prefixes = List.of("/user", "/topic");
+
+        this.broker = "sharded".equals(mode)
+                      ? new ShardedBrokerMessageHandler(this.clientInboundChannel,
+                                                        (message, timeout) -> this.outbound.add(message),
+                                                        this.brokerChannel,
+                                                        prefixes,
+                                                        4)
+                      : new SimpleBrokerMessageHandler(this.clientInboundChannel,
+                                                       (message, timeout) -> this.outbound.add(message),
+                                                       this.brokerChannel,
+                                                       prefixes);
+        this.userDestinationMessageHandler = new UserDestinationMessageHandler(this.clientInboundChannel,
+                                                                               this.brokerChannel,
+                                                                               new DefaultUserDestinationResolver(new DefaultSimpUserRegistry()));
+        this.broker.start();
+        this.userDestinationMessageHandler.start();
+
+        final var payloadCodecs = new PayloadCodecs(Jackson2ObjectMapperBuilder.json()
+                                                                               .build(),
+                                                    Jackson2ObjectMapperBuilder.json());
+        final var template      = new SimpMessagingTemplate(this.brokerChannel);
+        template.setMessageConverter(new CompositeMessageConverter(List.of(payloadCodecs.cborConverter(),
+                                                                           payloadCodecs.jsonConverter())));
+
+        this.chatController = new ChatController(this.chatMessageService,
+                                                 new NotificationDispatcher(template),
+                                                 new ChatMetrics(new SimpleMeterRegistry()),
+                                                 payloadCodecs.getJsonMapper(),
+                                                 this.groupRoomService);
+    }
+
+    private void subscribe(final String sessionId, final String userId)
+    {
+        // SimpleBroker 只向已经 CONNECT 的会话投递
+        final var connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+
+        this.clientInboundChannel.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/user/" + userId + NotificationDispatcher.MESSAGES_QUEUE);
+
+        this.clientInboundChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private List<Message<?>> awaitMessages(final int count)
+    {
+        final var deadline = System.nanoTime() + 5_000_000_000L;
+
+        while (this.messages()
+                   .size() < count && System.nanoTime() < deadline)
+        {
+            Thread.onSpinWait();
+        }
+
+        // 再等一会儿，确认没有多余的投递
+        final var settle = System.nanoTime() + 100_000_000L;
+
+        while (System.nanoTime() < settle)
+        {
+            Thread.onSpinWait();
+        }
+
+        return this.messages();
+    }
+
+    private List<Message<?>> messages()
+    {
+        final var messages = new ArrayList<Message<?>>();
+
+        for (final var message : this.outbound)
+        {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE)
+            {
+                messages.add(message);
+            }
+        }
+
+        return messages;
+    }
+}
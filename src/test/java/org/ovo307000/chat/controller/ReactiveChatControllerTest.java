@@ -0,0 +1,93 @@
+package org.ovo307000.chat.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.service.ReactiveChatMessageService;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ReactiveChatControllerTest
+{
+    @Mock
+    private ReactiveChatMessageService reactiveChatMessageService;
+
+    @InjectMocks
+    private ReactiveChatController reactiveChatController;
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testFetchChatMessages()
+    {
+        // 准备测试数据
+        var messages = List.of(new ChatMessage("1", "chatRoom1", "sender1", "receiver1", "Hello", LocalDateTime.now()));
+
+        when(this.reactiveChatMessageService.resolvePageSize(null)).thenReturn(50);
+        when(this.reactiveChatMessageService.fetchChatMessagePage("sender1",
+                                                                  "receiver1",
+                                                                  null,
+                                                                  null,
+                                                                  50)).thenReturn(Mono.just(messages));
+
+        // 执行测试
+        var response = this.reactiveChatController.fetchChatMessages("sender1", "receiver1", null, null, null)
+                                                  .block();
+
+        // 验证结果
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(1,
+                     response.getBody()
+                             .messages()
+                             .size());
+        assertFalse(response.getBody()
+                            .hasMore());
+    }
+
+    @Test
+    void testFetchChatMessagesWithInvalidCursor()
+    {
+        // 执行测试：无法解码的游标
+        var response = this.reactiveChatController.fetchChatMessages("sender1", "receiver1", "%%%", null, null)
+                                                  .block();
+
+        // 验证结果
+        assertNotNull(response);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(this.reactiveChatMessageService, never()).fetchChatMessagePage(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void testFetchChatMessagesChatRoomNotFound()
+    {
+        when(this.reactiveChatMessageService.resolvePageSize(null)).thenReturn(50);
+        when(this.reactiveChatMessageService.fetchChatMessagePage("sender1",
+                                                                  "nobody",
+                                                                  null,
+                                                                  null,
+                                                                  50)).thenReturn(Mono.error(new IllegalArgumentException(
+                "Chat room not found")));
+
+        var response = this.reactiveChatController.fetchChatMessages("sender1", "nobody", null, null, null)
+                                                  .block();
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+}
@@ -5,12 +5,17 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.module.dto.ReadCursorDTO;
+import org.ovo307000.chat.module.dto.UnreadBundleDTO;
 import org.ovo307000.chat.module.entity.User;
 import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.ovo307000.chat.service.UnreadService;
 import org.ovo307000.chat.service.UserService;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
@@ -23,6 +28,12 @@ class UserControllerTest
     @Mock
     private UserService userService;
 
+    @Mock
+    private UnreadService unreadService;
+
+    @Mock
+    private SimpMessagingTemplate brokerMessagingTemplate;
+
     @InjectMocks
     private UserController userController;
 
@@ -43,10 +54,10 @@ class UserControllerTest
 
         // 模拟服务方法
         doNothing().when(this.userService)
-                   .saveUserAsync(user);
+                   .saveUserAsync(user, "session1");
 
         // 执行测试
-        var response = this.userController.addUser(user);
+        var response = this.userController.addUser(user, "session1");
 
         // 验证结果
         assertNotNull(response);
@@ -62,7 +73,7 @@ class UserControllerTest
                              .status());
 
         // 验证服务方法被调用
-        verify(this.userService, times(1)).saveUserAsync(user);
+        verify(this.userService, times(1)).saveUserAsync(user, "session1");
     }
 
     @Test
@@ -76,10 +87,12 @@ class UserControllerTest
 
         // 模拟服务方法
         doNothing().when(this.userService)
-                   .updateStatusToOnlineAsync(user);
+                   .updateStatusToOnlineAsync(user, "session1");
+        var bundle = new UnreadBundleDTO("testUser", List.of());
+        when(this.unreadService.fetchUnreadAsync("testUser")).thenReturn(CompletableFuture.completedFuture(bundle));
 
         // 执行测试
-        var response = this.userController.connectUser(user);
+        var response = this.userController.connectUser(user, "session1");
 
         // 验证结果
         assertNotNull(response);
@@ -94,8 +107,24 @@ class UserControllerTest
                      response.getBody()
                              .status());
 
+        // 验证服务方法被调用，且未读摘要被发送到用户的个人队列
+        verify(this.userService, times(1)).updateStatusToOnlineAsync(user, "session1");
+        verify(this.brokerMessagingTemplate, times(1)).convertAndSendToUser("testUser", "/queue/unread", bundle);
+    }
+
+    @Test
+    void testMarkRead()
+    {
+        // 模拟聊天室不存在
+        doThrow(new IllegalArgumentException("Chat room not found")).when(this.unreadService)
+                                                                    .markRead("user1", "nobody", 3L);
+
+        // 执行测试：无效的读取位置被忽略，不影响后续上报
+        this.userController.markRead(new ReadCursorDTO("user1", "nobody", 3L));
+        this.userController.markRead(new ReadCursorDTO("user1", "user2", 5L));
+
         // 验证服务方法被调用
-        verify(this.userService, times(1)).updateStatusToOnlineAsync(user);
+        verify(this.unreadService, times(1)).markRead("user1", "user2", 5L);
     }
 
     @Test
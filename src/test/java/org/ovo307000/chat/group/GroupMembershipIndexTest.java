@@ -0,0 +1,102 @@
+package org.ovo307000.chat.group;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.ovo307000.chat.storage.GroupRoomStore;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GroupMembershipIndexTest
+{
+    @Mock
+    private GroupRoomStore groupRoomStore;
+
+    private PresenceRegistry     presenceRegistry;
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+
+        this.presenceRegistry     = new PresenceRegistry();
+        this.groupMembershipIndex = new GroupMembershipIndex(this.groupRoomStore, this.presenceRegistry);
+    }
+
+    @Test
+    void testOnlyOnlineMembersAreIndexed()
+    {
+        // 准备测试数据：alice 和 bob 都是两个群聊的成员，只有 alice 在线
+        when(this.groupRoomStore.findByMemberIds("alice")).thenReturn(List.of(group("group:1"),
+                                                                              group("group:2")));
+        this.presenceRegistry.connect("s1", "alice", null);
+
+        // 调用被测试的方法
+        this.groupMembershipIndex.userOnline("alice");
+
+        // 验证结果：在线成员可以直接从索引中判断，离线成员需要查询数据库
+        assertEquals(Set.of("alice"), this.groupMembershipIndex.onlineMembers("group:1"));
+        assertEquals(Set.of("alice"), this.groupMembershipIndex.onlineMembers("group:2"));
+        assertEquals(Boolean.TRUE, this.groupMembershipIndex.isMember("group:1", "alice"));
+        assertEquals(Boolean.FALSE, this.groupMembershipIndex.isMember("group:3", "alice"));
+        assertNull(this.groupMembershipIndex.isMember("group:1", "bob"));
+
+        // 下线后从所有群聊中移除
+        this.presenceRegistry.disconnect("s1");
+        this.groupMembershipIndex.userOffline("alice");
+
+        assertTrue(this.groupMembershipIndex.onlineMembers("group:1")
+                                            .isEmpty());
+        assertNull(this.groupMembershipIndex.isMember("group:1", "alice"));
+    }
+
+    @Test
+    void testUserGoingOfflineWhileLoadingIsNotIndexed()
+    {
+        // 加载群聊期间用户已经下线
+        when(this.groupRoomStore.findByMemberIds("alice")).thenReturn(List.of(group("group:1")));
+
+        this.groupMembershipIndex.userOnline("alice");
+
+        // 验证结果
+        assertTrue(this.groupMembershipIndex.onlineMembers("group:1")
+                                            .isEmpty());
+        assertNull(this.groupMembershipIndex.isMember("group:1", "alice"));
+    }
+
+    @Test
+    void testMembershipChangesOfOnlineUser()
+    {
+        when(this.groupRoomStore.findByMemberIds("alice")).thenReturn(List.of());
+        this.presenceRegistry.connect("s1", "alice", null);
+        this.groupMembershipIndex.userOnline("alice");
+
+        // 在线用户加入和退出群聊时立即更新索引
+        this.groupMembershipIndex.memberAdded("group:1", "alice");
+        assertEquals(Set.of("alice"), this.groupMembershipIndex.onlineMembers("group:1"));
+
+        this.groupMembershipIndex.memberRemoved("group:1", "alice");
+        assertTrue(this.groupMembershipIndex.onlineMembers("group:1")
+                                            .isEmpty());
+
+        // 离线用户的成员变更不进入索引
+        this.groupMembershipIndex.memberAdded("group:1", "bob");
+        assertTrue(this.groupMembershipIndex.onlineMembers("group:1")
+                                            .isEmpty());
+    }
+
+    private static GroupRoom group(final String id)
+    {
+        return GroupRoom.builder()
+                        .id(id)
+                        .build();
+    }
+}
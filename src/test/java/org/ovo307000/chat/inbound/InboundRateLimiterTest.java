@@ -0,0 +1,244 @@
+package org.ovo307000.chat.inbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class InboundRateLimiterTest
+{
+    @Mock
+    private PresenceRegistry presenceRegistry;
+
+    @Mock
+    private MessageChannel channel;
+
+    @Mock
+    private MessageChannel clientOutboundChannel;
+
+    @Mock
+    private ObjectProvider<MessageChannel> clientOutboundChannelProvider;
+
+    private ChatProperties chatProperties;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+
+        when(this.clientOutboundChannelProvider.getObject()).thenReturn(this.clientOutboundChannel);
+        when(this.presenceRegistry.userOf(anyString())).thenReturn(Optional.empty());
+
+        this.chatProperties = new ChatProperties();
+        this.chatProperties.getRateLimit()
+                           .setRules(List.of(new ChatProperties.RateLimit.Rule("/app/chat", 0.001, 3, 0.001, 2)));
+    }
+
+    @Test
+    void testSessionBurstIsEnforcedWithErrorFrame()
+    {
+        this.chatProperties.getRateLimit()
+                           .setRejectAction(ChatProperties.RateLimit.RejectAction.ERROR);
+
+        final var limiter = this.limiter();
+
+        // 调用被测试的方法：会话的桶容量为 2
+        assertNotNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertNotNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertNull(limiter.preSend(send("s1", "/app/chat", "r-1"), this.channel));
+
+        // 其他会话、未配置规则的目的地和非 SEND 帧不受影响
+        assertNotNull(limiter.preSend(send("s2", "/app/chat", null), this.channel));
+        assertNotNull(limiter.preSend(send("s1", "/app/user.markRead", null), this.channel));
+
+        final var subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setSessionId("s1");
+        subscribe.setDestination("/app/chat");
+        subscribe.setSubscriptionId("sub-0");
+        assertNotNull(limiter.preSend(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()),
+                                      this.channel));
+
+        // 验证结果：向被拒绝的会话发送带 receipt-id 和 retry-after 的 ERROR 帧
+        final var captor = ArgumentCaptor.forClass(Message.class);
+        verify(this.clientOutboundChannel).send(captor.capture());
+
+        final var error = StompHeaderAccessor.wrap(captor.getValue());
+        assertEquals(StompCommand.ERROR, error.getCommand());
+        assertEquals("s1", error.getSessionId());
+        assertEquals("r-1", error.getReceiptId());
+        assertTrue(Long.parseLong(error.getFirstNativeHeader(InboundRateLimiter.RETRY_AFTER_HEADER)) > 0);
+        assertEquals(1,
+                     this.meterRegistry.get("chat.inbound.rate.limited")
+                                       .tag("scope", "session")
+                                       .counter()
+                                       .count());
+    }
+
+    @Test
+    void testUserBucketIsSharedAcrossSessions()
+    {
+        this.chatProperties.getRateLimit()
+                           .setRejectAction(ChatProperties.RateLimit.RejectAction.DROP);
+        when(this.presenceRegistry.userOf("s1")).thenReturn(Optional.of("alice"));
+        when(this.presenceRegistry.userOf("s2")).thenReturn(Optional.of("alice"));
+
+        final var limiter = this.limiter();
+
+        // 调用被测试的方法：用户的桶容量为 3，两个会话共用
+        assertNotNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertNotNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertNotNull(limiter.preSend(send("s2", "/app/chat", null), this.channel));
+        assertNull(limiter.preSend(send("s2", "/app/chat", null), this.channel));
+
+        // 验证结果：drop 只丢弃帧
+        verifyNoInteractions(this.clientOutboundChannel);
+        assertEquals(1,
+                     this.meterRegistry.get("chat.inbound.rate.limited")
+                                       .tag("scope", "user")
+                                       .counter()
+                                       .count());
+    }
+
+    @Test
+    void testUserRejectionDoesNotSpendSessionToken()
+    {
+        when(this.presenceRegistry.userOf("s1")).thenReturn(Optional.of("alice"));
+        when(this.presenceRegistry.userOf("s2")).thenReturn(Optional.of("alice"));
+
+        final var limiter = this.limiter();
+
+        // 准备测试数据：s2 用完用户剩余的令牌，s1 的会话桶还剩一个令牌
+        assertNotNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertNotNull(limiter.preSend(send("s2", "/app/chat", null), this.channel));
+        assertNotNull(limiter.preSend(send("s2", "/app/chat", null), this.channel));
+
+        // 调用被测试的方法：被用户维度拒绝
+        assertNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+
+        // 验证结果：s1 换成另一个用户后，会话桶里仍有被归还的令牌
+        when(this.presenceRegistry.userOf("s1")).thenReturn(Optional.of("bob"));
+
+        assertNotNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertNull(limiter.preSend(send("s1", "/app/chat", null), this.channel));
+        assertEquals(1,
+                     this.meterRegistry.get("chat.inbound.rate.limited")
+                                       .tag("scope", "session")
+                                       .counter()
+                                       .count());
+
+        // 默认 reject-action 为 drop，不发送会导致断开的 ERROR 帧
+        verifyNoInteractions(this.clientOutboundChannel);
+    }
+
+    @Test
+    void testBucketsAreEvictedWhenIdleOrDisconnected()
+    {
+        // 准备测试数据：速率很高，用过的桶立即补满
+        this.chatProperties.getRateLimit()
+                           .setRules(List.of(new ChatProperties.RateLimit.Rule("/app/chat", 1e9, 1, 1e9, 1)));
+
+        final var limiter = this.limiter();
+
+        limiter.preSend(send("s1", "/app/chat", null), this.channel);
+        limiter.preSend(send("s2", "/app/chat", null), this.channel);
+        assertEquals(2, limiter.size());
+
+        // 调用被测试的方法：会话断开时回收它的桶，用户没有上线，其他会话的桶还没有达到空闲时间
+        limiter.onSessionDisconnect(this.disconnect("s1"));
+        limiter.evictIdleBuckets();
+        assertEquals(1, limiter.size());
+
+        // 验证结果：超过空闲时间后回收
+        this.chatProperties.getRateLimit()
+                           .setIdleTimeout(Duration.ZERO);
+        limiter.evictIdleBuckets();
+        assertEquals(0, limiter.size());
+        assertEquals(0,
+                     this.meterRegistry.get("chat.inbound.rate.buckets")
+                                       .gauge()
+                                       .value());
+    }
+
+    @Test
+    void testTokenBucketRefillsAtConfiguredRate()
+    {
+        // 准备测试数据：每秒 10 个令牌，容量 2
+        final var start  = 1_000_000_000L;
+        final var bucket = new TokenBucket(10, 2, start);
+
+        // 调用被测试的方法并验证结果
+        assertEquals(0, bucket.tryAcquire(start));
+        assertEquals(0, bucket.tryAcquire(start));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(start));
+
+        // 100 毫秒后补充一个令牌
+        assertEquals(0, bucket.tryAcquire(start + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(bucket.tryAcquire(start + TimeUnit.MILLISECONDS.toNanos(100)) > 0);
+
+        // 长时间空闲后最多补满到容量
+        final var later = start + TimeUnit.SECONDS.toNanos(10);
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(0, bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later) > 0);
+        assertFalse(bucket.isIdle(later, 1));
+        assertTrue(bucket.isIdle(later + TimeUnit.SECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(500)));
+    }
+
+    private InboundRateLimiter limiter()
+    {
+        final var limiter = new InboundRateLimiter(this.chatProperties,
+                                                   this.presenceRegistry,
+                                                   this.clientOutboundChannelProvider);
+        limiter.bindTo(this.meterRegistry);
+
+        return limiter;
+    }
+
+    private SessionDisconnectEvent disconnect(final String sessionId)
+    {
+        final var accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        accessor.setSessionId(sessionId);
+
+        return new SessionDisconnectEvent(this,
+                                          MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()),
+                                          sessionId,
+                                          CloseStatus.NORMAL);
+    }
+
+    private static Message<byte[]> send(final String sessionId, final String destination, final String receipt)
+    {
+        final var accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+
+        if (receipt != null)
+        {
+            accessor.setReceipt(receipt);
+        }
+
+        return MessageBuilder.createMessage("{}".getBytes(), accessor.getMessageHeaders());
+    }
+}
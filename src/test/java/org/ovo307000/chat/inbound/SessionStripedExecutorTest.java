@@ -0,0 +1,257 @@
+package org.ovo307000.chat.inbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStripedExecutorTest
+{
+    private static final int SESSIONS_PER_PRODUCER = 4;
+
+    private static final int MESSAGES = 2_000;
+
+    private final Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+
+    /* 会话 ID -> 正在执行的该会话任务数 */
+    private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    /* 同一会话的任务并发执行的次数 */
+    private final AtomicInteger overlaps = new AtomicInteger();
+
+    private SessionStripedExecutor executor;
+
+    @AfterEach
+    void tearDown()
+    {
+        this.executor.shutdown();
+    }
+
+    @Test
+    void testPreservesPerSessionOrderUnderContention() throws Exception
+    {
+        // 准备测试数据：通道数少于会话数，多个会话共用通道；多个生产者线程同时提交
+        this.executor = executor(4, 8);
+
+        final var producers = 8;
+        final var barrier   = new CyclicBarrier(producers);
+        final var threads = IntStream.range(0, producers)
+                                     .mapToObj(producer -> new Thread(() -> this.produce(producer, barrier)))
+                                     .toList();
+
+        // 调用被测试的方法
+        threads.forEach(Thread::start);
+
+        for (final var thread : threads)
+        {
+            thread.join();
+        }
+
+        // 验证结果：每个会话都按提交顺序收到全部帧，同一会话的任务从不并发执行
+        waitUntil(() -> this.executor.queued() == 0);
+        assertEquals(producers * SESSIONS_PER_PRODUCER, this.received.size());
+
+        final var expected = IntStream.range(0, MESSAGES)
+                                      .boxed()
+                                      .toList();
+
+        this.received.forEach((sessionId, values) -> assertEquals(expected, values, sessionId));
+        assertEquals(0, this.overlaps.get());
+    }
+
+    @Test
+    void testDifferentSessionsRunInParallel() throws Exception
+    {
+        this.executor = executor(2, 64);
+
+        // 准备测试数据：两个落在不同通道上的会话
+        final var blocked = "session-a";
+        final var other = IntStream.range(0, 64)
+                                   .mapToObj(i -> "session-" + i)
+                                   .filter(id -> this.executor.stripeOf(id) != this.executor.stripeOf(blocked))
+                                   .findFirst()
+                                   .orElseThrow();
+
+        final var release  = new CountDownLatch(1);
+        final var finished = new CountDownLatch(1);
+        final var order    = new ArrayList<String>();
+
+        // 调用被测试的方法：第一个会话的任务阻塞时，它的后续任务排队，其他会话不受影响
+        this.executor.execute(task(blocked, () -> await(release)));
+        this.executor.execute(task(blocked, () -> order.add("blocked")));
+        this.executor.execute(task(other, finished::countDown));
+
+        // 验证结果
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(order.isEmpty());
+
+        release.countDown();
+        waitUntil(() -> this.executor.queued() == 0);
+        assertEquals(List.of("blocked"), order);
+    }
+
+    @Test
+    void testFailuresDoNotStallTheLane() throws Exception
+    {
+        this.executor = executor(1, 1);
+
+        final var meterRegistry = new SimpleMeterRegistry();
+        this.executor.bindTo(meterRegistry);
+
+        final var ran = new CountDownLatch(2);
+
+        // 调用被测试的方法：失败的任务之后的任务仍然执行，不带会话的任务直接交给线程池
+        this.executor.execute(task("s1", () ->
+        {
+            throw new IllegalStateException("boom");
+        }));
+        this.executor.execute(task("s1", ran::countDown));
+        this.executor.execute(ran::countDown);
+
+        // 验证结果
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        waitUntil(() -> this.executor.queued() == 0);
+        assertEquals(0,
+                     meterRegistry.get("chat.inbound.dispatch.queued")
+                                  .gauge()
+                                  .value());
+
+        // 作为组件和 Bean 各关闭一次
+        this.executor.shutdown();
+        this.executor.shutdown();
+    }
+
+    private static SessionStripedExecutor executor(final int threads, final int stripes)
+    {
+        final var chatProperties = new ChatProperties();
+        chatProperties.getExecutor()
+                      .setInboundThreads(threads);
+        chatProperties.getExecutor()
+                      .setInboundStripes(stripes);
+
+        return new SessionStripedExecutor(chatProperties);
+    }
+
+    /**
+     * 一个生产者线程按顺序提交自己的几个会话的帧，与 WebSocket 会话的读取线程相同
+     */
+    private void produce(final int producer, final CyclicBarrier barrier)
+    {
+        try
+        {
+            barrier.await();
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        for (int seq = 0; seq < MESSAGES; seq++)
+        {
+            for (int s = 0; s < SESSIONS_PER_PRODUCER; s++)
+            {
+                final var sessionId = "session-" + producer + "-" + s;
+                final var value     = seq;
+
+                this.executor.execute(task(sessionId, () -> this.record(sessionId, value)));
+            }
+        }
+    }
+
+    private void record(final String sessionId, final int value)
+    {
+        final var running = this.active.computeIfAbsent(sessionId, key -> new AtomicInteger());
+
+        if (running.incrementAndGet() > 1)
+        {
+            this.overlaps.incrementAndGet();
+        }
+
+        // 偶尔让出 CPU，制造线程交错
+        if (value % 97 == 0)
+        {
+            LockSupport.parkNanos(10_000);
+        }
+
+        this.received.computeIfAbsent(sessionId, key -> new ArrayList<>())
+                     .add(value);
+        running.decrementAndGet();
+    }
+
+    private static void await(final CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private static void waitUntil(final BooleanSupplier condition) throws InterruptedException
+    {
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline)
+        {
+            Thread.sleep(1);
+        }
+
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * 与 ExecutorSubscribableChannel 提交的任务相同，带有要处理的消息
+     */
+    private static MessageHandlingRunnable task(final String sessionId, final Runnable body)
+    {
+        final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+
+        final var message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        return new MessageHandlingRunnable()
+        {
+            @Override
+            public Message<?> getMessage()
+            {
+                return message;
+            }
+
+            @Override
+            public MessageHandler getMessageHandler()
+            {
+                return ignored -> body.run();
+            }
+
+            @Override
+            public void run()
+            {
+                body.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package org.ovo307000.chat.metrics;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ReceiveTimestampInterceptorTest
+{
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private final MockClock clock = new MockClock();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, this.clock);
+
+    private final ChatMetrics chatMetrics = new ChatMetrics(this.meterRegistry);
+
+    private final ReceiveTimestampInterceptor interceptor = new ReceiveTimestampInterceptor(this.chatMetrics);
+
+    @Test
+    void testSendFrameIsStampedInPlace()
+    {
+        // 准备测试数据：与 STOMP 解码结果一样，头保持可变
+        final var accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/app/chat");
+        accessor.setLeaveMutable(true);
+
+        final var message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        // 调用被测试的方法
+        final var result = this.interceptor.preSend(message, this.channel);
+
+        // 验证结果：不复制消息，时间戳写入头中
+        assertSame(message, result);
+        assertEquals(this.clock.monotonicTime(), result.getHeaders()
+                                                       .get(ReceiveTimestampInterceptor.RECEIVED_AT_HEADER));
+    }
+
+    @Test
+    void testImmutableSendFrameIsCopied()
+    {
+        final var accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/app/chat");
+
+        final var message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        // 调用被测试的方法
+        final var result = this.interceptor.preSend(message, this.channel);
+
+        // 验证结果
+        assertNotNull(result);
+        assertEquals(this.clock.monotonicTime(), result.getHeaders()
+                                                       .get(ReceiveTimestampInterceptor.RECEIVED_AT_HEADER));
+        assertEquals("/app/chat", StompHeaderAccessor.wrap(result)
+                                                     .getDestination());
+    }
+
+    @Test
+    void testOtherFramesAreNotStamped()
+    {
+        final var accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setDestination("/user/alice/queue/messages");
+        accessor.setLeaveMutable(true);
+
+        final var message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        // 调用被测试的方法并验证结果
+        assertSame(message, this.interceptor.preSend(message, this.channel));
+        assertNull(message.getHeaders()
+                          .get(ReceiveTimestampInterceptor.RECEIVED_AT_HEADER));
+    }
+
+    @Test
+    void testProcessTimeStartsAtReceive()
+    {
+        // 准备测试数据：帧在入站通道中等待了 30 毫秒才被处理
+        final var receivedAt = this.chatMetrics.monotonicTime();
+        this.clock.add(Duration.ofMillis(30));
+
+        // 调用被测试的方法
+        this.chatMetrics.stopProcess(receivedAt);
+
+        // 验证结果
+        assertEquals(30,
+                     this.meterRegistry.get("chat.message.process")
+                                       .timer()
+                                       .totalTime(TimeUnit.MILLISECONDS));
+    }
+}
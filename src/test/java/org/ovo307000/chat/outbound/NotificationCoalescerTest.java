@@ -0,0 +1,182 @@
+package org.ovo307000.chat.outbound;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class NotificationCoalescerTest
+{
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private NotificationCoalescer coalescer;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.coalescer = new NotificationCoalescer(new ChatProperties());
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        this.coalescer.close();
+    }
+
+    @Test
+    void testFullBatchIsSentAsJsonArray()
+    {
+        // 准备测试数据：窗口足够长，凑满 3 条时立即发送
+        this.coalescer.onSessionSubscribe(subscribe("s1", "sub-0", "50", "3"));
+
+        // 调用被测试的方法
+        assertNull(this.coalescer.preSend(outbound("s1", "sub-0", "{\"id\":\"1\"}"), this.channel));
+        assertNull(this.coalescer.preSend(outbound("s1", "sub-0", "{\"id\":\"2\"}"), this.channel));
+        verifyNoInteractions(this.channel);
+        assertNull(this.coalescer.preSend(outbound("s1", "sub-0", "{\"id\":\"3\"}"), this.channel));
+
+        // 验证结果：三条消息合并为一个数组帧，沿用原消息的会话和订阅
+        final var sent = sent(1);
+        assertEquals("[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\"}]",
+                     new String((byte[]) sent.getPayload(), StandardCharsets.UTF_8));
+        assertEquals("s1", SimpMessageHeaderAccessor.getSessionId(sent.getHeaders()));
+        assertEquals("sub-0", SimpMessageHeaderAccessor.getSubscriptionId(sent.getHeaders()));
+        assertEquals("3",
+                     SimpMessageHeaderAccessor.wrap(sent)
+                                              .getFirstNativeHeader(NotificationCoalescer.COALESCED_HEADER));
+
+        // 合并后的帧再次经过拦截器时直接放行
+        assertSame(sent, this.coalescer.preSend(sent, this.channel));
+    }
+
+    @Test
+    void testWindowExpiryFlushesPartialBatch()
+    {
+        // 使用允许的最长窗口，两次调用之间的调度延迟不会让第一条消息单独发送
+        this.coalescer.onSessionSubscribe(subscribe("s1", "sub-0", "50", null));
+
+        // 调用被测试的方法：窗口内只有两条消息
+        assertNull(this.coalescer.preSend(outbound("s1", "sub-0", "{\"id\":\"1\"}"), this.channel));
+        assertNull(this.coalescer.preSend(outbound("s1", "sub-0", "{\"id\":\"2\"}"), this.channel));
+
+        // 验证结果：窗口到期后发送
+        final var captor = ArgumentCaptor.forClass(Message.class);
+        verify(this.channel, timeout(2_000).times(1)).send(captor.capture());
+        assertEquals("[{\"id\":\"1\"},{\"id\":\"2\"}]",
+                     new String((byte[]) captor.getValue()
+                                               .getPayload(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSubscriptionsWithoutCoalescingAreUnchanged()
+    {
+        this.coalescer.onSessionSubscribe(subscribe("s1", "sub-0", null, null));
+        this.coalescer.onSessionSubscribe(subscribe("s2", "sub-0", "not-a-number", null));
+
+        // 验证结果：未开启或参数无效的订阅逐条发送
+        for (final var sessionId : new String[]{"s1", "s2", "s3"})
+        {
+            final var message = outbound(sessionId, "sub-0", "{}");
+
+            assertSame(message, this.coalescer.preSend(message, this.channel));
+        }
+
+        verifyNoInteractions(this.channel);
+    }
+
+    @Test
+    void testUnsubscribeAndDisconnectStopCoalescing()
+    {
+        this.coalescer.onSessionSubscribe(subscribe("s1", "sub-0", "50", null));
+        this.coalescer.onSessionSubscribe(subscribe("s1", "sub-1", "50", null));
+
+        this.coalescer.onSessionUnsubscribe(new SessionUnsubscribeEvent(this, frame(StompCommand.UNSUBSCRIBE,
+                                                                                    "s1",
+                                                                                    "sub-0")));
+
+        final var unsubscribed = outbound("s1", "sub-0", "{}");
+        assertSame(unsubscribed, this.coalescer.preSend(unsubscribed, this.channel));
+
+        this.coalescer.onSessionDisconnect(new SessionDisconnectEvent(this,
+                                                                      frame(StompCommand.DISCONNECT, "s1", null),
+                                                                      "s1",
+                                                                      CloseStatus.NORMAL));
+
+        final var disconnected = outbound("s1", "sub-1", "{}");
+        assertSame(disconnected, this.coalescer.preSend(disconnected, this.channel));
+    }
+
+    private Message<?> sent(final int times)
+    {
+        final var captor = ArgumentCaptor.forClass(Message.class);
+        verify(this.channel, times(times)).send(captor.capture());
+
+        return captor.getValue();
+    }
+
+    private static SessionSubscribeEvent subscribe(final String sessionId,
+                                                   final String subscriptionId,
+                                                   final String window,
+                                                   final String max)
+    {
+        final var accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination("/user/queue/messages");
+
+        if (window != null)
+        {
+            accessor.setNativeHeader(NotificationCoalescer.COALESCE_HEADER, window);
+        }
+
+        if (max != null)
+        {
+            accessor.setNativeHeader(NotificationCoalescer.COALESCE_MAX_HEADER, max);
+        }
+
+        return new SessionSubscribeEvent(NotificationCoalescerTest.class,
+                                         MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static Message<byte[]> frame(final StompCommand command, final String sessionId, final String subscriptionId)
+    {
+        final var accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+
+        if (subscriptionId != null)
+        {
+            accessor.setSubscriptionId(subscriptionId);
+        }
+
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> outbound(final String sessionId, final String subscriptionId, final String json)
+    {
+        final var accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,75 @@
+package org.ovo307000.chat.outbound;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ovo307000.chat.codec.PayloadCodecs;
+import org.ovo307000.chat.module.dto.ChatNotificationDTO;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class NotificationDispatcherTest
+{
+    private final List<Message<?>> sent = new ArrayList<>();
+
+    private MessageConverter       messageConverter;
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 与 WebsocketConfig.configureMessageConverters 注册的 JSON 转换器相同，包装为 spy 以统计编码次数
+        this.messageConverter = spy(new PayloadCodecs(Jackson2ObjectMapperBuilder.json()
+                                                                                 .build(),
+                                                      Jackson2ObjectMapperBuilder.json()).jsonConverter());
+
+        final var template = new SimpMessagingTemplate((message, timeout) -> this.sent.add(message));
+        template.setMessageConverter(this.messageConverter);
+
+        this.dispatcher = new NotificationDispatcher(template);
+    }
+
+    @Test
+    void testSendToUsersUsesUserDestinations()
+    {
+        var notification = new ChatNotificationDTO("1", 1L, "alice", "bob", "hello");
+
+        // 调用被测试的方法
+        this.dispatcher.sendToUsers(notification, List.of("bob", "c/d"));
+
+        // 验证结果：只编码一次，与 convertAndSendToUser 的目的地相同，用户名中的 / 被转义
+        verify(this.messageConverter, times(1)).toMessage(any(), any());
+        assertEquals(List.of("/user/bob/queue/messages", "/user/c%2Fd/queue/messages"),
+                     this.sent.stream()
+                              .map(message -> SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+                              .toList());
+
+        // 每个接收者都收到同一个负载数组
+        final var payload = (byte[]) this.sent.get(0)
+                                              .getPayload();
+        this.sent.forEach(message -> assertSame(payload, message.getPayload()));
+        assertTrue(new String(payload, StandardCharsets.UTF_8).contains("\"seq\":1"));
+        assertTrue(MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(SimpMessageHeaderAccessor.wrap(this.sent.get(0))
+                                                                                            .getContentType()));
+    }
+
+    @Test
+    void testNoRecipientsSkipsEncoding()
+    {
+        this.dispatcher.sendToUsers(new ChatNotificationDTO("1", 1L, "alice", "group:1", "hello"), List.of());
+
+        // 验证结果
+        verifyNoInteractions(this.messageConverter);
+        assertTrue(this.sent.isEmpty());
+    }
+}
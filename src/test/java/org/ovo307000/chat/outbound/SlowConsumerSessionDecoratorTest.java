@@ -0,0 +1,292 @@
+package org.ovo307000.chat.outbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ovo307000.chat.config.ChatProperties;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class SlowConsumerSessionDecoratorTest
+{
+    /* 服务端推送未读摘要的实际目的地，见 UserController */
+    private static final String CRITICAL = "/user/alice/queue/unread";
+
+    /* 与 CRITICAL 等长，两种帧的大小相同 */
+    private static final String ROOM = "/topic/room-abcdefghijkl";
+
+    private final WebSocketSession delegate = mock(WebSocketSession.class);
+
+    private final SlowConsumerSessionDecorator.Listener listener = mock(SlowConsumerSessionDecorator.Listener.class);
+
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+
+    /* 第一次发送阻塞在这里，模拟读取缓慢的客户端 */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    /* 使用默认的 critical-destinations 判断关键帧 */
+    private final SlowConsumerRegistry registry = new SlowConsumerRegistry(new ChatProperties());
+
+    private Thread writer;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        when(this.delegate.getId()).thenReturn("s1");
+        doAnswer(invocation ->
+                 {
+                     final WebSocketMessage<?> message = invocation.getArgument(0);
+                     this.delivered.add((String) message.getPayload());
+
+                     if (this.blocked.getCount() > 0)
+                     {
+                         this.blocked.countDown();
+                         this.release.await(5, TimeUnit.SECONDS);
+                     }
+
+                     return null;
+                 }).when(this.delegate)
+                   .sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        this.release.countDown();
+
+        if (this.writer != null)
+        {
+            this.writer.join(5_000);
+        }
+
+        this.registry.close();
+    }
+
+    @Test
+    void testDropOldestKeepsCriticalFrames() throws Exception
+    {
+        final var decorator = this.decorate(60_000, ChatProperties.SlowConsumer.Policy.DROP_OLDEST);
+        this.block(decorator);
+
+        // 调用被测试的方法：缓冲区只能容纳两帧半
+        decorator.sendMessage(frame(CRITICAL, "c1"));
+        decorator.sendMessage(frame(ROOM, "n1"));
+        decorator.sendMessage(frame(ROOM, "n2"));
+        decorator.sendMessage(frame(ROOM, "n3"));
+
+        // 验证结果：最旧的非关键帧被丢弃，关键帧保留
+        assertEquals(2 * frame(ROOM, "n1").getPayloadLength(), decorator.getBufferSize());
+        this.drain();
+        assertEquals(List.of("blocker", "c1", "n3"), this.bodies());
+        verify(this.listener, times(2)).dropped(1);
+        verify(this.listener, never()).disconnected(any());
+    }
+
+    @Test
+    void testSummarizeReplacesFramesWithCounts() throws Exception
+    {
+        final var decorator = this.decorate(60_000, ChatProperties.SlowConsumer.Policy.SUMMARIZE);
+        this.block(decorator);
+
+        // 调用被测试的方法：第三帧触发第一次合并，之后再积压两帧触发第二次合并，数量累加到同一个摘要帧
+        for (int i = 1; i <= 5; i++)
+        {
+            decorator.sendMessage(frame(ROOM, "n" + i));
+        }
+
+        decorator.sendMessage(frame(CRITICAL, "c1"));
+
+        // 验证结果
+        this.drain();
+        assertEquals(3, this.delivered.size());
+
+        final var summary = this.delivered.get(1);
+        assertTrue(summary.startsWith("MESSAGE\n"));
+        assertTrue(summary.contains("destination:" + ROOM + "\n"));
+        assertTrue(summary.contains("subscription:sub-0\n"));
+        assertTrue(summary.contains(SlowConsumerSessionDecorator.SUMMARY_HEADER + ":true\n"));
+        assertTrue(summary.contains(SlowConsumerSessionDecorator.DROPPED_HEADER + ":5\n"));
+        assertTrue(summary.endsWith("\n\n{\"dropped\":5}\0"));
+        assertEquals("c1", body(this.delivered.get(2)));
+        verify(this.listener).summarized(3);
+        verify(this.listener).summarized(2);
+    }
+
+    @Test
+    void testDisconnectPolicy() throws Exception
+    {
+        final var decorator = this.decorate(60_000, ChatProperties.SlowConsumer.Policy.DISCONNECT);
+        this.block(decorator);
+
+        decorator.sendMessage(frame(ROOM, "n1"));
+        decorator.sendMessage(frame(ROOM, "n2"));
+
+        // 调用被测试的方法
+        final var exception = assertThrows(SessionLimitExceededException.class,
+                                           () -> decorator.sendMessage(frame(ROOM, "n3")));
+
+        // 验证结果：之后的消息被忽略，关闭时使用 SESSION_NOT_RELIABLE
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, exception.getStatus());
+        assertEquals(0, decorator.getBufferSize());
+        verify(this.listener).disconnected(SlowConsumerSessionDecorator.Reason.BUFFER_SIZE);
+
+        decorator.sendMessage(frame(ROOM, "n4"));
+        decorator.close(CloseStatus.NORMAL);
+        verify(this.delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    void testCriticalOverflowDisconnects() throws Exception
+    {
+        final var decorator = this.decorate(60_000, ChatProperties.SlowConsumer.Policy.DROP_OLDEST);
+        this.block(decorator);
+
+        decorator.sendMessage(frame(CRITICAL, "c1"));
+        decorator.sendMessage(frame(CRITICAL, "c2"));
+
+        // 调用被测试的方法：只剩关键帧时，即使策略允许丢弃也只能断开
+        assertThrows(SessionLimitExceededException.class, () -> decorator.sendMessage(frame(CRITICAL, "c3")));
+
+        // 验证结果
+        verify(this.listener, never()).dropped(anyInt());
+        verify(this.listener).disconnected(SlowConsumerSessionDecorator.Reason.BUFFER_SIZE);
+    }
+
+    @Test
+    void testSendTimeLimitDisconnects() throws Exception
+    {
+        final var decorator = this.decorate(20, ChatProperties.SlowConsumer.Policy.DROP_OLDEST);
+        this.block(decorator);
+        Thread.sleep(50);
+
+        // 调用被测试的方法：卡住的会话由定期检查断开
+        assertTrue(decorator.isSendTimeLimitExceeded());
+        assertTrue(decorator.closeIfSendTimeLimitExceeded());
+
+        // 验证结果
+        verify(this.delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(this.listener).disconnected(SlowConsumerSessionDecorator.Reason.SEND_TIME);
+        assertFalse(decorator.closeIfSendTimeLimitExceeded());
+    }
+
+    @Test
+    void testRegistryTracksPerSessionBacklog()
+    {
+        final var chatProperties = new ChatProperties();
+        final var registry       = new SlowConsumerRegistry(chatProperties);
+        final var meterRegistry  = new SimpleMeterRegistry();
+
+        try
+        {
+            registry.bindTo(meterRegistry);
+
+            // 调用被测试的方法
+            registry.decorate(this.delegate, 1_000, 1_024);
+
+            // 验证结果：会话断开后积压指标被移除
+            assertNotNull(meterRegistry.find("chat.websocket.session.backlog")
+                                       .tag("session", "s1")
+                                       .gauge());
+            assertTrue(registry.isCritical("/user/alice/queue/unread"));
+            assertFalse(registry.isCritical("/user/alice/queue/messages"));
+
+            registry.remove("s1");
+
+            assertNull(meterRegistry.find("chat.websocket.session.backlog")
+                                    .tag("session", "s1")
+                                    .gauge());
+            assertEquals(0, registry.size());
+        }
+        finally
+        {
+            registry.close();
+        }
+    }
+
+    private SlowConsumerSessionDecorator decorate(final int sendTimeLimit,
+                                                  final ChatProperties.SlowConsumer.Policy policy)
+    {
+        final var limit = frame(ROOM, "n1").getPayloadLength() * 5 / 2;
+
+        return new SlowConsumerSessionDecorator(this.delegate,
+                                                sendTimeLimit,
+                                                limit,
+                                                policy,
+                                                this.registry::isCritical,
+                                                this.listener);
+    }
+
+    /**
+     * 在另一个线程中发送第一帧，让它卡在底层会话里，之后的帧都进入缓冲区
+     */
+    private void block(final SlowConsumerSessionDecorator decorator) throws Exception
+    {
+        this.writer = new Thread(() ->
+                                 {
+                                     try
+                                     {
+                                         decorator.sendMessage(frame(ROOM, "blocker"));
+                                     }
+                                     catch (Exception ignored)
+                                     {
+                                     }
+                                 });
+        this.writer.start();
+
+        assertTrue(this.blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 放行卡住的发送，等待写入线程把缓冲区发完
+     */
+    private void drain() throws Exception
+    {
+        this.release.countDown();
+        this.writer.join(5_000);
+    }
+
+    private List<String> bodies()
+    {
+        return this.delivered.stream()
+                             .map(SlowConsumerSessionDecoratorTest::body)
+                             .toList();
+    }
+
+    private static String body(final String frame)
+    {
+        final var start = frame.indexOf("\n\n") + 2;
+
+        return frame.substring(start, frame.length() - 1)
+                    .strip();
+    }
+
+    /**
+     * 目的地长度相同、消息体补齐到相同长度，所有帧大小相同
+     */
+    private static TextMessage frame(final String destination, final String body)
+    {
+        return new TextMessage("MESSAGE\n" +
+                               "destination:" + destination + '\n' +
+                               "subscription:sub-0\n" +
+                               "message-id:1\n" +
+                               '\n' +
+                               String.format("%-64s", body) + '\0');
+    }
+}
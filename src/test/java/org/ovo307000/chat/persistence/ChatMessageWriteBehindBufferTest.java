@@ -0,0 +1,256 @@
+package org.ovo307000.chat.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ChatMessageWriteBehindBufferTest
+{
+
+    @Mock
+    private ChatMessageStore chatMessageStore;
+
+    private ChatProperties chatProperties;
+
+    private ChatMessageWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 初始化所有的@Mock注解的mock对象
+        MockitoAnnotations.openMocks(this);
+
+        this.chatProperties = new ChatProperties();
+        this.chatProperties.getPersistence()
+                           .setBatchSize(4);
+        this.chatProperties.getPersistence()
+                           .setMaxLatency(Duration.ofMillis(20));
+        this.chatProperties.getPersistence()
+                           .setQueueCapacity(8);
+        this.chatProperties.getPersistence()
+                           .setOfferTimeout(Duration.ofMillis(50));
+
+        // insert 原样返回传入的消息
+        when(this.chatMessageStore.insert(anyList())).thenAnswer(ChatMessageWriteBehindBufferTest::inserted);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        if (this.buffer != null && this.buffer.isRunning())
+        {
+            this.buffer.stop();
+        }
+    }
+
+    @Test
+    void testFlushesFullBatchWithSingleInsert()
+    {
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+        this.buffer.start();
+
+        // 入队一整批消息
+        var futures = new ArrayList<CompletableFuture<ChatMessage>>();
+        for (int i = 0; i < 4; i++)
+        {
+            futures.add(this.buffer.enqueue(message("m" + i)));
+        }
+
+        // 验证每条消息的 Future 都完成，且写入带有客户端预分配的 ID
+        futures.forEach(future -> assertNotNull(future.join()
+                                                      .getId()));
+        verify(this.chatMessageStore, atMost(2)).insert(anyList());
+        verify(this.chatMessageStore, never()).save(any(ChatMessage.class));
+    }
+
+    @Test
+    void testFlushesPartialBatchAfterMaxLatency()
+    {
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+        this.buffer.start();
+
+        // 只入队一条消息，未凑满一批
+        var future = this.buffer.enqueue(message("m"));
+
+        // 验证在最大延迟到期后写入
+        assertEquals("m",
+                     future.orTimeout(1, TimeUnit.SECONDS)
+                           .join()
+                           .getContent());
+        verify(this.chatMessageStore, times(1)).insert(anyList());
+    }
+
+    @Test
+    void testFallsBackToIndividualSavesWhenBatchFails()
+    {
+        // 批量写入失败，逐条保存时第二条消息失败
+        when(this.chatMessageStore.insert(anyList())).thenThrow(new RuntimeException("duplicate key"));
+        when(this.chatMessageStore.save(any(ChatMessage.class))).thenAnswer(invocation ->
+                                                                            {
+                                                                                ChatMessage chatMessage = invocation.getArgument(
+                                                                                        0);
+                                                                                if ("bad".equals(chatMessage.getContent()))
+                                                                                {
+                                                                                    throw new RuntimeException(
+                                                                                            "bad message");
+                                                                                }
+                                                                                return chatMessage;
+                                                                            });
+
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+        this.buffer.start();
+
+        var good = this.buffer.enqueue(message("good"));
+        var bad  = this.buffer.enqueue(message("bad"));
+
+        // 验证只有失败的消息对应的 Future 失败
+        assertEquals("good",
+                     good.orTimeout(1, TimeUnit.SECONDS)
+                         .join()
+                         .getContent());
+        assertThrows(CompletionException.class,
+                     () -> bad.orTimeout(1, TimeUnit.SECONDS)
+                              .join());
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFull() throws InterruptedException
+    {
+        // 让写入阻塞，使队列无法被消费
+        var release = new CountDownLatch(1);
+        when(this.chatMessageStore.insert(anyList())).thenAnswer(invocation ->
+                                                                 {
+                                                                     release.await();
+                                                                     return inserted(invocation);
+                                                                 });
+
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+        this.buffer.start();
+
+        // 第一批被后台线程取走后阻塞，再填满队列
+        for (int i = 0; i < 4; i++)
+        {
+            this.buffer.enqueue(message("m" + i));
+        }
+        Thread.sleep(100);
+        for (int i = 0; i < 8; i++)
+        {
+            this.buffer.enqueue(message("q" + i));
+        }
+
+        // 验证队列已满时返回失败的 Future（背压）
+        var rejected = this.buffer.enqueue(message("overflow"));
+        assertTrue(rejected.isCompletedExceptionally());
+
+        release.countDown();
+    }
+
+    @Test
+    void testStopDrainsQueuedMessages()
+    {
+        this.chatProperties.getPersistence()
+                           .setMaxLatency(Duration.ofSeconds(5));
+
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+        this.buffer.start();
+
+        var future = this.buffer.enqueue(message("m"));
+
+        // 关闭时写完剩余的消息
+        this.buffer.stop();
+
+        assertTrue(future.isDone());
+        assertEquals("m",
+                     future.join()
+                           .getContent());
+        assertTrue(this.buffer.enqueue(message("late"))
+                              .isCompletedExceptionally());
+    }
+
+    @Test
+    void testOfferCompletingAfterStopFailsFuture() throws InterruptedException
+    {
+        this.chatProperties.getPersistence()
+                           .setQueueCapacity(1);
+        this.chatProperties.getPersistence()
+                           .setOfferTimeout(Duration.ofSeconds(5));
+        this.chatProperties.getPersistence()
+                           .setShutdownTimeout(Duration.ofMillis(50));
+
+        // 让写入阻塞，使后台线程持有第一批消息
+        var release = new CountDownLatch(1);
+        when(this.chatMessageStore.insert(anyList())).thenAnswer(invocation ->
+                                                                 {
+                                                                     release.await();
+                                                                     return inserted(invocation);
+                                                                 });
+
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+        this.buffer.start();
+
+        // 第一条被后台线程取走，第二条占满队列，第三条阻塞在入队上
+        this.buffer.enqueue(message("m0"));
+        Thread.sleep(100);
+        var queued = this.buffer.enqueue(message("m1"));
+        var late   = CompletableFuture.supplyAsync(() -> this.buffer.enqueue(message("late")));
+        Thread.sleep(100);
+
+        // 调用被测试的方法：stop 清空队列后，阻塞的入队才成功
+        this.buffer.stop();
+
+        // 验证结果：关闭期间入队的消息失败，而不是永远等待
+        assertTrue(queued.isCompletedExceptionally());
+        assertThrows(CompletionException.class,
+                     () -> late.orTimeout(1, TimeUnit.SECONDS)
+                               .join()
+                               .orTimeout(1, TimeUnit.SECONDS)
+                               .join());
+
+        release.countDown();
+        verify(this.chatMessageStore, timeout(1000).times(1)).insert(anyList());
+    }
+
+    @Test
+    void testStopsAfterInboundTrafficStops()
+    {
+        this.buffer = new ChatMessageWriteBehindBuffer(this.chatMessageStore, this.chatProperties);
+
+        // 验证结果：阶段越低越晚停止，Web 服务器和 STOMP 消息处理器（默认阶段）停止后缓冲区才停止
+        assertTrue(this.buffer.getPhase() < WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE);
+        assertTrue(this.buffer.getPhase() < SmartLifecycle.DEFAULT_PHASE);
+    }
+
+    private static List<ChatMessage> inserted(final InvocationOnMock invocation)
+    {
+        final List<ChatMessage> chatMessages = invocation.getArgument(0);
+
+        return new ArrayList<>(chatMessages);
+    }
+
+    private static ChatMessage message(final String content)
+    {
+        var chatMessage = new ChatMessage();
+        chatMessage.setChatRoomId("chatRoom1");
+        chatMessage.setContent(content);
+        return chatMessage;
+    }
+}
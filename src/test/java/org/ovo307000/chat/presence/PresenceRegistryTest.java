@@ -0,0 +1,51 @@
+package org.ovo307000.chat.presence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresenceRegistryTest
+{
+    private PresenceRegistry presenceRegistry;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.presenceRegistry = new PresenceRegistry();
+    }
+
+    @Test
+    void testLastSessionDisconnectMakesUserOffline()
+    {
+        assertTrue(this.presenceRegistry.connect("s1", "alice", "Alice"));
+        assertFalse(this.presenceRegistry.connect("s2", "alice", null));
+
+        // 调用被测试的方法并验证结果：只有最后一个会话断开时才离线
+        assertEquals(Optional.empty(), this.presenceRegistry.disconnect("s1"));
+        assertTrue(this.presenceRegistry.isOnline("alice"));
+        assertEquals(Optional.of("alice"), this.presenceRegistry.disconnect("s2"));
+        assertFalse(this.presenceRegistry.isOnline("alice"));
+    }
+
+    @Test
+    void testConnectAfterDisconnectIsIgnored()
+    {
+        // 准备测试数据：上线帧仍在入站通道中排队时，会话已经断开
+        assertEquals(Optional.empty(), this.presenceRegistry.disconnect("s1"));
+
+        // 调用被测试的方法：迟到的上线帧
+        final var becameOnline = this.presenceRegistry.connect("s1", "alice", "Alice");
+
+        // 验证结果：已关闭的会话不会让用户上线
+        assertFalse(becameOnline);
+        assertFalse(this.presenceRegistry.isOnline("alice"));
+        assertEquals(Optional.empty(), this.presenceRegistry.userOf("s1"));
+        assertEquals(0, this.presenceRegistry.onlineUserCount());
+
+        // 其他会话不受影响
+        assertTrue(this.presenceRegistry.connect("s2", "alice", "Alice"));
+    }
+}
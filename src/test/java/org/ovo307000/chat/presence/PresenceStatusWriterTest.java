@@ -0,0 +1,70 @@
+package org.ovo307000.chat.presence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.ovo307000.chat.storage.UserStore;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+class PresenceStatusWriterTest
+{
+
+    @Mock
+    private UserStore userStore;
+
+    @InjectMocks
+    private PresenceStatusWriter presenceStatusWriter;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 初始化所有的@Mock注解的mock对象
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testFlushCoalescesChangesPerUser()
+    {
+        // 同一用户在一个周期内多次切换状态
+        this.presenceStatusWriter.markDirty("user1", UserStatus.ONLINE);
+        this.presenceStatusWriter.markDirty("user1", UserStatus.OFFLINE);
+        this.presenceStatusWriter.markDirty("user1", UserStatus.ONLINE);
+        this.presenceStatusWriter.markDirty("user2", UserStatus.OFFLINE);
+
+        // 调用被测试的方法
+        this.presenceStatusWriter.flush();
+
+        // 验证只写入一次，且只包含每个用户的最新状态
+        verify(this.userStore, times(1)).updateStatuses(Map.of("user1",
+                                                               UserStatus.ONLINE,
+                                                               "user2",
+                                                               UserStatus.OFFLINE));
+
+        // 没有新变化时不再写入
+        this.presenceStatusWriter.flush();
+        verifyNoMoreInteractions(this.userStore);
+    }
+
+    @Test
+    void testFlushRetriesAfterFailure()
+    {
+        // 第一次写入失败
+        doThrow(new RuntimeException("Test exception")).doNothing()
+                                                       .when(this.userStore)
+                                                       .updateStatuses(anyMap());
+        this.presenceStatusWriter.markDirty("user1", UserStatus.ONLINE);
+
+        // 调用被测试的方法
+        this.presenceStatusWriter.flush();
+        this.presenceStatusWriter.flush();
+
+        // 验证失败的状态在下一次写入时重试
+        verify(this.userStore, times(2)).updateStatuses(Map.of("user1", UserStatus.ONLINE));
+    }
+}
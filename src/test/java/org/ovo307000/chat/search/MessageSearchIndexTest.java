@@ -0,0 +1,262 @@
+package org.ovo307000.chat.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ChatMessageStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class MessageSearchIndexTest
+{
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private ChatMessageStore chatMessageStore;
+
+    @Mock
+    private ChatArchive chatArchive;
+
+    private ChatProperties chatProperties;
+
+    private final List<MessageSearchIndex> opened = new ArrayList<>();
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+
+        this.chatProperties = new ChatProperties();
+
+        final var config = this.chatProperties.getSearch();
+        config.setDirectory(this.directory.toString());
+        // 很小的写盘阈值和合并因子，让少量消息就产生多个分段并触发合并
+        config.setFlushThreshold(2);
+        config.setMergeFactor(2);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        this.opened.forEach(MessageSearchIndex::close);
+    }
+
+    @Test
+    void testTokenize()
+    {
+        assertEquals(List.of("hello", "world", "42"), MessageTokenizer.tokenize("Hello, WORLD! 42"));
+        // 汉字切分为二元组，单个汉字保留单字
+        assertEquals(List.of("你好", "好世", "世界", "hi", "吗"), MessageTokenizer.tokenize("你好世界 hi 吗？"));
+        assertEquals(List.of(), MessageTokenizer.tokenize(null));
+        assertEquals(List.of(), MessageTokenizer.tokenize(" ... "));
+    }
+
+    @Test
+    void testRanksMatchesWithinRequestedRooms() throws Exception
+    {
+        final var index = this.open();
+
+        // 准备测试数据
+        index.index(message(1, "a", "hello world and everyone else here"));
+        index.index(message(2, "a", "hello hello"));
+        index.index(message(3, "a", "goodbye"));
+        index.index(message(4, "b", "hello from another room"));
+        index.index(message(5, "a", "今天你好吗"));
+        index.awaitMaintenance();
+
+        // 调用被测试的方法
+        final var result = index.search(Set.of("a"), "Hello", 0, 10);
+
+        // 验证结果：词频高、长度短的排在前面，其他聊天室的消息不出现
+        assertEquals(List.of("m2", "m1"), ids(result));
+        assertFalse(result.hasMore());
+        assertTrue(result.hits()
+                         .get(0)
+                         .score() > result.hits()
+                                          .get(1)
+                                          .score());
+
+        assertEquals(List.of("m5"), ids(index.search(Set.of("a"), "你好", 0, 10)));
+        assertEquals(List.of("m4"), ids(index.search(Set.of("b"), "hello", 0, 10)));
+        // 任意一个词元匹配即可，同时匹配更少见的词元的排在前面
+        assertEquals(List.of("m1", "m2"), ids(index.search(Set.of("a"), "hello world", 0, 10)));
+
+        // 分页
+        final var first = index.search(Set.of("a", "b"), "hello", 0, 2);
+        assertEquals(2, first.hits()
+                             .size());
+        assertTrue(first.hasMore());
+
+        final var second = index.search(Set.of("a", "b"), "hello", 2, 2);
+        assertEquals(1, second.hits()
+                              .size());
+        assertFalse(second.hasMore());
+
+        assertTrue(index.search(Set.of("a"), "missing", 0, 10)
+                        .hits()
+                        .isEmpty());
+        assertTrue(index.search(Set.of(), "hello", 0, 10)
+                        .hits()
+                        .isEmpty());
+    }
+
+    @Test
+    void testFlushesMergesAndReopens() throws Exception
+    {
+        final var index = this.open();
+        index.backfill();
+        index.awaitMaintenance();
+        assertTrue(Files.exists(this.directory.resolve(MessageSearchIndex.BACKFILLED_FILE)));
+
+        final var meterRegistry = new SimpleMeterRegistry();
+        index.bindTo(meterRegistry);
+
+        // 准备测试数据：每两条消息写成一个分段，两个同层级的分段合并为一个
+        for (int i = 0; i < 8; i++)
+        {
+            index.index(message(i, "room", "message number " + i));
+        }
+
+        index.flush();
+        index.awaitMaintenance();
+
+        // 验证结果
+        assertEquals(1, segmentFiles().size());
+        assertEquals(1,
+                     meterRegistry.get("chat.search.segments")
+                                  .gauge()
+                                  .value());
+        assertEquals(8,
+                     meterRegistry.get("chat.search.documents")
+                                  .gauge()
+                                  .value());
+        assertEquals(8,
+                     index.search(Set.of("room"), "message", 0, 100)
+                          .hits()
+                          .size());
+
+        // 调用被测试的方法：重新打开后不需要回填，消息字段完整地往返
+        index.close();
+
+        final var reopened = this.open();
+        final var hits     = reopened.search(Set.of("room"), "3", 0, 10)
+                                     .hits();
+
+        assertEquals(1, hits.size());
+
+        final var restored = hits.get(0)
+                                 .message();
+        assertEquals("m3", restored.getId());
+        assertEquals("room", restored.getChatRoomId());
+        assertEquals(4L, restored.getSeq());
+        assertEquals("alice", restored.getSenderId());
+        assertEquals("bob", restored.getReceiverId());
+        assertEquals("message number 3", restored.getContent());
+        assertEquals(BASE.plusSeconds(3)
+                         .plusNanos(123_456_789), restored.getTimestamp());
+    }
+
+    @Test
+    void testBackfillsHotAndArchivedRooms() throws Exception
+    {
+        // 准备测试数据：一个聊天室仍在 MongoDB 中，另一个已经全部归档
+        when(this.chatMessageStore.findChatRoomIds()).thenReturn(List.of("hot"));
+        when(this.chatArchive.rooms()).thenReturn(Set.of("cold"));
+        when(this.chatMessageStore.streamByChatRoomId("hot", 500)).thenReturn(Stream.of(message(1,
+                                                                                                "hot",
+                                                                                                "fresh news")));
+        when(this.chatMessageStore.streamByChatRoomId("cold", 500)).thenReturn(Stream.of(message(2,
+                                                                                                 "cold",
+                                                                                                 "old news")));
+
+        // 分段文件没有回填标记，打开时被清除
+        Files.writeString(this.directory.resolve("segment-0000000007.seg"), "garbage");
+
+        final var index = this.open();
+
+        // 调用被测试的方法
+        index.backfill();
+        index.awaitMaintenance();
+
+        // 验证结果
+        assertEquals(List.of("m1", "m2"), ids(index.search(Set.of("hot", "cold"), "news", 0, 10)).stream()
+                                                                                                  .sorted()
+                                                                                                  .toList());
+        assertTrue(Files.exists(this.directory.resolve(MessageSearchIndex.BACKFILLED_FILE)));
+        assertFalse(Files.exists(this.directory.resolve("segment-0000000007.seg")));
+    }
+
+    @Test
+    void testDisabledIndexIgnoresMessages()
+    {
+        this.chatProperties.getSearch()
+                           .setEnabled(false);
+
+        final var index = this.open();
+        index.index(message(1, "room", "hello"));
+
+        assertFalse(index.isEnabled());
+        assertThrows(IllegalStateException.class, () -> index.search(Set.of("room"), "hello", 0, 10));
+    }
+
+    private MessageSearchIndex open()
+    {
+        final var index = new MessageSearchIndex(this.chatProperties, this.chatMessageStore, this.chatArchive);
+        this.opened.add(index);
+
+        return index;
+    }
+
+    private List<Path> segmentFiles() throws Exception
+    {
+        try (var files = Files.list(this.directory))
+        {
+            return files.filter(path -> path.getFileName()
+                                            .toString()
+                                            .endsWith(".seg"))
+                        .toList();
+        }
+    }
+
+    private static ChatMessage message(final int index, final String chatRoomId, final String content)
+    {
+        return ChatMessage.builder()
+                          .id("m" + index)
+                          .chatRoomId(chatRoomId)
+                          .seq(index + 1L)
+                          .senderId("alice")
+                          .receiverId("bob")
+                          .content(content)
+                          .timestamp(BASE.plusSeconds(index)
+                                         .plusNanos(123_456_789))
+                          .build();
+    }
+
+    private static List<String> ids(final MessageSearchIndex.SearchResult result)
+    {
+        return result.hits()
+                     .stream()
+                     .map(hit -> hit.message()
+                                    .getId())
+                     .toList();
+    }
+}
@@ -0,0 +1,113 @@
+package org.ovo307000.chat.sequence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.storage.ChatMessageStore;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ChatSequenceAllocatorTest
+{
+    @Mock
+    private ChatMessageStore chatMessageStore;
+
+    private ChatSequenceAllocator chatSequenceAllocator;
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+
+        this.chatSequenceAllocator = new ChatSequenceAllocator(this.chatMessageStore, new ChatProperties());
+    }
+
+    @Test
+    void testRecoversFromMaxStoredSeqOnce()
+    {
+        // 准备测试数据：数据库中已有序号到 41 的消息
+        when(this.chatMessageStore.findMaxSeq("room1")).thenReturn(41L);
+
+        // 验证结果：从最大序号之后继续分配，且只查询一次数据库
+        assertEquals(41L, this.chatSequenceAllocator.committed("room1"));
+        assertEquals(42L, this.chatSequenceAllocator.allocate("room1"));
+        assertEquals(43L, this.chatSequenceAllocator.allocate("room1"));
+        verify(this.chatMessageStore, times(1)).findMaxSeq("room1");
+
+        // 不同聊天室的序号互不影响
+        assertEquals(1L, this.chatSequenceAllocator.allocate("room2"));
+    }
+
+    @Test
+    void testCommittedAdvancesOnlyOverContiguousCompletions()
+    {
+        final var first  = this.chatSequenceAllocator.allocate("room");
+        final var second = this.chatSequenceAllocator.allocate("room");
+        final var third  = this.chatSequenceAllocator.allocate("room");
+
+        // 后分配的序号先写入结束，水位不能越过仍在写入中的序号
+        this.chatSequenceAllocator.complete("room", third);
+        this.chatSequenceAllocator.complete("room", second);
+
+        assertEquals(0L, this.chatSequenceAllocator.committed("room"));
+
+        this.chatSequenceAllocator.complete("room", first);
+
+        assertEquals(third, this.chatSequenceAllocator.committed("room"));
+
+        // 重复结束和未分配的序号被忽略
+        this.chatSequenceAllocator.complete("room", second);
+        this.chatSequenceAllocator.complete("room", third + 5);
+
+        assertEquals(third, this.chatSequenceAllocator.committed("room"));
+    }
+
+    @Test
+    void testConcurrentAllocationsAreUnique() throws InterruptedException
+    {
+        final var threads   = 8;
+        final var perThread = 1_000;
+        final var seen      = ConcurrentHashMap.<Long>newKeySet();
+        final var done      = new CountDownLatch(threads);
+        final var executor  = Executors.newFixedThreadPool(threads);
+
+        for (int t = 0; t < threads; t++)
+        {
+            executor.execute(() ->
+                             {
+                                 for (int i = 0; i < perThread; i++)
+                                 {
+                                     final var seq = this.chatSequenceAllocator.allocate("room");
+                                     seen.add(seq);
+                                     this.chatSequenceAllocator.complete("room", seq);
+                                 }
+
+                                 done.countDown();
+                             });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // 验证结果：序号连续且不重复，全部结束后水位等于最后分配的序号
+        assertEquals(threads * perThread, seen.size());
+        assertEquals(Set.of(1L, (long) threads * perThread),
+                     Set.of(seen.stream()
+                                .min(Long::compare)
+                                .orElseThrow(),
+                            seen.stream()
+                                .max(Long::compare)
+                                .orElseThrow()));
+        assertEquals((long) threads * perThread, this.chatSequenceAllocator.committed("room"));
+        verify(this.chatMessageStore, times(1)).findMaxSeq("room");
+    }
+}
@@ -1,16 +1,31 @@
 package org.ovo307000.chat.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
 import org.ovo307000.chat.module.entity.ChatMessage;
-import org.ovo307000.chat.repository.ChatMessageRepository;
+import org.ovo307000.chat.persistence.ChatMessageWriteBehindBuffer;
+import org.ovo307000.chat.search.MessageSearchIndex;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.springframework.core.task.SyncTaskExecutor;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -22,7 +37,35 @@ class ChatMessageServiceTest
     private ChatRoomService chatRoomService;
 
     @Mock
-    private ChatMessageRepository chatMessageRepository;
+    private ChatMessageStore chatMessageStore;
+
+    @Mock
+    private ChatMessageWriteBehindBuffer chatMessageWriteBehindBuffer;
+
+    @Mock
+    private ChatSequenceAllocator chatSequenceAllocator;
+
+    @Mock
+    private ReadCursorWriter readCursorWriter;
+
+    @Mock
+    private MessageSearchIndex messageSearchIndex;
+
+    @Spy
+    private ChatProperties chatProperties = new ChatProperties();
+
+    // 同步执行器，让异步操作在测试线程中直接执行
+    @Spy
+    private Executor taskExecutor = new SyncTaskExecutor();
+
+    // 使用内存中的指标注册表，便于断言记录的指标
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ChatMetrics chatMetrics = new ChatMetrics(this.meterRegistry);
+
+    @Spy
+    private RecentMessageCache recentMessageCache = new RecentMessageCache(this.chatProperties);
 
     @InjectMocks
     private ChatMessageService chatMessageService;
@@ -46,8 +89,9 @@ class ChatMessageServiceTest
 
         // 模拟chatRoomService的行为
         when(this.chatRoomService.getChatRoomId("sender1", "receiver1", true)).thenReturn(Optional.of("chatRoom1"));
-        // 模拟chatMessageRepository的行为
-        when(this.chatMessageRepository.save(any(ChatMessage.class))).thenReturn(message);
+        // 模拟chatMessageStore的行为
+        when(this.chatMessageStore.save(any(ChatMessage.class))).thenReturn(message);
+        when(this.chatSequenceAllocator.allocate("chatRoom1")).thenReturn(7L);
 
         // 调用被测试的方法
         var future = this.chatMessageService.saveChatMessageAsync(message);
@@ -56,8 +100,103 @@ class ChatMessageServiceTest
         assertNotNull(future);
         assertEquals(message, future.join());
         assertEquals("chatRoom1", message.getChatRoomId());
-        // 验证chatMessageRepository.save方法被调用了一次
-        verify(this.chatMessageRepository, times(1)).save(message);
+        // 验证序号在保存前分配，并在保存结束后推进提交水位
+        assertEquals(7L, message.getSeq());
+        verify(this.chatSequenceAllocator, times(1)).complete("chatRoom1", 7L);
+        // 发送者的读取位置推进到自己发送的消息
+        verify(this.readCursorWriter, times(1)).advance("sender1", "chatRoom1", 7L);
+        // 验证chatMessageStore.save方法被调用了一次
+        verify(this.chatMessageStore, times(1)).save(message);
+        // 保存成功的消息加入全文索引
+        verify(this.messageSearchIndex, times(1)).index(message);
+    }
+
+    @Test
+    void testSaveChatMessageAsyncRecordsPersistenceOutcome()
+    {
+        // 准备测试数据：第一次保存成功，第二次保存失败
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", true)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatMessageStore.save(any(ChatMessage.class))).thenAnswer(invocation -> invocation.getArgument(
+                                                                         0))
+                                                                 .thenThrow(new RuntimeException("Test exception"));
+
+        this.chatMessageService.saveChatMessageAsync(ChatMessage.builder()
+                                                                .senderId("sender1")
+                                                                .receiverId("receiver1")
+                                                                .build());
+        final var failed = this.chatMessageService.saveChatMessageAsync(ChatMessage.builder()
+                                                                                   .senderId("sender1")
+                                                                                   .receiverId("receiver1")
+                                                                                   .build());
+
+        // 验证结果：成功和失败分别计入 outcome 标签，失败的写入同样结束了它的序号
+        assertTrue(failed.isCompletedExceptionally());
+        verify(this.chatSequenceAllocator, times(2)).complete(eq("chatRoom1"), anyLong());
+        assertEquals(1,
+                     this.meterRegistry.get("chat.message.persist")
+                                       .tags("mode", "DIRECT", "outcome", "success")
+                                       .timer()
+                                       .count());
+        assertEquals(1,
+                     this.meterRegistry.get("chat.message.persist")
+                                       .tags("mode", "DIRECT", "outcome", "failure")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testSaveChatMessageAsyncSucceedsWhenIndexingAndCachingFail()
+    {
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", true)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatMessageStore.save(any(ChatMessage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // 准备测试数据：写入成功，但全文索引和最近消息缓存都失败
+        doThrow(new RuntimeException("Index exception")).when(this.messageSearchIndex)
+                                                        .index(any(ChatMessage.class));
+        doThrow(new RuntimeException("Cache exception")).when(this.recentMessageCache)
+                                                        .append(any(ChatMessage.class));
+
+        var message = ChatMessage.builder()
+                                 .senderId("sender1")
+                                 .receiverId("receiver1")
+                                 .build();
+
+        // 调用被测试的方法
+        var future = this.chatMessageService.saveChatMessageAsync(message);
+
+        // 验证结果：保存仍然成功，缓存失败的聊天室被失效，之后从数据库重新加载
+        assertFalse(future.isCompletedExceptionally());
+        assertSame(message, future.join());
+        verify(this.recentMessageCache, times(1)).invalidate("chatRoom1");
+        assertEquals(1,
+                     this.meterRegistry.get("chat.message.persist")
+                                       .tags("mode", "DIRECT", "outcome", "success")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testSaveChatMessageAsyncWriteBehind()
+    {
+        // 切换到写后模式
+        this.chatProperties.getPersistence()
+                           .setMode(ChatProperties.Persistence.Mode.WRITE_BEHIND);
+
+        var message = new ChatMessage();
+        message.setSenderId("sender1");
+        message.setReceiverId("receiver1");
+
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", true)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatMessageWriteBehindBuffer.enqueue(message)).thenReturn(CompletableFuture.completedFuture(message));
+
+        // 调用被测试的方法
+        var future = this.chatMessageService.saveChatMessageAsync(message);
+
+        // 验证消息进入写后队列而不是直接保存，且缺失的时间戳由服务端补齐
+        assertEquals(message, future.join());
+        assertNotNull(message.getTimestamp());
+        verify(this.chatMessageWriteBehindBuffer, times(1)).enqueue(message);
+        verify(this.chatMessageStore, never()).save(any(ChatMessage.class));
     }
 
     @Test
@@ -80,8 +219,8 @@ class ChatMessageServiceTest
                                                      "Hi",
                                                      LocalDateTime.now()));
 
-        // 模拟chatMessageRepository的行为
-        when(this.chatMessageRepository.findByChatRoomId("chatRoom1")).thenReturn(messages);
+        // 模拟chatMessageStore的行为
+        when(this.chatMessageStore.findByChatRoomId("chatRoom1")).thenReturn(messages);
 
         // 调用被测试的方法
         var future = this.chatMessageService.fetchChatMessagesAsync("sender1", "receiver1");
@@ -91,8 +230,8 @@ class ChatMessageServiceTest
         assertEquals(2,
                      future.join()
                            .size());
-        // 验证chatMessageRepository.findByChatRoomId方法被调用了一次
-        verify(this.chatMessageRepository, times(1)).findByChatRoomId("chatRoom1");
+        // 验证chatMessageStore.findByChatRoomId方法被调用了一次
+        verify(this.chatMessageStore, times(1)).findByChatRoomId("chatRoom1");
     }
 
     @Test
@@ -123,4 +262,224 @@ class ChatMessageServiceTest
                      () -> this.chatMessageService.fetchChatMessagesAsync("sender1", "receiver1")
                                                   .join());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testStreamChatMessages()
+    {
+        // 准备测试数据
+        var message = new ChatMessage("1", "chatRoom1", "sender1", "receiver1", "Hello", LocalDateTime.now());
+
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatMessageStore.streamByChatRoomId("chatRoom1", 500)).thenReturn(Stream.of(message));
+
+        // 调用被测试的方法
+        try (var result = this.chatMessageService.streamChatMessages("sender1", "receiver1"))
+        {
+            // 验证结果：按配置的批大小从游标读取
+            assertEquals(1, result.count());
+        }
+
+        verify(this.chatMessageStore, times(1)).streamByChatRoomId("chatRoom1", 500);
+
+        // 聊天室不存在时抛出异常，不会打开游标
+        when(this.chatRoomService.getChatRoomId("sender1", "nobody", false)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> this.chatMessageService.streamChatMessages("sender1", "nobody"));
+    }
+
+    @Test
+    void testFetchChatMessagePageAsyncLatest()
+    {
+        // 模拟chatRoomService的行为
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+
+        // 仓库按时间倒序返回
+        var now = LocalDateTime.now();
+        var messages = Arrays.asList(new ChatMessage("2", "chatRoom1", "receiver1", "sender1", "Hi", now.plusMinutes(1)),
+                                     new ChatMessage("1", "chatRoom1", "sender1", "receiver1", "Hello", now));
+        when(this.chatMessageStore.findPageBefore("chatRoom1", null, 11)).thenReturn(messages);
+
+        // 调用被测试的方法
+        var page = this.chatMessageService.fetchChatMessagePageAsync("sender1", "receiver1", null, null, 10)
+                                          .join();
+
+        // 验证结果被反转为时间正序，且多取了一条用于判断是否还有更多数据
+        assertEquals("1",
+                     page.get(0)
+                         .getId());
+        assertEquals("2",
+                     page.get(1)
+                         .getId());
+        verify(this.chatMessageStore, times(1)).findPageBefore("chatRoom1", null, 11);
+    }
+
+    @Test
+    void testFetchChatMessagePageAsyncLatestServedFromRecentMessages()
+    {
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatRoomService.getChatRoomId("receiver1", "sender1", true)).thenReturn(Optional.of("chatRoom1"));
+
+        // 准备测试数据：聊天室中只有一条消息，少于请求的条数，说明已经读到了全部消息
+        var now   = LocalDateTime.now();
+        var first = new ChatMessage("1", "chatRoom1", "sender1", "receiver1", "Hello", now);
+        when(this.chatMessageStore.findPageBefore("chatRoom1", null, 11)).thenReturn(List.of(first));
+
+        // 第一次读取未命中，查询数据库并填充缓存
+        this.chatMessageService.fetchChatMessagePageAsync("sender1", "receiver1", null, null, 10)
+                               .join();
+
+        // 保存一条新消息，写入成功后追加到缓存
+        var reply = new ChatMessage(null, null, "receiver1", "sender1", "Hi", now.plusSeconds(1));
+        when(this.chatMessageStore.save(reply)).then(invocation ->
+                                                     {
+                                                    reply.setId("2");
+
+                                                              return reply;
+                                                          });
+        this.chatMessageService.saveChatMessageAsync(reply)
+                               .join();
+
+        // 调用被测试的方法
+        var page = this.chatMessageService.fetchChatMessagePageAsync("sender1", "receiver1", null, null, 10)
+                                          .join();
+
+        // 验证结果：第二次读取由缓存提供，包含新保存的消息，数据库只查询过一次
+        assertEquals(List.of(first, reply), page);
+        verify(this.chatMessageStore, times(1)).findPageBefore("chatRoom1", null, 11);
+    }
+
+    @Test
+    void testSaveChatMessageAsyncTruncatesTimestampToMillis()
+    {
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", true)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatMessageStore.findPageBefore("chatRoom1", null, 11)).thenReturn(List.of());
+
+        // 填充缓存，之后保存的消息追加到缓存
+        this.chatMessageService.fetchChatMessagePageAsync("sender1", "receiver1", null, null, 10)
+                               .join();
+
+        // 准备测试数据：两条消息在同一毫秒内，ID 的顺序与纳秒部分的顺序相反
+        var millis = LocalDateTime.of(2024, 10, 1, 12, 0, 0, 5_000_000);
+        var first  = new ChatMessage(null, null, "sender1", "receiver1", "first", millis.plusNanos(900_000));
+        var second = new ChatMessage(null, null, "sender1", "receiver1", "second", millis.plusNanos(100_000));
+
+        when(this.chatMessageStore.save(any(ChatMessage.class))).then(invocation ->
+                                                                      {
+                                                                          ChatMessage saved = invocation.getArgument(0);
+                                                                          saved.setId(saved == first ? "1" : "2");
+
+                                                                          return saved;
+                                                                      });
+
+        // 调用被测试的方法
+        this.chatMessageService.saveChatMessageAsync(first)
+                               .join();
+        this.chatMessageService.saveChatMessageAsync(second)
+                               .join();
+
+        // 验证结果：保存和缓存的时间戳都截断到毫秒，与 MongoDB 读出的值一致
+        assertEquals(millis, first.getTimestamp());
+        assertEquals(millis, second.getTimestamp());
+        verify(this.chatMessageStore, times(2)).save(argThat(message -> message.getTimestamp()
+                                                                               .equals(millis)));
+
+        // 缓存中的顺序与数据库的 (timestamp, id) 顺序相同
+        var page = this.chatMessageService.fetchChatMessagePageAsync("sender1", "receiver1", null, null, 10)
+                                          .join();
+
+        assertEquals(List.of(first, second), page);
+        verify(this.chatMessageStore, times(1)).findPageBefore("chatRoom1", null, 11);
+    }
+
+    @Test
+    void testFetchChatMessagePageAsyncAfterCursor()
+    {
+        // 模拟chatRoomService的行为
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+        var cursor = new ChatMessageCursor(LocalDateTime.now(), "1");
+
+        // 调用被测试的方法
+        this.chatMessageService.fetchChatMessagePageAsync("sender1", "receiver1", null, cursor, 5)
+                               .join();
+
+        // 验证向后翻页使用正序查询
+        verify(this.chatMessageStore, times(1)).findPageAfter("chatRoom1", cursor, 6);
+        verify(this.chatMessageStore, never()).findPageBefore(any(), any(), anyInt());
+    }
+
+    @Test
+    void testFetchChatMessagePageAsyncBothCursors()
+    {
+        var cursor = new ChatMessageCursor(LocalDateTime.now(), "1");
+
+        // 同时指定 before 和 after 时抛出异常
+        assertThrows(IllegalArgumentException.class,
+                     () -> this.chatMessageService.fetchChatMessagePageAsync("sender1",
+                                                                             "receiver1",
+                                                                             cursor,
+                                                                             cursor,
+                                                                             5));
+    }
+
+    @Test
+    void testFetchChatMessagesSinceAsync()
+    {
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+        // 序号 1~5 已经写入结束，更大的序号仍在写入中
+        when(this.chatSequenceAllocator.committed("chatRoom1")).thenReturn(5L);
+
+        // 准备测试数据：序号 3 对应的写入失败，数据库中没有它
+        var now      = LocalDateTime.now();
+        var messages = List.of(new ChatMessage("2", "chatRoom1", 2L, "sender1", "receiver1", "b", now),
+                               new ChatMessage("4", "chatRoom1", 4L, "sender1", "receiver1", "d", now),
+                               new ChatMessage("5", "chatRoom1", 5L, "sender1", "receiver1", "e", now));
+        when(this.chatMessageStore.findSinceSeq("chatRoom1", 1L, 5L, 3)).thenReturn(messages);
+        when(this.chatMessageStore.findSinceSeq("chatRoom1", 1L, 5L, 4)).thenReturn(messages);
+
+        // 调用被测试的方法：每次最多两条
+        var first = this.chatMessageService.fetchChatMessagesSinceAsync("sender1", "receiver1", 1L, 2)
+                                           .join();
+
+        // 验证结果：多出的一条被截掉，同步位置停在本页最后一条
+        assertEquals(messages.subList(0, 2), first.messages());
+        assertEquals(4L, first.lastSeq());
+        assertTrue(first.hasMore());
+
+        // 一次取完时同步位置推进到提交水位
+        var all = this.chatMessageService.fetchChatMessagesSinceAsync("sender1", "receiver1", 1L, 3)
+                                         .join();
+
+        assertEquals(messages, all.messages());
+        assertEquals(5L, all.lastSeq());
+        assertFalse(all.hasMore());
+    }
+
+    @Test
+    void testFetchChatMessagesSinceAsyncUpToDate()
+    {
+        when(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)).thenReturn(Optional.of("chatRoom1"));
+        when(this.chatSequenceAllocator.committed("chatRoom1")).thenReturn(5L);
+
+        // 调用被测试的方法：客户端已经收到了水位以内的全部消息
+        var delta = this.chatMessageService.fetchChatMessagesSinceAsync("sender1", "receiver1", 5L, 10)
+                                           .join();
+
+        // 验证结果：不访问数据库
+        assertTrue(delta.messages()
+                        .isEmpty());
+        assertEquals(5L, delta.lastSeq());
+        verify(this.chatMessageStore, never()).findSinceSeq(anyString(), anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void testResolvePageSize()
+    {
+        // 未指定时使用默认值，超过上限时截断
+        assertEquals(50, this.chatMessageService.resolvePageSize(null));
+        assertEquals(50, this.chatMessageService.resolvePageSize(0));
+        assertEquals(20, this.chatMessageService.resolvePageSize(20));
+        assertEquals(200, this.chatMessageService.resolvePageSize(10_000));
+    }
+}
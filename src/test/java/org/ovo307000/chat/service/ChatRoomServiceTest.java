@@ -1,14 +1,17 @@
 package org.ovo307000.chat.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.metrics.ChatMetrics;
 import org.ovo307000.chat.module.entity.ChatRoom;
-import org.ovo307000.chat.repository.ChatRoomRepository;
-
-import java.util.Optional;
+import org.ovo307000.chat.storage.ChatRoomStore;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -17,7 +20,19 @@ class ChatRoomServiceTest
 {
 
     @Mock
-    private ChatRoomRepository chatRoomRepository;
+    private ChatRoomStore chatRoomStore;
+
+    @Spy
+    private ChatRoomIdCache chatRoomIdCache = new ChatRoomIdCache(new ChatProperties());
+
+    // 使用内存中的指标注册表，便于断言记录的指标
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ChatMetrics chatMetrics = new ChatMetrics(this.meterRegistry);
+
+    @Mock
+    private GroupRoomService groupRoomService;
 
     @InjectMocks
     private ChatRoomService chatRoomService;
@@ -27,44 +42,53 @@ class ChatRoomServiceTest
     {
         // 初始化所有的@Mock注解的mock对象
         MockitoAnnotations.openMocks(this);
+
+        // 缓存统计发布到内存中的指标注册表
+        this.chatRoomIdCache.bindTo(this.meterRegistry);
+    }
+
+    @Test
+    void testChatRoomIdOfIsSymmetric()
+    {
+        // 两个方向计算得到的聊天室ID相同
+        assertEquals(ChatRoomService.chatRoomIdOf("sender1", "receiver1"),
+                     ChatRoomService.chatRoomIdOf("receiver1", "sender1"));
+        assertEquals("receiver1 ❤ sender1", ChatRoomService.chatRoomIdOf("sender1", "receiver1"));
     }
 
     @Test
     void testGetChatRoomIdExisting()
     {
-        // 创建一个测试用的ChatRoom对象
-        var chatRoom = new ChatRoom();
-        chatRoom.setId("chatRoom1");
-        // 模拟chatRoomRepository的行为
-        when(this.chatRoomRepository.findBySenderIdAndReceiverId("sender1", "receiver1")).thenReturn(Optional.of(
-                chatRoom));
+        // 模拟chatRoomStore的行为
+        when(this.chatRoomStore.existsById("receiver1 ❤ sender1")).thenReturn(true);
 
         // 调用被测试的方法
         var result = this.chatRoomService.getChatRoomId("sender1", "receiver1", false);
 
         // 验证结果
         assertTrue(result.isPresent());
-        assertEquals("chatRoom1", result.get());
+        assertEquals("receiver1 ❤ sender1", result.get());
     }
 
     @Test
     void testGetChatRoomIdNotExistingNoCreate()
     {
-        // 模拟chatRoomRepository的行为，返回空的Optional
-        when(this.chatRoomRepository.findBySenderIdAndReceiverId("sender1", "receiver1")).thenReturn(Optional.empty());
+        // 模拟chatRoomStore的行为，聊天室不存在
+        when(this.chatRoomStore.existsById("receiver1 ❤ sender1")).thenReturn(false);
 
         // 调用被测试的方法，不创建新的聊天室
         var result = this.chatRoomService.getChatRoomId("sender1", "receiver1", false);
 
         // 验证结果为空
         assertFalse(result.isPresent());
+        verify(this.chatRoomStore, never()).save(any(ChatRoom.class));
     }
 
     @Test
     void testGetChatRoomIdNotExistingCreate()
     {
-        // 模拟chatRoomRepository的行为，返回空的Optional
-        when(this.chatRoomRepository.findBySenderIdAndReceiverId("sender1", "receiver1")).thenReturn(Optional.empty());
+        // 模拟chatRoomStore的行为，聊天室不存在
+        when(this.chatRoomStore.existsById("receiver1 ❤ sender1")).thenReturn(false);
 
         // 调用被测试的方法，创建新的聊天室
         var result = this.chatRoomService.getChatRoomId("sender1", "receiver1", true);
@@ -75,6 +99,29 @@ class ChatRoomServiceTest
                          .contains("sender1"));
         assertTrue(result.get()
                          .contains("receiver1"));
+        verify(this.chatRoomStore, times(1)).save(any(ChatRoom.class));
+
+        // 验证解析耗时按结果记录
+        assertEquals(1,
+                     this.meterRegistry.get("chat.room.resolve")
+                                       .tag("result", "created")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testGetChatRoomIdOfGroupRequiresMembership()
+    {
+        when(this.groupRoomService.isMember("group:1", "member")).thenReturn(true);
+
+        // 验证结果：群聊成员得到群聊ID，非成员得到空结果，群聊不会被创建
+        assertEquals("group:1",
+                     this.chatRoomService.getChatRoomId("member", "group:1", true)
+                                         .orElseThrow());
+        assertFalse(this.chatRoomService.getChatRoomId("stranger", "group:1", true)
+                                        .isPresent());
+        verify(this.chatRoomStore, never()).save(any(ChatRoom.class));
+        verify(this.chatRoomStore, never()).existsById(anyString());
     }
 
     @Test
@@ -87,7 +134,50 @@ class ChatRoomServiceTest
         assertNotNull(chatId);
         assertTrue(chatId.contains("sender1"));
         assertTrue(chatId.contains("receiver1"));
-        // 验证chatRoomRepository.save方法被调用了两次（为发送者和接收者各创建一个聊天室）
-        verify(this.chatRoomRepository, times(2)).save(any(ChatRoom.class));
+        // 验证chatRoomStore.save方法只被调用了一次，且参与者按字典序存放
+        verify(this.chatRoomStore, times(1)).save(argThat(chatRoom -> chatId.equals(chatRoom.getId()) &&
+                                                                      "receiver1".equals(chatRoom.getSenderId()) &&
+                                                                      "sender1".equals(chatRoom.getReceiverId())));
+    }
+
+    @Test
+    void testGetChatRoomIdServedFromCache()
+    {
+        // 模拟chatRoomStore的行为
+        when(this.chatRoomStore.existsById("receiver1 ❤ sender1")).thenReturn(true);
+
+        // 两个方向各调用一次
+        this.chatRoomService.getChatRoomId("sender1", "receiver1", true);
+        var result = this.chatRoomService.getChatRoomId("receiver1", "sender1", false);
+
+        // 验证第二次调用命中缓存，不再访问数据库
+        assertEquals("receiver1 ❤ sender1", result.orElseThrow());
+        verify(this.chatRoomStore, times(1)).existsById("receiver1 ❤ sender1");
+        assertEquals(1,
+                     this.meterRegistry.get("cache.gets")
+                                       .tags("cache", "chat.roomIds", "result", "hit")
+                                       .functionCounter()
+                                       .count());
+    }
+
+    @Test
+    void testGetChatRoomIdNegativeResultCachedUntilCreated()
+    {
+        when(this.chatRoomStore.existsById(anyString())).thenReturn(false);
+
+        // 读路径上的否定结果会被缓存
+        assertFalse(this.chatRoomService.getChatRoomId("sender1", "receiver1", false)
+                                        .isPresent());
+        assertFalse(this.chatRoomService.getChatRoomId("receiver1", "sender1", false)
+                                        .isPresent());
+        verify(this.chatRoomStore, times(1)).existsById("receiver1 ❤ sender1");
+
+        // 创建聊天室后，读路径能直接从缓存拿到聊天室ID
+        var created = this.chatRoomService.getChatRoomId("sender1", "receiver1", true)
+                                          .orElseThrow();
+        assertEquals(created,
+                     this.chatRoomService.getChatRoomId("receiver1", "sender1", false)
+                                         .orElseThrow());
+        verify(this.chatRoomStore, times(1)).existsById("receiver1 ❤ sender1");
     }
-}
\ No newline at end of file
+}
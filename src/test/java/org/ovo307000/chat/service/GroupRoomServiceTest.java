@@ -0,0 +1,97 @@
+package org.ovo307000.chat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.group.GroupMembershipIndex;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.ovo307000.chat.storage.GroupRoomStore;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GroupRoomServiceTest
+{
+
+    @Mock
+    private GroupRoomStore groupRoomStore;
+
+    @Mock
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @InjectMocks
+    private GroupRoomService groupRoomService;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 初始化所有的@Mock注解的mock对象
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testCreateGroup()
+    {
+        // 调用被测试的方法
+        var groupRoom = this.groupRoomService.createGroup("alice", "team", List.of("bob", "carol", "alice"));
+
+        // 验证结果：创建者总是成员，群聊ID带有前缀
+        assertTrue(GroupRoomService.isGroupId(groupRoom.getId()));
+        assertEquals(Set.of("alice", "bob", "carol"), groupRoom.getMemberIds());
+        verify(this.groupRoomStore, times(1)).save(groupRoom);
+        verify(this.groupMembershipIndex, times(1)).memberAdded(groupRoom.getId(), "bob");
+    }
+
+    @Test
+    void testAddMemberToMissingGroup()
+    {
+        when(this.groupRoomStore.addMember("group:missing", "bob")).thenReturn(false);
+
+        // 验证结果
+        assertThrows(IllegalArgumentException.class, () -> this.groupRoomService.addMember("group:missing", "bob"));
+        verify(this.groupMembershipIndex, never()).memberAdded(anyString(), anyString());
+    }
+
+    @Test
+    void testIsMemberFallsBackToRepositoryForOfflineUsers()
+    {
+        // bob 离线，不在索引中
+        when(this.groupMembershipIndex.isMember("group:1", "alice")).thenReturn(true);
+        when(this.groupMembershipIndex.isMember("group:1", "bob")).thenReturn(null);
+        when(this.groupRoomStore.existsByIdAndMemberIds("group:1", "bob")).thenReturn(true);
+
+        // 验证结果：在线用户不访问数据库
+        assertTrue(this.groupRoomService.isMember("group:1", "alice"));
+        assertTrue(this.groupRoomService.isMember("group:1", "bob"));
+        verify(this.groupRoomStore, never()).existsByIdAndMemberIds("group:1", "alice");
+    }
+
+    @Test
+    void testOnlineRecipientsOfExcludesSender()
+    {
+        // 准备测试数据
+        when(this.groupMembershipIndex.onlineMembers("group:1")).thenReturn(Set.of("alice", "bob", "carol"));
+
+        // 调用被测试的方法
+        var memberIds = this.groupRoomService.onlineRecipientsOf("group:1", "alice");
+
+        // 验证结果：发送者不在其中
+        assertEquals(Set.of("bob", "carol"), Set.copyOf(memberIds));
+        assertEquals(2, memberIds.size());
+    }
+
+    @Test
+    void testFindGroupsOf()
+    {
+        var groupRoom = new GroupRoom("group:1", "team", "alice", Set.of("alice"));
+        when(this.groupRoomStore.findByMemberIds("alice")).thenReturn(List.of(groupRoom));
+
+        // 验证结果
+        assertEquals(List.of(groupRoom), this.groupRoomService.findGroupsOf("alice"));
+    }
+}
@@ -0,0 +1,111 @@
+package org.ovo307000.chat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.module.entity.ChatRoom;
+import org.ovo307000.chat.module.entity.GroupRoom;
+import org.ovo307000.chat.search.MessageSearchIndex;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessageSearchServiceTest
+{
+
+    @Mock
+    private MessageSearchIndex messageSearchIndex;
+
+    @Mock
+    private ChatRoomStore chatRoomStore;
+
+    @Mock
+    private GroupRoomService groupRoomService;
+
+    @Spy
+    private ChatProperties chatProperties = new ChatProperties();
+
+    // 同步执行器，让异步操作在测试线程中直接执行
+    @Spy
+    private Executor taskExecutor = new SyncTaskExecutor();
+
+    @InjectMocks
+    private MessageSearchService messageSearchService;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 初始化所有的@Mock注解的mock对象
+        MockitoAnnotations.openMocks(this);
+
+        when(this.messageSearchIndex.isEnabled()).thenReturn(true);
+    }
+
+    @Test
+    void testSearchAsyncScopesToRoomsOfUser()
+    {
+        // 准备测试数据
+        final var hit    = new MessageSearchIndex.Hit(ChatMessage.builder()
+                                                                 .id("m1")
+                                                                 .content("hello")
+                                                                 .build(), 1.5);
+        final var result = new MessageSearchIndex.SearchResult(List.of(hit), true);
+
+        when(this.chatRoomStore.findByParticipant("alice")).thenReturn(List.of(new ChatRoom(
+                "alice ❤ bob",
+                "alice ❤ bob",
+                "alice",
+                "bob")));
+        when(this.groupRoomService.findGroupsOf("alice")).thenReturn(List.of(GroupRoom.builder()
+                                                                                      .id("group:1")
+                                                                                      .build()));
+        when(this.messageSearchIndex.search(Set.of("alice ❤ bob", "group:1"), "hello", 20, 20)).thenReturn(result);
+
+        // 调用被测试的方法
+        final var searched = this.messageSearchService.searchAsync("alice", "hello", 1, 20)
+                                                      .join();
+
+        // 验证结果
+        assertSame(result, searched);
+        verify(this.messageSearchIndex, times(1)).search(Set.of("alice ❤ bob", "group:1"), "hello", 20, 20);
+    }
+
+    @Test
+    void testSearchAsyncStopsAtMaxResults()
+    {
+        this.chatProperties.getSearch()
+                           .setMaxResults(50);
+
+        when(this.messageSearchIndex.search(anyCollection(), eq("hello"), eq(40), eq(10)))
+                .thenReturn(new MessageSearchIndex.SearchResult(List.of(), true));
+
+        // 最后一页截断到 max-results，不再提示有更多结果
+        assertFalse(this.messageSearchService.searchAsync("alice", "hello", 2, 20)
+                                             .join()
+                                             .hasMore());
+        verify(this.messageSearchIndex, times(1)).search(anyCollection(), eq("hello"), eq(40), eq(10));
+
+        assertThrows(IllegalArgumentException.class, () -> this.messageSearchService.searchAsync("alice", "hello", 3, 20));
+        assertThrows(IllegalArgumentException.class, () -> this.messageSearchService.searchAsync("alice", "hello", -1, 20));
+    }
+
+    @Test
+    void testSearchAsyncDisabled()
+    {
+        when(this.messageSearchIndex.isEnabled()).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> this.messageSearchService.searchAsync("alice", "hello", 0, 20));
+        verifyNoInteractions(this.chatRoomStore);
+    }
+}
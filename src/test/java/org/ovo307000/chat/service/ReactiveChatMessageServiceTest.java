@@ -0,0 +1,193 @@
+package org.ovo307000.chat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.cache.ChatRoomIdCache;
+import org.ovo307000.chat.cache.RecentMessageCache;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.group.GroupMembershipIndex;
+import org.ovo307000.chat.metrics.ChatMetrics;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.storage.ReactiveChatMessageStore;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReactiveChatMessageServiceTest
+{
+    private static final String CHAT_ROOM_ID = ChatRoomService.chatRoomIdOf("sender1", "receiver1");
+
+    @Mock
+    private ReactiveChatMessageStore reactiveChatMessageStore;
+
+    @Mock
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @Spy
+    private ChatProperties chatProperties = new ChatProperties();
+
+    @Spy
+    private ChatRoomIdCache chatRoomIdCache = new ChatRoomIdCache(this.chatProperties);
+
+    // 使用内存中的指标注册表，便于断言记录的指标
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ChatMetrics chatMetrics = new ChatMetrics(this.meterRegistry);
+
+    @Spy
+    private RecentMessageCache recentMessageCache = new RecentMessageCache(this.chatProperties);
+
+    @InjectMocks
+    private ReactiveChatMessageService reactiveChatMessageService;
+
+    @BeforeEach
+    void setUp()
+    {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testFindChatRoomIdCachesResult()
+    {
+        // 模拟聊天室存在
+        when(this.reactiveChatMessageStore.existsChatRoom(CHAT_ROOM_ID)).thenReturn(Mono.just(true));
+
+        // 调用两次，第二次应命中缓存
+        assertEquals(CHAT_ROOM_ID,
+                     this.reactiveChatMessageService.findChatRoomId("sender1", "receiver1")
+                                                    .block());
+        assertEquals(CHAT_ROOM_ID,
+                     this.reactiveChatMessageService.findChatRoomId("receiver1", "sender1")
+                                                    .block());
+
+        // 验证结果
+        verify(this.reactiveChatMessageStore, times(1)).existsChatRoom(CHAT_ROOM_ID);
+        assertEquals(2,
+                     this.meterRegistry.get("chat.room.resolve")
+                                       .tag("result", "existing")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testFindChatRoomIdAbsent()
+    {
+        // 模拟聊天室不存在
+        when(this.reactiveChatMessageStore.existsChatRoom(CHAT_ROOM_ID)).thenReturn(Mono.just(false));
+
+        assertNull(this.reactiveChatMessageService.findChatRoomId("sender1", "receiver1")
+                                                  .block());
+
+        // 否定结果也会被缓存
+        assertEquals(Optional.empty(), this.chatRoomIdCache.getIfPresent(CHAT_ROOM_ID));
+    }
+
+    @Test
+    void testFindChatRoomIdForGroupMember()
+    {
+        // 模拟离线成员：索引中没有该用户，通过存储确认成员身份
+        when(this.groupMembershipIndex.isMember("group:1", "sender1")).thenReturn(null);
+        when(this.reactiveChatMessageStore.isGroupMember("group:1", "sender1")).thenReturn(Mono.just(true));
+
+        // 调用被测试的方法
+        var result = this.reactiveChatMessageService.findChatRoomId("sender1", "group:1")
+                                                    .block();
+
+        // 验证结果：聊天室ID就是群聊ID，不按单聊查找
+        assertEquals("group:1", result);
+        verify(this.reactiveChatMessageStore, never()).existsChatRoom(anyString());
+        assertEquals(1,
+                     this.meterRegistry.get("chat.room.resolve")
+                                       .tag("result", "group")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testFindChatRoomIdForGroupNonMember()
+    {
+        // 模拟在线的非成员：直接从索引中判断，不访问存储
+        when(this.groupMembershipIndex.isMember("group:1", "sender1")).thenReturn(false);
+
+        // 调用被测试的方法并验证结果
+        assertNull(this.reactiveChatMessageService.findChatRoomId("sender1", "group:1")
+                                                  .block());
+        verifyNoInteractions(this.reactiveChatMessageStore);
+        assertEquals(1,
+                     this.meterRegistry.get("chat.room.resolve")
+                                       .tag("result", "absent")
+                                       .timer()
+                                       .count());
+    }
+
+    @Test
+    void testFetchChatMessagePageLatest()
+    {
+        // 准备测试数据：存储按时间倒序返回
+        var now   = LocalDateTime.now();
+        var newer = new ChatMessage("2", CHAT_ROOM_ID, "sender1", "receiver1", "Hi", now.plusMinutes(1));
+        var older = new ChatMessage("1", CHAT_ROOM_ID, "sender1", "receiver1", "Hello", now);
+
+        this.chatRoomIdCache.put(CHAT_ROOM_ID);
+        when(this.reactiveChatMessageStore.findPageBefore(CHAT_ROOM_ID, null, 51)).thenReturn(Flux.just(newer,
+                                                                                                        older));
+
+        // 调用被测试的方法
+        var result = this.reactiveChatMessageService.fetchChatMessagePage("sender1", "receiver1", null, null, 50)
+                                                    .block();
+
+        // 验证结果：按时间正序排列，且没有查询聊天室是否存在
+        assertEquals(List.of(older, newer), result);
+        verify(this.reactiveChatMessageStore, never()).existsChatRoom(any());
+
+        // 聊天室的全部消息已经缓存，再次读取首页不访问数据库
+        assertEquals(List.of(older, newer),
+                     this.reactiveChatMessageService.fetchChatMessagePage("sender1", "receiver1", null, null, 50)
+                                                    .block());
+        verify(this.reactiveChatMessageStore, times(1)).findPageBefore(CHAT_ROOM_ID, null, 51);
+    }
+
+    @Test
+    void testFetchChatMessagePageAfterCursor()
+    {
+        var cursor  = new ChatMessageCursor(LocalDateTime.now(), "1");
+        var message = new ChatMessage("2", CHAT_ROOM_ID, "sender1", "receiver1", "Hi", LocalDateTime.now());
+
+        this.chatRoomIdCache.put(CHAT_ROOM_ID);
+        when(this.reactiveChatMessageStore.findPageAfter(CHAT_ROOM_ID, cursor, 11)).thenReturn(Flux.just(message));
+
+        var result = this.reactiveChatMessageService.fetchChatMessagePage("sender1", "receiver1", null, cursor, 10)
+                                                    .block();
+
+        assertEquals(List.of(message), result);
+    }
+
+    @Test
+    void testFetchChatMessagePageChatRoomNotFound()
+    {
+        this.chatRoomIdCache.putAbsent(CHAT_ROOM_ID);
+
+        // 验证当聊天室不存在时，以IllegalArgumentException结束
+        assertThrows(IllegalArgumentException.class,
+                     () -> this.reactiveChatMessageService.fetchChatMessagePage("sender1",
+                                                                                "receiver1",
+                                                                                null,
+                                                                                null,
+                                                                                50)
+                                                          .block());
+        verifyNoInteractions(this.reactiveChatMessageStore);
+    }
+}
@@ -0,0 +1,168 @@
+package org.ovo307000.chat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageDTO;
+import org.ovo307000.chat.module.entity.ChatMessage;
+import org.ovo307000.chat.module.entity.ChatRoom;
+import org.ovo307000.chat.module.entity.ReadCursor;
+import org.ovo307000.chat.sequence.ChatSequenceAllocator;
+import org.ovo307000.chat.storage.ChatMessageStore;
+import org.ovo307000.chat.storage.ChatRoomStore;
+import org.ovo307000.chat.storage.GroupRoomStore;
+import org.ovo307000.chat.storage.ReadCursorStore;
+import org.ovo307000.chat.unread.ReadCursorWriter;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UnreadServiceTest
+{
+
+    @Mock
+    private ChatRoomService chatRoomService;
+
+    @Mock
+    private ChatRoomStore chatRoomStore;
+
+    @Mock
+    private GroupRoomStore groupRoomStore;
+
+    @Mock
+    private ChatMessageStore chatMessageStore;
+
+    @Mock
+    private ReadCursorStore readCursorStore;
+
+    @Mock
+    private ReadCursorWriter readCursorWriter;
+
+    @Mock
+    private ChatSequenceAllocator chatSequenceAllocator;
+
+    @Spy
+    private ChatProperties chatProperties = new ChatProperties();
+
+    // 同步执行器，让异步操作在测试线程中直接执行
+    @Spy
+    private Executor taskExecutor = new SyncTaskExecutor();
+
+    @InjectMocks
+    private UnreadService unreadService;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 初始化所有的@Mock注解的mock对象
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testMarkRead()
+    {
+        when(this.chatRoomService.getChatRoomId("alice", "bob", false)).thenReturn(Optional.of("alice ❤ bob"));
+        when(this.chatSequenceAllocator.committed("alice ❤ bob")).thenReturn(9L);
+
+        // 调用被测试的方法
+        this.unreadService.markRead("alice", "bob", 5L);
+
+        // 验证读取位置交给合并写入器
+        verify(this.readCursorWriter, times(1)).advance("alice", "alice ❤ bob", 5L);
+    }
+
+    @Test
+    void testMarkReadBeyondCommittedIsClamped()
+    {
+        when(this.chatRoomService.getChatRoomId("alice", "bob", false)).thenReturn(Optional.of("alice ❤ bob"));
+        when(this.chatSequenceAllocator.committed("alice ❤ bob")).thenReturn(9L);
+
+        // 调用被测试的方法：上报的位置超过了聊天室中已有的消息
+        this.unreadService.markRead("alice", "bob", Long.MAX_VALUE);
+
+        // 验证结果：读取位置停在提交水位，之后的消息仍然是未读
+        verify(this.readCursorWriter, times(1)).advance("alice", "alice ❤ bob", 9L);
+    }
+
+    @Test
+    void testMarkReadInvalid()
+    {
+        when(this.chatRoomService.getChatRoomId("alice", "nobody", false)).thenReturn(Optional.empty());
+
+        // 验证结果：负数位置和不存在的聊天室都被拒绝
+        assertThrows(IllegalArgumentException.class, () -> this.unreadService.markRead("alice", "bob", -1L));
+        assertThrows(IllegalArgumentException.class, () -> this.unreadService.markRead("alice", "nobody", 1L));
+        verifyNoInteractions(this.readCursorWriter);
+    }
+
+    @Test
+    void testFetchUnreadAsync()
+    {
+        this.chatProperties.getUnread()
+                           .setMaxMessagesPerRoom(2);
+
+        // 准备测试数据：alice 参与三个聊天室
+        when(this.chatRoomStore.findByParticipant("alice")).thenReturn(List.of(
+                new ChatRoom("alice ❤ bob", "alice ❤ bob", "alice", "bob"),
+                new ChatRoom("alice ❤ carol", "alice ❤ carol", "alice", "carol"),
+                new ChatRoom("aaron ❤ alice", "aaron ❤ alice", "aaron", "alice")));
+
+        // 数据库中的读取位置，以及尚未写入的更新位置
+        when(this.readCursorStore.findByUserId("alice")).thenReturn(List.of(ReadCursor.of("alice",
+                                                                                          "alice ❤ bob",
+                                                                                          1L),
+                                                                            ReadCursor.of("alice",
+                                                                                          "alice ❤ carol",
+                                                                                          4L)));
+        when(this.readCursorWriter.pendingFor("alice")).thenReturn(Map.of("alice ❤ carol", 9L));
+
+        // 与 bob 的聊天室有 3 条未读，与 carol 的已经读完，与 aaron 的从未读过且只有 alice 自己的消息
+        when(this.chatSequenceAllocator.committed("alice ❤ bob")).thenReturn(4L);
+        when(this.chatSequenceAllocator.committed("alice ❤ carol")).thenReturn(9L);
+        when(this.chatSequenceAllocator.committed("aaron ❤ alice")).thenReturn(1L);
+
+        var now = LocalDateTime.now();
+        var fromBob = List.of(new ChatMessage("2", "alice ❤ bob", 2L, "bob", "alice", "hi", now),
+                              new ChatMessage("3", "alice ❤ bob", 3L, "bob", "alice", "are you there", now),
+                              new ChatMessage("4", "alice ❤ bob", 4L, "bob", "alice", "?", now));
+        when(this.chatMessageStore.findSinceSeq("alice ❤ bob", 1L, 4L, 3)).thenReturn(fromBob);
+        when(this.chatMessageStore.findSinceSeq("aaron ❤ alice", 0L, 1L, 3)).thenReturn(List.of(
+                new ChatMessage("1", "aaron ❤ alice", 1L, "alice", "aaron", "hello", now)));
+
+        // 调用被测试的方法
+        var bundle = this.unreadService.fetchUnreadAsync("alice")
+                                       .join();
+
+        // 验证结果：只有与 bob 的聊天室有未读，摘要截断到 2 条，可以从第 3 条继续增量同步
+        assertEquals("alice", bundle.userId());
+        assertEquals(1,
+                     bundle.rooms()
+                           .size());
+
+        var room = bundle.rooms()
+                         .get(0);
+        assertEquals("bob", room.peerId());
+        assertEquals(1L, room.lastReadSeq());
+        assertEquals(List.of(2L, 3L),
+                     room.messages()
+                         .stream()
+                         .map(ChatMessageDTO::seq)
+                         .toList());
+        assertEquals(3L, room.lastSeq());
+        assertTrue(room.hasMore());
+
+        // 已经读完的聊天室不访问数据库
+        verify(this.chatMessageStore, never()).findSinceSeq(eq("alice ❤ carol"), anyLong(), anyLong(), anyInt());
+    }
+}
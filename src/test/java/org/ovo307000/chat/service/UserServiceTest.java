@@ -5,22 +5,38 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.ovo307000.chat.group.GroupMembershipIndex;
 import org.ovo307000.chat.module.entity.User;
 import org.ovo307000.chat.module.enumeration.UserStatus;
-import org.ovo307000.chat.repository.UserRepository;
+import org.ovo307000.chat.presence.PresenceRegistry;
+import org.ovo307000.chat.presence.PresenceStatusWriter;
+import org.ovo307000.chat.storage.UserStore;
+import org.springframework.core.task.SyncTaskExecutor;
 
-import java.util.Arrays;
-import java.util.Optional;
+import java.util.concurrent.Executor;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest
 {
 
     @Mock
-    private UserRepository userRepository;
+    private UserStore userStore;
+
+    // 同步执行器，让异步操作在测试线程中直接执行
+    @Spy
+    private Executor taskExecutor = new SyncTaskExecutor();
+
+    @Spy
+    private PresenceRegistry presenceRegistry = new PresenceRegistry();
+
+    @Mock
+    private PresenceStatusWriter presenceStatusWriter;
+
+    @Mock
+    private GroupMembershipIndex groupMembershipIndex;
 
     @InjectMocks
     private UserService userService;
@@ -40,88 +56,112 @@ class UserServiceTest
         user.setNickName("testUser");
 
         // 调用被测试的方法
-        this.userService.saveUserAsync(user);
+        this.userService.saveUserAsync(user, "session1");
 
         // 验证用户状态被设置为在线
         assertEquals(UserStatus.ONLINE, user.getStatus());
-        // 验证userRepository.save方法在1秒内被调用
-        verify(this.userRepository, timeout(1000)).save(user);
+        // 验证userStore.save方法在1秒内被调用
+        verify(this.userStore, timeout(1000)).save(user);
+        // 验证用户已登记为在线
+        assertTrue(this.presenceRegistry.isOnline("testUser"));
     }
 
     @Test
-    void testUpdateStatusToOfflineAsyncUserExists()
+    void testUpdateStatusToOfflineAsyncUserOnline()
     {
-        // 创建一个测试用的User对象
+        // 创建一个在线的用户
         var user = new User();
         user.setNickName("testUser");
-        // 模拟userRepository的行为
-        when(this.userRepository.findById("testUser")).thenReturn(Optional.of(user));
+        this.userService.updateStatusToOnlineAsync(user, "session1");
 
         // 调用被测试的方法
         this.userService.updateStatusToOfflineAsync(user);
 
-        // 验证userRepository.save方法在1秒内被调用，并且用户状态被设置为离线
-        verify(this.userRepository, timeout(1000)).save(argThat(u -> u.getStatus() == UserStatus.OFFLINE));
+        // 验证用户离线，离线状态等待异步写入，且没有直接访问数据库
+        assertFalse(this.presenceRegistry.isOnline("testUser"));
+        assertEquals(UserStatus.OFFLINE, user.getStatus());
+        verify(this.presenceStatusWriter, times(1)).markDirty("testUser", UserStatus.OFFLINE);
+        verifyNoInteractions(this.userStore);
     }
 
     @Test
-    void testUpdateStatusToOfflineAsyncUserNotExists()
+    void testUpdateStatusToOfflineAsyncUserNotOnline()
     {
-        // 创建一个测试用的User对象
+        // 创建一个不在线的用户
         var user = new User();
         user.setNickName("testUser");
-        // 模拟userRepository的行为，返回空的Optional
-        when(this.userRepository.findById("testUser")).thenReturn(Optional.empty());
 
-        // 验证当用户不存在时，会抛出IllegalArgumentException
-        assertThrows(IllegalArgumentException.class, () -> this.userService.updateStatusToOfflineAsync(user));
+        // 调用被测试的方法
+        this.userService.updateStatusToOfflineAsync(user);
+
+        // 验证不会产生状态写入
+        verify(this.presenceStatusWriter, never()).markDirty(anyString(), any());
     }
 
     @Test
     void testFindConnectedUsersAsync()
     {
-        // 创建测试用的在线用户列表
-        var onlineUsers = Arrays.asList(new User(), new User());
-        // 模拟userRepository的行为
-        when(this.userRepository.findByStatus(UserStatus.ONLINE)).thenReturn(onlineUsers);
+        // 两个用户上线
+        this.userService.sessionConnected("session1", "user1", "User One");
+        this.userService.sessionConnected("session2", "user2", "User Two");
 
         // 调用被测试的方法
         var future = this.userService.findConnectedUsersAsync();
 
-        // 验证结果
+        // 验证结果直接来自内存，且不访问数据库
+        assertTrue(future.isDone());
         assertEquals(2,
                      future.join()
                            .size());
-        // 验证userRepository.findByStatus方法被调用了一次
-        verify(this.userRepository, times(1)).findByStatus(UserStatus.ONLINE);
+        verifyNoInteractions(this.userStore);
     }
 
     @Test
-    void testUpdateStatusToOnlineAsyncUserExists()
+    void testUpdateStatusToOnlineAsync()
     {
         // 创建一个测试用的User对象
         var user = new User();
         user.setNickName("testUser");
-        // 模拟userRepository的行为
-        when(this.userRepository.findById("testUser")).thenReturn(Optional.of(user));
+        user.setFullName("Test User");
 
         // 调用被测试的方法
-        this.userService.updateStatusToOnlineAsync(user);
+        this.userService.updateStatusToOnlineAsync(user, "session1");
 
-        // 验证userRepository.save方法在1秒内被调用，并且用户状态被设置为在线
-        verify(this.userRepository, timeout(1000)).save(argThat(u -> u.getStatus() == UserStatus.ONLINE));
+        // 验证用户在线，在线状态等待异步写入
+        assertEquals(UserStatus.ONLINE, user.getStatus());
+        assertEquals("Test User",
+                     this.presenceRegistry.get("testUser")
+                                          .orElseThrow()
+                                          .fullName());
+        verify(this.presenceStatusWriter, times(1)).markDirty("testUser", UserStatus.ONLINE);
+        verifyNoInteractions(this.userStore);
     }
 
     @Test
-    void testUpdateStatusToOnlineAsyncUserNotExists()
+    void testUpdateStatusToOnlineAsyncWithoutNickname()
     {
-        // 创建一个测试用的User对象
-        var user = new User();
-        user.setNickName("testUser");
-        // 模拟userRepository的行为，返回空的Optional
-        when(this.userRepository.findById("testUser")).thenReturn(Optional.empty());
+        // 验证昵称为空时抛出IllegalArgumentException
+        assertThrows(IllegalArgumentException.class,
+                     () -> this.userService.updateStatusToOnlineAsync(new User(), "session1"));
+    }
+
+    @Test
+    void testMultipleSessionsAreReferenceCounted()
+    {
+        // 同一用户打开两个会话
+        this.userService.sessionConnected("session1", "testUser", null);
+        this.userService.sessionConnected("session2", "testUser", null);
+
+        // 关闭第一个会话，用户仍在线
+        this.userService.sessionDisconnected("session1");
+        assertTrue(this.presenceRegistry.isOnline("testUser"));
+
+        // 关闭最后一个会话，用户离线
+        this.userService.sessionDisconnected("session2");
+        assertFalse(this.presenceRegistry.isOnline("testUser"));
 
-        // 验证当用户不存在时，会抛出IllegalArgumentException
-        assertThrows(IllegalArgumentException.class, () -> this.userService.updateStatusToOnlineAsync(user));
+        // 验证只在上线和离线两次状态切换时产生写入
+        verify(this.presenceStatusWriter, times(1)).markDirty("testUser", UserStatus.ONLINE);
+        verify(this.presenceStatusWriter, times(1)).markDirty("testUser", UserStatus.OFFLINE);
     }
-}
\ No newline at end of file
+}
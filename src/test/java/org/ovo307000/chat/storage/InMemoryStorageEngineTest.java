@@ -0,0 +1,217 @@
+package org.ovo307000.chat.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ovo307000.chat.archive.ChatArchive;
+import org.ovo307000.chat.config.ChatProperties;
+import org.ovo307000.chat.module.dto.ChatMessageCursor;
+import org.ovo307000.chat.module.entity.*;
+import org.ovo307000.chat.module.enumeration.UserStatus;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryStorageEngineTest
+{
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private ChatProperties chatProperties;
+
+    private InMemoryStorageEngine engine;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.chatProperties = new ChatProperties();
+        this.chatProperties.getStorage()
+                           .setSnapshotDirectory(this.directory.toString());
+
+        this.engine = this.newEngine();
+    }
+
+    @Test
+    void testPagesFollowTimestampAndIdOrder()
+    {
+        // 准备测试数据：两条消息时间戳相同，按 ID 区分先后
+        this.engine.insert(List.of(message("room", "b", 1, 2),
+                                   message("room", "a", 1, 1),
+                                   message("room", "c", 2, 3),
+                                   message("other", "d", 0, 1)));
+
+        // 调用被测试的方法并验证结果
+        assertEquals(List.of("c", "b", "a"), ids(this.engine.findPageBefore("room", null, 10)));
+        assertEquals(List.of("a"), ids(this.engine.findPageBefore("room", cursor(1, "b"), 10)));
+        assertEquals(List.of("a", "b"), ids(this.engine.findPageAfter("room", null, 2)));
+        assertEquals(List.of("c"), ids(this.engine.findPageAfter("room", cursor(1, "b"), 10)));
+        assertEquals(List.of("a", "b", "c"), ids(this.engine.findByChatRoomId("room")));
+        assertEquals(List.of(), this.engine.findPageBefore("missing", null, 10));
+    }
+
+    @Test
+    void testSequenceQueries()
+    {
+        this.engine.insert(List.of(message("room", "a", 1, 1), message("room", "b", 2, 2), message("room", "c", 3, 3)));
+
+        assertEquals(List.of("b", "c"), ids(this.engine.findSinceSeq("room", 1, 3, 10)));
+        assertEquals(List.of("b"), ids(this.engine.findSinceSeq("room", 1, 2, 10)));
+        assertEquals(List.of(), this.engine.findSinceSeq("room", 3, 3, 10));
+        assertEquals(3, this.engine.findMaxSeq("room"));
+        assertEquals(0, this.engine.findMaxSeq("missing"));
+    }
+
+    @Test
+    void testArchivableStopsAtCutoff()
+    {
+        this.engine.insert(List.of(message("room", "a", 1, 1), message("room", "b", 2, 2), message("room", "c", 3, 3)));
+
+        // 时间恰好等于 cutoff 的消息不可归档
+        assertEquals(List.of("a", "b"), ids(this.engine.findArchivable("room", null, BASE.plusSeconds(3), 10)));
+        assertEquals(List.of("b"), ids(this.engine.findArchivable("room", cursor(1, "a"), BASE.plusSeconds(3), 10)));
+        assertEquals(List.of(), this.engine.findArchivable("room", cursor(3, "c"), BASE.plusSeconds(3), 10));
+    }
+
+    @Test
+    void testDuplicateSeqIsRejected()
+    {
+        this.engine.insert(List.of(message("room", "a", 1, 1)));
+
+        // 同一聊天室中的序号唯一，冲突时不修改已有的消息
+        assertThrows(DuplicateKeyException.class, () -> this.engine.insert(List.of(message("room", "b", 2, 1))));
+        assertThrows(DuplicateKeyException.class, () -> this.engine.insert(List.of(message("room", "a", 3, 2))));
+        assertEquals(List.of("a"), ids(this.engine.findByChatRoomId("room")));
+
+        // 另一个聊天室可以使用相同的序号
+        this.engine.insert(List.of(message("other", "b", 2, 1)));
+        assertEquals(2, this.engine.messageCount());
+    }
+
+    @Test
+    void testSaveOverwritesAndDeleteRemovesFromIndexes()
+    {
+        this.engine.insert(List.of(message("room", "a", 1, 1), message("room", "b", 2, 2)));
+
+        // 覆盖保存时移动到新的时间位置
+        this.engine.save(message("room", "a", 3, 1));
+        assertEquals(List.of("b", "a"), ids(this.engine.findByChatRoomId("room")));
+
+        this.engine.deleteAllById(List.of("a", "b"));
+
+        assertEquals(List.of(), this.engine.findByChatRoomId("room"));
+        assertEquals(0, this.engine.findMaxSeq("room"));
+        assertEquals(List.of(), this.engine.findChatRoomIds());
+    }
+
+    @Test
+    void testGroupMembershipIndex()
+    {
+        this.engine.save(new GroupRoom("group:1", "g", "alice", Set.of("alice")));
+
+        // 调用被测试的方法
+        assertTrue(this.engine.addMember("group:1", "bob"));
+        assertFalse(this.engine.addMember("group:missing", "bob"));
+
+        // 验证结果
+        assertTrue(this.engine.existsByIdAndMemberIds("group:1", "bob"));
+        assertEquals(List.of("group:1"),
+                     this.engine.findByMemberIds("bob")
+                                .stream()
+                                .map(GroupRoom::getId)
+                                .toList());
+
+        assertTrue(this.engine.removeMember("group:1", "bob"));
+        assertFalse(this.engine.existsByIdAndMemberIds("group:1", "bob"));
+        assertEquals(List.of(), this.engine.findByMemberIds("bob"));
+        assertEquals(1, this.engine.findByMemberIds("alice")
+                                   .size());
+    }
+
+    @Test
+    void testChatRoomsAndReadCursors()
+    {
+        this.engine.save(new ChatRoom("alice ❤ bob", "alice ❤ bob", "alice", "bob"));
+
+        assertTrue(this.engine.existsById("alice ❤ bob"));
+        assertEquals(1, this.engine.findByParticipant("bob")
+                                   .size());
+        assertEquals(List.of(), this.engine.findByParticipant("carol"));
+
+        // 读取位置只前进，不后退
+        this.engine.advanceAll(List.of(ReadCursor.of("alice", "alice ❤ bob", 5)));
+        this.engine.advanceAll(List.of(ReadCursor.of("alice", "alice ❤ bob", 3)));
+
+        assertEquals(5, this.engine.findByUserId("alice")
+                                   .get(0)
+                                   .getLastReadSeq());
+    }
+
+    @Test
+    void testSnapshotRoundTrip()
+    {
+        this.chatProperties.getStorage()
+                           .setSnapshotEnabled(true);
+
+        // 准备测试数据
+        this.engine.save(new User("alice", "Alice", null, UserStatus.ONLINE));
+        this.engine.updateStatuses(Map.of("alice", UserStatus.OFFLINE));
+        this.engine.save(new ChatRoom("alice ❤ bob", "alice ❤ bob", "alice", "bob"));
+        this.engine.save(new GroupRoom("group:1", "g", "alice", Set.of("alice", "bob")));
+        this.engine.advanceAll(List.of(ReadCursor.of("alice", "alice ❤ bob", 2)));
+        this.engine.insert(List.of(message("alice ❤ bob", "a", 1, 1), message("alice ❤ bob", "b", 2, 2)));
+
+        // 调用被测试的方法
+        this.engine.shutdown();
+
+        final var restored = this.newEngine();
+        restored.restore();
+
+        // 验证结果
+        assertTrue(Files.exists(this.directory.resolve(InMemoryStorageEngine.SNAPSHOT_FILE)));
+        assertEquals(List.of("a", "b"), ids(restored.findByChatRoomId("alice ❤ bob")));
+        assertEquals(BASE.plusSeconds(2),
+                     restored.findPageBefore("alice ❤ bob", null, 1)
+                             .get(0)
+                             .getTimestamp());
+        assertEquals(2, restored.findMaxSeq("alice ❤ bob"));
+        assertTrue(restored.existsById("alice ❤ bob"));
+        assertTrue(restored.existsByIdAndMemberIds("group:1", "bob"));
+        assertEquals(2, restored.findByUserId("alice")
+                                .get(0)
+                                .getLastReadSeq());
+    }
+
+    private InMemoryStorageEngine newEngine()
+    {
+        return new InMemoryStorageEngine(this.chatProperties, new ChatArchive(this.chatProperties));
+    }
+
+    private static ChatMessage message(final String chatRoomId, final String id, final int second, final long seq)
+    {
+        final var chatMessage = new ChatMessage(id, chatRoomId, "alice", "bob", "m" + id, BASE.plusSeconds(second));
+        chatMessage.setSeq(seq);
+
+        return chatMessage;
+    }
+
+    private static ChatMessageCursor cursor(final int second, final String id)
+    {
+        return new ChatMessageCursor(BASE.plusSeconds(second), id);
+    }
+
+    private static List<String> ids(final List<ChatMessage> chatMessages)
+    {
+        return chatMessages.stream()
+                           .map(ChatMessage::getId)
+                           .toList();
+    }
+}
@@ -0,0 +1,91 @@
+package org.ovo307000.chat.unread;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ovo307000.chat.module.entity.ReadCursor;
+import org.ovo307000.chat.storage.ReadCursorStore;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReadCursorWriterTest
+{
+
+    @Mock
+    private ReadCursorStore readCursorStore;
+
+    @InjectMocks
+    private ReadCursorWriter readCursorWriter;
+
+    @BeforeEach
+    void setUp()
+    {
+        // 初始化所有的@Mock注解的mock对象
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushCoalescesToLatestPositionPerRoom()
+    {
+        // 同一聊天室在一个周期内多次上报，其中一次乱序
+        this.readCursorWriter.advance("user1", "room1", 3);
+        this.readCursorWriter.advance("user1", "room1", 7);
+        this.readCursorWriter.advance("user1", "room1", 5);
+        this.readCursorWriter.advance("user1", "room2", 1);
+        this.readCursorWriter.advance("user2", "room1", 2);
+
+        // 尚未写入的位置可以被读取，只包含该用户自己的位置
+        assertEquals(Map.of("room1", 7L, "room2", 1L), this.readCursorWriter.pendingFor("user1"));
+        assertEquals(Map.of("room1", 2L), this.readCursorWriter.pendingFor("user2"));
+        assertTrue(this.readCursorWriter.pendingFor("user3")
+                                        .isEmpty());
+
+        // 调用被测试的方法
+        this.readCursorWriter.flush();
+
+        // 验证只写入一次，且每个 (用户, 聊天室) 只包含最大的位置
+        final ArgumentCaptor<Collection<ReadCursor>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(this.readCursorStore, times(1)).advanceAll(captor.capture());
+        assertEquals(Map.of("user1|room1", 7L, "user1|room2", 1L, "user2|room1", 2L),
+                     captor.getValue()
+                           .stream()
+                           .collect(Collectors.toMap(ReadCursor::getId, ReadCursor::getLastReadSeq)));
+
+        // 没有新变化时不再写入
+        this.readCursorWriter.flush();
+        verifyNoMoreInteractions(this.readCursorStore);
+        assertTrue(this.readCursorWriter.pendingFor("user1")
+                                        .isEmpty());
+    }
+
+    @Test
+    void testFlushRetriesAfterFailureWithoutMovingBackwards()
+    {
+        // 第一次写入失败
+        doThrow(new RuntimeException("Test exception")).doNothing()
+                                                       .when(this.readCursorStore)
+                                                       .advanceAll(anyCollection());
+        this.readCursorWriter.advance("user1", "room1", 7);
+
+        // 调用被测试的方法：失败后放回，期间上报了更小的位置
+        this.readCursorWriter.flush();
+        this.readCursorWriter.advance("user1", "room1", 4);
+
+        // 验证放回的位置不会被更小的位置覆盖
+        assertEquals(Map.of("room1", 7L), this.readCursorWriter.pendingFor("user1"));
+
+        this.readCursorWriter.flush();
+        verify(this.readCursorStore, times(2)).advanceAll(anyCollection());
+        assertTrue(this.readCursorWriter.pendingFor("user1")
+                                        .isEmpty());
+    }
+}